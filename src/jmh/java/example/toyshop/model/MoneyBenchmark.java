@@ -0,0 +1,75 @@
+package example.toyshop.model;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Сравнение подсчёта суммы корзины в {@link BigDecimal} (как до перехода на {@link Money})
+ * и в копейках {@link Money}.
+ * <p>
+ * Запуск: {@code mvn -Pjmh test-compile exec:exec -Djmh.args="MoneyBenchmark -prof gc"}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MoneyBenchmark {
+
+    /**
+     * Количество строк в корзине.
+     */
+    @Param({ "1", "10", "50" })
+    int lines;
+
+    private Cart cart;
+
+    @Setup
+    public void setUp() {
+        List<CartItem> items = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            Product product = new Product();
+            product.setId((long) i);
+            product.setPrice(new BigDecimal("199.90").add(BigDecimal.valueOf(i)));
+            CartItem item = new CartItem();
+            item.setProduct(product);
+            item.setPrice(Money.of(product.getPrice()));
+            item.setQuantity(1 + i % 3);
+            items.add(item);
+        }
+        cart = new Cart();
+        cart.setItems(items);
+    }
+
+    /**
+     * Прежний способ: {@code price * BigDecimal.valueOf(quantity)} для каждой строки и reduce по потоку.
+     */
+    @Benchmark
+    public BigDecimal bigDecimalTotal() {
+        return cart.getItems().stream()
+                .map(item -> item.getProduct().getPrice().multiply(BigDecimal.valueOf(item.getQuantity())))
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    /**
+     * Текущий способ: суммы строк {@link CartItem#getTotalPrice()} в копейках.
+     */
+    @Benchmark
+    public Money moneyTotal() {
+        Money total = Money.ZERO;
+        for (CartItem item : cart.getItems()) {
+            total = total.plus(item.getTotalPrice());
+        }
+        return total;
+    }
+}
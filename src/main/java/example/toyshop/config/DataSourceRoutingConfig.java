@@ -0,0 +1,95 @@
+package example.toyshop.config;
+
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Конфигурация разделения чтения и записи между основной базой данных и репликой.
+ * <p>
+ * Включается параметром {@code datasource.replica.enabled=true}. Основной пул настраивается
+ * стандартными свойствами {@code spring.datasource.*} (размер — {@code spring.datasource.hikari.maximum-pool-size}),
+ * пул реплики — свойствами {@code datasource.replica.*} (размер — {@code datasource.replica.hikari.maximum-pool-size}).
+ * Транзакции только на чтение (каталог, история заказов, просмотр корзины) идут в реплику,
+ * изменения корзины и оформление заказа — в основную базу.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "datasource.replica.enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+
+    /**
+     * Пул соединений основной базы данных.
+     *
+     * @param properties стандартные свойства {@code spring.datasource}
+     * @return пул основной базы
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    /**
+     * Пул соединений реплики (только чтение).
+     *
+     * @param url      JDBC URL реплики
+     * @param username пользователь реплики (по умолчанию как у основной базы)
+     * @param password пароль реплики (по умолчанию как у основной базы)
+     * @return пул реплики
+     */
+    @Bean
+    @ConfigurationProperties("datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(
+            @Value("${datasource.replica.url}") String url,
+            @Value("${datasource.replica.username:${spring.datasource.username}}") String username,
+            @Value("${datasource.replica.password:${spring.datasource.password}}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    /**
+     * Основной источник данных приложения, выбирающий пул по признаку readOnly транзакции.
+     * Физическое соединение берётся только при первом запросе, когда признак уже известен.
+     *
+     * @param primary пул основной базы
+     * @param replica пул реплики
+     * @return источник данных с маршрутизацией
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+            @Qualifier("replicaDataSource") DataSource replica) {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource();
+        routing.setTargetDataSources(Map.of(
+                ReadWriteRoutingDataSource.PRIMARY, primary,
+                ReadWriteRoutingDataSource.REPLICA, replica));
+        routing.setDefaultTargetDataSource(primary);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
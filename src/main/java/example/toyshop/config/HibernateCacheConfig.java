@@ -0,0 +1,114 @@
+package example.toyshop.config;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.Properties;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+/**
+ * Конфигурация кэша второго уровня Hibernate (in-process, Caffeine через JCache).
+ * <p>
+ * Создаёт регионы для сущности {@link example.toyshop.model.Product} и для кэша запросов.
+ * Время жизни записей ограничено параметром {@code cache.product.ttl}: изменения остатков,
+ * сделанные в обход Hibernate (другие узлы, SQL-скрипты), становятся видны не позже этого срока.
+ * Изменения, сделанные через JPA (например, в {@link example.toyshop.service.CartService}),
+ * обновляют запись региона сразу при коммите транзакции (стратегия READ_WRITE),
+ * а любые изменения таблицы {@code product} инвалидируют закэшированные страницы каталога.
+ * </p>
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    /**
+     * Регион кэша для сущности товара.
+     */
+    public static final String PRODUCT_REGION = "product";
+
+    /**
+     * Регион Hibernate для результатов кэшируемых запросов.
+     */
+    static final String QUERY_RESULTS_REGION = "default-query-results-region";
+
+    /**
+     * Регион Hibernate с временными метками изменения таблиц.
+     * Не должен истекать раньше региона запросов, поэтому создаётся без TTL.
+     */
+    static final String UPDATE_TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    /**
+     * Максимальное время, в течение которого закэшированный товар (и его остаток) считается актуальным.
+     */
+    @Value("${cache.product.ttl:30s}")
+    private Duration productTtl;
+
+    /**
+     * Максимальное количество товаров в регионе кэша.
+     */
+    @Value("${cache.product.max-size:10000}")
+    private long productMaxSize;
+
+    /**
+     * Максимальное количество закэшированных страниц каталога.
+     */
+    @Value("${cache.query.max-size:1000}")
+    private long queryMaxSize;
+
+    /**
+     * Создаёт JCache-менеджер на базе Caffeine с регионами для Hibernate.
+     * Менеджер регистрируется под собственным URI, чтобы несколько контекстов приложения
+     * в одной JVM (например, в тестах) не делили одни и те же регионы.
+     *
+     * @return менеджер кэшей, закрываемый вместе с контекстом
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        URI uri = URI.create("toyshop-hibernate-" + Integer.toHexString(System.identityHashCode(this)));
+        CacheManager cacheManager = provider.getCacheManager(uri, getClass().getClassLoader(), new Properties());
+
+        cacheManager.createCache(PRODUCT_REGION, region(productMaxSize, productTtl));
+        cacheManager.createCache(QUERY_RESULTS_REGION, region(queryMaxSize, productTtl));
+        cacheManager.createCache(UPDATE_TIMESTAMPS_REGION, region(queryMaxSize, null));
+        return cacheManager;
+    }
+
+    /**
+     * Передаёт созданный менеджер кэшей в Hibernate.
+     *
+     * @param hibernateCacheManager менеджер кэшей
+     * @return настройщик свойств Hibernate
+     */
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    /**
+     * Описывает регион кэша с ограничением размера и (необязательно) времени жизни записей.
+     *
+     * @param maxSize максимальное число записей
+     * @param ttl     время жизни записи после записи или {@code null}, если без ограничения
+     * @return конфигурация региона
+     */
+    private static CaffeineConfiguration<Object, Object> region(long maxSize, Duration ttl) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maxSize));
+        if (ttl != null) {
+            configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        }
+        return configuration;
+    }
+}
@@ -0,0 +1,41 @@
+package example.toyshop.config;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import example.toyshop.controller.CartCookies;
+import example.toyshop.service.IdempotencyStore;
+
+/**
+ * Регистрирует {@link IdempotencyFilter} для изменяющих запросов корзины.
+ * Пути задаются параметром {@code idempotency.url-patterns} (шаблоны URL сервлетов).
+ */
+@Configuration
+public class IdempotencyConfig {
+
+    /**
+     * Регистрирует фильтр ключей идемпотентности.
+     *
+     * @param store           хранилище результатов запросов
+     * @param cartCookies     корзины в cookie, в пределах которых действуют ключи
+     * @param urlPatterns     пути, для которых действуют ключи
+     * @param inFlightTimeout сколько повтор ждёт результата выполняющегося запроса
+     * @return регистрация фильтра
+     */
+    @Bean
+    public FilterRegistrationBean<IdempotencyFilter> idempotencyFilter(
+            IdempotencyStore store,
+            CartCookies cartCookies,
+            @Value("${idempotency.url-patterns:/cart/add/*,/api/cart/add/*,/cart/checkout}") List<String> urlPatterns,
+            @Value("${idempotency.in-flight-timeout:10s}") Duration inFlightTimeout) {
+        FilterRegistrationBean<IdempotencyFilter> registration =
+                new FilterRegistrationBean<>(new IdempotencyFilter(store, cartCookies, inFlightTimeout));
+        registration.setUrlPatterns(urlPatterns);
+        return registration;
+    }
+}
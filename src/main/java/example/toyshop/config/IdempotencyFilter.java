@@ -0,0 +1,265 @@
+package example.toyshop.config;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import example.toyshop.controller.CartCookies;
+import example.toyshop.service.IdempotencyStore;
+import example.toyshop.service.IdempotencyStore.StoredResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Фильтр, делающий POST-запросы с ключом идемпотентности безопасными для повторов.
+ * <p>
+ * Ключ передаётся заголовком {@code Idempotency-Key} или параметром формы {@code idempotencyKey}
+ * и действует только в пределах клиента: сессии или, если корзины хранятся в cookie, корзины.
+ * Успешный результат первого запроса (статус, Location, Set-Cookie, тело) сохраняется
+ * в {@link IdempotencyStore}; повтор с тем же ключом от того же клиента получает сохранённый
+ * результат без повторного выполнения (с заголовком {@code Idempotent-Replayed: true}).
+ * Повтор, пришедший, пока первый запрос ещё выполняется, ждёт его результата не дольше
+ * {@code idempotency.in-flight-timeout}, затем получает 409. Ответы с ошибкой (4xx, 5xx)
+ * не сохраняются: запрос с тем же ключом можно повторить.
+ * </p>
+ * <p>
+ * Повторы на одном узле ждут первой попытки в памяти. Если результаты хранятся в базе данных,
+ * попытка перед выполнением ещё и захватывает ключ в хранилище ({@link IdempotencyStore#claim});
+ * повтор, пришедший на другой узел, опрашивает хранилище, пока не появится результат
+ * или не истечёт то же время ожидания.
+ * </p>
+ * <p>
+ * Запросы без ключа обрабатываются как обычно. Так же обрабатываются запросы без сессии
+ * и корзины: их повтор нельзя отличить от запроса другого клиента, а сам повтор попадает
+ * в новую сессию (корзину), поэтому не изменяет корзину первого запроса повторно.
+ * </p>
+ */
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    /**
+     * Заголовок с ключом идемпотентности.
+     */
+    public static final String HEADER = "Idempotency-Key";
+
+    /**
+     * Параметр формы с ключом идемпотентности.
+     */
+    public static final String PARAMETER = "idempotencyKey";
+
+    /**
+     * Заголовок, которым помечается повторно отданный результат.
+     */
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 200;
+    private static final int MAX_STORED_BODY = 64 * 1024;
+    private static final long MAX_POLL_MILLIS = 200;
+
+    private final IdempotencyStore store;
+    private final CartCookies cartCookies;
+    private final Duration inFlightTimeout;
+    private final ConcurrentMap<String, CompletableFuture<Optional<StoredResponse>>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyFilter(IdempotencyStore store, CartCookies cartCookies, Duration inFlightTimeout) {
+        this.store = store;
+        this.cartCookies = cartCookies;
+        this.inFlightTimeout = inFlightTimeout;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.POST.matches(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = request.getHeader(HEADER);
+        if (!StringUtils.hasText(key)) {
+            key = request.getParameter(PARAMETER);
+        }
+        if (!StringUtils.hasText(key)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Слишком длинный ключ идемпотентности");
+            return;
+        }
+        String client = client(request);
+        if (client == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String requestKey = client + " " + request.getMethod() + " " + request.getRequestURI() + " " + key;
+
+        while (true) {
+            Optional<StoredResponse> stored = store.find(requestKey);
+            if (stored.isPresent()) {
+                replay(stored.get(), response);
+                return;
+            }
+            CompletableFuture<Optional<StoredResponse>> attempt = new CompletableFuture<>();
+            CompletableFuture<Optional<StoredResponse>> running = inFlight.putIfAbsent(requestKey, attempt);
+            if (running == null) {
+                execute(requestKey, attempt, request, response, chain);
+                return;
+            }
+            Optional<StoredResponse> outcome = await(running);
+            if (outcome == null) {
+                response.sendError(HttpStatus.CONFLICT.value(), "Запрос с этим ключом ещё выполняется");
+                return;
+            }
+            if (outcome.isPresent()) {
+                replay(outcome.get(), response);
+                return;
+            }
+            // первая попытка завершилась ошибкой — выполняем запрос заново
+        }
+    }
+
+    /**
+     * Определяет клиента, в пределах которого действует ключ: корзину из cookie или сессию.
+     *
+     * @return идентификатор клиента или {@code null}, если запрос пришёл без корзины и сессии
+     */
+    private String client(HttpServletRequest request) {
+        if (cartCookies.isEnabled()) {
+            return cartCookies.key(request).map(cart -> "cart:" + cart).orElse(null);
+        }
+        String sessionId = request.getRequestedSessionId();
+        return sessionId != null ? "session:" + sessionId : null;
+    }
+
+    /**
+     * Захватывает ключ, выполняет запрос и сохраняет его успешный результат.
+     * Если ключ не сохранил результат, захват снимается.
+     */
+    private void execute(String requestKey, CompletableFuture<Optional<StoredResponse>> attempt,
+                         HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Optional<StoredResponse> outcome = Optional.empty();
+        boolean claimed = false;
+        try {
+            Optional<StoredResponse> stored = claim(requestKey);
+            if (stored == null) {
+                response.sendError(HttpStatus.CONFLICT.value(), "Запрос с этим ключом ещё выполняется");
+                return;
+            }
+            if (stored.isPresent()) {
+                outcome = stored;
+                replay(stored.get(), response);
+                return;
+            }
+            claimed = true;
+            ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+            try {
+                chain.doFilter(request, wrapper);
+                Optional<StoredResponse> captured = capture(wrapper);
+                captured.ifPresent(result -> store.save(requestKey, result));
+                outcome = captured;
+            } finally {
+                wrapper.copyBodyToResponse();
+            }
+        } finally {
+            if (claimed && outcome.isEmpty()) {
+                store.release(requestKey);
+            }
+            inFlight.remove(requestKey, attempt);
+            attempt.complete(outcome);
+        }
+    }
+
+    /**
+     * Захватывает ключ в хранилище. Пока ключ захвачен запросом на другом узле, опрашивает хранилище
+     * с растущей паузой не дольше {@code idempotency.in-flight-timeout}.
+     *
+     * @return пустой результат, если ключ захвачен и запрос нужно выполнить; сохранённый результат,
+     *         если его сохранил другой запрос (в том числе между проверкой хранилища и регистрацией попытки);
+     *         {@code null}, если запрос на другом узле не завершился за время ожидания
+     */
+    private Optional<StoredResponse> claim(String requestKey) {
+        long deadline = System.nanoTime() + inFlightTimeout.toNanos();
+        long pause = 10;
+        while (true) {
+            Optional<StoredResponse> stored = store.find(requestKey);
+            if (stored.isPresent()) {
+                return stored;
+            }
+            if (store.claim(requestKey)) {
+                return Optional.empty();
+            }
+            long remainingMillis = (deadline - System.nanoTime()) / 1_000_000;
+            if (remainingMillis <= 0) {
+                return null;
+            }
+            try {
+                Thread.sleep(Math.min(pause, remainingMillis));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            pause = Math.min(pause * 2, MAX_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Ждёт результата выполняющегося запроса с тем же ключом.
+     *
+     * @return результат первой попытки (пустой, если она не удалась) или {@code null} по истечении ожидания
+     */
+    private Optional<StoredResponse> await(CompletableFuture<Optional<StoredResponse>> running) {
+        try {
+            return running.get(inFlightTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Запоминает успешный ответ; ответы с ошибкой и слишком большие ответы не запоминаются.
+     */
+    private static Optional<StoredResponse> capture(ContentCachingResponseWrapper response) {
+        int status = response.getStatus();
+        if (status >= 400 || response.getContentSize() > MAX_STORED_BODY) {
+            return Optional.empty();
+        }
+        return Optional.of(new StoredResponse(status, response.getHeader(HttpHeaders.LOCATION),
+                List.copyOf(response.getHeaders(HttpHeaders.SET_COOKIE)), response.getContentType(),
+                response.getContentAsByteArray()));
+    }
+
+    private static void replay(StoredResponse stored, HttpServletResponse response) throws IOException {
+        response.setStatus(stored.status());
+        response.setHeader(REPLAYED_HEADER, "true");
+        if (stored.location() != null) {
+            response.setHeader(HttpHeaders.LOCATION, stored.location());
+        }
+        stored.setCookies().forEach(cookie -> response.addHeader(HttpHeaders.SET_COOKIE, cookie));
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        if (stored.body() != null && stored.body().length > 0) {
+            response.getOutputStream().write(stored.body());
+        }
+    }
+}
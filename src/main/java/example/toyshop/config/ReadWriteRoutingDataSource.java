@@ -0,0 +1,41 @@
+package example.toyshop.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Маршрутизирующий источник данных: транзакции {@code @Transactional(readOnly = true)}
+ * направляются в пул реплики, все остальные — в пул основной базы данных.
+ * <p>
+ * Если текущий запрос закреплён за основной базой ({@link ReadYourWritesContext}),
+ * чтение также идёт в основную базу, чтобы пользователь увидел свои только что сделанные изменения.
+ * Должен оборачиваться в {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy},
+ * чтобы выбор пула происходил уже после установки признака readOnly транзакции.
+ * </p>
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    /**
+     * Ключ пула основной базы данных.
+     */
+    public static final String PRIMARY = "primary";
+
+    /**
+     * Ключ пула реплики.
+     */
+    public static final String REPLICA = "replica";
+
+    /**
+     * Определяет пул для текущей транзакции.
+     *
+     * @return {@link #REPLICA} для транзакций только на чтение, иначе {@link #PRIMARY}
+     */
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !ReadYourWritesContext.isPinnedToPrimary()) {
+            return REPLICA;
+        }
+        return PRIMARY;
+    }
+}
@@ -0,0 +1,39 @@
+package example.toyshop.config;
+
+/**
+ * Признак текущего потока (запроса), что чтение должно выполняться из основной базы данных.
+ * <p>
+ * Устанавливается {@link ReadYourWritesInterceptor} для посетителей, которые недавно изменяли данные,
+ * чтобы отставание реплики не скрывало от пользователя его собственные изменения.
+ * </p>
+ */
+public final class ReadYourWritesContext {
+
+    private static final ThreadLocal<Boolean> PINNED_TO_PRIMARY = new ThreadLocal<>();
+
+    private ReadYourWritesContext() {
+    }
+
+    /**
+     * Закрепляет чтение текущего потока за основной базой данных.
+     */
+    public static void pinToPrimary() {
+        PINNED_TO_PRIMARY.set(Boolean.TRUE);
+    }
+
+    /**
+     * Проверяет, закреплён ли текущий поток за основной базой данных.
+     *
+     * @return {@code true}, если чтение должно идти в основную базу
+     */
+    public static boolean isPinnedToPrimary() {
+        return PINNED_TO_PRIMARY.get() != null;
+    }
+
+    /**
+     * Снимает закрепление текущего потока.
+     */
+    public static void clear() {
+        PINNED_TO_PRIMARY.remove();
+    }
+}
@@ -0,0 +1,108 @@
+package example.toyshop.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Обеспечивает режим «чтение своих записей» при работе с репликой.
+ * <p>
+ * Изменяющий запрос (не GET/HEAD) возвращает посетителю cookie {@value #LAST_WRITE_COOKIE} со временем
+ * своего начала. В течение окна {@code datasource.replica.read-your-writes-window} после него чтение
+ * для этого посетителя выполняется из основной базы данных, а не из реплики. Cookie не требует
+ * HTTP-сессии, поэтому режим работает и для корзин в cookie, и на любом узле. Нулевое окно отключает режим.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "datasource.replica.enabled", havingValue = "true")
+public class ReadYourWritesInterceptor implements HandlerInterceptor {
+
+    /**
+     * Cookie со временем последнего изменения данных (мс).
+     */
+    static final String LAST_WRITE_COOKIE = "RYW";
+
+    /**
+     * Окно, в течение которого после изменения чтение идёт из основной базы.
+     */
+    private final Duration window;
+
+    /**
+     * Конструктор, в который внедряется длительность окна из настроек.
+     *
+     * @param window окно «чтения своих записей»
+     */
+    public ReadYourWritesInterceptor(@Value("${datasource.replica.read-your-writes-window:5s}") Duration window) {
+        this.window = window;
+    }
+
+    /**
+     * Закрепляет запрос за основной базой, если посетитель недавно изменял данные,
+     * и запоминает время изменения для изменяющих запросов.
+     * <p>
+     * Cookie добавляется до выполнения обработчика: после него ответ может быть уже отправлен.
+     * </p>
+     */
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (window.isZero()) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        Long lastWrite = lastWrite(request);
+        if (lastWrite != null && lastWrite <= now && now - lastWrite < window.toMillis()) {
+            ReadYourWritesContext.pinToPrimary();
+        }
+        if (isMutation(request)) {
+            response.addHeader(HttpHeaders.SET_COOKIE, ResponseCookie.from(LAST_WRITE_COOKIE, Long.toString(now))
+                    .path("/")
+                    .httpOnly(true)
+                    .sameSite("Lax")
+                    .maxAge(Math.max(1, (window.toMillis() + 999) / 1000))
+                    .build()
+                    .toString());
+        }
+        return true;
+    }
+
+    /**
+     * Снимает закрепление потока.
+     */
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        ReadYourWritesContext.clear();
+    }
+
+    private static Long lastWrite(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (LAST_WRITE_COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isMutation(HttpServletRequest request) {
+        String method = request.getMethod();
+        return !HttpMethod.GET.matches(method) && !HttpMethod.HEAD.matches(method);
+    }
+}
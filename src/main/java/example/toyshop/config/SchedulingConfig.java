@@ -0,0 +1,13 @@
+package example.toyshop.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Включает выполнение фоновых задач по расписанию
+ * (например, освобождение просроченных резервов товаров).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
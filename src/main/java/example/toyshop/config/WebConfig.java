@@ -1,10 +1,14 @@
 package example.toyshop.config;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import lombok.RequiredArgsConstructor;
+
 /**
  * Конфигурация веб-ресурсов приложения.
  * <p>
@@ -15,10 +19,19 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
  * <p>
  * Позволяет обращаться к загруженным файлам по URL-пути {@code /uploads/**}.
  * </p>
+ * <p>
+ * Если включена реплика базы данных, регистрирует {@link ReadYourWritesInterceptor}.
+ * </p>
  */
 @Configuration
+@RequiredArgsConstructor
 public class WebConfig implements WebMvcConfigurer {
 
+    /**
+     * Перехватчик «чтения своих записей» (доступен только при включённой реплике).
+     */
+    private final ObjectProvider<ReadYourWritesInterceptor> readYourWritesInterceptor;
+
     /**
      * Путь к директории с загруженными изображениями.
      * Значение берётся из конфигурационного свойства {@code upload.dir}.
@@ -46,4 +59,14 @@ public class WebConfig implements WebMvcConfigurer {
         registry.addResourceHandler("/uploads/**")
                 .addResourceLocations(resourceLocation);
     }
+
+    /**
+     * Регистрирует перехватчик «чтения своих записей», если он доступен.
+     *
+     * @param registry реестр перехватчиков Spring MVC
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        readYourWritesInterceptor.ifAvailable(registry::addInterceptor);
+    }
 }
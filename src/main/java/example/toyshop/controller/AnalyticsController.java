@@ -0,0 +1,67 @@
+package example.toyshop.controller;
+
+import java.time.LocalDate;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+
+import example.toyshop.service.SalesAnalyticsService;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Контроллер страницы аналитики продаж.
+ */
+@Controller
+@RequestMapping("/analytics")
+@RequiredArgsConstructor
+public class AnalyticsController {
+
+    /**
+     * Длина периода по умолчанию в днях.
+     */
+    private static final int DEFAULT_DAYS = 30;
+
+    private final SalesAnalyticsService salesAnalyticsService;
+
+    /**
+     * Отображает продажи за период: выручку по дням, средний чек и самые продаваемые товары.
+     *
+     * @param from  первый день периода (по умолчанию — {@value #DEFAULT_DAYS} дней до {@code to})
+     * @param to    последний день периода (по умолчанию — сегодня)
+     * @param model модель для передачи данных в представление
+     * @return имя шаблона страницы аналитики
+     */
+    @GetMapping
+    public String viewAnalytics(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                Model model) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(DEFAULT_DAYS - 1L);
+        model.addAttribute("report", salesAnalyticsService.getReport(start, end));
+        return "analytics";
+    }
+
+    /**
+     * Пересчитывает сводки продаж за период по оформленным заказам.
+     *
+     * @param from               первый день периода
+     * @param to                 последний день периода
+     * @param redirectAttributes параметры перенаправления
+     * @return перенаправление на отчёт за пересчитанный период
+     */
+    @PostMapping("/rebuild")
+    public String rebuild(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                          RedirectAttributes redirectAttributes) {
+        salesAnalyticsService.rebuild(from, to);
+        redirectAttributes.addAttribute("from", from.toString());
+        redirectAttributes.addAttribute("to", to.toString());
+        return "redirect:/analytics";
+    }
+}
@@ -0,0 +1,187 @@
+package example.toyshop.controller;
+
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import example.toyshop.dto.CartBadge;
+import example.toyshop.dto.CartDelta;
+import example.toyshop.dto.CartLineRequest;
+import example.toyshop.dto.CartView;
+import example.toyshop.service.CartService;
+import example.toyshop.service.CookieCartService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * JSON API корзины для кнопок страниц каталога и корзины.
+ * <p>
+ * В отличие от {@link CartController}, не перенаправляет на страницу и не отрисовывает её заново:
+ * применяет изменение и возвращает только изменившуюся строку, новую сумму корзины и остаток товара.
+ * </p>
+ * <p>
+ * При {@code cart.cookie.enabled=true} корзина читается из подписанной cookie и возвращается
+ * в ней же ({@link CartCookies}).
+ * </p>
+ * <p>
+ * Ошибки возвращаются телом JSON ({@link ProblemDetail}) с сообщением для покупателя в {@code detail}:
+ * 404, если товар или корзина не найдены, 409, если товара нет в наличии, 429 и 503, если запрос
+ * нужно повторить; страница показывает сообщение, не перезагружаясь.
+ * </p>
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/cart")
+@RequiredArgsConstructor
+public class CartApiController {
+
+    private final CartService cartService;
+    private final CookieCartService cookieCartService;
+    private final CartCookies cartCookies;
+
+    /**
+     * Возвращает количество единиц товара и сумму корзины для значка корзины.
+     * Не создаёт сессию для посетителей без корзины.
+     *
+     * @param request HTTP-запрос для получения сессии
+     * @return итоги корзины
+     */
+    @GetMapping("/summary")
+    public CartBadge summary(HttpServletRequest request) {
+        if (cartCookies.isEnabled()) {
+            return cookieCartService.getCartBadge(cartCookies.read(request));
+        }
+        HttpSession session = request.getSession(false);
+        return session == null ? CartBadge.empty() : cartService.getCartBadge(session.getId());
+    }
+
+    /**
+     * Добавляет товар в корзину пользователя.
+     *
+     * @param productId идентификатор добавляемого продукта
+     * @param request   HTTP-запрос для получения сессии
+     * @param response  HTTP-ответ для записи корзины в cookie
+     * @return изменение корзины
+     */
+    @PostMapping("/add/{productId}")
+    public CartDelta addToCart(@PathVariable Long productId, HttpServletRequest request,
+                               HttpServletResponse response) {
+        if (cartCookies.isEnabled()) {
+            return cartCookies.apply(request, response, cart -> cookieCartService.addToCart(cart, productId));
+        }
+        String sessionId = request.getSession(true).getId();
+        return cartService.addToCart(sessionId, productId);
+    }
+
+    /**
+     * Удаляет товар из корзины.
+     *
+     * @param productId идентификатор удаляемого продукта
+     * @param request   HTTP-запрос для получения сессии
+     * @param response  HTTP-ответ для записи корзины в cookie
+     * @return изменение корзины
+     */
+    @PostMapping("/remove/{productId}")
+    public CartDelta removeFromCart(@PathVariable Long productId, HttpServletRequest request,
+                                    HttpServletResponse response) {
+        if (cartCookies.isEnabled()) {
+            return cartCookies.apply(request, response, cart -> cookieCartService.removeFromCart(cart, productId));
+        }
+        String sessionId = request.getSession(true).getId();
+        return cartService.removeFromCart(sessionId, productId);
+    }
+
+    /**
+     * Увеличивает количество товара в корзине на 1.
+     *
+     * @param productId идентификатор товара
+     * @param request   HTTP-запрос для получения сессии
+     * @param response  HTTP-ответ для записи корзины в cookie
+     * @return изменение корзины
+     */
+    @PostMapping("/increase/{productId}")
+    public CartDelta increaseItem(@PathVariable Long productId, HttpServletRequest request,
+                                  HttpServletResponse response) {
+        if (cartCookies.isEnabled()) {
+            return cartCookies.apply(request, response, cart -> cookieCartService.increaseItem(cart, productId));
+        }
+        String sessionId = request.getSession(true).getId();
+        return cartService.increaseItem(sessionId, productId);
+    }
+
+    /**
+     * Уменьшает количество товара в корзине на 1.
+     *
+     * @param productId идентификатор товара
+     * @param request   HTTP-запрос для получения сессии
+     * @param response  HTTP-ответ для записи корзины в cookie
+     * @return изменение корзины
+     */
+    @PostMapping("/decrease/{productId}")
+    public CartDelta decreaseItem(@PathVariable Long productId, HttpServletRequest request,
+                                  HttpServletResponse response) {
+        if (cartCookies.isEnabled()) {
+            return cartCookies.apply(request, response, cart -> cookieCartService.decreaseItem(cart, productId));
+        }
+        String sessionId = request.getSession(true).getId();
+        return cartService.decreaseItem(sessionId, productId);
+    }
+
+    /**
+     * Устанавливает количество нескольких товаров в корзине одной транзакцией
+     * (например, для повторного заказа или мобильного клиента).
+     * Повтор запроса с теми же строками не меняет корзину.
+     *
+     * @param lines    целевые количества товаров (0 — удалить строку)
+     * @param request  HTTP-запрос для получения сессии
+     * @param response HTTP-ответ для записи корзины в cookie
+     * @return корзина после изменения
+     */
+    @PostMapping("/lines")
+    public CartView setCartLines(@RequestBody List<CartLineRequest> lines, HttpServletRequest request,
+                                 HttpServletResponse response) {
+        if (cartCookies.isEnabled()) {
+            return cartCookies.apply(request, response, cart -> cookieCartService.setCartLines(cart, lines));
+        }
+        String sessionId = request.getSession(true).getId();
+        return cartService.setCartLines(sessionId, lines);
+    }
+
+    /**
+     * Возвращает ошибку с HTTP-статусом и сообщением из исключения.
+     *
+     * @param e исключение со статусом ответа
+     * @return описание ошибки
+     */
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<ProblemDetail> handleStatus(ResponseStatusException e) {
+        return ResponseEntity.status(e.getStatusCode()).body(e.getBody());
+    }
+
+    /**
+     * Возвращает ошибку 500 с общим сообщением; подробности пишутся в лог.
+     *
+     * @param e непредвиденное исключение
+     * @return описание ошибки
+     */
+    @ExceptionHandler(RuntimeException.class)
+    public ResponseEntity<ProblemDetail> handleFailure(RuntimeException e) {
+        log.error("Не удалось изменить корзину", e);
+        HttpStatus status = HttpStatus.INTERNAL_SERVER_ERROR;
+        return ResponseEntity.status(status)
+                .body(ProblemDetail.forStatusAndDetail(status, "Не удалось изменить корзину, повторите попытку"));
+    }
+}
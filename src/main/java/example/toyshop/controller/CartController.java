@@ -1,21 +1,31 @@
 package example.toyshop.controller;
 
+import java.util.Optional;
+
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
+import example.toyshop.dto.CartView;
 import example.toyshop.model.Cart;
 import example.toyshop.service.CartService;
+import example.toyshop.service.CookieCartService;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 
 /**
  * Контроллер для управления корзиной пользователя.
  * Обрабатывает добавление, удаление и изменение количества товаров,
  * а также оформление заказа.
+ * <p>
+ * При {@code cart.cookie.enabled=true} корзина хранится в подписанной cookie ({@link CartCookies})
+ * и сессия не создаётся.
+ * </p>
  */
 @Controller
 @RequestMapping("/cart")
@@ -23,6 +33,8 @@ import lombok.RequiredArgsConstructor;
 public class CartController {
 
     private final CartService cartService;
+    private final CookieCartService cookieCartService;
+    private final CartCookies cartCookies;
 
     /**
      * Отображает текущую корзину пользователя.
@@ -34,8 +46,12 @@ public class CartController {
      */
     @GetMapping
     public String viewCart(HttpServletRequest request, Model model) {
-        String sessionId = request.getSession(true).getId();
-        Cart cart = cartService.getActiveCartBySessionId(sessionId);
+        CartView cart;
+        if (cartCookies.isEnabled()) {
+            cart = cookieCartService.getCartView(cartCookies.read(request));
+        } else {
+            cart = cartService.getCartView(request.getSession(true).getId());
+        }
         model.addAttribute("cart", cart);
         return "cart";
     }
@@ -45,13 +61,17 @@ public class CartController {
      *
      * @param productId идентификатор добавляемого продукта
      * @param request   HTTP-запрос для получения сессии
+     * @param response  HTTP-ответ для записи корзины в cookie
      * @return редирект на страницу списка продуктов
      */
     @PostMapping("/add/{productId}")
-    public String addToCart(@PathVariable Long productId,
-                            HttpServletRequest request) {
-        String sessionId = request.getSession(true).getId();
-        cartService.addToCart(sessionId, productId);
+    public String addToCart(@PathVariable Long productId, HttpServletRequest request,
+                            HttpServletResponse response) {
+        if (cartCookies.isEnabled()) {
+            cartCookies.apply(request, response, cart -> cookieCartService.addToCart(cart, productId));
+        } else {
+            cartService.addToCart(request.getSession(true).getId(), productId);
+        }
         return "redirect:/products";
     }
 
@@ -60,12 +80,17 @@ public class CartController {
      *
      * @param productId идентификатор удаляемого продукта
      * @param request   HTTP-запрос для получения сессии
+     * @param response  HTTP-ответ для записи корзины в cookie
      * @return редирект на страницу корзины
      */
     @PostMapping("/remove/{productId}")
-    public String removeFromCart(@PathVariable Long productId, HttpServletRequest request) {
-        String sessionId = request.getSession(true).getId();
-        cartService.removeFromCart(sessionId, productId);
+    public String removeFromCart(@PathVariable Long productId, HttpServletRequest request,
+                                 HttpServletResponse response) {
+        if (cartCookies.isEnabled()) {
+            cartCookies.apply(request, response, cart -> cookieCartService.removeFromCart(cart, productId));
+        } else {
+            cartService.removeFromCart(request.getSession(true).getId(), productId);
+        }
         return "redirect:/cart";
     }
 
@@ -74,12 +99,17 @@ public class CartController {
      *
      * @param productId идентификатор товара
      * @param request   HTTP-запрос для получения сессии
+     * @param response  HTTP-ответ для записи корзины в cookie
      * @return редирект на страницу корзины
      */
     @PostMapping("/increase/{productId}")
-    public String increaseItem(@PathVariable Long productId, HttpServletRequest request) {
-        String sessionId = request.getSession(true).getId();
-        cartService.increaseItem(sessionId, productId);
+    public String increaseItem(@PathVariable Long productId, HttpServletRequest request,
+                               HttpServletResponse response) {
+        if (cartCookies.isEnabled()) {
+            cartCookies.apply(request, response, cart -> cookieCartService.increaseItem(cart, productId));
+        } else {
+            cartService.increaseItem(request.getSession(true).getId(), productId);
+        }
         return "redirect:/cart";
     }
 
@@ -88,12 +118,17 @@ public class CartController {
      *
      * @param productId идентификатор товара
      * @param request   HTTP-запрос для получения сессии
+     * @param response  HTTP-ответ для записи корзины в cookie
      * @return редирект на страницу корзины
      */
     @PostMapping("/decrease/{productId}")
-    public String decreaseItem(@PathVariable Long productId, HttpServletRequest request) {
-        String sessionId = request.getSession(true).getId();
-        cartService.decreaseItem(sessionId, productId);
+    public String decreaseItem(@PathVariable Long productId, HttpServletRequest request,
+                               HttpServletResponse response) {
+        if (cartCookies.isEnabled()) {
+            cartCookies.apply(request, response, cart -> cookieCartService.decreaseItem(cart, productId));
+        } else {
+            cartService.decreaseItem(request.getSession(true).getId(), productId);
+        }
         return "redirect:/cart";
     }
 
@@ -101,14 +136,23 @@ public class CartController {
      * Оформляет заказ — переводит корзину в статус оформленного заказа,
      * инвалидирует текущую сессию для создания новой корзины.
      *
-     * @param request HTTP-запрос для получения сессии
-     * @return редирект на страницу просмотра заказа
+     * @param email    адрес для письма с подтверждением заказа (необязательный)
+     * @param request  HTTP-запрос для получения сессии
+     * @param response HTTP-ответ для записи корзины в cookie
+     * @return редирект на страницу просмотра заказа; для корзины в cookie, которой не хватило товара
+     *         на складе, — на страницу корзины с доступным количеством
      */
     @PostMapping("/checkout")
-    public String checkout(HttpServletRequest request) {
+    public String checkout(@RequestParam(required = false) String email, HttpServletRequest request,
+                           HttpServletResponse response) {
+        if (cartCookies.isEnabled()) {
+            Optional<Cart> order = cartCookies.apply(request, response,
+                    cart -> cookieCartService.checkout(cart, email));
+            return order.map(placed -> "redirect:/orders/" + placed.getId()).orElse("redirect:/cart");
+        }
         String sessionId = request.getSession(true).getId();
 
-        Cart completedOrder = cartService.checkout(sessionId);
+        Cart completedOrder = cartService.checkout(sessionId, email);
 
         request.getSession().invalidate();
 
@@ -0,0 +1,117 @@
+package example.toyshop.controller;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.WebUtils;
+
+import example.toyshop.service.CookieCart;
+import example.toyshop.service.CookieCartCodec;
+import example.toyshop.service.CookieCartService;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Читает корзину из cookie запроса и записывает изменённую корзину в cookie ответа.
+ * <p>
+ * Cookie без подписи, с чужой подписью или в неизвестном формате считается отсутствующей:
+ * посетитель получает новую пустую корзину. Cookie недоступна скриптам страницы (HttpOnly)
+ * и не отправляется с запросами с чужих сайтов, кроме переходов по ссылке (SameSite=Lax).
+ * </p>
+ */
+@Component
+public class CartCookies {
+
+    /**
+     * Имя cookie с корзиной.
+     */
+    public static final String COOKIE_NAME = "CART";
+
+    private final CookieCartCodec codec;
+    private final CookieCartService cookieCartService;
+    private final Duration maxAge;
+
+    public CartCookies(CookieCartCodec codec,
+                       CookieCartService cookieCartService,
+                       @Value("${cart.cookie.max-age:30d}") Duration maxAge) {
+        this.codec = codec;
+        this.cookieCartService = cookieCartService;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Хранятся ли корзины в cookie.
+     */
+    public boolean isEnabled() {
+        return cookieCartService.isEnabled();
+    }
+
+    /**
+     * Читает корзину из cookie запроса.
+     *
+     * @param request HTTP-запрос
+     * @return корзина из cookie или новая пустая корзина
+     */
+    public CookieCart read(HttpServletRequest request) {
+        return decode(request).orElseGet(() -> CookieCart.empty(codec.newKey()));
+    }
+
+    /**
+     * Возвращает ключ корзины из cookie запроса.
+     *
+     * @param request HTTP-запрос
+     * @return ключ корзины или пустое значение, если cookie нет или она недействительна
+     */
+    public Optional<String> key(HttpServletRequest request) {
+        return decode(request).map(CookieCart::key);
+    }
+
+    private Optional<CookieCart> decode(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, COOKIE_NAME);
+        if (cookie == null || cookie.getValue() == null) {
+            return Optional.empty();
+        }
+        return codec.decode(cookie.getValue());
+    }
+
+    /**
+     * Выполняет операцию над корзиной из cookie запроса и, если корзина изменилась,
+     * записывает её в cookie ответа.
+     *
+     * @param request  HTTP-запрос
+     * @param response HTTP-ответ
+     * @param action   операция над корзиной
+     * @param <T>      тип результата операции
+     * @return результат операции
+     */
+    public <T> T apply(HttpServletRequest request, HttpServletResponse response,
+                       Function<CookieCart, CookieCartService.Change<T>> action) {
+        CookieCart cart = read(request);
+        CookieCartService.Change<T> change = action.apply(cart);
+        if (change.cart() != cart) {
+            write(request, response, change.cart());
+        }
+        return change.result();
+    }
+
+    /**
+     * Записывает корзину в cookie ответа; для пустой корзины cookie удаляется.
+     */
+    private void write(HttpServletRequest request, HttpServletResponse response, CookieCart cart) {
+        boolean empty = !cart.isStored() && cart.lineCount() == 0;
+        ResponseCookie cookie = ResponseCookie.from(COOKIE_NAME, empty ? "" : codec.encode(cart))
+                .path("/")
+                .httpOnly(true)
+                .secure(request.isSecure())
+                .sameSite("Lax")
+                .maxAge(empty ? Duration.ZERO : maxAge)
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+}
@@ -1,18 +1,18 @@
 package example.toyshop.controller;
 
+import java.time.YearMonth;
 import java.util.List;
 
-import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.server.ResponseStatusException;
 
-import example.toyshop.model.Cart;
-import example.toyshop.model.CartStatus;
-import example.toyshop.repository.CartRepository;
+import example.toyshop.dto.OrderSummary;
+import example.toyshop.service.OrderService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 
@@ -24,19 +24,27 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class OrderController {
 
-    private final CartRepository cartRepository;
+    private final OrderService orderService;
 
     /**
-     * Отображает список всех завершённых заказов.
+     * Отображает список недавних завершённых заказов или, если указан месяц,
+     * заказов этого месяца из архива.
      * 
      * @param request HTTP-запрос (может быть использован для идентификации пользователя, если потребуется)
+     * @param month   месяц архива в формате {@code yyyy-MM} или {@code null} для недавних заказов
      * @param model   модель для передачи данных в представление
      * @return имя шаблона страницы со списком заказов
      */
     @GetMapping
-    public String viewOrders(HttpServletRequest request, Model model) {
-        List<Cart> completedOrders = cartRepository.findByStatus(CartStatus.COMPLETED);
+    public String viewOrders(HttpServletRequest request,
+                             @RequestParam(required = false) YearMonth month,
+                             Model model) {
+        List<OrderSummary> completedOrders = month != null
+                ? orderService.getArchivedOrders(month)
+                : orderService.getCompletedOrders();
         model.addAttribute("orders", completedOrders);
+        model.addAttribute("month", month);
+        model.addAttribute("archivedMonths", orderService.getArchivedMonths());
         return "orders";
     }
 
@@ -50,10 +58,7 @@ public class OrderController {
      */
     @GetMapping("/{id}")
     public String viewOrder(@PathVariable Long id, Model model) {
-        Cart order = cartRepository.findById(id)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Заказ не найден"));
-
-        model.addAttribute("order", order);
+        model.addAttribute("order", orderService.getOrder(id));
         return "order"; // order.html
     }
 }
@@ -1,8 +1,14 @@
 package example.toyshop.controller;
 
+import example.toyshop.dto.CatalogFilter;
+import example.toyshop.dto.ProductCard;
 import example.toyshop.model.Product;
+import example.toyshop.model.StockMode;
 import example.toyshop.service.ImageService;
+import example.toyshop.service.ProductPopularity;
+import example.toyshop.service.ProductRecommendations;
 import example.toyshop.service.ProductService;
+import example.toyshop.service.ShardedStockService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 
@@ -12,6 +18,7 @@ import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import java.math.BigDecimal;
 import java.util.Map;
 import org.springframework.http.MediaType;
 
@@ -25,39 +32,54 @@ public class ProductController {
 
     private final ProductService productService;
     private final ImageService imageService;
+    private final ShardedStockService shardedStockService;
+    private final ProductPopularity productPopularity;
+    private final ProductRecommendations productRecommendations;
 
     /**
-     * Отображает список товаров с возможностью поиска, сортировки и пагинации.
+     * Отображает список товаров с возможностью поиска, сортировки, фильтров по цене
+     * и наличию и пагинации.
      *
-     * @param keyword параметр поиска по названию товара (необязательный)
-     * @param sort    способ сортировки (например, "price_asc", "name_desc")
-     * @param page    номер страницы (начинается с 0)
-     * @param size    количество товаров на странице
-     * @param model   модель для передачи данных в представление
+     * @param keyword  параметр поиска по названию товара (необязательный)
+     * @param sort     способ сортировки (например, "price_asc", "name_desc", "popular")
+     * @param minPrice наименьшая цена (необязательный)
+     * @param maxPrice наибольшая цена (необязательный)
+     * @param inStock  показывать только товары в наличии
+     * @param page     номер страницы (начинается с 0)
+     * @param size     количество товаров на странице
+     * @param model    модель для передачи данных в представление
      * @return имя шаблона страницы со списком товаров
      */
     @GetMapping
     public String listProducts(
             @RequestParam(required = false) String keyword,
             @RequestParam(defaultValue = "price_asc") String sort,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(defaultValue = "false") boolean inStock,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             Model model) {
 
-        Page<Product> products = productService.getProducts(keyword, sort, page, size);
+        Page<ProductCard> products = productService.getProductCards(keyword, sort,
+                new CatalogFilter(minPrice, maxPrice, inStock), page, size);
 
         model.addAttribute("products", products.getContent());
         model.addAttribute("currentPage", page);
         model.addAttribute("totalPages", products.getTotalPages());
         model.addAttribute("keyword", keyword);
         model.addAttribute("sort", sort);
+        model.addAttribute("minPrice", minPrice);
+        model.addAttribute("maxPrice", maxPrice);
+        model.addAttribute("inStock", inStock);
         model.addAttribute("size", size);
 
         return "products";
     }
 
     /**
-     * Отображает страницу с деталями одного товара по его ID.
+     * Отображает страницу с деталями одного товара по его ID вместе с товарами, которые покупают
+     * вместе с ним, и учитывает просмотр для сортировки по популярности.
      *
      * @param id    идентификатор товара
      * @param model модель для передачи данных в представление
@@ -66,6 +88,8 @@ public class ProductController {
     @GetMapping("/{id}")
     public String viewProduct(@PathVariable Long id, Model model) {
         model.addAttribute("product", productService.getProductById(id));
+        model.addAttribute("recommendations", productRecommendations.recommend(id));
+        productPopularity.recordView(id);
         return "product";
     }
 
@@ -103,6 +127,24 @@ public class ProductController {
         return "redirect:/products";
     }
 
+    /**
+     * Меняет способ учёта остатка товара: для популярных товаров (распродажи)
+     * остаток делится на части или добавления в корзину ставятся в очередь товара,
+     * чтобы они не ждали друг друга на строке товара.
+     *
+     * @param id     идентификатор товара
+     * @param mode   новый способ учёта остатка
+     * @param shards количество частей остатка (для {@link StockMode#SHARDED})
+     * @return редирект на страницу товара
+     */
+    @PostMapping("/{id}/stock-mode")
+    public String changeStockMode(@PathVariable Long id,
+                                  @RequestParam StockMode mode,
+                                  @RequestParam(defaultValue = "${stock.shards.count:8}") int shards) {
+        shardedStockService.changeStockMode(id, mode, shards);
+        return "redirect:/products/" + id;
+    }
+
     /**
      * Обрабатывает загрузку изображения товара через multipart запрос.
      *
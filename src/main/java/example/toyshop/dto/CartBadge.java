@@ -0,0 +1,36 @@
+package example.toyshop.dto;
+
+import example.toyshop.model.Money;
+import lombok.Value;
+
+/**
+ * Краткие сведения об активной корзине для значка корзины: читаются из одной строки корзины
+ * без загрузки позиций.
+ */
+@Value
+public class CartBadge {
+
+    /**
+     * Общее количество единиц товара в корзине.
+     */
+    int itemCount;
+
+    /**
+     * Общая сумма корзины.
+     */
+    Money totalAmount;
+
+    /**
+     * Версия корзины ({@code null}, если корзина ещё не создана).
+     */
+    Long version;
+
+    /**
+     * Возвращает сведения о пустой корзине.
+     *
+     * @return пустая корзина
+     */
+    public static CartBadge empty() {
+        return new CartBadge(0, Money.ZERO, null);
+    }
+}
@@ -0,0 +1,72 @@
+package example.toyshop.dto;
+
+import example.toyshop.model.Cart;
+import example.toyshop.model.CartItem;
+import example.toyshop.model.Money;
+import lombok.Value;
+
+/**
+ * Результат изменения корзины для JSON API: только изменившаяся строка,
+ * новая сумма корзины и оставшийся остаток товара.
+ */
+@Value
+public class CartDelta {
+
+    /**
+     * Идентификатор товара изменённой строки.
+     */
+    Long productId;
+
+    /**
+     * Новое количество товара в корзине (0, если строка удалена).
+     */
+    int quantity;
+
+    /**
+     * Новая сумма по строке.
+     */
+    Money lineTotal;
+
+    /**
+     * Новая общая сумма корзины.
+     */
+    Money totalAmount;
+
+    /**
+     * Количество строк в корзине после изменения.
+     */
+    int lineCount;
+
+    /**
+     * Общее количество единиц товара в корзине после изменения.
+     */
+    int itemCount;
+
+    /**
+     * Остаток товара на складе после изменения.
+     */
+    int stock;
+
+    /**
+     * Создаёт результат изменения по корзине после применения изменения.
+     * Строки и товары корзины должны быть загружены.
+     *
+     * @param cart      корзина
+     * @param productId идентификатор товара изменённой строки
+     * @param stock     остаток товара на складе
+     * @return результат изменения
+     */
+    public static CartDelta of(Cart cart, Long productId, int stock) {
+        CartItem line = cart.getItems().stream()
+                .filter(item -> item.getProduct().getId().equals(productId))
+                .findFirst()
+                .orElse(null);
+        return new CartDelta(productId,
+                line != null ? line.getQuantity() : 0,
+                line != null ? line.getTotalPrice() : Money.ZERO,
+                cart.getTotalAmount(),
+                cart.getItems().size(),
+                cart.getItemCount(),
+                stock);
+    }
+}
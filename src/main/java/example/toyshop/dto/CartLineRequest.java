@@ -0,0 +1,24 @@
+package example.toyshop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Строка пакетного изменения корзины: товар и количество, которое должно оказаться в корзине.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CartLineRequest {
+
+    /**
+     * Идентификатор товара.
+     */
+    private Long productId;
+
+    /**
+     * Целевое количество товара в корзине (0 — удалить строку).
+     */
+    private Integer quantity;
+}
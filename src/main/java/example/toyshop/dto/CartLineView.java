@@ -0,0 +1,55 @@
+package example.toyshop.dto;
+
+import example.toyshop.model.CartItem;
+import example.toyshop.model.Money;
+import example.toyshop.model.Product;
+import lombok.Value;
+
+/**
+ * Строка корзины или заказа для отображения: товар, количество и сумма по строке.
+ */
+@Value
+public class CartLineView {
+
+    /**
+     * Идентификатор товара.
+     */
+    Long productId;
+
+    /**
+     * Название товара.
+     */
+    String name;
+
+    /**
+     * URL изображения товара.
+     */
+    String imageUrl;
+
+    /**
+     * Цена за единицу товара, по которой он добавлен в корзину.
+     */
+    Money price;
+
+    /**
+     * Количество единиц товара в строке.
+     */
+    int quantity;
+
+    /**
+     * Сумма по строке (цена * количество).
+     */
+    Money totalPrice;
+
+    /**
+     * Создаёт строку представления по элементу корзины.
+     *
+     * @param item элемент корзины
+     * @return строка представления
+     */
+    public static CartLineView from(CartItem item) {
+        Product product = item.getProduct();
+        return new CartLineView(product.getId(), product.getName(), product.getImageUrl(),
+                item.getPrice(), item.getQuantity(), item.getTotalPrice());
+    }
+}
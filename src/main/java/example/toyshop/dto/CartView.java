@@ -0,0 +1,52 @@
+package example.toyshop.dto;
+
+import java.util.List;
+
+import example.toyshop.model.Cart;
+import example.toyshop.model.Money;
+import lombok.Value;
+
+/**
+ * Представление текущей корзины пользователя для страницы корзины.
+ */
+@Value
+public class CartView {
+
+    /**
+     * Идентификатор корзины ({@code null}, если корзина ещё не создана).
+     */
+    Long id;
+
+    /**
+     * Строки корзины.
+     */
+    List<CartLineView> items;
+
+    /**
+     * Общая сумма корзины.
+     */
+    Money totalAmount;
+
+    /**
+     * Создаёт представление по сущности корзины.
+     * Строки и товары корзины должны быть загружены.
+     *
+     * @param cart корзина
+     * @return представление корзины
+     */
+    public static CartView from(Cart cart) {
+        List<CartLineView> lines = cart.getItems().stream()
+                .map(CartLineView::from)
+                .toList();
+        return new CartView(cart.getId(), lines, cart.getTotalAmount());
+    }
+
+    /**
+     * Возвращает представление пустой корзины.
+     *
+     * @return пустая корзина
+     */
+    public static CartView empty() {
+        return new CartView(null, List.of(), Money.ZERO);
+    }
+}
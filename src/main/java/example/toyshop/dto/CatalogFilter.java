@@ -0,0 +1,41 @@
+package example.toyshop.dto;
+
+import java.math.BigDecimal;
+
+import lombok.Value;
+
+/**
+ * Фильтры витрины по цене и наличию.
+ */
+@Value
+public class CatalogFilter {
+
+    /**
+     * Фильтр, пропускающий все товары.
+     */
+    public static final CatalogFilter NONE = new CatalogFilter(null, null, false);
+
+    /**
+     * Наименьшая цена включительно ({@code null} — без ограничения).
+     */
+    BigDecimal minPrice;
+
+    /**
+     * Наибольшая цена включительно ({@code null} — без ограничения).
+     */
+    BigDecimal maxPrice;
+
+    /**
+     * Показывать только товары в наличии.
+     */
+    boolean inStock;
+
+    /**
+     * Проверяет, что фильтр не ограничивает товары.
+     *
+     * @return {@code true}, если не задано ни одно условие
+     */
+    public boolean isEmpty() {
+        return minPrice == null && maxPrice == null && !inStock;
+    }
+}
@@ -0,0 +1,49 @@
+package example.toyshop.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import example.toyshop.model.Cart;
+import example.toyshop.model.Money;
+import lombok.Value;
+
+/**
+ * Представление оформленного заказа для страниц списка заказов и заказа.
+ */
+@Value
+public class OrderSummary {
+
+    /**
+     * Идентификатор заказа.
+     */
+    Long id;
+
+    /**
+     * Дата и время создания заказа.
+     */
+    LocalDateTime createdAt;
+
+    /**
+     * Строки заказа.
+     */
+    List<CartLineView> items;
+
+    /**
+     * Общая сумма заказа.
+     */
+    Money totalAmount;
+
+    /**
+     * Создаёт представление по сущности корзины (заказа).
+     * Строки и товары заказа должны быть загружены.
+     *
+     * @param order оформленная корзина
+     * @return представление заказа
+     */
+    public static OrderSummary from(Cart order) {
+        List<CartLineView> lines = order.getItems().stream()
+                .map(CartLineView::from)
+                .toList();
+        return new OrderSummary(order.getId(), order.getCreatedAt(), lines, order.getTotalAmount());
+    }
+}
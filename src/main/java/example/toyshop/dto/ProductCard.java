@@ -0,0 +1,49 @@
+package example.toyshop.dto;
+
+import java.math.BigDecimal;
+
+import example.toyshop.model.Product;
+import lombok.Value;
+
+/**
+ * Карточка товара для витрины: только поля, которые показываются в списке товаров.
+ */
+@Value
+public class ProductCard {
+
+    /**
+     * Идентификатор товара.
+     */
+    Long id;
+
+    /**
+     * Название товара.
+     */
+    String name;
+
+    /**
+     * Цена товара.
+     */
+    BigDecimal price;
+
+    /**
+     * URL изображения товара.
+     */
+    String imageUrl;
+
+    /**
+     * Количество товара в наличии.
+     */
+    int quantity;
+
+    /**
+     * Создаёт карточку по сущности товара.
+     *
+     * @param product товар
+     * @return карточка товара
+     */
+    public static ProductCard from(Product product) {
+        return new ProductCard(product.getId(), product.getName(), product.getPrice(),
+                product.getImageUrl(), product.getQuantity());
+    }
+}
@@ -0,0 +1,30 @@
+package example.toyshop.dto;
+
+import lombok.Value;
+
+/**
+ * Продажи одного товара за период из сводной таблицы {@code sales_daily_product}.
+ */
+@Value
+public class ProductSales {
+
+    /**
+     * ID товара.
+     */
+    Long productId;
+
+    /**
+     * Название товара ({@code null}, если товар удалён).
+     */
+    String name;
+
+    /**
+     * Количество проданных единиц.
+     */
+    long units;
+
+    /**
+     * Количество заказов с этим товаром.
+     */
+    long orders;
+}
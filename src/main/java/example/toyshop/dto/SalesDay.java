@@ -0,0 +1,42 @@
+package example.toyshop.dto;
+
+import java.time.LocalDate;
+
+import example.toyshop.model.Money;
+import lombok.Value;
+
+/**
+ * Продажи за один день из сводной таблицы {@code sales_daily}.
+ */
+@Value
+public class SalesDay {
+
+    /**
+     * День оформления заказов.
+     */
+    LocalDate day;
+
+    /**
+     * Количество заказов.
+     */
+    long orders;
+
+    /**
+     * Количество проданных единиц товара.
+     */
+    long units;
+
+    /**
+     * Выручка за день.
+     */
+    Money revenue;
+
+    /**
+     * Возвращает средний чек за день.
+     *
+     * @return выручка, делённая на количество заказов
+     */
+    public Money getAverageBasket() {
+        return orders > 0 ? Money.ofMinor(revenue.minorUnits() / orders) : Money.ZERO;
+    }
+}
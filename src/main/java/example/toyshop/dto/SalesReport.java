@@ -0,0 +1,81 @@
+package example.toyshop.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import example.toyshop.model.Money;
+import lombok.Value;
+
+/**
+ * Сводка продаж за период: продажи по дням и самые продаваемые товары.
+ */
+@Value
+public class SalesReport {
+
+    /**
+     * Первый день периода.
+     */
+    LocalDate from;
+
+    /**
+     * Последний день периода (включительно).
+     */
+    LocalDate to;
+
+    /**
+     * Продажи по дням; дни без заказов не входят.
+     */
+    List<SalesDay> days;
+
+    /**
+     * Самые продаваемые товары периода по количеству единиц.
+     */
+    List<ProductSales> topProducts;
+
+    /**
+     * Возвращает количество заказов за период.
+     *
+     * @return количество заказов
+     */
+    public long getOrders() {
+        return days.stream().mapToLong(SalesDay::getOrders).sum();
+    }
+
+    /**
+     * Возвращает количество проданных единиц за период.
+     *
+     * @return количество единиц
+     */
+    public long getUnits() {
+        return days.stream().mapToLong(SalesDay::getUnits).sum();
+    }
+
+    /**
+     * Возвращает выручку за период.
+     *
+     * @return выручка
+     */
+    public Money getRevenue() {
+        return days.stream().map(SalesDay::getRevenue).reduce(Money.ZERO, Money::plus);
+    }
+
+    /**
+     * Возвращает средний чек за период.
+     *
+     * @return выручка, делённая на количество заказов
+     */
+    public Money getAverageBasket() {
+        long orders = getOrders();
+        return orders > 0 ? Money.ofMinor(getRevenue().minorUnits() / orders) : Money.ZERO;
+    }
+
+    /**
+     * Возвращает среднее количество единиц товара в заказе за период.
+     *
+     * @return единиц на заказ
+     */
+    public double getAverageUnits() {
+        long orders = getOrders();
+        return orders > 0 ? (double) getUnits() / orders : 0;
+    }
+}
@@ -0,0 +1,13 @@
+package example.toyshop.event;
+
+import java.time.LocalDateTime;
+
+/**
+ * Товар добавлен в корзину (одна единица).
+ *
+ * @param sessionId  идентификатор сессии пользователя
+ * @param productId  идентификатор товара
+ * @param occurredAt момент добавления
+ */
+public record CartItemAdded(String sessionId, Long productId, LocalDateTime occurredAt) implements DomainEvent {
+}
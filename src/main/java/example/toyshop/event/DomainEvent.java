@@ -0,0 +1,25 @@
+package example.toyshop.event;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+/**
+ * Доменное событие магазина.
+ * События публикуются через {@link DomainEventBus} после коммита транзакции,
+ * в которой произошло изменение, и сохраняются в журнал для повторной доставки.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = CartItemAdded.class, name = "CartItemAdded"),
+        @JsonSubTypes.Type(value = StockChanged.class, name = "StockChanged"),
+        @JsonSubTypes.Type(value = OrderCompleted.class, name = "OrderCompleted")
+})
+public sealed interface DomainEvent permits CartItemAdded, StockChanged, OrderCompleted {
+
+    /**
+     * @return момент, когда произошло событие
+     */
+    LocalDateTime occurredAt();
+}
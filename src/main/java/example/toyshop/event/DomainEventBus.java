@@ -0,0 +1,667 @@
+package example.toyshop.event;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Внутрипроцессная шина доменных событий.
+ * <p>
+ * Каждое событие получает порядковый номер и раскладывается по ограниченным очередям
+ * получателей ({@code events.queue-capacity}). Каждый получатель обрабатывает свою очередь
+ * в отдельном виртуальном потоке, поэтому медленный получатель не задерживает ни запрос,
+ * опубликовавший событие, ни других получателей.
+ * </p>
+ * <p>
+ * В журнал ({@code events.journal-dir}) события пишет отдельный поток: он забирает все накопившиеся
+ * события и сбрасывает их на диск одной записью, поэтому публикующий поток не выполняет ввод-вывод.
+ * Журнал состоит из сегментов {@code events-<номер первого события>.log}; когда сегмент дорастает
+ * до {@code events.segment-size}, события пишутся в следующий. Имена сегментов служат индексом
+ * номеров: дочитывание начинается с сегмента, содержащего первое необработанное событие.
+ * Раз в секунду сегменты, все события которых обработаны всеми получателями, удаляются.
+ * </p>
+ * <p>
+ * Если очередь получателя заполнена, публикующий поток ждёт не дольше {@code events.publish-timeout};
+ * после этого событие в очередь не кладётся, а получатель дочитывает пропущенное из журнала,
+ * когда разберёт очередь. Номер последнего обработанного события каждого получателя сохраняется
+ * в файл {@code <имя получателя>.offset}; после перезапуска получатель продолжает с этого места.
+ * События, ещё не записанные в журнал, при аварийной остановке процесса теряются.
+ * </p>
+ * <p>
+ * Событие, на котором получатель выбросил исключение, не считается обработанным: доставка повторяется
+ * до {@code events.retry-attempts} раз с удваивающейся паузой от {@code events.retry-backoff}.
+ * После этого событие откладывается в файл {@code <имя получателя>.dead} (строка журнала на событие),
+ * и только затем позиция получателя сдвигается за него. Если отложить событие не удалось,
+ * доставка повторяется дальше; при остановке приложения событие остаётся необработанным
+ * и доставляется снова после перезапуска.
+ * </p>
+ * <p>
+ * Если каталог журнала не задан или уже занят другим экземпляром приложения, шина работает
+ * без журнала: события доставляются только из памяти и теряются при переполнении очереди,
+ * а события, которые получатель так и не обработал, только записываются в лог.
+ * </p>
+ * <p>
+ * Метрики: {@code events.consumer.lag} (сколько опубликованных событий получатель ещё не обработал),
+ * {@code events.consumer.queue} (размер очереди), счётчики {@code events.consumer.overflows}
+ * и {@code events.consumer.failures}; все с тегом {@code consumer}.
+ * </p>
+ */
+@Slf4j
+@Component
+public class DomainEventBus {
+
+    private static final String LOCK_FILE = "events.lock";
+    private static final Pattern SEGMENT_FILE = Pattern.compile("events-(\\d{20})\\.log");
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration COMPACT_INTERVAL = Duration.ofSeconds(1);
+    private static final Duration MAX_RETRY_BACKOFF = Duration.ofSeconds(30);
+
+    private final ObjectMapper objectMapper;
+    private final List<Subscription> subscriptions;
+    private final Path journalDir;
+    private final Duration publishTimeout;
+    private final long segmentSize;
+    private final int retryAttempts;
+    private final Duration retryBackoff;
+
+    private final Object sequenceLock = new Object();
+    private final BlockingQueue<Entry> unwritten = new LinkedBlockingQueue<>();
+    private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private final Object journaledMonitor = new Object();
+    private FileChannel lockChannel;
+    private Thread writer;
+    private OutputStream journal;
+    private long segmentBytes;
+    private long lastCompaction;
+    private volatile long lastSequence;
+    private volatile long journaled;
+    private volatile boolean running = true;
+
+    public DomainEventBus(List<DomainEventConsumer> consumers,
+                          ObjectMapper objectMapper,
+                          MeterRegistry meterRegistry,
+                          @Value("${events.journal-dir:}") String journalDir,
+                          @Value("${events.queue-capacity:1024}") int queueCapacity,
+                          @Value("${events.publish-timeout:50ms}") Duration publishTimeout,
+                          @Value("${events.segment-size:4MB}") DataSize segmentSize,
+                          @Value("${events.retry-attempts:5}") int retryAttempts,
+                          @Value("${events.retry-backoff:100ms}") Duration retryBackoff) {
+        this.objectMapper = objectMapper;
+        this.journalDir = StringUtils.hasText(journalDir) ? Path.of(journalDir) : null;
+        this.publishTimeout = publishTimeout;
+        this.segmentSize = segmentSize.toBytes();
+        this.retryAttempts = Math.max(1, retryAttempts);
+        this.retryBackoff = retryBackoff;
+        this.subscriptions = consumers.stream()
+                .map(consumer -> new Subscription(consumer, queueCapacity, meterRegistry))
+                .toList();
+        openJournal();
+    }
+
+    /**
+     * Публикует событие после коммита текущей транзакции.
+     * Если транзакция откатится, событие не публикуется; вне транзакции публикуется сразу.
+     *
+     * @param event доменное событие
+     */
+    public void publishAfterCommit(DomainEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(event);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish(event);
+            }
+        });
+    }
+
+    /**
+     * Ставит событие в очередь записи в журнал и передаёт его получателям.
+     *
+     * @param event доменное событие
+     */
+    public void publish(DomainEvent event) {
+        Entry entry = append(event);
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(entry, publishTimeout);
+        }
+    }
+
+    /**
+     * Запускает обработку событий после старта приложения: сначала каждый получатель
+     * дочитывает из журнала события, опубликованные после его сохранённой позиции.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        subscriptions.forEach(subscription -> Thread.ofVirtual()
+                .name("events-" + subscription.consumer.name())
+                .start(subscription::run));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        running = false;
+        subscriptions.forEach(Subscription::stop);
+        if (writer == null) {
+            return;
+        }
+        try {
+            // поток записи дописывает оставшиеся события и закрывает сегмент
+            writer.join(STOP_TIMEOUT.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            log.warn("Не удалось закрыть журнал событий", e);
+        }
+    }
+
+    /**
+     * Открывает журнал: захватывает каталог, загружает позиции получателей, удаляет сегменты,
+     * которые обработали все получатели, открывает новый сегмент и запускает поток записи.
+     */
+    private void openJournal() {
+        if (journalDir == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(journalDir);
+            lockChannel = FileChannel.open(journalDir.resolve(LOCK_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                log.warn("Журнал событий {} используется другим экземпляром, события не сохраняются", journalDir);
+                lockChannel.close();
+                lockChannel = null;
+                return;
+            }
+            for (Subscription subscription : subscriptions) {
+                subscription.loadCheckpoint();
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(journalDir, "events-*.log")) {
+                for (Path file : files) {
+                    Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+                    if (matcher.matches()) {
+                        segments.put(Long.parseLong(matcher.group(1)), file);
+                    }
+                }
+            }
+            long lastProcessed = subscriptions.stream().mapToLong(s -> s.processed).max().orElse(0);
+            // журнал может быть пуст: нумерация продолжается с позиций получателей
+            lastSequence = Math.max(segments.isEmpty() ? 0 : lastSequenceIn(segments.lastEntry()), lastProcessed);
+            journaled = lastSequence;
+            // хвост прежнего сегмента мог остаться недописанным, поэтому запись продолжается в новом
+            openSegment(lastSequence + 1);
+            deleteProcessedSegments();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть журнал событий " + journalDir, e);
+        }
+        writer = Thread.ofVirtual().name("events-journal").start(this::writeJournal);
+    }
+
+    /**
+     * Присваивает событию номер и ставит его в очередь записи в журнал.
+     *
+     * @param event доменное событие
+     * @return запись журнала
+     */
+    private Entry append(DomainEvent event) {
+        synchronized (sequenceLock) {
+            Entry entry = new Entry(lastSequence + 1, event);
+            // очередь записи получает события в порядке номеров
+            if (writer != null) {
+                unwritten.add(entry);
+            }
+            lastSequence = entry.sequence();
+            return entry;
+        }
+    }
+
+    /**
+     * Цикл потока записи: дописывает в журнал накопившиеся события одним сбросом на диск
+     * и периодически удаляет обработанные сегменты. После остановки шины дописывает оставшиеся события.
+     */
+    private void writeJournal() {
+        List<Entry> batch = new ArrayList<>();
+        while (running || !unwritten.isEmpty()) {
+            try {
+                Entry first = unwritten.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    unwritten.drainTo(batch);
+                    write(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (System.nanoTime() - lastCompaction >= COMPACT_INTERVAL.toNanos()) {
+                deleteProcessedSegments();
+            }
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Не удалось закрыть журнал событий", e);
+        }
+    }
+
+    /**
+     * Дописывает события в текущий сегмент и открывает следующий, если текущий заполнен
+     * или запись не удалась (сегмент мог остаться с недописанной строкой).
+     *
+     * @param batch события в порядке номеров
+     */
+    private void write(List<Entry> batch) {
+        long last = batch.get(batch.size() - 1).sequence();
+        boolean failed = false;
+        try {
+            for (Entry entry : batch) {
+                byte[] line;
+                try {
+                    line = objectMapper.writeValueAsBytes(entry);
+                } catch (JsonProcessingException e) {
+                    log.warn("Не удалось записать событие {} в журнал", entry.sequence(), e);
+                    continue;
+                }
+                journal.write(line);
+                journal.write('\n');
+                segmentBytes += line.length + 1;
+            }
+            journal.flush();
+        } catch (IOException e) {
+            failed = true;
+            log.warn("Не удалось записать события до {} в журнал", last, e);
+        }
+        // после ошибки события не ждут записи: получатели дочитывают то, что есть в журнале
+        synchronized (journaledMonitor) {
+            journaled = last;
+            journaledMonitor.notifyAll();
+        }
+        if (failed || segmentBytes >= segmentSize) {
+            try {
+                openSegment(last + 1);
+                deleteProcessedSegments();
+            } catch (IOException e) {
+                log.warn("Не удалось открыть сегмент журнала событий", e);
+            }
+        }
+    }
+
+    /**
+     * Закрывает текущий сегмент и открывает сегмент, начинающийся с указанного номера.
+     * Файл с тем же именем может остаться только без целых записей, поэтому он перезаписывается.
+     *
+     * @param firstSequence номер первого события сегмента
+     * @throws IOException если сегмент не удалось открыть
+     */
+    private void openSegment(long firstSequence) throws IOException {
+        try {
+            if (journal != null) {
+                journal.close();
+            }
+        } finally {
+            Path file = journalDir.resolve(segmentName(firstSequence));
+            journal = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+            segmentBytes = 0;
+            segments.put(firstSequence, file);
+        }
+    }
+
+    /**
+     * Удаляет сегменты, все события которых обработали все получатели.
+     * Последнее событие сегмента предшествует первому событию следующего, поэтому текущий
+     * (последний) сегмент не удаляется.
+     */
+    private void deleteProcessedSegments() {
+        lastCompaction = System.nanoTime();
+        long processed = subscriptions.stream().mapToLong(s -> s.processed).min().orElse(Long.MAX_VALUE);
+        Map.Entry<Long, Path> oldest;
+        while ((oldest = segments.firstEntry()) != null) {
+            Long next = segments.higherKey(oldest.getKey());
+            if (next == null || next - 1 > processed) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(oldest.getValue());
+            } catch (IOException e) {
+                log.warn("Не удалось удалить сегмент журнала событий {}", oldest.getValue(), e);
+                return;
+            }
+            segments.remove(oldest.getKey());
+        }
+    }
+
+    /**
+     * Ждёт, пока поток записи допишет в журнал события до указанного номера включительно.
+     *
+     * @param sequence номер события
+     * @throws InterruptedException если поток прерван
+     */
+    private void awaitJournaled(long sequence) throws InterruptedException {
+        synchronized (journaledMonitor) {
+            while (journaled < sequence && writer.isAlive()) {
+                journaledMonitor.wait(100);
+            }
+        }
+    }
+
+    /**
+     * Читает из журнала события с номерами из полуинтервала {@code (after, upTo]},
+     * начиная с сегмента, который содержит событие {@code after + 1}.
+     *
+     * @param after  номер, после которого начинается чтение
+     * @param upTo   последний читаемый номер
+     * @param target получатель прочитанных записей
+     * @throws IOException если журнал не удалось прочитать
+     */
+    private void readJournal(long after, long upTo, Consumer<Entry> target) throws IOException {
+        Long from = segments.floorKey(after + 1);
+        Collection<Path> files = (from != null ? segments.tailMap(from) : segments).values();
+        for (Path file : files) {
+            if (!readSegment(file, after, upTo, target)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Читает из сегмента события с номерами из полуинтервала {@code (after, upTo]}.
+     * Чтение сегмента останавливается на недописанной строке.
+     *
+     * @return {@code false}, если прочитано событие с номером больше {@code upTo}
+     * @throws IOException если сегмент не удалось прочитать
+     */
+    private boolean readSegment(Path file, long after, long upTo, Consumer<Entry> target) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry;
+                try {
+                    entry = objectMapper.readValue(line, Entry.class);
+                } catch (JsonProcessingException e) {
+                    return true;
+                }
+                if (entry.sequence() > upTo) {
+                    return false;
+                }
+                if (entry.sequence() > after) {
+                    target.accept(entry);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Возвращает номер последнего события, записанного в сегмент целиком.
+     *
+     * @param segment первый номер и файл сегмента
+     * @return номер последнего события или номер, предшествующий сегменту, если он пуст
+     * @throws IOException если сегмент не удалось прочитать
+     */
+    private long lastSequenceIn(Map.Entry<Long, Path> segment) throws IOException {
+        AtomicLong last = new AtomicLong(segment.getKey() - 1);
+        readSegment(segment.getValue(), 0, Long.MAX_VALUE, entry -> last.set(entry.sequence()));
+        return last.get();
+    }
+
+    private static String segmentName(long firstSequence) {
+        return String.format("events-%020d.log", firstSequence);
+    }
+
+    /**
+     * Запись журнала: событие с порядковым номером.
+     *
+     * @param sequence порядковый номер события
+     * @param event    доменное событие
+     */
+    record Entry(long sequence, DomainEvent event) {
+    }
+
+    /**
+     * Очередь, поток обработки и позиция в журнале одного получателя.
+     */
+    private final class Subscription {
+
+        private final DomainEventConsumer consumer;
+        private final BlockingQueue<Entry> queue;
+        private final Counter overflows;
+        private final Counter failures;
+        private volatile long processed;
+        private volatile boolean behind = true;
+        private volatile Thread worker;
+
+        Subscription(DomainEventConsumer consumer, int capacity, MeterRegistry meterRegistry) {
+            this.consumer = consumer;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.overflows = Counter.builder("events.consumer.overflows")
+                    .tag("consumer", consumer.name()).register(meterRegistry);
+            this.failures = Counter.builder("events.consumer.failures")
+                    .tag("consumer", consumer.name()).register(meterRegistry);
+            Gauge.builder("events.consumer.lag", this, s -> lastSequence - s.processed)
+                    .tag("consumer", consumer.name()).register(meterRegistry);
+            Gauge.builder("events.consumer.queue", queue, BlockingQueue::size)
+                    .tag("consumer", consumer.name()).register(meterRegistry);
+        }
+
+        /**
+         * Кладёт событие в очередь получателя, ожидая освобождения места не дольше {@code timeout}.
+         */
+        void offer(Entry entry, Duration timeout) {
+            try {
+                if (queue.offer(entry, timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            behind = true;
+            overflows.increment();
+        }
+
+        /**
+         * Цикл обработки: события из очереди доставляются по порядку номеров,
+         * пропуски (переполнение очереди, перезапуск) дочитываются из журнала.
+         */
+        void run() {
+            worker = Thread.currentThread();
+            while (running) {
+                try {
+                    if (behind && queue.isEmpty()) {
+                        behind = false;
+                        catchUp(Long.MAX_VALUE);
+                        continue;
+                    }
+                    Entry entry = queue.poll(1, TimeUnit.SECONDS);
+                    if (entry == null || entry.sequence() <= processed) {
+                        continue;
+                    }
+                    if (entry.sequence() > processed + 1) {
+                        catchUp(entry.sequence() - 1);
+                    }
+                    deliver(entry);
+                    if (queue.isEmpty()) {
+                        saveCheckpoint();
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            saveCheckpoint();
+        }
+
+        /**
+         * Останавливает поток обработки и ждёт сохранения позиции получателя.
+         */
+        void stop() {
+            Thread current = worker;
+            if (current == null) {
+                return;
+            }
+            current.interrupt();
+            try {
+                current.join(STOP_TIMEOUT.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Доставляет из журнала события после последнего обработанного, но не дальше {@code upTo}
+         * и не дальше последнего опубликованного, дождавшись их записи в журнал.
+         */
+        private void catchUp(long upTo) throws InterruptedException {
+            if (writer == null) {
+                return;
+            }
+            long target = Math.min(upTo, lastSequence);
+            awaitJournaled(target);
+            try {
+                readJournal(processed, target, this::deliver);
+            } catch (IOException e) {
+                log.warn("Не удалось прочитать журнал событий для {}", consumer.name(), e);
+            }
+            saveCheckpoint();
+        }
+
+        /**
+         * Доставляет событие, повторяя доставку после ошибки получателя. Позиция сдвигается за событие,
+         * только когда получатель его обработал или оно отложено. Если поток прерван (остановка
+         * приложения), событие и следующие за ним остаются необработанными.
+         */
+        private void deliver(Entry entry) {
+            if (entry.sequence() <= processed || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            long backoff = retryBackoff.toMillis();
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    consumer.accept(entry.event());
+                    break;
+                } catch (RuntimeException e) {
+                    failures.increment();
+                    if (attempt >= retryAttempts && park(entry, e)) {
+                        break;
+                    }
+                    log.warn("Получатель {} не обработал событие {} (попытка {})",
+                            consumer.name(), entry.sequence(), attempt, e);
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF.toMillis());
+            }
+            processed = entry.sequence();
+        }
+
+        /**
+         * Откладывает событие, которое получатель не обработал, в его файл необработанных событий.
+         *
+         * @return {@code true}, если событие отложено и позицию можно сдвинуть за него
+         */
+        private boolean park(Entry entry, RuntimeException failure) {
+            if (writer == null) {
+                log.error("Получатель {} не обработал событие {}, журнал не ведётся: событие потеряно",
+                        consumer.name(), entry.sequence(), failure);
+                return true;
+            }
+            try (FileChannel channel = FileChannel.open(journalDir.resolve(consumer.name() + ".dead"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                byte[] line = objectMapper.writeValueAsBytes(entry);
+                ByteBuffer buffer = ByteBuffer.allocate(line.length + 1).put(line).put((byte) '\n').flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                log.error("Не удалось отложить событие {} получателя {}", entry.sequence(), consumer.name(), e);
+                return false;
+            }
+            log.error("Получатель {} не обработал событие {}, событие отложено в {}.dead",
+                    consumer.name(), entry.sequence(), consumer.name(), failure);
+            return true;
+        }
+
+        private Path checkpointFile() {
+            return journalDir.resolve(consumer.name() + ".offset");
+        }
+
+        void loadCheckpoint() throws IOException {
+            Path file = checkpointFile();
+            if (Files.exists(file)) {
+                processed = Long.parseLong(Files.readString(file).trim());
+            }
+        }
+
+        private void saveCheckpoint() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                Path tmp = journalDir.resolve(consumer.name() + ".offset.tmp");
+                Files.writeString(tmp, Long.toString(processed));
+                Files.move(tmp, checkpointFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.warn("Не удалось сохранить позицию получателя {}", consumer.name(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package example.toyshop.event;
+
+/**
+ * Получатель доменных событий.
+ * <p>
+ * Каждый получатель обрабатывает события в собственном виртуальном потоке и в порядке
+ * их публикации. После перезапуска приложения события, которые получатель не успел обработать,
+ * доставляются повторно из журнала, поэтому обработка должна допускать повтор события.
+ * </p>
+ */
+public interface DomainEventConsumer {
+
+    /**
+     * Имя получателя: используется в метриках и в имени файла с позицией в журнале,
+     * поэтому не должно меняться между запусками.
+     *
+     * @return имя получателя
+     */
+    String name();
+
+    /**
+     * Обрабатывает событие.
+     *
+     * @param event доменное событие
+     */
+    void accept(DomainEvent event);
+}
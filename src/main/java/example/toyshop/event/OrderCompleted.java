@@ -0,0 +1,43 @@
+package example.toyshop.event;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import example.toyshop.model.Cart;
+
+/**
+ * Заказ оформлен.
+ *
+ * @param orderId    идентификатор заказа (корзины)
+ * @param sessionId  идентификатор сессии, оформившей заказ
+ * @param lines      позиции заказа
+ * @param total      общая сумма заказа
+ * @param occurredAt момент оформления
+ */
+public record OrderCompleted(Long orderId, String sessionId, List<Line> lines, BigDecimal total,
+        LocalDateTime occurredAt) implements DomainEvent {
+
+    /**
+     * Позиция заказа.
+     *
+     * @param productId идентификатор товара
+     * @param quantity  количество единиц
+     */
+    public record Line(Long productId, int quantity) {
+    }
+
+    /**
+     * Создаёт событие по оформленной корзине; позиции корзины должны быть загружены.
+     *
+     * @param order оформленная корзина
+     * @return событие оформления заказа
+     */
+    public static OrderCompleted of(Cart order) {
+        List<Line> lines = order.getItems().stream()
+                .map(item -> new Line(item.getProduct().getId(), item.getQuantity()))
+                .toList();
+        return new OrderCompleted(order.getId(), order.getSessionId(), lines, order.getTotalAmount().toBigDecimal(),
+                LocalDateTime.now());
+    }
+}
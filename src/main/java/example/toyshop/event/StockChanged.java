@@ -0,0 +1,13 @@
+package example.toyshop.event;
+
+import java.time.LocalDateTime;
+
+/**
+ * Остаток товара на складе изменился.
+ *
+ * @param productId  идентификатор товара
+ * @param delta      изменение остатка: отрицательное при резерве, положительное при возврате
+ * @param occurredAt момент изменения
+ */
+public record StockChanged(Long productId, int delta, LocalDateTime occurredAt) implements DomainEvent {
+}
@@ -1,18 +1,24 @@
 package example.toyshop.model;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.annotations.ColumnDefault;
+
 import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -22,8 +28,14 @@ import lombok.ToString;
 /**
  * Сущность корзины покупок.
  * Хранит список товаров, связанные с конкретной сессией пользователя.
+ * <p>
+ * Общая сумма и количество единиц товара хранятся в самой строке корзины и изменяются
+ * вместе с позициями ({@link #applyLineChange(Money, int)}), поэтому значок корзины,
+ * списки заказов и отчёты читают одну строку, не загружая позиции.
+ * </p>
  */
 @Entity
+@Table(indexes = @Index(name = "idx_cart_status_completed_at", columnList = "status, completed_at"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -66,14 +78,43 @@ public class Cart {
     private LocalDateTime createdAt = LocalDateTime.now();
 
     /**
-     * Вычисляет общую стоимость всех товаров в корзине,
-     * суммируя стоимость каждого элемента.
-     * 
-     * @return общая сумма стоимости товаров в корзине
+     * Дата и время оформления заказа ({@code null}, пока корзина активна).
+     * По нему заказы переносятся в помесячный архив ({@code OrderArchive}).
+     */
+    private LocalDateTime completedAt;
+
+    /**
+     * Общая стоимость всех товаров в корзине.
+     */
+    @Convert(converter = MoneyConverter.class)
+    @Column(nullable = false, precision = 38, scale = 2)
+    @ColumnDefault("0")
+    private Money totalAmount = Money.ZERO;
+
+    /**
+     * Общее количество единиц товара в корзине.
+     */
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private int itemCount;
+
+    /**
+     * Версия корзины, увеличивается при каждом изменении
+     * (оптимистическая блокировка от параллельной записи в обход блокировки сессии).
+     */
+    @Version
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private Long version;
+
+    /**
+     * Учитывает изменение количества товара в общей сумме и количестве единиц корзины.
+     *
+     * @param unitPrice     цена за единицу товара
+     * @param quantityDelta изменение количества (отрицательное — уменьшение)
      */
-    public BigDecimal getTotalAmount() {
-        return items.stream()
-                .map(CartItem::getTotalPrice)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    public void applyLineChange(Money unitPrice, int quantityDelta) {
+        totalAmount = totalAmount.plus(unitPrice.times(quantityDelta));
+        itemCount += quantityDelta;
     }
 }
@@ -1,21 +1,28 @@
 package example.toyshop.model;
 
-import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 /**
  * Элемент корзины — связывает товар с корзиной и количеством.
+ * Частичный индекс по сроку резерва и цену позиций, добавленных до появления столбца {@code price},
+ * заполняет {@link example.toyshop.service.DatabaseSchema}.
  */
 @Entity
+@Table(indexes = @Index(name = "idx_cart_item_cart", columnList = "cart_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -46,13 +53,29 @@ public class CartItem {
      */
     private int quantity;
 
+    /**
+     * Цена единицы товара на момент добавления позиции в корзину.
+     * По ней считаются сумма позиции и сумма корзины, поэтому изменение цены товара
+     * не расходит отображаемые позиции с сохранённой суммой.
+     */
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 38, scale = 2)
+    private Money price;
+
+    /**
+     * Момент, до которого товар зарезервирован за активной корзиной.
+     * После него резерв освобождается и товар возвращается на склад.
+     * {@code null} — резерв бессрочный (оформленный заказ).
+     */
+    private LocalDateTime reservedUntil;
+
     /**
      * Вычисляет общую цену этого элемента корзины,
-     * умножая цену товара на количество.
+     * умножая цену единицы позиции на количество.
      *
      * @return общая стоимость (цена * количество)
      */
-    public BigDecimal getTotalPrice() {
-        return product.getPrice().multiply(BigDecimal.valueOf(quantity));
+    public Money getTotalPrice() {
+        return price.times(quantity);
     }
 }
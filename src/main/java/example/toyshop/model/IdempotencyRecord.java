@@ -0,0 +1,63 @@
+package example.toyshop.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Сохранённый результат запроса с ключом идемпотентности.
+ * Используется, если включено хранение ключей в базе данных ({@code idempotency.database.enabled}).
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_idempotency_record_created_at", columnList = "created_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+
+    /**
+     * Ключ запроса: сессия или корзина клиента, метод, путь и ключ идемпотентности клиента.
+     */
+    @Id
+    @Column(length = 400)
+    private String requestKey;
+
+    /**
+     * HTTP-статус ответа; 0, пока запрос выполняется.
+     */
+    private int status;
+
+    /**
+     * Заголовок Location ответа (для редиректов).
+     */
+    @Column(length = 2000)
+    private String location;
+
+    /**
+     * Заголовки Set-Cookie ответа, по одному в строке.
+     */
+    @Column(length = 8000)
+    private String setCookies;
+
+    /**
+     * Тип содержимого ответа.
+     */
+    private String contentType;
+
+    /**
+     * Тело ответа.
+     */
+    private byte[] body;
+
+    /**
+     * Дата и время выполнения запроса.
+     */
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
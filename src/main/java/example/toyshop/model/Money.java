@@ -0,0 +1,106 @@
+package example.toyshop.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Денежная сумма в рублях, хранимая как целое число копеек.
+ * <p>
+ * Используется для сумм строк, корзин и заказов в памяти: сложение и умножение на количество
+ * выполняются над {@code long} без создания промежуточных {@link BigDecimal}.
+ * {@link BigDecimal} остаётся только на границе с базой данных ({@link Product#getPrice()})
+ * и во внешних представлениях (JSON, журнал событий).
+ * </p>
+ * <p>
+ * Правила округления: арифметика точная (переполнение — {@link ArithmeticException}),
+ * округление выполняется только при переводе суммы с более чем двумя знаками после запятой
+ * в копейки — по правилу {@link RoundingMode#HALF_UP}.
+ * </p>
+ *
+ * @param minorUnits сумма в копейках
+ */
+public record Money(long minorUnits) implements Comparable<Money> {
+
+    /**
+     * Количество знаков после запятой (копейки).
+     */
+    public static final int SCALE = 2;
+
+    /**
+     * Нулевая сумма.
+     */
+    public static final Money ZERO = new Money(0);
+
+    /**
+     * Переводит сумму в копейки с округлением до копейки по правилу {@link RoundingMode#HALF_UP}.
+     *
+     * @param amount сумма в рублях
+     * @return сумма в копейках
+     * @throws ArithmeticException если сумма не помещается в {@code long} копеек
+     */
+    @JsonCreator
+    public static Money of(BigDecimal amount) {
+        return new Money(amount.setScale(SCALE, RoundingMode.HALF_UP).movePointRight(SCALE).longValueExact());
+    }
+
+    /**
+     * Создаёт сумму из количества копеек.
+     *
+     * @param minorUnits сумма в копейках
+     * @return сумма
+     */
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * Складывает суммы.
+     *
+     * @param other слагаемое
+     * @return сумма
+     * @throws ArithmeticException при переполнении
+     */
+    public Money plus(Money other) {
+        return new Money(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    /**
+     * Умножает сумму на количество единиц.
+     *
+     * @param quantity количество
+     * @return произведение
+     * @throws ArithmeticException при переполнении
+     */
+    public Money times(int quantity) {
+        return new Money(Math.multiplyExact(minorUnits, quantity));
+    }
+
+    /**
+     * Возвращает сумму в рублях с двумя знаками после запятой.
+     *
+     * @return сумма в рублях
+     */
+    @JsonValue
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    /**
+     * Возвращает сумму в рублях с двумя знаками после запятой (например, {@code 12.50}),
+     * как её отображают шаблоны.
+     */
+    @Override
+    public String toString() {
+        long units = Math.abs(minorUnits / 100);
+        long cents = Math.abs(minorUnits % 100);
+        return (minorUnits < 0 ? "-" : "") + units + (cents < 10 ? ".0" : ".") + cents;
+    }
+}
@@ -0,0 +1,81 @@
+package example.toyshop.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Сообщение исходящей очереди (outbox) — письмо с подтверждением заказа.
+ * Создаётся в одной транзакции с оформлением заказа и отправляется позже
+ * фоновой задачей {@link example.toyshop.service.OrderMailDispatcher}.
+ * Частичный индекс писем, ожидающих отправки, создаёт {@link example.toyshop.service.DatabaseSchema}:
+ * {@code @Index} не поддерживает условие {@code WHERE}.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxMessage {
+
+    /**
+     * Уникальный идентификатор сообщения.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Идентификатор оформленного заказа (корзины).
+     */
+    @Column(nullable = false)
+    private Long orderId;
+
+    /**
+     * Адрес электронной почты получателя.
+     */
+    @Column(nullable = false)
+    private String recipient;
+
+    /**
+     * Статус отправки.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private OutboxStatus status = OutboxStatus.PENDING;
+
+    /**
+     * Количество неудачных попыток отправки.
+     */
+    private int attempts;
+
+    /**
+     * Время, не раньше которого сообщение будет отправлено (или отправлено повторно).
+     */
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt = LocalDateTime.now();
+
+    /**
+     * Текст последней ошибки отправки.
+     */
+    @Column(length = 1000)
+    private String lastError;
+
+    /**
+     * Дата и время создания сообщения.
+     */
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    /**
+     * Дата и время отправки сообщения.
+     */
+    private LocalDateTime sentAt;
+}
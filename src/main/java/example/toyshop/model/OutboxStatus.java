@@ -0,0 +1,22 @@
+package example.toyshop.model;
+
+/**
+ * Статусы сообщения в исходящей очереди (outbox).
+ */
+public enum OutboxStatus {
+
+    /**
+     * Сообщение ожидает отправки (в том числе повторной после ошибки).
+     */
+    PENDING,
+
+    /**
+     * Сообщение отправлено.
+     */
+    SENT,
+
+    /**
+     * Сообщение не удалось отправить за допустимое число попыток.
+     */
+    FAILED
+}
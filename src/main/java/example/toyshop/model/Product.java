@@ -9,10 +9,26 @@ import lombok.*;
 
 import java.math.BigDecimal;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+
+import example.toyshop.config.HibernateCacheConfig;
+
 /**
  * Сущность продукта (товара) в магазине.
+ * <p>
+ * Хранится в кэше второго уровня Hibernate (регион {@value HibernateCacheConfig#PRODUCT_REGION}):
+ * изменения остатков через JPA обновляют закэшированную запись при коммите.
+ * </p>
+ * <p>
+ * Покрывающие индексы сортировок витрины создаёт {@link example.toyshop.service.DatabaseSchema}:
+ * {@code @Index} не поддерживает столбцы {@code INCLUDE}.
+ * </p>
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfig.PRODUCT_REGION)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -58,4 +74,13 @@ public class Product {
      */
     @Min(value = 0, message = "Количество не может быть отрицательным")
     private int quantity;
+
+    /**
+     * Способ учёта остатка. Для {@link StockMode#SHARDED} поле {@code quantity}
+     * только отображается и обновляется в фоне по сумме частей остатка.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, columnDefinition = "varchar(16)")
+    @ColumnDefault("'STANDARD'")
+    private StockMode stockMode = StockMode.STANDARD;
 }
@@ -0,0 +1,64 @@
+package example.toyshop.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.MapsId;
+import jakarta.persistence.OneToOne;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Популярность товара за скользящее окно: используется для сортировки витрины по популярности.
+ * <p>
+ * Строка есть у каждого товара; значения пересчитываются фоновой задачей
+ * {@link example.toyshop.service.ProductPopularity} по почасовым счётчикам просмотров и продаж.
+ * </p>
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_product_stats_score", columnList = "score, product_id"))
+@Data
+@NoArgsConstructor
+public class ProductStats {
+
+    /**
+     * ID товара.
+     */
+    @Id
+    private Long productId;
+
+    /**
+     * Товар.
+     */
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "product_id")
+    private Product product;
+
+    /**
+     * Оценка популярности: просмотры и продажи за окно с затуханием по возрасту.
+     */
+    private double score;
+
+    /**
+     * Количество просмотров за окно.
+     */
+    private long views;
+
+    /**
+     * Количество проданных единиц за окно.
+     */
+    private long units;
+
+    /**
+     * Создаёт пустую статистику нового товара.
+     *
+     * @param product товар
+     */
+    public ProductStats(Product product) {
+        this.product = product;
+    }
+}
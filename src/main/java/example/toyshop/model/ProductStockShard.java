@@ -0,0 +1,48 @@
+package example.toyshop.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Часть остатка товара, учитываемого в режиме {@link StockMode#SHARDED}.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_product_stock_shard", columnNames = { "product_id", "shard" }))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductStockShard {
+
+    /**
+     * Уникальный идентификатор части остатка.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Товар, к которому относится часть остатка.
+     */
+    @ManyToOne(optional = false)
+    @JoinColumn(name = "product_id")
+    private Product product;
+
+    /**
+     * Номер части (от 0 до количества частей - 1).
+     */
+    private int shard;
+
+    /**
+     * Количество единиц товара в этой части.
+     */
+    private int quantity;
+}
@@ -0,0 +1,26 @@
+package example.toyshop.model;
+
+/**
+ * Способ учёта остатка товара на складе.
+ */
+public enum StockMode {
+
+    /**
+     * Остаток хранится в поле {@code quantity} товара и изменяется вместе с корзиной.
+     */
+    STANDARD,
+
+    /**
+     * Остаток разделён между несколькими строками {@link ProductStockShard},
+     * чтобы добавления в корзину популярного товара не ждали друг друга
+     * на одной строке. Поле {@code quantity} товара — их сумма, обновляемая в фоне.
+     */
+    SHARDED,
+
+    /**
+     * Остаток хранится в поле {@code quantity} товара, но добавления в корзину не конкурируют
+     * за строку товара: они ставятся в очередь товара, и один обработчик списывает остаток
+     * и добавляет товар в корзины сразу для пачки запросов в порядке их поступления.
+     */
+    QUEUED
+}
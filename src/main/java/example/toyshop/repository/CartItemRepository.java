@@ -1,12 +1,168 @@
 package example.toyshop.repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import example.toyshop.model.CartItem;
+import example.toyshop.model.CartStatus;
+import jakarta.persistence.QueryHint;
 
 /**
  * Репозиторий для работы с сущностями {@link CartItem}.
  * Предоставляет стандартные CRUD операции благодаря расширению JpaRepository.
  */
 public interface CartItemRepository extends JpaRepository<CartItem, Long> {
+
+    /**
+     * Проверяет, есть ли в корзинах с указанным статусом позиции с истёкшим резервом.
+     *
+     * @param status статус корзины
+     * @param now    текущий момент
+     * @return {@code true}, если есть что освобождать
+     */
+    boolean existsByCartStatusAndReservedUntilBefore(CartStatus status, LocalDateTime now);
+
+    /**
+     * Освобождает одну пачку просроченных резервов активных корзин.
+     * <p>
+     * Одним запросом удаляет до {@code batchSize} позиций с истёкшим резервом
+     * (позиции корзин, заблокированных параллельными изменениями, пропускаются: изменение корзины
+     * блокирует её строку при загрузке, см. {@link CartRepository#findBySessionIdAndStatusForUpdate})
+     * и возвращает их количество на склад одним {@code UPDATE ... FROM} по агрегату на товар.
+     * Для товаров, учитываемых по частям, количество также возвращается в нулевую часть остатка
+     * (фоновое выравнивание распределит его по остальным частям).
+     * Общая сумма (по цене позиций), количество единиц и версия затронутых корзин изменяются тем же запросом.
+     * </p>
+     *
+     * @param now       текущий момент
+     * @param batchSize максимальное количество позиций в пачке
+     * @return количество товаров, остаток которых был увеличен (0 — освобождать больше нечего)
+     */
+    @Transactional
+    @Modifying
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "cart_item"),
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "cart"),
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "product"),
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "product_stock_shard")
+    })
+    @Query(value = """
+            WITH expired AS (
+                SELECT ci.id
+                FROM cart_item ci
+                JOIN cart c ON c.id = ci.cart_id
+                WHERE c.status = 'ACTIVE' AND ci.reserved_until < :now
+                ORDER BY ci.reserved_until
+                LIMIT :batchSize
+                FOR UPDATE OF ci, c SKIP LOCKED
+            ), released AS (
+                DELETE FROM cart_item ci
+                USING expired e
+                WHERE ci.id = e.id
+                RETURNING ci.cart_id, ci.product_id, ci.quantity, ci.price
+            ), returned AS (
+                SELECT product_id, SUM(quantity) AS quantity FROM released GROUP BY product_id
+            ), cart_totals AS (
+                UPDATE cart c
+                SET total_amount = c.total_amount - t.amount,
+                    item_count = c.item_count - t.quantity,
+                    version = c.version + 1
+                FROM (
+                    SELECT r.cart_id, SUM(r.quantity * r.price) AS amount, SUM(r.quantity) AS quantity
+                    FROM released r
+                    GROUP BY r.cart_id
+                ) t
+                WHERE c.id = t.cart_id
+            ), to_shards AS (
+                UPDATE product_stock_shard s
+                SET quantity = s.quantity + r.quantity
+                FROM returned r
+                JOIN product sp ON sp.id = r.product_id AND sp.stock_mode = 'SHARDED'
+                WHERE s.product_id = r.product_id AND s.shard = 0
+            )
+            UPDATE product p
+            SET quantity = p.quantity + r.quantity
+            FROM returned r
+            WHERE p.id = r.product_id
+            """, nativeQuery = true)
+    int releaseExpiredReservations(@Param("now") LocalDateTime now, @Param("batchSize") int batchSize);
+
+    /**
+     * Продлевает резерв всех позиций активной корзины сессии.
+     * Позиции остаются заблокированными до конца транзакции, поэтому параллельное освобождение
+     * просроченных резервов их пропускает.
+     *
+     * @param sessionId     идентификатор сессии
+     * @param reservedUntil новый срок резерва
+     * @return количество продлённых позиций
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "cart_item"))
+    @Query(value = """
+            UPDATE cart_item ci
+            SET reserved_until = :reservedUntil
+            FROM cart c
+            WHERE c.id = ci.cart_id AND c.session_id = :sessionId AND c.status = 'ACTIVE'
+            """, nativeQuery = true)
+    int extendReservations(@Param("sessionId") String sessionId, @Param("reservedUntil") LocalDateTime reservedUntil);
+
+    /**
+     * Устанавливает количество нескольких товаров в корзине одним запросом.
+     * <p>
+     * Строки с количеством 0 удаляются, существующие строки получают новое количество,
+     * недостающие добавляются по цене из {@code prices}; существующие строки сохраняют свою цену.
+     * Резерв всех позиций корзины продлевается до {@code reservedUntil}.
+     * Вызывающий код должен сериализовать изменения корзины (см. {@code CartMutation}):
+     * запрос не защищён от параллельного добавления той же строки.
+     * </p>
+     *
+     * @param cartId        ID корзины
+     * @param productIds    ID товаров (без повторов)
+     * @param quantities    новые количества товаров в том же порядке
+     * @param prices        цены единицы товаров в том же порядке для добавляемых строк
+     * @param reservedUntil новый срок резерва позиций корзины
+     * @return количество добавленных строк
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "cart_item"))
+    @Query(value = """
+            WITH requested AS (
+                SELECT r.product_id, r.quantity, r.price
+                FROM unnest(CAST(:productIds AS bigint[]), CAST(:quantities AS integer[]), CAST(:prices AS numeric[]))
+                    AS r(product_id, quantity, price)
+            ), extended AS (
+                UPDATE cart_item ci
+                SET reserved_until = :reservedUntil
+                WHERE ci.cart_id = :cartId
+                  AND ci.product_id NOT IN (SELECT product_id FROM requested)
+            ), removed AS (
+                DELETE FROM cart_item ci
+                USING requested r
+                WHERE ci.cart_id = :cartId AND ci.product_id = r.product_id AND r.quantity = 0
+            ), updated AS (
+                UPDATE cart_item ci
+                SET quantity = r.quantity, reserved_until = :reservedUntil
+                FROM requested r
+                WHERE ci.cart_id = :cartId AND ci.product_id = r.product_id AND r.quantity > 0
+                RETURNING ci.product_id
+            )
+            INSERT INTO cart_item (cart_id, product_id, quantity, price, reserved_until)
+            SELECT :cartId, r.product_id, r.quantity, r.price, :reservedUntil
+            FROM requested r
+            WHERE r.quantity > 0
+              AND r.product_id NOT IN (SELECT product_id FROM updated)
+            """, nativeQuery = true)
+    int upsertLines(@Param("cartId") Long cartId, @Param("productIds") Long[] productIds,
+            @Param("quantities") Integer[] quantities, @Param("prices") BigDecimal[] prices,
+            @Param("reservedUntil") LocalDateTime reservedUntil);
 }
@@ -1,12 +1,21 @@
 package example.toyshop.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import example.toyshop.dto.CartBadge;
 import example.toyshop.model.Cart;
 import example.toyshop.model.CartStatus;
+import example.toyshop.model.Money;
+import jakarta.persistence.LockModeType;
 
 /**
  * Репозиторий для работы с сущностями {@link Cart}.
@@ -23,13 +32,54 @@ public interface CartRepository extends JpaRepository<Cart, Long> {
     Optional<Cart> findBySessionId(String sessionId);
 
     /**
-     * Находит все корзины с заданным статусом.
+     * Находит корзину по идентификатору сессии с блокировкой строки до конца транзакции.
+     * Пока корзина заблокирована, освобождение просроченных резервов пропускает её позиции.
+     *
+     * @param sessionId идентификатор сессии гостя
+     * @return {@link Optional} с корзиной, если она найдена
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Cart c where c.sessionId = :sessionId")
+    Optional<Cart> findBySessionIdForUpdate(@Param("sessionId") String sessionId);
+
+    /**
+     * Находит все корзины с заданным статусом вместе с их элементами и товарами.
      *
      * @param status статус корзины (например, ACTIVE, COMPLETED)
      * @return список корзин с указанным статусом
      */
+    @EntityGraph(attributePaths = { "items", "items.product" })
     List<Cart> findByStatus(CartStatus status);
 
+    /**
+     * Находит корзину по идентификатору вместе с её элементами и товарами одним запросом.
+     *
+     * @param id идентификатор корзины
+     * @return {@link Optional} с корзиной, если она найдена
+     */
+    @EntityGraph(attributePaths = { "items", "items.product" })
+    Optional<Cart> findWithItemsById(Long id);
+
+    /**
+     * Находит корзины по идентификаторам вместе с их элементами и товарами одним запросом.
+     *
+     * @param ids идентификаторы корзин
+     * @return список найденных корзин
+     */
+    @EntityGraph(attributePaths = { "items", "items.product" })
+    List<Cart> findWithItemsByIdIn(Collection<Long> ids);
+
+    /**
+     * Находит корзины по идентификатору сессии и статусу вместе с их элементами и товарами
+     * одним запросом.
+     *
+     * @param sessionId идентификатор сессии гостя
+     * @param status статус корзины
+     * @return список корзин с указанными sessionId и статусом
+     */
+    @EntityGraph(attributePaths = { "items", "items.product" })
+    List<Cart> findWithItemsBySessionIdAndStatus(String sessionId, CartStatus status);
+
     /**
      * Находит все корзины по идентификатору сессии и статусу.
      *
@@ -38,4 +88,67 @@ public interface CartRepository extends JpaRepository<Cart, Long> {
      * @return список корзин с указанными sessionId и статусом
      */
     List<Cart> findBySessionIdAndStatus(String sessionId, CartStatus status);
+
+    /**
+     * Находит корзины по идентификатору сессии и статусу с блокировкой строк до конца транзакции.
+     * Пока корзина заблокирована, освобождение просроченных резервов пропускает её позиции.
+     *
+     * @param sessionId идентификатор сессии гостя
+     * @param status статус корзины
+     * @return список корзин с указанными sessionId и статусом
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Cart c where c.sessionId = :sessionId and c.status = :status")
+    List<Cart> findBySessionIdAndStatusForUpdate(@Param("sessionId") String sessionId,
+            @Param("status") CartStatus status);
+
+    /**
+     * Возвращает итоги корзины сессии с указанным статусом из строки корзины, не загружая её элементы.
+     *
+     * @param sessionId идентификатор сессии гостя
+     * @param status    статус корзины
+     * @return итоги найденных корзин
+     */
+    @Query("select new example.toyshop.dto.CartBadge(c.itemCount, c.totalAmount, c.version) "
+            + "from Cart c where c.sessionId = :sessionId and c.status = :status")
+    List<CartBadge> findBadgeBySessionIdAndStatus(@Param("sessionId") String sessionId,
+            @Param("status") CartStatus status);
+
+    /**
+     * Находит корзины нескольких сессий с указанным статусом вместе с их элементами одним запросом.
+     *
+     * @param sessionIds идентификаторы сессий
+     * @param status статус корзины
+     * @return список найденных корзин
+     */
+    @EntityGraph(attributePaths = { "items", "items.product" })
+    List<Cart> findWithItemsBySessionIdInAndStatus(Collection<String> sessionIds, CartStatus status);
+
+    /**
+     * Находит корзины нескольких сессий с указанным статусом и блокирует их строки до конца транзакции.
+     * Строки блокируются в порядке ID.
+     *
+     * @param sessionIds идентификаторы сессий
+     * @param status статус корзины
+     * @return список найденных корзин
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Cart c where c.sessionId in :sessionIds and c.status = :status order by c.id")
+    List<Cart> findBySessionIdInAndStatusForUpdate(@Param("sessionIds") Collection<String> sessionIds,
+            @Param("status") CartStatus status);
+
+    /**
+     * Записывает итоги активной корзины, посчитанные вне базы данных.
+     *
+     * @param id          ID корзины
+     * @param totalAmount сумма корзины
+     * @param itemCount   количество единиц товара
+     * @param version     новая версия корзины
+     * @return количество изменённых корзин (0, если корзина уже не активна)
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Cart c set c.totalAmount = :totalAmount, c.itemCount = :itemCount, c.version = :version "
+            + "where c.id = :id and c.status = example.toyshop.model.CartStatus.ACTIVE")
+    int updateTotals(@Param("id") Long id, @Param("totalAmount") Money totalAmount,
+            @Param("itemCount") int itemCount, @Param("version") long version);
 }
@@ -0,0 +1,28 @@
+package example.toyshop.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import example.toyshop.model.IdempotencyRecord;
+
+/**
+ * Репозиторий для работы с сущностями {@link IdempotencyRecord}.
+ */
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    /**
+     * Удаляет результаты запросов, выполненных раньше указанного момента.
+     *
+     * @param before граница времени выполнения
+     * @return количество удалённых записей
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,43 @@
+package example.toyshop.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import example.toyshop.model.OutboxMessage;
+import example.toyshop.model.OutboxStatus;
+
+/**
+ * Репозиторий для работы с сущностями {@link OutboxMessage}.
+ */
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    /**
+     * Проверяет, есть ли сообщения в указанном статусе, срок отправки которых наступил.
+     *
+     * @param status статус сообщения
+     * @param now    текущее время
+     * @return {@code true}, если такие сообщения есть
+     */
+    boolean existsByStatusAndNextAttemptAtLessThanEqual(OutboxStatus status, LocalDateTime now);
+
+    /**
+     * Выбирает и блокирует до конца транзакции пачку сообщений, ожидающих отправки.
+     * Сообщения, уже заблокированные другой транзакцией (например, на другом узле), пропускаются.
+     *
+     * @param now   текущее время
+     * @param limit максимальный размер пачки
+     * @return сообщения в порядке наступления срока отправки
+     */
+    @Query(value = """
+            SELECT * FROM outbox_message
+            WHERE status = 'PENDING' AND next_attempt_at <= :now
+            ORDER BY next_attempt_at
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<OutboxMessage> lockDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+}
@@ -1,16 +1,54 @@
 package example.toyshop.repository;
 
+import example.toyshop.dto.ProductCard;
 import example.toyshop.model.Product;
+import example.toyshop.model.StockMode;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 /**
  * Репозиторий для работы с сущностями {@link Product}.
  * Расширяет JpaRepository для стандартных CRUD операций.
+ * <p>
+ * Запросы каталога помечены как кэшируемые: результаты хранятся в кэше запросов Hibernate
+ * и автоматически инвалидируются при любом изменении таблицы товаров.
+ * </p>
  */
 public interface ProductRepository extends JpaRepository<Product, Long> {
 
+    /**
+     * Условия {@link #filterCards} и {@link #filterPopularCards}.
+     */
+    String CARD_FILTER = "where upper(p.name) like upper(concat('%', :#{escape(#keyword)}, '%')) "
+            + "escape :#{escapeCharacter()} "
+            + "and (:minPrice is null or p.price >= :minPrice) "
+            + "and (:maxPrice is null or p.price <= :maxPrice) "
+            + "and (:inStock = false or p.quantity > 0)";
+
+    /**
+     * Возвращает страницу всех продуктов (результат кэшируется в кэше запросов).
+     *
+     * @param pageable параметры пагинации и сортировки
+     * @return страница продуктов
+     */
+    @Override
+    @QueryHints(value = @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), forCounting = true)
+    Page<Product> findAll(Pageable pageable);
+
     /**
      * Ищет продукты, название которых содержит заданную подстроку, без учёта регистра,
      * с постраничным выводом результатов.
@@ -19,5 +57,147 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
      * @param pageable параметры пагинации и сортировки
      * @return страница продуктов, удовлетворяющих условию поиска
      */
+    @QueryHints(value = @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), forCounting = true)
     Page<Product> findByNameContainingIgnoreCase(String name, Pageable pageable);
+
+    /**
+     * Возвращает страницу карточек товаров для витрины.
+     * <p>
+     * Выбираются только столбцы, показываемые в списке (без описания),
+     * результат не попадает в контекст персистентности как управляемые сущности.
+     * </p>
+     *
+     * @param pageable параметры пагинации и сортировки
+     * @return страница карточек товаров
+     */
+    @Query(value = "select new example.toyshop.dto.ProductCard(p.id, p.name, p.price, p.imageUrl, p.quantity) "
+            + "from Product p",
+            countQuery = "select count(p) from Product p")
+    @QueryHints(value = @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), forCounting = true)
+    Page<ProductCard> findAllCards(Pageable pageable);
+
+    /**
+     * Ищет карточки товаров, название которых содержит заданную подстроку, без учёта регистра.
+     * Выбираются только столбцы, показываемые в списке товаров.
+     *
+     * @param keyword подстрока для поиска в названии продукта
+     * @param pageable параметры пагинации и сортировки
+     * @return страница карточек товаров, удовлетворяющих условию поиска
+     */
+    @Query(value = "select new example.toyshop.dto.ProductCard(p.id, p.name, p.price, p.imageUrl, p.quantity) "
+            + "from Product p "
+            + "where upper(p.name) like upper(concat('%', :#{escape(#keyword)}, '%')) escape :#{escapeCharacter()}",
+            countQuery = "select count(p) from Product p "
+            + "where upper(p.name) like upper(concat('%', :#{escape(#keyword)}, '%')) escape :#{escapeCharacter()}")
+    @QueryHints(value = @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), forCounting = true)
+    Page<ProductCard> searchCards(@Param("keyword") String keyword, Pageable pageable);
+
+    /**
+     * Ищет карточки товаров по подстроке названия (без учёта регистра), диапазону цены и наличию.
+     *
+     * @param keyword  подстрока для поиска в названии продукта (пустая строка — без поиска)
+     * @param minPrice наименьшая цена включительно или {@code null}
+     * @param maxPrice наибольшая цена включительно или {@code null}
+     * @param inStock  только товары в наличии
+     * @param pageable параметры пагинации и сортировки
+     * @return страница карточек товаров, удовлетворяющих условиям
+     */
+    @Query(value = "select new example.toyshop.dto.ProductCard(p.id, p.name, p.price, p.imageUrl, p.quantity) "
+            + "from Product p " + CARD_FILTER,
+            countQuery = "select count(p) from Product p " + CARD_FILTER)
+    @QueryHints(value = @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), forCounting = true)
+    Page<ProductCard> filterCards(@Param("keyword") String keyword, @Param("minPrice") BigDecimal minPrice,
+                                  @Param("maxPrice") BigDecimal maxPrice, @Param("inStock") boolean inStock,
+                                  Pageable pageable);
+
+    /**
+     * Возвращает карточки товаров по убыванию популярности.
+     * Порядок читается по индексу {@code (score, product_id)} таблицы статистики, поэтому
+     * страница не требует сортировки всех товаров; сортировку из {@code pageable} не передавать.
+     *
+     * @param pageable параметры пагинации
+     * @return страница карточек товаров
+     */
+    @Query(value = "select new example.toyshop.dto.ProductCard(p.id, p.name, p.price, p.imageUrl, p.quantity) "
+            + "from ProductStats s join s.product p "
+            + "order by s.score desc, s.productId desc",
+            countQuery = "select count(s) from ProductStats s")
+    @QueryHints(value = @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), forCounting = true)
+    Page<ProductCard> findPopularCards(Pageable pageable);
+
+    /**
+     * Ищет карточки товаров, название которых содержит заданную подстроку, по убыванию популярности.
+     *
+     * @param keyword  подстрока для поиска в названии продукта
+     * @param pageable параметры пагинации (без сортировки)
+     * @return страница карточек товаров, удовлетворяющих условию поиска
+     */
+    @Query(value = "select new example.toyshop.dto.ProductCard(p.id, p.name, p.price, p.imageUrl, p.quantity) "
+            + "from ProductStats s join s.product p "
+            + "where upper(p.name) like upper(concat('%', :#{escape(#keyword)}, '%')) escape :#{escapeCharacter()} "
+            + "order by s.score desc, s.productId desc",
+            countQuery = "select count(s) from ProductStats s join s.product p "
+            + "where upper(p.name) like upper(concat('%', :#{escape(#keyword)}, '%')) escape :#{escapeCharacter()}")
+    @QueryHints(value = @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), forCounting = true)
+    Page<ProductCard> searchPopularCards(@Param("keyword") String keyword, Pageable pageable);
+
+    /**
+     * Ищет карточки товаров по подстроке названия, диапазону цены и наличию по убыванию популярности.
+     *
+     * @param keyword  подстрока для поиска в названии продукта (пустая строка — без поиска)
+     * @param minPrice наименьшая цена включительно или {@code null}
+     * @param maxPrice наибольшая цена включительно или {@code null}
+     * @param inStock  только товары в наличии
+     * @param pageable параметры пагинации (без сортировки)
+     * @return страница карточек товаров, удовлетворяющих условиям
+     */
+    @Query(value = "select new example.toyshop.dto.ProductCard(p.id, p.name, p.price, p.imageUrl, p.quantity) "
+            + "from ProductStats s join s.product p " + CARD_FILTER
+            + " order by s.score desc, s.productId desc",
+            countQuery = "select count(s) from ProductStats s join s.product p " + CARD_FILTER)
+    @QueryHints(value = @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"), forCounting = true)
+    Page<ProductCard> filterPopularCards(@Param("keyword") String keyword, @Param("minPrice") BigDecimal minPrice,
+                                         @Param("maxPrice") BigDecimal maxPrice, @Param("inStock") boolean inStock,
+                                         Pageable pageable);
+
+    /**
+     * Возвращает карточки всех товаров для снимка каталога в порядке названий по правилам сортировки
+     * базы данных (вторым ключом — ID), как в сортировке витрины по названию.
+     *
+     * @return карточки товаров
+     */
+    @Query("select new example.toyshop.dto.ProductCard(p.id, p.name, p.price, p.imageUrl, p.quantity) "
+            + "from Product p order by p.name, p.id")
+    List<ProductCard> findCatalog();
+
+    /**
+     * Загружает товар с блокировкой строки до конца транзакции (в обход кэша второго уровня).
+     *
+     * @param id ID товара
+     * @return товар, если найден
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from Product p where p.id = :id")
+    Optional<Product> findByIdForUpdate(@Param("id") Long id);
+
+    /**
+     * Загружает товары с блокировкой строк до конца транзакции одним запросом.
+     * Строки блокируются в порядке возрастания ID, поэтому параллельные пакетные изменения
+     * с пересекающимися наборами товаров не блокируют друг друга взаимно.
+     *
+     * @param ids ID товаров
+     * @return найденные товары в порядке возрастания ID
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from Product p where p.id in :ids order by p.id")
+    List<Product> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Возвращает ID товаров с указанным способом учёта остатка.
+     *
+     * @param stockMode способ учёта остатка
+     * @return список ID товаров
+     */
+    @Query("select p.id from Product p where p.stockMode = :stockMode")
+    List<Long> findIdsByStockMode(@Param("stockMode") StockMode stockMode);
 }
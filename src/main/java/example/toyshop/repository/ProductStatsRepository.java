@@ -0,0 +1,11 @@
+package example.toyshop.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import example.toyshop.model.ProductStats;
+
+/**
+ * Репозиторий для работы со статистикой популярности товаров.
+ */
+public interface ProductStatsRepository extends JpaRepository<ProductStats, Long> {
+}
@@ -0,0 +1,112 @@
+package example.toyshop.repository;
+
+import java.util.List;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import example.toyshop.model.ProductStockShard;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+/**
+ * Репозиторий для работы с частями остатка {@link ProductStockShard}.
+ */
+public interface ProductStockShardRepository extends JpaRepository<ProductStockShard, Long> {
+
+    /**
+     * Списывает товар из случайной части остатка, в которой его достаточно.
+     * Части, заблокированные параллельными списаниями, пропускаются.
+     *
+     * @param productId ID товара
+     * @param amount    количество единиц
+     * @return 1, если товар списан; 0, если все подходящие части заняты или пусты
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "product_stock_shard"))
+    @Query(value = """
+            UPDATE product_stock_shard
+            SET quantity = quantity - :amount
+            WHERE id = (SELECT id FROM product_stock_shard
+                        WHERE product_id = :productId AND quantity >= :amount
+                        ORDER BY random()
+                        LIMIT 1
+                        FOR UPDATE SKIP LOCKED)
+            """, nativeQuery = true)
+    int takeFromFreeShard(@Param("productId") Long productId, @Param("amount") int amount);
+
+    /**
+     * Списывает товар из первой по номеру части остатка, в которой его достаточно,
+     * ожидая освобождения этой части. Части блокируются в порядке номеров (как и при выравнивании),
+     * поэтому ожидающие транзакции не могут заблокировать друг друга взаимно.
+     *
+     * @param productId ID товара
+     * @param amount    количество единиц
+     * @return 1, если товар списан; 0, если подходящих частей нет
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "product_stock_shard"))
+    @Query(value = """
+            UPDATE product_stock_shard
+            SET quantity = quantity - :amount
+            WHERE id = (SELECT id FROM product_stock_shard
+                        WHERE product_id = :productId AND quantity >= :amount
+                        ORDER BY shard
+                        LIMIT 1
+                        FOR UPDATE)
+              AND quantity >= :amount
+            """, nativeQuery = true)
+    int takeFromAnyShard(@Param("productId") Long productId, @Param("amount") int amount);
+
+    /**
+     * Возвращает товар в случайную часть остатка.
+     *
+     * @param productId ID товара
+     * @param amount    количество единиц
+     * @return количество изменённых частей (0, если товар не учитывается по частям)
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "product_stock_shard"))
+    @Query(value = """
+            UPDATE product_stock_shard
+            SET quantity = quantity + :amount
+            WHERE id = (SELECT id FROM product_stock_shard
+                        WHERE product_id = :productId
+                        ORDER BY random()
+                        LIMIT 1)
+            """, nativeQuery = true)
+    int release(@Param("productId") Long productId, @Param("amount") int amount);
+
+    /**
+     * Возвращает суммарный остаток товара по всем частям.
+     *
+     * @param productId ID товара
+     * @return количество единиц товара
+     */
+    @Query("select coalesce(sum(s.quantity), 0) from ProductStockShard s where s.product.id = :productId")
+    int sumQuantity(@Param("productId") Long productId);
+
+    /**
+     * Загружает и блокирует все части остатка товара (в порядке номеров частей).
+     *
+     * @param productId ID товара
+     * @return части остатка
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from ProductStockShard s where s.product.id = :productId order by s.shard")
+    List<ProductStockShard> findAllForUpdate(@Param("productId") Long productId);
+
+    /**
+     * Удаляет все части остатка товара.
+     *
+     * @param productId ID товара
+     */
+    @Modifying
+    @Query("delete from ProductStockShard s where s.product.id = :productId")
+    void deleteByProductId(@Param("productId") Long productId);
+}
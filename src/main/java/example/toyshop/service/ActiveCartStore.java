@@ -0,0 +1,135 @@
+package example.toyshop.service;
+
+import java.util.Optional;
+
+import example.toyshop.dto.CartBadge;
+import example.toyshop.dto.CartDelta;
+import example.toyshop.dto.CartView;
+import example.toyshop.model.Product;
+
+/**
+ * Хранилище активных (ещё не оформленных) корзин вне таблиц {@code cart} и {@code cart_item}.
+ * <p>
+ * Режим выбирается свойством {@code cart.store.mode}; включено не более одного хранилища.
+ * В режиме {@link Mode#DATABASE} ни одно хранилище не включено и {@link CartService}
+ * работает с таблицами корзин напрямую.
+ * </p>
+ */
+public interface ActiveCartStore {
+
+    /**
+     * Где хранятся активные корзины.
+     */
+    enum Mode {
+
+        /**
+         * В таблицах {@code cart} и {@code cart_item}.
+         */
+        DATABASE,
+
+        /**
+         * В памяти узла ({@link MemoryCartStore}).
+         */
+        MEMORY,
+
+        /**
+         * В нежурналируемых таблицах PostgreSQL ({@link UnloggedCartStore}).
+         */
+        UNLOGGED
+    }
+
+    /**
+     * Проверяет, включено ли хранилище.
+     *
+     * @return {@code true}, если активные корзины хранятся в этом хранилище
+     */
+    boolean isEnabled();
+
+    /**
+     * Открывает корзину сессии для изменения в текущей транзакции.
+     * Резерв позиций корзины продлевается.
+     *
+     * @param sessionId идентификатор сессии
+     * @return изменяемая корзина
+     * @throws IllegalStateException если транзакция не активна
+     */
+    Edit edit(String sessionId);
+
+    /**
+     * Возвращает представление корзины сессии.
+     *
+     * @param sessionId идентификатор сессии
+     * @return представление корзины или пустой результат, если корзину нужно читать из таблицы {@code cart}
+     */
+    Optional<CartView> view(String sessionId);
+
+    /**
+     * Возвращает итоги корзины сессии для значка корзины.
+     *
+     * @param sessionId идентификатор сессии
+     * @return итоги корзины или пустой результат, если корзину нужно читать из таблицы {@code cart}
+     */
+    Optional<CartBadge> badge(String sessionId);
+
+    /**
+     * Подготавливает корзину сессии к оформлению заказа.
+     * Вызывается под блокировкой сессии вне транзакции изменения корзины.
+     *
+     * @param sessionId идентификатор сессии
+     */
+    default void flush(String sessionId) {
+    }
+
+    /**
+     * Забывает корзину сессии после оформления заказа.
+     *
+     * @param sessionId идентификатор сессии
+     */
+    default void evict(String sessionId) {
+    }
+
+    /**
+     * Корзина, открытая для изменения в одной транзакции.
+     */
+    interface Edit {
+
+        /**
+         * Проверяет, что корзины ещё нет.
+         *
+         * @return {@code true}, если корзины нет
+         */
+        boolean isNew();
+
+        /**
+         * Возвращает количество товара в корзине.
+         *
+         * @param productId ID товара
+         * @return количество (0, если товара нет в корзине)
+         */
+        int quantity(Long productId);
+
+        /**
+         * Устанавливает количество товара в корзине.
+         *
+         * @param product  товар
+         * @param quantity новое количество (0 — удалить строку)
+         */
+        void set(Product product, int quantity);
+
+        /**
+         * Возвращает изменение корзины для JSON API.
+         *
+         * @param productId ID товара изменённой строки
+         * @param stock     остаток товара на складе
+         * @return изменение корзины
+         */
+        CartDelta delta(Long productId, int stock);
+
+        /**
+         * Возвращает представление корзины.
+         *
+         * @return представление корзины
+         */
+        CartView view();
+    }
+}
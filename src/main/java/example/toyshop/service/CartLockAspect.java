@@ -0,0 +1,144 @@
+package example.toyshop.service;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Выполняет изменения корзины одной сессии строго по очереди.
+ * <p>
+ * Двойные клики и параллельные вкладки больше не конкурируют за одну строку корзины в базе данных:
+ * запрос ждёт завершения предыдущего запроса той же сессии, но не дольше {@code cart.lock.timeout},
+ * после чего получает ответ 429.
+ * </p>
+ * <p>
+ * Блокировка захватывается до начала транзакции и освобождается после её коммита,
+ * поэтому следующий запрос сессии всегда видит результат предыдущего. Режимы ({@code cart.lock.mode}):
+ * </p>
+ * <ul>
+ * <li>{@code STRIPED} — блокировки в памяти процесса (достаточно для одного узла);</li>
+ * <li>{@code ADVISORY} — аренда сессии в нежурналируемой таблице {@code cart_lock} PostgreSQL
+ * (для нескольких узлов);</li>
+ * <li>{@code NONE} — без сериализации.</li>
+ * </ul>
+ * <p>
+ * Аренда захватывается и освобождается отдельными короткими запросами вне транзакции, поэтому
+ * соединение пула не удерживается, пока изменение ждёт очереди товара или пачки заказов.
+ * Аренда узла, упавшего посреди изменения, истекает через {@code cart.lock.lease}.
+ * </p>
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CartLockAspect {
+
+    private static final String ACQUIRE = """
+            INSERT INTO cart_lock (session_id, owner, expires_at)
+            VALUES (?, ?, now() + make_interval(secs => ?))
+            ON CONFLICT (session_id) DO UPDATE SET owner = excluded.owner, expires_at = excluded.expires_at
+            WHERE cart_lock.expires_at < now()
+            """;
+
+    private static final String RELEASE = "DELETE FROM cart_lock WHERE session_id = ? AND owner = ?";
+
+    private static final long MAX_BACKOFF_MILLIS = 50;
+
+    /**
+     * Режим сериализации изменений корзины.
+     */
+    public enum Mode {
+        STRIPED, ADVISORY, NONE
+    }
+
+    private final Mode mode;
+    private final Duration timeout;
+    private final Duration lease;
+    private final SessionLockStripes stripes;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * {@link DatabaseSchema} передаётся, чтобы аспект создавался после создания таблицы {@code cart_lock}.
+     */
+    public CartLockAspect(@Value("${cart.lock.mode:STRIPED}") Mode mode,
+                          @Value("${cart.lock.timeout:2s}") Duration timeout,
+                          @Value("${cart.lock.lease:1m}") Duration lease,
+                          @Value("${cart.lock.stripes:1024}") int stripes,
+                          JdbcTemplate jdbcTemplate,
+                          DatabaseSchema databaseSchema) {
+        this.mode = mode;
+        this.timeout = timeout;
+        this.lease = lease;
+        this.stripes = new SessionLockStripes(stripes, timeout);
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Оборачивает метод, помеченный {@link CartMutation}, блокировкой сессии.
+     *
+     * @param joinPoint вызов метода сервиса (первый аргумент — идентификатор сессии)
+     * @return результат метода
+     * @throws Throwable исключение метода сервиса
+     */
+    @Around("@annotation(example.toyshop.service.CartMutation)")
+    public Object serialize(ProceedingJoinPoint joinPoint) throws Throwable {
+        String sessionId = (String) joinPoint.getArgs()[0];
+        return switch (mode) {
+            case NONE -> joinPoint.proceed();
+            case STRIPED -> {
+                Lock lock = stripes.acquire(sessionId);
+                try {
+                    yield joinPoint.proceed();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            case ADVISORY -> {
+                String owner = acquireLease(sessionId);
+                try {
+                    yield joinPoint.proceed();
+                } finally {
+                    jdbcTemplate.update(RELEASE, sessionId, owner);
+                }
+            }
+        };
+    }
+
+    /**
+     * Берёт аренду сессии, повторяя попытку с растущей паузой, пока предыдущий запрос сессии
+     * не освободит аренду или она не истечёт.
+     *
+     * @param sessionId идентификатор сессии
+     * @return владелец аренды, по которому она освобождается
+     * @throws org.springframework.web.server.ResponseStatusException 429, если аренду не удалось взять
+     *                                                                 за {@code cart.lock.timeout}
+     */
+    private String acquireLease(String sessionId) {
+        String owner = UUID.randomUUID().toString();
+        double leaseSeconds = lease.toMillis() / 1000.0;
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long backoff = 1;
+        while (jdbcTemplate.update(ACQUIRE, sessionId, owner, leaseSeconds) == 0) {
+            long remainingMillis = (deadline - System.nanoTime()) / 1_000_000;
+            if (remainingMillis <= 0) {
+                throw SessionLockStripes.busy();
+            }
+            try {
+                Thread.sleep(Math.min(backoff, remainingMillis));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw SessionLockStripes.busy();
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+        return owner;
+    }
+}
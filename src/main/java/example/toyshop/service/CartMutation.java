@@ -0,0 +1,20 @@
+package example.toyshop.service;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Помечает метод, изменяющий корзину сессии.
+ * <p>
+ * Вызовы таких методов для одной и той же сессии выполняются строго по очереди
+ * (см. {@link CartLockAspect}). Первым аргументом метода должен быть идентификатор сессии.
+ * </p>
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CartMutation {
+}
@@ -1,29 +1,115 @@
 package example.toyshop.service;
 
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
 
+import example.toyshop.dto.CartBadge;
+import example.toyshop.dto.CartDelta;
+import example.toyshop.dto.CartLineRequest;
+import example.toyshop.dto.CartView;
+import example.toyshop.event.CartItemAdded;
+import example.toyshop.event.DomainEventBus;
+import example.toyshop.event.StockChanged;
 import example.toyshop.model.Cart;
 import example.toyshop.model.CartItem;
 import example.toyshop.model.CartStatus;
+import example.toyshop.model.Money;
+import example.toyshop.model.OutboxMessage;
 import example.toyshop.model.Product;
+import example.toyshop.model.StockMode;
+import example.toyshop.repository.CartItemRepository;
 import example.toyshop.repository.CartRepository;
+import example.toyshop.repository.OutboxMessageRepository;
 import example.toyshop.repository.ProductRepository;
-import jakarta.transaction.Transactional;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import lombok.RequiredArgsConstructor;
 
 /**
  * Сервис для работы с корзиной покупок.
+ * <p>
+ * Методы, изменяющие корзину, помечены {@link CartMutation}: запросы одной сессии
+ * к ним выполняются по очереди и не конкурируют за строку корзины в базе данных.
+ * </p>
+ * <p>
+ * Товар в активной корзине зарезервирован на время {@code cart.reservation.ttl}: каждое изменение
+ * корзины продлевает резерв всех её позиций, а просроченные резервы брошенных корзин
+ * возвращает на склад {@link ReservationReaper}. При оформлении заказа резерв становится бессрочным.
+ * </p>
+ * <p>
+ * Добавление товара и изменение остатка публикуются в {@link DomainEventBus} после коммита транзакции.
+ * </p>
+ * <p>
+ * В режиме {@code cart.store.mode=MEMORY} активные корзины хранятся в {@link MemoryCartStore}:
+ * остаток товара меняется в базе данных, как и раньше, а строки корзины — в памяти,
+ * откуда их в базу записывает хранилище. В режиме {@code cart.store.mode=UNLOGGED} активные корзины
+ * хранятся в нежурналируемых таблицах {@link UnloggedCartStore}, а при оформлении заказа переносятся
+ * в таблицы {@code cart} и {@code cart_item}.
+ * </p>
  */
 @Service
 @RequiredArgsConstructor
 public class CartService {
 
     private final CartRepository cartRepository;
+    private final CartItemRepository cartItemRepository;
     private final ProductRepository productRepository;
+    private final ShardedStockService shardedStockService;
+    private final ProductAdmissionQueue admissionQueue;
+    private final CheckoutCoordinator checkoutCoordinator;
+    private final OutboxMessageRepository outboxRepository;
+    private final DomainEventBus eventBus;
+    private final MemoryCartStore memoryCartStore;
+    private final UnloggedCartStore unloggedCartStore;
+    private final TransactionOperations transactionOperations;
+    private final EntityManager entityManager;
+
+    /**
+     * Срок резерва товара в активной корзине с момента её последнего изменения.
+     */
+    @Value("${cart.reservation.ttl:30m}")
+    private Duration reservationTtl = Duration.ofMinutes(30);
+
+    /**
+     * Максимальное время ожидания результата из очереди товара в режиме {@link StockMode#QUEUED}.
+     */
+    @Value("${cart.admission.timeout:5s}")
+    private Duration admissionTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Максимальное время ожидания, пока оформление заказа заберут в пачку {@link CheckoutCoordinator}.
+     */
+    @Value("${checkout.timeout:5s}")
+    private Duration checkoutTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Максимальное количество строк в одном пакетном изменении корзины.
+     */
+    @Value("${cart.batch.max-lines:100}")
+    private int maxBatchLines = 100;
 
     /**
      * Получает активную корзину по идентификатору сессии.
@@ -49,20 +135,353 @@ public class CartService {
                 });
     }
 
+    /**
+     * Возвращает представление активной корзины для страницы корзины.
+     * Корзина, её элементы и товары загружаются одним запросом в одной транзакции,
+     * поэтому шаблон не обращается к базе данных во время отрисовки.
+     * Если активной корзины нет, возвращается пустое представление (корзина не создаётся).
+     *
+     * @param sessionId идентификатор сессии пользователя
+     * @return представление корзины
+     * @throws IllegalStateException если найдено более одной активной корзины для
+     *                               sessionId
+     */
+    @Transactional(readOnly = true)
+    public CartView getCartView(String sessionId) {
+        if (activeCartStore().isEnabled()) {
+            Optional<CartView> cached = activeCartStore().view(sessionId);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+        List<Cart> carts = cartRepository.findWithItemsBySessionIdAndStatus(sessionId, CartStatus.ACTIVE);
+        if (carts.size() > 1) {
+            throw new IllegalStateException("Обнаружено несколько активных корзин для sessionId: " + sessionId);
+        }
+        return carts.stream()
+                .findFirst()
+                .map(CartView::from)
+                .orElseGet(CartView::empty);
+    }
+
+    /**
+     * Возвращает количество единиц товара и сумму активной корзины для значка корзины.
+     * Читает только строку корзины, без её элементов.
+     *
+     * @param sessionId идентификатор сессии пользователя
+     * @return итоги корзины (пустые, если активной корзины нет)
+     */
+    @Transactional(readOnly = true)
+    public CartBadge getCartBadge(String sessionId) {
+        if (activeCartStore().isEnabled()) {
+            Optional<CartBadge> cached = activeCartStore().badge(sessionId);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+        return cartRepository.findBadgeBySessionIdAndStatus(sessionId, CartStatus.ACTIVE).stream()
+                .findFirst()
+                .orElseGet(CartBadge::empty);
+    }
+
     /**
      * Добавляет товар в корзину пользователя.
      * Уменьшает количество товара на складе.
+     * <p>
+     * Товар и способ учёта его остатка читаются в изменяющей транзакции из основной базы данных:
+     * только что созданный товар или новый способ учёта могли ещё не дойти до реплики.
+     * Товары в режиме {@link StockMode#QUEUED} добавляются через {@link ProductAdmissionQueue}:
+     * метод ждёт результата (не дольше {@code cart.admission.timeout}) вне транзакции,
+     * не удерживая соединение с базой данных. Если к этому времени запрос уже обрабатывается,
+     * метод дожидается результата пачки, иначе запрос отменяется. В режимах {@code cart.store.mode=MEMORY} и {@code UNLOGGED}
+     * очередь не используется: она записывает строки корзин прямо в таблицу {@code cart_item}.
+     * </p>
      *
      * @param sessionId идентификатор сессии пользователя
      * @param productId идентификатор добавляемого товара
-     * @throws RuntimeException если товар не найден или отсутствует на складе
+     * @return изменившаяся строка корзины, новая сумма корзины и остаток товара
+     * @throws ResponseStatusException 404, если товар не найден; 409, если он отсутствует на складе
+     * @throws ResponseStatusException 503, если очередь товара не успела взять запрос (он отменён)
+     */
+    @CartMutation
+    public CartDelta addToCart(String sessionId, Long productId) {
+        CartDelta delta = transactionOperations.execute(status -> {
+            Product product = productRepository.findById(productId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Товар не найден"));
+            if (product.getStockMode() == StockMode.QUEUED && !activeCartStore().isEnabled()) {
+                return null;
+            }
+            if (activeCartStore().isEnabled()) {
+                ActiveCartStore.Edit cart = activeCartStore().edit(sessionId);
+                Product available = findAvailableProduct(productId);
+                decreaseProductStock(available);
+                cart.set(available, cart.quantity(productId) + 1);
+                eventBus.publishAfterCommit(new CartItemAdded(sessionId, productId, LocalDateTime.now()));
+                return cart.delta(productId, currentStock(available));
+            }
+            Product available = findAvailableProduct(productId);
+            Cart cart = findOrCreateActiveCart(sessionId);
+            addOrUpdateCartItem(cart, available);
+            decreaseProductStock(available);
+            return CartDelta.of(cart, productId, currentStock(available));
+        });
+        if (delta != null) {
+            return delta;
+        }
+        awaitAdmission(admissionQueue.submit(sessionId, productId));
+        return transactionOperations.execute(status -> readCartDelta(sessionId, productId));
+    }
+
+    /**
+     * Добавляет по единице товара в корзины пачки сессий одной транзакцией.
+     * Товар достаётся сессиям в порядке их следования в списке, пока он есть на складе;
+     * остаток товара уменьшается один раз на всю пачку.
+     * Сессия может встречаться в списке несколько раз.
+     *
+     * @param productId  идентификатор товара
+     * @param sessionIds идентификаторы сессий в порядке поступления запросов
+     * @return количество первых сессий списка, получивших товар
+     * @throws ResponseStatusException 404, если товар не найден
+     * @throws IllegalStateException   если остаток товара учитывается по частям
      */
     @Transactional
-    public void addToCart(String sessionId, Long productId) {
-        Product product = findAvailableProduct(productId);
+    public int admitBatch(Long productId, List<String> sessionIds) {
+        Product product = productRepository.findByIdForUpdate(productId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Товар не найден"));
+        if (product.getStockMode() == StockMode.SHARDED) {
+            throw new IllegalStateException("Остаток товара учитывается по частям, повторите попытку");
+        }
+        int granted = Math.min(sessionIds.size(), Math.max(product.getQuantity(), 0));
+        if (granted == 0) {
+            return 0;
+        }
+        List<String> admitted = sessionIds.subList(0, granted);
+        Map<String, Cart> carts = findOrCreateActiveCarts(admitted);
+        admitted.forEach(sessionId -> addOrUpdateCartItem(carts.get(sessionId), product));
+
+        product.setQuantity(product.getQuantity() - granted);
+        productRepository.save(product);
+        eventBus.publishAfterCommit(new StockChanged(productId, -granted, LocalDateTime.now()));
+        return granted;
+    }
+
+    /**
+     * Устанавливает количество нескольких товаров в корзине одной транзакцией.
+     * <p>
+     * Все товары блокируются одним запросом в порядке возрастания ID, поэтому параллельные
+     * пакетные изменения не блокируют друг друга взаимно. Остаток каждого товара меняется
+     * на разницу с текущим количеством в корзине; если товара не хватает, в корзину попадает
+     * столько, сколько есть на складе. Строки корзины добавляются, изменяются и удаляются одним запросом.
+     * </p>
+     *
+     * @param sessionId идентификатор сессии пользователя
+     * @param lines     целевые количества товаров (0 — удалить строку);
+     *                  для повторяющегося товара действует последняя строка
+     * @return представление корзины после изменения
+     * @throws ResponseStatusException 400, если строк нет, их слишком много или строка некорректна
+     * @throws ResponseStatusException 404, если товар не найден
+     */
+    @CartMutation
+    @Transactional
+    public CartView setCartLines(String sessionId, List<CartLineRequest> lines) {
+        Map<Long, Integer> targets = normalizeLines(lines);
+        if (activeCartStore().isEnabled()) {
+            return setStoredCartLines(sessionId, targets);
+        }
+        List<Product> products = productRepository.findAllByIdForUpdate(targets.keySet());
+        if (products.size() != targets.size()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Товар не найден");
+        }
         Cart cart = findOrCreateActiveCart(sessionId);
-        addOrUpdateCartItem(cart, product);
-        decreaseProductStock(product);
+        Map<Long, Integer> current = new HashMap<>();
+        Map<Long, Money> linePrices = new HashMap<>();
+        cart.getItems().forEach(item -> {
+            current.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+            linePrices.put(item.getProduct().getId(), item.getPrice());
+        });
+
+        Long[] productIds = new Long[products.size()];
+        Integer[] quantities = new Integer[products.size()];
+        BigDecimal[] prices = new BigDecimal[products.size()];
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            int had = current.getOrDefault(product.getId(), 0);
+            int quantity = had + changeLockedStock(product, targets.get(product.getId()) - had);
+            // существующая строка сохраняет цену, по которой товар попал в корзину
+            Money price = linePrices.getOrDefault(product.getId(), Money.of(product.getPrice()));
+            cart.applyLineChange(price, quantity - had);
+            if (quantity > had) {
+                eventBus.publishAfterCommit(new CartItemAdded(sessionId, product.getId(), LocalDateTime.now()));
+            }
+            productIds[i] = product.getId();
+            quantities[i] = quantity;
+            prices[i] = price.toBigDecimal();
+        }
+        cartItemRepository.upsertLines(cart.getId(), productIds, quantities, prices,
+                LocalDateTime.now().plus(reservationTtl));
+
+        return cartRepository.findWithItemsBySessionIdAndStatus(sessionId, CartStatus.ACTIVE).stream()
+                .findFirst()
+                .map(CartView::from)
+                .orElseGet(CartView::empty);
+    }
+
+    /**
+     * Устанавливает количество нескольких товаров в корзине, хранящейся в {@link ActiveCartStore}.
+     * Остаток товаров меняется так же, как в {@link #setCartLines(String, List)}.
+     *
+     * @param sessionId идентификатор сессии пользователя
+     * @param targets   целевые количества по ID товаров
+     * @return представление корзины после изменения
+     */
+    private CartView setStoredCartLines(String sessionId, Map<Long, Integer> targets) {
+        ActiveCartStore.Edit cart = activeCartStore().edit(sessionId);
+        List<Product> products = productRepository.findAllByIdForUpdate(targets.keySet());
+        if (products.size() != targets.size()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Товар не найден");
+        }
+        for (Product product : products) {
+            int had = cart.quantity(product.getId());
+            int quantity = had + changeLockedStock(product, targets.get(product.getId()) - had);
+            cart.set(product, quantity);
+            if (quantity > had) {
+                eventBus.publishAfterCommit(new CartItemAdded(sessionId, product.getId(), LocalDateTime.now()));
+            }
+        }
+        return cart.view();
+    }
+
+    /**
+     * Проверяет строки пакетного изменения корзины и сводит их к целевому количеству на товар.
+     *
+     * @param lines строки изменения
+     * @return целевые количества по ID товаров в порядке возрастания ID
+     * @throws ResponseStatusException 400, если строк нет, их слишком много или строка некорректна
+     */
+    Map<Long, Integer> normalizeLines(List<CartLineRequest> lines) {
+        if (lines == null || lines.isEmpty() || lines.size() > maxBatchLines) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Количество строк должно быть от 1 до " + maxBatchLines);
+        }
+        Map<Long, Integer> targets = new TreeMap<>();
+        for (CartLineRequest line : lines) {
+            if (line == null || line.getProductId() == null || line.getQuantity() == null || line.getQuantity() < 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Некорректная строка корзины: " + line);
+            }
+            targets.put(line.getProductId(), line.getQuantity());
+        }
+        return targets;
+    }
+
+    /**
+     * Изменяет остаток товара, уже заблокированного в текущей транзакции.
+     * Списывается не больше, чем есть на складе.
+     *
+     * @param product товар
+     * @param delta   количество единиц, которое нужно взять со склада (отрицательное — вернуть)
+     * @return количество фактически взятых единиц (отрицательное — возвращённых)
+     */
+    private int changeLockedStock(Product product, int delta) {
+        if (delta == 0) {
+            return 0;
+        }
+        int taken;
+        if (delta < 0) {
+            taken = delta;
+            if (product.getStockMode() == StockMode.SHARDED) {
+                shardedStockService.release(product.getId(), -delta);
+            } else {
+                product.setQuantity(product.getQuantity() - delta);
+            }
+        } else if (product.getStockMode() == StockMode.SHARDED) {
+            taken = takeShardedStock(product.getId(), delta);
+        } else {
+            taken = Math.min(delta, Math.max(product.getQuantity(), 0));
+            product.setQuantity(product.getQuantity() - taken);
+        }
+        if (taken != 0) {
+            eventBus.publishAfterCommit(new StockChanged(product.getId(), -taken, LocalDateTime.now()));
+        }
+        return taken;
+    }
+
+    /**
+     * Списывает до {@code amount} единиц товара из частей остатка.
+     * Если ни в одной части нет всего количества сразу, товар списывается по одной единице, пока он есть.
+     *
+     * @param productId ID товара
+     * @param amount    количество единиц
+     * @return количество списанных единиц
+     */
+    private int takeShardedStock(Long productId, int amount) {
+        if (shardedStockService.take(productId, amount)) {
+            return amount;
+        }
+        int taken = 0;
+        while (taken < amount && shardedStockService.take(productId, 1)) {
+            taken++;
+        }
+        return taken;
+    }
+
+    /**
+     * Читает строку активной корзины сессии и остаток товара после изменения,
+     * выполненного в другой транзакции (например, очередью товара).
+     *
+     * @param sessionId идентификатор сессии пользователя
+     * @param productId идентификатор товара
+     * @return строка корзины, сумма корзины и остаток товара
+     */
+    private CartDelta readCartDelta(String sessionId, Long productId) {
+        Cart cart = cartRepository.findWithItemsBySessionIdAndStatus(sessionId, CartStatus.ACTIVE).stream()
+                .findFirst()
+                .orElseGet(Cart::new);
+        return CartDelta.of(cart, productId, stockOf(productId));
+    }
+
+    /**
+     * Ждёт результата запроса из очереди товара.
+     *
+     * @param admission результат запроса
+     * @throws ResponseStatusException 409, если товара нет в наличии
+     * @throws ResponseStatusException 503, если очередь не забрала запрос вовремя (запрос отменён)
+     */
+    private void awaitAdmission(CompletableFuture<Void> admission) {
+        try {
+            admission.get(admissionTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw failure(e.getCause());
+        } catch (TimeoutException e) {
+            cancelOrJoin(admission, "Слишком много покупателей, повторите попытку");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelOrJoin(admission, "Слишком много покупателей, повторите попытку");
+        }
+    }
+
+    /**
+     * Отменяет запрос, который очередь ещё не забрала, и сообщает 503. Если пачка с запросом
+     * уже обрабатывается, дожидается её результата, чтобы ответ совпал с содержимым базы данных:
+     * время пачки ограничено ({@code cart.admission.batch-timeout}, {@code checkout.group-commit.batch-timeout}).
+     *
+     * @param pending запрос в очереди
+     * @param busy    сообщение ответа 503
+     * @param <T>     тип результата
+     * @return результат запроса, если пачка его уже обработала
+     */
+    private static <T> T cancelOrJoin(CompletableFuture<T> pending, String busy) {
+        if (pending.cancel(false)) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, busy);
+        }
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            throw failure(e.getCause());
+        }
+    }
+
+    private static RuntimeException failure(Throwable cause) {
+        return cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
     }
 
     /**
@@ -70,25 +489,29 @@ public class CartService {
      *
      * @param productId ID товара
      * @return найденный товар
-     * @throws RuntimeException если товар не найден или его количество равно 0
+     * @throws ResponseStatusException 404, если товар не найден; 409, если его количество равно 0
+     *                                 (для товаров с обычным учётом остатка)
      */
     private Product findAvailableProduct(Long productId) {
         Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException("Товар не найден"));
-        if (product.getQuantity() <= 0) {
-            throw new RuntimeException("Товара нет в наличии");
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Товар не найден"));
+        // остаток товара, учитываемого по частям, проверяется при списании
+        if (product.getStockMode() != StockMode.SHARDED && product.getQuantity() <= 0) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Товара нет в наличии");
         }
         return product;
     }
 
     /**
      * Ищет активную корзину для указанной сессии. Если корзины нет — создаёт новую.
+     * Строка корзины блокируется до конца транзакции, чтобы освобождение просроченных
+     * резервов не удалило загруженные позиции.
      *
      * @param sessionId идентификатор сессии
      * @return активная корзина
      */
     private Cart findOrCreateActiveCart(String sessionId) {
-        return cartRepository.findBySessionIdAndStatus(sessionId, CartStatus.ACTIVE)
+        return cartRepository.findBySessionIdAndStatusForUpdate(sessionId, CartStatus.ACTIVE)
                 .stream()
                 .findFirst()
                 .orElseGet(() -> {
@@ -99,6 +522,29 @@ public class CartService {
                 });
     }
 
+    /**
+     * Находит активные корзины сессий одним запросом и создаёт недостающие.
+     * Строки найденных корзин блокируются до конца транзакции, как в {@link #findOrCreateActiveCart(String)}.
+     *
+     * @param sessionIds идентификаторы сессий
+     * @return активные корзины по идентификаторам сессий
+     */
+    private Map<String, Cart> findOrCreateActiveCarts(Collection<String> sessionIds) {
+        Map<String, Cart> carts = new HashMap<>();
+        cartRepository.findBySessionIdInAndStatusForUpdate(sessionIds, CartStatus.ACTIVE);
+        cartRepository.findWithItemsBySessionIdInAndStatus(sessionIds, CartStatus.ACTIVE)
+                .forEach(cart -> carts.putIfAbsent(cart.getSessionId(), cart));
+        for (String sessionId : sessionIds) {
+            carts.computeIfAbsent(sessionId, id -> {
+                Cart newCart = new Cart();
+                newCart.setSessionId(id);
+                newCart.setStatus(CartStatus.ACTIVE);
+                return cartRepository.save(newCart);
+            });
+        }
+        return carts;
+    }
+
     /**
      * Добавляет товар в корзину или увеличивает его количество, если он уже есть.
      *
@@ -110,27 +556,126 @@ public class CartService {
                 .filter(item -> item.getProduct().getId().equals(product.getId()))
                 .findFirst();
 
+        CartItem line;
         if (existingItem.isPresent()) {
-            existingItem.get().setQuantity(existingItem.get().getQuantity() + 1);
+            line = existingItem.get();
+            line.setQuantity(line.getQuantity() + 1);
         } else {
-            CartItem newItem = new CartItem();
-            newItem.setProduct(product);
-            newItem.setQuantity(1);
-            newItem.setCart(cart);
-            cart.getItems().add(newItem);
+            line = new CartItem();
+            line.setProduct(product);
+            line.setQuantity(1);
+            line.setPrice(Money.of(product.getPrice()));
+            line.setCart(cart);
+            cart.getItems().add(line);
         }
+        cart.applyLineChange(line.getPrice(), 1);
 
+        extendReservation(cart);
         cartRepository.save(cart);
+        eventBus.publishAfterCommit(new CartItemAdded(cart.getSessionId(), product.getId(), LocalDateTime.now()));
     }
 
     /**
      * Уменьшает количество товара на складе на 1 и сохраняет изменения.
      *
      * @param product товар
+     * @throws ResponseStatusException 409, если товара нет в наличии
      */
     private void decreaseProductStock(Product product) {
+        if (!takeProductStock(product)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Товара нет в наличии");
+        }
+    }
+
+    /**
+     * Списывает одну единицу товара со склада, если она есть.
+     * Товары в режиме {@link StockMode#SHARDED} списываются из частей остатка,
+     * не изменяя строку самого товара.
+     *
+     * @param product товар
+     * @return {@code true}, если товар списан
+     */
+    private boolean takeProductStock(Product product) {
+        if (product.getStockMode() == StockMode.SHARDED) {
+            boolean taken = shardedStockService.take(product.getId(), 1);
+            if (taken) {
+                eventBus.publishAfterCommit(new StockChanged(product.getId(), -1, LocalDateTime.now()));
+            }
+            return taken;
+        }
+        lockForStockUpdate(product);
+        if (product.getQuantity() <= 0) {
+            return false;
+        }
         product.setQuantity(product.getQuantity() - 1);
         productRepository.save(product);
+        eventBus.publishAfterCommit(new StockChanged(product.getId(), -1, LocalDateTime.now()));
+        return true;
+    }
+
+    /**
+     * Блокирует строку товара до конца транзакции и перечитывает его остаток,
+     * чтобы параллельные изменения остатка не перезаписывали друг друга.
+     *
+     * @param product товар
+     */
+    private void lockForStockUpdate(Product product) {
+        if (entityManager.contains(product)) {
+            entityManager.refresh(product, LockModeType.PESSIMISTIC_WRITE);
+        }
+    }
+
+    /**
+     * Возвращает товар на склад.
+     *
+     * @param product товар
+     * @param amount  количество единиц
+     */
+    private void returnProductStock(Product product, int amount) {
+        eventBus.publishAfterCommit(new StockChanged(product.getId(), amount, LocalDateTime.now()));
+        if (product.getStockMode() == StockMode.SHARDED) {
+            shardedStockService.release(product.getId(), amount);
+            return;
+        }
+        lockForStockUpdate(product);
+        product.setQuantity(product.getQuantity() + amount);
+        productRepository.save(product);
+    }
+
+    /**
+     * Возвращает текущий остаток товара в рамках текущей транзакции.
+     * Для товаров в режиме {@link StockMode#SHARDED} остаток суммируется по частям.
+     *
+     * @param product товар
+     * @return количество единиц на складе
+     */
+    private int currentStock(Product product) {
+        if (product.getStockMode() == StockMode.SHARDED) {
+            return shardedStockService.available(product.getId());
+        }
+        return product.getQuantity();
+    }
+
+    /**
+     * Возвращает текущий остаток товара, отсутствующего в корзине.
+     *
+     * @param productId идентификатор товара
+     * @return количество единиц на складе (0, если товар не найден)
+     */
+    private int stockOf(Long productId) {
+        return productRepository.findById(productId)
+                .map(this::currentStock)
+                .orElse(0);
+    }
+
+    /**
+     * Продлевает резерв всех позиций корзины на {@code cart.reservation.ttl} от текущего момента.
+     *
+     * @param cart корзина
+     */
+    private void extendReservation(Cart cart) {
+        LocalDateTime reservedUntil = LocalDateTime.now().plus(reservationTtl);
+        cart.getItems().forEach(item -> item.setReservedUntil(reservedUntil));
     }
 
     /**
@@ -139,25 +684,42 @@ public class CartService {
      *
      * @param sessionId идентификатор сессии пользователя
      * @param productId идентификатор удаляемого товара
-     * @throws RuntimeException если корзина не найдена
+     * @return изменившаяся строка корзины, новая сумма корзины и остаток товара
+     * @throws ResponseStatusException 404, если корзина не найдена
      */
-    public void removeFromCart(String sessionId, Long productId) {
-        Cart cart = cartRepository.findBySessionId(sessionId)
-                .orElseThrow(() -> new RuntimeException("Корзина не найдена"));
+    @CartMutation
+    @Transactional
+    public CartDelta removeFromCart(String sessionId, Long productId) {
+        if (activeCartStore().isEnabled()) {
+            ActiveCartStore.Edit cart = editExistingCart(sessionId);
+            int quantity = cart.quantity(productId);
+            if (quantity == 0) {
+                return cart.delta(productId, stockOf(productId));
+            }
+            Product removed = findCartProduct(productId);
+            returnProductStock(removed, quantity);
+            cart.set(removed, 0);
+            return cart.delta(productId, currentStock(removed));
+        }
+        Cart cart = cartRepository.findBySessionIdForUpdate(sessionId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Корзина не найдена"));
 
+        Product removed = null;
         Iterator<CartItem> iterator = cart.getItems().iterator();
         while (iterator.hasNext()) {
             CartItem item = iterator.next();
             if (item.getProduct().getId().equals(productId)) {
-                Product product = item.getProduct();
-                product.setQuantity(product.getQuantity() + item.getQuantity());
-                productRepository.save(product);
+                removed = item.getProduct();
+                returnProductStock(removed, item.getQuantity());
+                cart.applyLineChange(item.getPrice(), -item.getQuantity());
 
                 iterator.remove(); // удаляем из списка
                 break;
             }
         }
+        extendReservation(cart);
         cartRepository.save(cart);
+        return CartDelta.of(cart, productId, removed != null ? currentStock(removed) : stockOf(productId));
     }
 
     /**
@@ -167,24 +729,41 @@ public class CartService {
      *
      * @param sessionId идентификатор сессии пользователя
      * @param productId идентификатор товара
-     * @throws RuntimeException если корзина не найдена
+     * @return изменившаяся строка корзины, новая сумма корзины и остаток товара
+     * @throws ResponseStatusException 404, если корзина не найдена
      */
-    public void increaseItem(String sessionId, Long productId) {
-        Cart cart = cartRepository.findBySessionId(sessionId)
-                .orElseThrow(() -> new RuntimeException("Корзина не найдена"));
+    @CartMutation
+    @Transactional
+    public CartDelta increaseItem(String sessionId, Long productId) {
+        if (activeCartStore().isEnabled()) {
+            ActiveCartStore.Edit cart = editExistingCart(sessionId);
+            int quantity = cart.quantity(productId);
+            if (quantity == 0) {
+                return cart.delta(productId, stockOf(productId));
+            }
+            Product product = findCartProduct(productId);
+            if (takeProductStock(product)) {
+                cart.set(product, quantity + 1);
+            }
+            return cart.delta(productId, currentStock(product));
+        }
+        Cart cart = cartRepository.findBySessionIdForUpdate(sessionId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Корзина не найдена"));
 
-        cart.getItems().stream()
+        Optional<CartItem> line = cart.getItems().stream()
                 .filter(item -> item.getProduct().getId().equals(productId))
-                .findFirst()
-                .ifPresent(item -> {
-                    Product product = item.getProduct();
-                    if (product.getQuantity() > 0) {
-                        item.setQuantity(item.getQuantity() + 1);
-                        product.setQuantity(product.getQuantity() - 1);
-                        productRepository.save(product);
-                        cartRepository.save(cart);
-                    }
-                });
+                .findFirst();
+        line.ifPresent(item -> {
+            if (takeProductStock(item.getProduct())) {
+                item.setQuantity(item.getQuantity() + 1);
+                cart.applyLineChange(item.getPrice(), 1);
+                extendReservation(cart);
+                cartRepository.save(cart);
+            }
+        });
+        return CartDelta.of(cart, productId, line
+                .map(item -> currentStock(item.getProduct()))
+                .orElseGet(() -> stockOf(productId)));
     }
 
     /**
@@ -194,17 +773,34 @@ public class CartService {
      *
      * @param sessionId идентификатор сессии пользователя
      * @param productId идентификатор товара
-     * @throws RuntimeException если корзина не найдена
+     * @return изменившаяся строка корзины, новая сумма корзины и остаток товара
+     * @throws ResponseStatusException 404, если корзина не найдена
      */
-    public void decreaseItem(String sessionId, Long productId) {
-        Cart cart = cartRepository.findBySessionId(sessionId)
-                .orElseThrow(() -> new RuntimeException("Корзина не найдена"));
+    @CartMutation
+    @Transactional
+    public CartDelta decreaseItem(String sessionId, Long productId) {
+        if (activeCartStore().isEnabled()) {
+            ActiveCartStore.Edit cart = editExistingCart(sessionId);
+            int quantity = cart.quantity(productId);
+            if (quantity == 0) {
+                return cart.delta(productId, stockOf(productId));
+            }
+            Product product = findCartProduct(productId);
+            returnProductStock(product, 1);
+            cart.set(product, quantity - 1);
+            return cart.delta(productId, currentStock(product));
+        }
+        Cart cart = cartRepository.findBySessionIdForUpdate(sessionId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Корзина не найдена"));
 
+        Optional<Product> product = cart.getItems().stream()
+                .map(CartItem::getProduct)
+                .filter(candidate -> candidate.getId().equals(productId))
+                .findFirst();
         cart.getItems().removeIf(item -> {
             if (item.getProduct().getId().equals(productId)) {
-                Product product = item.getProduct();
-                product.setQuantity(product.getQuantity() + 1);
-                productRepository.save(product);
+                returnProductStock(item.getProduct(), 1);
+                cart.applyLineChange(item.getPrice(), -1);
 
                 if (item.getQuantity() > 1) {
                     item.setQuantity(item.getQuantity() - 1);
@@ -215,7 +811,48 @@ public class CartService {
             }
             return false;
         });
+        extendReservation(cart);
         cartRepository.save(cart);
+        return CartDelta.of(cart, productId, product
+                .map(this::currentStock)
+                .orElseGet(() -> stockOf(productId)));
+    }
+
+    /**
+     * Открывает для изменения корзину сессии, хранящуюся в {@link ActiveCartStore}.
+     *
+     * @param sessionId идентификатор сессии пользователя
+     * @return изменяемая корзина
+     * @throws ResponseStatusException 404, если корзина не найдена
+     */
+    private ActiveCartStore.Edit editExistingCart(String sessionId) {
+        ActiveCartStore.Edit cart = activeCartStore().edit(sessionId);
+        if (cart.isNew()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Корзина не найдена");
+        }
+        return cart;
+    }
+
+    /**
+     * Возвращает хранилище активных корзин, выбранное свойством {@code cart.store.mode}.
+     * В режиме {@code DATABASE} возвращается выключенное хранилище.
+     *
+     * @return хранилище активных корзин
+     */
+    private ActiveCartStore activeCartStore() {
+        return unloggedCartStore.isEnabled() ? unloggedCartStore : memoryCartStore;
+    }
+
+    /**
+     * Находит товар из строки корзины.
+     *
+     * @param productId ID товара
+     * @return товар
+     * @throws ResponseStatusException 404, если товар не найден
+     */
+    private Product findCartProduct(Long productId) {
+        return productRepository.findById(productId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Товар не найден"));
     }
 
     /**
@@ -237,18 +874,126 @@ public class CartService {
     }
 
     /**
-     * Оформляет заказ, изменяя статус корзины на COMPLETED.
+     * Оформляет заказ без письма с подтверждением.
      *
      * @param sessionId идентификатор сессии пользователя
      * @return оформленная корзина (заказ)
      * @throws IllegalStateException если активная корзина не найдена
+     * @see #checkout(String, String)
      */
+    @CartMutation
     public Cart checkout(String sessionId) {
-        Cart cart = cartRepository.findBySessionIdAndStatus(sessionId, CartStatus.ACTIVE)
-                .stream().findFirst()
-                .orElseThrow(() -> new IllegalStateException("Активная корзина не найдена"));
+        return checkout(sessionId, null);
+    }
 
-        cart.setStatus(CartStatus.COMPLETED);
-        return cartRepository.save(cart);
+    /**
+     * Оформляет заказ, изменяя статус корзины на COMPLETED.
+     * <p>
+     * Заказ оформляется через {@link CheckoutCoordinator} вместе с параллельными оформлениями
+     * других сессий одной транзакцией; метод возвращает управление после её коммита.
+     * Если указан адрес электронной почты, в той же транзакции в исходящую очередь
+     * записывается письмо с подтверждением; его отправляет {@link OrderMailDispatcher}.
+     * Корзина, хранящаяся в памяти, перед оформлением записывается в базу данных,
+     * а после оформления удаляется из памяти. Корзина из нежурналируемых таблиц переносится
+     * в таблицы заказов одним запросом ({@link UnloggedCartStore#moveToOrder(String)}).
+     * </p>
+     *
+     * @param sessionId идентификатор сессии пользователя
+     * @param email     адрес для письма с подтверждением или {@code null}
+     * @return оформленная корзина (заказ)
+     * @throws IllegalStateException   если активная корзина не найдена
+     * @throws ResponseStatusException 400, если адрес электронной почты некорректен;
+     *                                 503, если заказ не забрали в пачку за {@code checkout.timeout}
+     */
+    @CartMutation
+    public Cart checkout(String sessionId, String email) {
+        String recipient = normalizeEmail(email);
+        if (activeCartStore().isEnabled()) {
+            activeCartStore().flush(sessionId);
+        }
+        Cart completed = awaitCheckout(checkoutCoordinator.submit(sessionId, recipient));
+        if (activeCartStore().isEnabled()) {
+            activeCartStore().evict(sessionId);
+        }
+        return completed;
+    }
+
+    /**
+     * Ждёт оформления заказа в пачке {@link CheckoutCoordinator}.
+     *
+     * @param order результат оформления
+     * @return оформленная корзина (заказ)
+     * @throws ResponseStatusException 503, если запрос не забрали в пачку вовремя (запрос отменён)
+     */
+    private Cart awaitCheckout(CompletableFuture<Cart> order) {
+        try {
+            return order.get(checkoutTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw failure(e.getCause());
+        } catch (TimeoutException e) {
+            return cancelOrJoin(order, "Слишком много заказов, повторите попытку");
+        } catch (InterruptedException e) {
+            // заказ, забранный в пачку, может быть оформлен и после прерывания: дожидаемся результата
+            Thread.currentThread().interrupt();
+            return cancelOrJoin(order, "Слишком много заказов, повторите попытку");
+        }
+    }
+
+    /**
+     * Переводит активную корзину сессии в статус COMPLETED и, если указан адрес,
+     * ставит письмо с подтверждением в исходящую очередь.
+     * Вызывается {@link CheckoutCoordinator} для каждого заказа пачки внутри транзакции пачки;
+     * собственной транзакции не открывает, чтобы ошибка одного заказа не помечала
+     * к откату всю пачку.
+     *
+     * @param sessionId идентификатор сессии пользователя
+     * @param email     адрес для письма с подтверждением или {@code null}
+     * @return оформленная корзина (заказ)
+     * @throws IllegalStateException если активная корзина не найдена
+     */
+    public Cart completeCheckout(String sessionId, String email) {
+        Cart order;
+        if (unloggedCartStore.isEnabled()) {
+            Long orderId = unloggedCartStore.moveToOrder(sessionId);
+            order = cartRepository.findWithItemsById(orderId)
+                    .orElseThrow(() -> new IllegalStateException("Заказ не найден: " + orderId));
+        } else {
+            Cart cart = cartRepository.findBySessionIdAndStatusForUpdate(sessionId, CartStatus.ACTIVE)
+                    .stream().findFirst()
+                    .orElseThrow(() -> new IllegalStateException("Активная корзина не найдена"));
+
+            cart.setStatus(CartStatus.COMPLETED);
+            cart.setCompletedAt(LocalDateTime.now());
+            cart.getItems().forEach(item -> item.setReservedUntil(null));
+            order = cartRepository.save(cart);
+        }
+
+        if (email != null) {
+            OutboxMessage confirmation = new OutboxMessage();
+            confirmation.setOrderId(order.getId());
+            confirmation.setRecipient(email);
+            outboxRepository.save(confirmation);
+        }
+        return order;
+    }
+
+    /**
+     * Проверяет адрес электронной почты, указанный при оформлении заказа.
+     *
+     * @param email адрес или пустая строка / {@code null}, если письмо не нужно
+     * @return адрес без пробелов по краям или {@code null}
+     * @throws ResponseStatusException 400, если адрес некорректен
+     */
+    static String normalizeEmail(String email) {
+        if (!StringUtils.hasText(email)) {
+            return null;
+        }
+        String trimmed = email.trim();
+        try {
+            new InternetAddress(trimmed, true);
+        } catch (AddressException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Некорректный адрес электронной почты");
+        }
+        return trimmed;
     }
 }
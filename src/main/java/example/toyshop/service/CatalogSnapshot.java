@@ -0,0 +1,328 @@
+package example.toyshop.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import example.toyshop.dto.CatalogFilter;
+import example.toyshop.dto.ProductCard;
+import example.toyshop.event.DomainEvent;
+import example.toyshop.event.DomainEventConsumer;
+import example.toyshop.event.StockChanged;
+import example.toyshop.model.Money;
+import example.toyshop.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Снимок каталога в памяти узла для витрины: сортировка, фильтры и страницы без обращения к базе данных.
+ * <p>
+ * Снимок хранится по столбцам: ID, цена в копейках и остаток — примитивные массивы, названия
+ * интернированы, а для сортировок по цене и по названию заранее построены перестановки строк
+ * (порядок «по убыванию» — та же перестановка, пройденная с конца). Порядок по названию берётся
+ * из базы данных при построении, поэтому совпадает с её правилами сортировки строк. Страница без фильтров —
+ * срез перестановки, фильтр по цене при сортировке по цене — двоичный поиск по ней; остальные
+ * условия проверяются проходом по столбцам.
+ * </p>
+ * <p>
+ * Снимок неизменяем и заменяется целиком. Раз в {@code catalog.snapshot.refresh-interval} он строится
+ * заново, если на узле изменился товар ({@link #catalogChanged()}) или снимок старше
+ * {@code catalog.snapshot.max-age} (так учитываются изменения на других узлах), а изменения остатков
+ * из событий {@link StockChanged} накапливаются и применяются к столбцу остатков без обращения
+ * к базе данных. Пока снимок не построен, витрина читается из базы данных.
+ * </p>
+ */
+@Slf4j
+@Component
+public class CatalogSnapshot implements DomainEventConsumer {
+
+    private final ProductRepository productRepository;
+    private final TransactionOperations transactionOperations;
+    private final boolean enabled;
+    private final Duration maxAge;
+
+    private final AtomicBoolean catalogDirty = new AtomicBoolean();
+    private final ConcurrentHashMap<Long, Integer> stockDeltas = new ConcurrentHashMap<>();
+
+    private volatile Columns columns;
+
+    public CatalogSnapshot(ProductRepository productRepository,
+                           TransactionOperations transactionOperations,
+                           @Value("${catalog.snapshot.enabled:true}") boolean enabled,
+                           @Value("${catalog.snapshot.max-age:1m}") Duration maxAge) {
+        this.productRepository = productRepository;
+        this.transactionOperations = transactionOperations;
+        this.enabled = enabled;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Возвращает страницу карточек товаров из снимка.
+     *
+     * @param keyword подстрока названия без учёта регистра (может быть null или пустой)
+     * @param sort    сортировка (price_asc, price_desc, name_asc, name_desc; остальные — по цене)
+     * @param filter  фильтры по цене и наличию
+     * @param page    номер страницы (0-based)
+     * @param size    размер страницы
+     * @return страница карточек или пустой результат, если снимок не построен
+     */
+    public Optional<Page<ProductCard>> find(String keyword, String sort, CatalogFilter filter, int page, int size) {
+        Columns snapshot = columns;
+        return snapshot != null
+                ? Optional.of(snapshot.find(keyword, sort, filter, PageRequest.of(page, size)))
+                : Optional.empty();
+    }
+
+    /**
+     * Отмечает, что товары каталога изменились; снимок будет построен заново после фиксации транзакции.
+     */
+    public void catalogChanged() {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    catalogDirty.set(true);
+                }
+            });
+        } else {
+            catalogDirty.set(true);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "catalog-snapshot";
+    }
+
+    /**
+     * Запоминает изменение остатка товара до следующего обновления снимка.
+     *
+     * @param event доменное событие
+     */
+    @Override
+    public void accept(DomainEvent event) {
+        if (enabled && event instanceof StockChanged changed) {
+            stockDeltas.merge(changed.productId(), changed.delta(), Integer::sum);
+        }
+    }
+
+    /**
+     * Строит снимок заново или применяет накопленные изменения остатков, если с прошлого раза
+     * что-то изменилось.
+     */
+    @Scheduled(fixedDelayString = "${catalog.snapshot.refresh-interval:1s}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        Columns snapshot = columns;
+        boolean changed = catalogDirty.getAndSet(false);
+        if (snapshot != null && !changed && System.nanoTime() - snapshot.loadedAt <= maxAge.toNanos()) {
+            if (stockDeltas.isEmpty()) {
+                return;
+            }
+            Columns updated = snapshot.withStock(takeStockDeltas());
+            if (updated != null) {
+                columns = updated;
+                return;
+            }
+            // товара нет в снимке: он добавлен на другом узле — строим снимок заново
+        }
+        // изменения, зафиксированные до чтения, уже учтены в прочитанных остатках
+        stockDeltas.clear();
+        Columns rebuilt = transactionOperations.execute(status -> Columns.of(productRepository.findCatalog()));
+        columns = rebuilt;
+        log.debug("Снимок каталога построен: {} товаров", rebuilt.ids.length);
+    }
+
+    /**
+     * Забирает накопленные изменения остатков; изменения, пришедшие во время вызова, остаются
+     * до следующего обновления.
+     */
+    private Map<Long, Integer> takeStockDeltas() {
+        Map<Long, Integer> deltas = new HashMap<>();
+        for (Long productId : stockDeltas.keySet()) {
+            Integer delta = stockDeltas.remove(productId);
+            if (delta != null) {
+                deltas.put(productId, delta);
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * Неизменяемый снимок каталога по столбцам; строки упорядочены по возрастанию ID.
+     */
+    private static final class Columns {
+
+        private final long[] ids;
+        private final long[] prices;
+        private final int[] quantities;
+        private final String[] names;
+        private final String[] searchNames;
+        private final String[] imageUrls;
+        private final int[] byPrice;
+        private final int[] byName;
+        private final long loadedAt;
+
+        private Columns(long[] ids, long[] prices, int[] quantities, String[] names, String[] searchNames,
+                        String[] imageUrls, int[] byPrice, int[] byName, long loadedAt) {
+            this.ids = ids;
+            this.prices = prices;
+            this.quantities = quantities;
+            this.names = names;
+            this.searchNames = searchNames;
+            this.imageUrls = imageUrls;
+            this.byPrice = byPrice;
+            this.byName = byName;
+            this.loadedAt = loadedAt;
+        }
+
+        /**
+         * Строит снимок по карточкам, упорядоченным по названию в базе данных.
+         */
+        static Columns of(List<ProductCard> cards) {
+            int n = cards.size();
+            // nameRanks[row] — позиция строки в порядке по названию
+            int[] nameRanks = IntStream.range(0, n).boxed()
+                    .sorted(Comparator.comparingLong(rank -> cards.get(rank).getId()))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            int[] byName = new int[n];
+            long[] ids = new long[n];
+            long[] prices = new long[n];
+            int[] quantities = new int[n];
+            String[] names = new String[n];
+            String[] searchNames = new String[n];
+            String[] imageUrls = new String[n];
+            for (int i = 0; i < n; i++) {
+                ProductCard card = cards.get(nameRanks[i]);
+                byName[nameRanks[i]] = i;
+                ids[i] = card.getId();
+                prices[i] = Money.of(card.getPrice()).minorUnits();
+                quantities[i] = card.getQuantity();
+                names[i] = card.getName().intern();
+                searchNames[i] = names[i].toUpperCase(Locale.ROOT).intern();
+                imageUrls[i] = card.getImageUrl() != null ? card.getImageUrl().intern() : null;
+            }
+            // строки упорядочены по ID, поэтому устойчивая сортировка даёт второй ключ (id) даром
+            int[] byPrice = IntStream.range(0, n).boxed()
+                    .sorted(Comparator.comparingLong(row -> prices[row]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            return new Columns(ids, prices, quantities, names, searchNames, imageUrls, byPrice, byName,
+                    System.nanoTime());
+        }
+
+        /**
+         * Возвращает снимок с остатками, изменёнными на указанные величины, или {@code null},
+         * если какого-то товара нет в снимке.
+         */
+        Columns withStock(Map<Long, Integer> deltas) {
+            int[] updated = quantities.clone();
+            for (Map.Entry<Long, Integer> delta : deltas.entrySet()) {
+                int row = Arrays.binarySearch(ids, delta.getKey());
+                if (row < 0) {
+                    return null;
+                }
+                updated[row] += delta.getValue();
+            }
+            // возраст снимка не сбрасывается: состав каталога перечитывается не реже max-age
+            return new Columns(ids, prices, updated, names, searchNames, imageUrls, byPrice, byName, loadedAt);
+        }
+
+        Page<ProductCard> find(String keyword, String sort, CatalogFilter filter, PageRequest pageable) {
+            boolean byNames = "name_asc".equals(sort) || "name_desc".equals(sort);
+            boolean descending = "price_desc".equals(sort) || "name_desc".equals(sort);
+            int[] order = byNames ? byName : byPrice;
+            long minPrice = filter.getMinPrice() != null ? minor(filter.getMinPrice(), RoundingMode.CEILING) : Long.MIN_VALUE;
+            long maxPrice = filter.getMaxPrice() != null ? minor(filter.getMaxPrice(), RoundingMode.FLOOR) : Long.MAX_VALUE;
+            String search = keyword != null && !keyword.isEmpty() ? keyword.toUpperCase(Locale.ROOT) : null;
+
+            // при сортировке по цене диапазон цен — непрерывный отрезок перестановки
+            int from = byNames ? 0 : lowerBound(minPrice);
+            int to = byNames ? order.length : lowerBound(maxPrice == Long.MAX_VALUE ? maxPrice : maxPrice + 1);
+            boolean priceChecked = !byNames || minPrice == Long.MIN_VALUE && maxPrice == Long.MAX_VALUE;
+            long offset = pageable.getOffset();
+            List<ProductCard> content = new ArrayList<>(pageable.getPageSize());
+
+            if (priceChecked && search == null && !filter.isInStock()) {
+                long total = Math.max(0, to - from);
+                for (long i = offset; i < Math.min(total, offset + pageable.getPageSize()); i++) {
+                    content.add(card(order[descending ? to - 1 - (int) i : from + (int) i]));
+                }
+                return new PageImpl<>(content, pageable, total);
+            }
+            long total = 0;
+            for (int i = 0; i < to - from; i++) {
+                int row = order[descending ? to - 1 - i : from + i];
+                if (!priceChecked && (prices[row] < minPrice || prices[row] > maxPrice)
+                        || filter.isInStock() && quantities[row] <= 0
+                        || search != null && !searchNames[row].contains(search)) {
+                    continue;
+                }
+                if (total >= offset && content.size() < pageable.getPageSize()) {
+                    content.add(card(row));
+                }
+                total++;
+            }
+            return new PageImpl<>(content, pageable, total);
+        }
+
+        /**
+         * Первая позиция перестановки по цене с ценой не меньше заданной.
+         */
+        private int lowerBound(long price) {
+            int low = 0;
+            int high = byPrice.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (prices[byPrice[middle]] < price) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private ProductCard card(int row) {
+            return new ProductCard(ids[row], names[row], Money.ofMinor(prices[row]).toBigDecimal(), imageUrls[row],
+                    quantities[row]);
+        }
+
+        /**
+         * Переводит границу цены в копейки; границы за пределами {@code long} снимают ограничение.
+         */
+        private static long minor(BigDecimal price, RoundingMode rounding) {
+            BigDecimal minor = price.setScale(Money.SCALE, rounding).movePointRight(Money.SCALE);
+            if (minor.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) >= 0) {
+                return Long.MAX_VALUE;
+            }
+            return minor.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) <= 0 ? Long.MIN_VALUE : minor.longValue();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package example.toyshop.service;
+
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import example.toyshop.event.DomainEventBus;
+import example.toyshop.event.OrderCompleted;
+import example.toyshop.model.Cart;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Групповое оформление заказов: параллельные оформления объединяются в одну транзакцию.
+ * <p>
+ * Первый запрос пачки ждёт попутчиков не дольше {@code checkout.group-commit.window}
+ * (или пока пачка не наберёт {@code checkout.group-commit.max-batch-size} заказов),
+ * после чего все заказы пачки фиксируются одним коммитом. Каждый заказ выполняется
+ * внутри собственной точки сохранения: ошибка одного заказа откатывает только его,
+ * остальные заказы пачки оформляются.
+ * </p>
+ * <p>
+ * После коммита каждый оформленный заказ публикуется в {@link DomainEventBus}
+ * как {@link OrderCompleted}: вызывающий получает заказ сразу, а действия после оформления
+ * выполняются получателями событий в фоне.
+ * </p>
+ * <p>
+ * При {@code checkout.group-commit.enabled=false} каждый заказ оформляется отдельной
+ * транзакцией в потоке вызывающего.
+ * </p>
+ * <p>
+ * Запрос, забранный в пачку, больше нельзя отменить: {@link CompletableFuture#cancel(boolean)}
+ * возвращает {@code false}, и вызывающий код дожидается результата пачки. Время транзакции пачки
+ * ограничено {@code checkout.group-commit.batch-timeout}, после чего она откатывается.
+ * </p>
+ */
+@Component
+public class CheckoutCoordinator {
+
+    private final CartService cartService;
+    private final EntityManager entityManager;
+    private final DomainEventBus eventBus;
+    private final TransactionTemplate batchTransaction;
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    private final BlockingQueue<Checkout> queue = new LinkedBlockingQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public CheckoutCoordinator(@Lazy CartService cartService,
+                               EntityManager entityManager,
+                               DomainEventBus eventBus,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${checkout.group-commit.enabled:true}") boolean enabled,
+                               @Value("${checkout.group-commit.window:5ms}") Duration window,
+                               @Value("${checkout.group-commit.max-batch-size:100}") int maxBatchSize,
+                               @Value("${checkout.group-commit.batch-timeout:5s}") Duration batchTimeout) {
+        this.cartService = cartService;
+        this.entityManager = entityManager;
+        this.eventBus = eventBus;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.batchTransaction.setTimeout((int) Math.max(1, batchTimeout.toSeconds()));
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Ставит оформление заказа сессии в очередь ближайшей пачки.
+     *
+     * @param sessionId идентификатор сессии пользователя
+     * @param email     адрес для письма с подтверждением заказа или {@code null}
+     * @return оформленный заказ после коммита пачки или исключение, если оформить заказ не удалось.
+     *         Отмена удаётся, только пока запрос не забран в пачку; отменённый запрос не оформляется
+     */
+    public CompletableFuture<Cart> submit(String sessionId, String email) {
+        Checkout checkout = new Checkout(sessionId, email);
+        if (!enabled) {
+            checkout.claim();
+            commit(List.of(checkout));
+            return checkout;
+        }
+        queue.add(checkout);
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+        return checkout;
+    }
+
+    /**
+     * Собирает и оформляет пачки, пока очередь не опустеет.
+     */
+    private void drain() {
+        while (true) {
+            Checkout first = queue.poll();
+            if (first == null) {
+                draining.set(false);
+                // запрос мог появиться после опустошения очереди, но до снятия флага
+                if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            if (first.claim()) {
+                commit(collectBatch(first));
+            }
+        }
+    }
+
+    /**
+     * Дополняет пачку запросами, пришедшими в течение окна ожидания.
+     * Отменённые запросы пропускаются.
+     *
+     * @param first первый запрос пачки, уже забранный
+     * @return запросы пачки в порядке поступления
+     */
+    private List<Checkout> collectBatch(Checkout first) {
+        List<Checkout> batch = new ArrayList<>();
+        batch.add(first);
+        long deadline = System.nanoTime() + windowNanos;
+        try {
+            while (batch.size() < maxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                Checkout next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                if (next == null) {
+                    break;
+                }
+                if (next.claim()) {
+                    batch.add(next);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return batch;
+    }
+
+    /**
+     * Оформляет заказы пачки в одной транзакции и сообщает результаты после коммита.
+     * Если транзакция пачки не зафиксировалась (например, ошибка базы данных в одном
+     * из заказов пометила её к откату), заказы оформляются повторно по одному.
+     *
+     * @param batch запросы пачки
+     */
+    private void commit(List<Checkout> batch) {
+        try {
+            batchTransaction.executeWithoutResult(status -> batch.forEach(this::completeWithinSavepoint));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).completeExceptionally(e);
+            } else {
+                batch.forEach(checkout -> commit(List.of(checkout)));
+            }
+            return;
+        }
+        batch.forEach(Checkout::complete);
+        batch.stream()
+                .filter(checkout -> checkout.event != null)
+                .forEach(checkout -> eventBus.publish(checkout.event));
+    }
+
+    /**
+     * Оформляет один заказ пачки внутри точки сохранения: при ошибке откатываются
+     * только изменения этого заказа.
+     *
+     * @param checkout запрос на оформление
+     */
+    private void completeWithinSavepoint(Checkout checkout) {
+        Session session = entityManager.unwrap(Session.class);
+        Savepoint savepoint = session.doReturningWork(Connection::setSavepoint);
+        try {
+            checkout.order = cartService.completeCheckout(checkout.sessionId, checkout.email);
+            entityManager.flush();
+            checkout.event = OrderCompleted.of(checkout.order);
+            checkout.failure = null;
+            session.doWork(connection -> connection.releaseSavepoint(savepoint));
+        } catch (RuntimeException e) {
+            session.doWork(connection -> connection.rollback(savepoint));
+            checkout.order = null;
+            checkout.event = null;
+            checkout.failure = e;
+        } finally {
+            // изменения заказа уже в базе (или откатены), поэтому контекст хранения очищается:
+            // проверка изменений при следующих сбросах не перебирает сущности всей пачки
+            entityManager.clear();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Запрос на оформление заказа, его результат в текущей попытке коммита и итоговый результат.
+     */
+    @RequiredArgsConstructor
+    private static final class Checkout extends CompletableFuture<Cart> {
+
+        private final String sessionId;
+        private final String email;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private Cart order;
+        private OrderCompleted event;
+        private RuntimeException failure;
+
+        /**
+         * Сообщает результат оформления после коммита транзакции.
+         */
+        void complete() {
+            if (failure != null) {
+                completeExceptionally(failure);
+            } else {
+                complete(order);
+            }
+        }
+
+        /**
+         * Забирает запрос в пачку или для отмены; удаётся только один раз.
+         */
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        /**
+         * Отменяет запрос, если он ещё не забран в пачку.
+         *
+         * @return {@code true}, если запрос отменён и не будет оформлен
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return claim() && super.cancel(mayInterruptIfRunning);
+        }
+    }
+}
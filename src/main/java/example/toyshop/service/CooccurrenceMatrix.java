@@ -0,0 +1,189 @@
+package example.toyshop.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Разреженная матрица совместных покупок товаров: для каждого товара — сколько заказов содержали
+ * его вместе с каждым другим товаром.
+ * <p>
+ * Строка матрицы — хэш-таблица с открытой адресацией на примитивных массивах (ID товара → счётчик),
+ * поэтому ни ключи, ни счётчики строк не упаковываются в объекты. Матрица симметрична: заказ
+ * увеличивает счётчики каждой упорядоченной пары своих товаров. Класс не потокобезопасен.
+ * </p>
+ */
+public class CooccurrenceMatrix {
+
+    private final Map<Long, Row> rows = new HashMap<>();
+
+    /**
+     * Учитывает заказ: увеличивает счётчики всех пар различных товаров заказа.
+     *
+     * @param productIds различные ID товаров заказа
+     */
+    public void addOrder(long[] productIds) {
+        for (long productId : productIds) {
+            Row row = rows.computeIfAbsent(productId, id -> new Row());
+            for (long other : productIds) {
+                if (other != productId) {
+                    row.add(other, 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Прибавляет к матрице счётчики другой матрицы; после этого другая матрица не используется.
+     *
+     * @param other прибавляемая матрица
+     */
+    public void merge(CooccurrenceMatrix other) {
+        other.rows.forEach((productId, row) -> {
+            Row target = rows.get(productId);
+            if (target == null) {
+                rows.put(productId, row);
+            } else {
+                row.forEach(target::add);
+            }
+        });
+    }
+
+    /**
+     * Возвращает товары, чаще всего покупаемые вместе с указанным: по убыванию счётчика,
+     * при равенстве — по возрастанию ID.
+     *
+     * @param productId ID товара
+     * @param limit     максимальное количество товаров
+     * @return ID товаров
+     */
+    public long[] top(long productId, int limit) {
+        Row row = rows.get(productId);
+        return row != null ? row.top(limit) : new long[0];
+    }
+
+    /**
+     * Возвращает количество заказов, в которых товары куплены вместе.
+     *
+     * @param productId ID товара
+     * @param other     ID другого товара
+     * @return счётчик пары
+     */
+    public int count(long productId, long other) {
+        Row row = rows.get(productId);
+        return row != null ? row.get(other) : 0;
+    }
+
+    /**
+     * Возвращает ID товаров, для которых есть хотя бы одна совместная покупка.
+     *
+     * @return ID товаров
+     */
+    public long[] productIds() {
+        return rows.keySet().stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Получатель счётчиков строки без упаковки ключа и значения.
+     */
+    @FunctionalInterface
+    private interface CountConsumer {
+
+        void accept(long key, int count);
+    }
+
+    /**
+     * Строка матрицы: хэш-таблица с открытой адресацией и линейным пробированием.
+     */
+    private static final class Row {
+
+        private static final long EMPTY = 0;
+
+        private long[] keys = new long[4];
+        private int[] counts = new int[4];
+        private int size;
+
+        void add(long key, int delta) {
+            int slot = slot(keys, key);
+            if (keys[slot] == key) {
+                counts[slot] += delta;
+                return;
+            }
+            keys[slot] = key;
+            counts[slot] = delta;
+            if (++size * 4 > keys.length * 3) {
+                grow();
+            }
+        }
+
+        int get(long key) {
+            int slot = slot(keys, key);
+            return keys[slot] == key ? counts[slot] : 0;
+        }
+
+        void forEach(CountConsumer action) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    action.accept(keys[i], counts[i]);
+                }
+            }
+        }
+
+        long[] top(int limit) {
+            long[] topKeys = new long[Math.min(limit, size)];
+            int[] topCounts = new int[topKeys.length];
+            int found = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == EMPTY) {
+                    continue;
+                }
+                int position = found;
+                while (position > 0 && better(keys[i], counts[i], topKeys[position - 1], topCounts[position - 1])) {
+                    position--;
+                }
+                if (position >= topKeys.length) {
+                    continue;
+                }
+                int moved = Math.min(found, topKeys.length - 1) - position;
+                System.arraycopy(topKeys, position, topKeys, position + 1, moved);
+                System.arraycopy(topCounts, position, topCounts, position + 1, moved);
+                topKeys[position] = keys[i];
+                topCounts[position] = counts[i];
+                found = Math.min(found + 1, topKeys.length);
+            }
+            return Arrays.copyOf(topKeys, found);
+        }
+
+        private static boolean better(long key, int count, long otherKey, int otherCount) {
+            return count > otherCount || count == otherCount && key < otherKey;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = slot(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        /**
+         * Ячейка ключа или первая пустая ячейка на пути пробирования.
+         * ID товаров положительны, поэтому 0 обозначает пустую ячейку.
+         */
+        private static int slot(long[] keys, long key) {
+            int mask = keys.length - 1;
+            long h = key * 0x9E3779B97F4A7C15L;
+            int slot = (int) (h ^ (h >>> 32)) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
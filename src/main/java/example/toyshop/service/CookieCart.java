@@ -0,0 +1,161 @@
+package example.toyshop.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import example.toyshop.dto.CartLineRequest;
+
+/**
+ * Корзина, хранящаяся в подписанной cookie ({@link CookieCartCodec}).
+ * <p>
+ * Неизменяемое значение: ключ корзины и строки — ID товара и количество, отсортированные по ID товара.
+ * Ключ корзины заменяет идентификатор сессии: под ним корзина записывается в базу данных
+ * при оформлении заказа или когда перестаёт помещаться в cookie. Записанная корзина ({@link #isStored()})
+ * хранит в cookie только ключ, её строки находятся в таблицах cart/cart_item.
+ * </p>
+ */
+public final class CookieCart {
+
+    private static final long[] NO_PRODUCTS = new long[0];
+    private static final int[] NO_QUANTITIES = new int[0];
+
+    private final String key;
+    private final boolean stored;
+    private final long[] productIds;
+    private final int[] quantities;
+
+    CookieCart(String key, boolean stored, long[] productIds, int[] quantities) {
+        this.key = key;
+        this.stored = stored;
+        this.productIds = productIds;
+        this.quantities = quantities;
+    }
+
+    /**
+     * Создаёт пустую корзину с указанным ключом.
+     *
+     * @param key ключ корзины
+     * @return пустая корзина
+     */
+    public static CookieCart empty(String key) {
+        return new CookieCart(key, false, NO_PRODUCTS, NO_QUANTITIES);
+    }
+
+    /**
+     * Ключ корзины: идентификатор её строки в базе данных вместо идентификатора сессии.
+     */
+    public String key() {
+        return key;
+    }
+
+    /**
+     * Корзина записана в базу данных, в cookie хранится только ключ.
+     */
+    public boolean isStored() {
+        return stored;
+    }
+
+    /**
+     * Возвращает количество товара в корзине.
+     *
+     * @param productId ID товара
+     * @return количество (0, если строки нет)
+     */
+    public int quantity(long productId) {
+        int index = Arrays.binarySearch(productIds, productId);
+        return index >= 0 ? quantities[index] : 0;
+    }
+
+    /**
+     * Возвращает корзину с новым количеством товара.
+     *
+     * @param productId ID товара
+     * @param quantity  новое количество (0 — удалить строку)
+     * @return изменённая корзина
+     */
+    public CookieCart with(long productId, int quantity) {
+        int index = Arrays.binarySearch(productIds, productId);
+        if (index >= 0) {
+            if (quantity > 0) {
+                int[] changed = quantities.clone();
+                changed[index] = quantity;
+                return new CookieCart(key, stored, productIds, changed);
+            }
+            long[] ids = new long[productIds.length - 1];
+            int[] counts = new int[quantities.length - 1];
+            System.arraycopy(productIds, 0, ids, 0, index);
+            System.arraycopy(productIds, index + 1, ids, index, ids.length - index);
+            System.arraycopy(quantities, 0, counts, 0, index);
+            System.arraycopy(quantities, index + 1, counts, index, counts.length - index);
+            return new CookieCart(key, stored, ids, counts);
+        }
+        if (quantity == 0) {
+            return this;
+        }
+        int insert = -index - 1;
+        long[] ids = new long[productIds.length + 1];
+        int[] counts = new int[quantities.length + 1];
+        System.arraycopy(productIds, 0, ids, 0, insert);
+        System.arraycopy(productIds, insert, ids, insert + 1, productIds.length - insert);
+        System.arraycopy(quantities, 0, counts, 0, insert);
+        System.arraycopy(quantities, insert, counts, insert + 1, quantities.length - insert);
+        ids[insert] = productId;
+        counts[insert] = quantity;
+        return new CookieCart(key, stored, ids, counts);
+    }
+
+    /**
+     * Возвращает записанную в базу данных корзину с тем же ключом (без строк).
+     *
+     * @return записанная корзина
+     */
+    public CookieCart toStored() {
+        return new CookieCart(key, true, NO_PRODUCTS, NO_QUANTITIES);
+    }
+
+    /**
+     * Количество строк корзины.
+     */
+    public int lineCount() {
+        return productIds.length;
+    }
+
+    /**
+     * Общее количество единиц товара в корзине.
+     */
+    public int itemCount() {
+        int count = 0;
+        for (int quantity : quantities) {
+            count += quantity;
+        }
+        return count;
+    }
+
+    /**
+     * ID товаров в порядке возрастания.
+     */
+    long[] productIds() {
+        return productIds;
+    }
+
+    /**
+     * Количества товаров в порядке {@link #productIds()}.
+     */
+    int[] quantities() {
+        return quantities;
+    }
+
+    /**
+     * Возвращает строки корзины в виде пакетного изменения корзины в базе данных.
+     *
+     * @return строки корзины
+     */
+    public List<CartLineRequest> toLineRequests() {
+        List<CartLineRequest> lines = new ArrayList<>(productIds.length);
+        for (int i = 0; i < productIds.length; i++) {
+            lines.add(new CartLineRequest(productIds[i], quantities[i]));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,264 @@
+package example.toyshop.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Кодирует корзину {@link CookieCart} в значение cookie и обратно.
+ * <p>
+ * Формат значения (base64url без выравнивания): версия формата, флаги, тело и первые 16 байт
+ * HMAC-SHA256 от версии, флагов и тела. Тело — 16 байт ключа корзины, затем число строк и строки
+ * (приращение ID товара и количество) в виде varint. Если тело после сжатия (deflate) короче,
+ * хранится сжатое тело. Подпись проверяется до разбора тела, поэтому подделанное или
+ * изменённое значение отбрасывается целиком.
+ * </p>
+ * <p>
+ * Секрет подписи ({@code cart.cookie.secret}) должен совпадать на всех узлах.
+ * </p>
+ */
+@Component
+public class CookieCartCodec {
+
+    /**
+     * Минимальная длина секрета подписи в байтах.
+     */
+    static final int MIN_SECRET_LENGTH = 32;
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int FLAG_STORED = 1;
+    private static final int FLAG_COMPRESSED = 2;
+    private static final int KEY_LENGTH = 16;
+    private static final int MAC_LENGTH = 16;
+    private static final int MAX_BODY_LENGTH = 8 * 1024;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec secret;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param secret секрет подписи cookie (не короче {@value #MIN_SECRET_LENGTH} байт);
+     *               пустой, если корзины в cookie не используются
+     */
+    public CookieCartCodec(@Value("${cart.cookie.secret:}") String secret) {
+        byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+        this.secret = bytes.length >= MIN_SECRET_LENGTH ? new SecretKeySpec(bytes, MAC_ALGORITHM) : null;
+    }
+
+    /**
+     * Задан ли секрет подписи достаточной длины.
+     */
+    public boolean isConfigured() {
+        return secret != null;
+    }
+
+    /**
+     * Создаёт случайный ключ новой корзины.
+     *
+     * @return ключ корзины (22 символа base64url)
+     */
+    public String newKey() {
+        byte[] key = new byte[KEY_LENGTH];
+        random.nextBytes(key);
+        return ENCODER.encodeToString(key);
+    }
+
+    /**
+     * Кодирует корзину в значение cookie.
+     *
+     * @param cart корзина
+     * @return подписанное значение cookie
+     * @throws IllegalStateException если секрет подписи не задан
+     */
+    public String encode(CookieCart cart) {
+        byte[] key = DECODER.decode(cart.key());
+        if (key.length != KEY_LENGTH) {
+            throw new IllegalArgumentException("Некорректный ключ корзины: " + cart.key());
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes(key);
+        int flags = 0;
+        if (cart.isStored()) {
+            flags |= FLAG_STORED;
+        } else {
+            long[] productIds = cart.productIds();
+            int[] quantities = cart.quantities();
+            writeVarint(body, productIds.length);
+            long previous = 0;
+            for (int i = 0; i < productIds.length; i++) {
+                writeVarint(body, productIds[i] - previous);
+                writeVarint(body, quantities[i]);
+                previous = productIds[i];
+            }
+        }
+        byte[] plain = body.toByteArray();
+        byte[] compressed = deflate(plain);
+        if (compressed.length < plain.length) {
+            flags |= FLAG_COMPRESSED;
+            plain = compressed;
+        }
+
+        byte[] token = new byte[2 + plain.length + MAC_LENGTH];
+        token[0] = FORMAT_VERSION;
+        token[1] = (byte) flags;
+        System.arraycopy(plain, 0, token, 2, plain.length);
+        byte[] mac = sign(token, 2 + plain.length);
+        System.arraycopy(mac, 0, token, 2 + plain.length, MAC_LENGTH);
+        return ENCODER.encodeToString(token);
+    }
+
+    /**
+     * Разбирает значение cookie.
+     *
+     * @param value значение cookie
+     * @return корзина или пустое значение, если значение повреждено, подделано или в другом формате
+     * @throws IllegalStateException если секрет подписи не задан
+     */
+    public Optional<CookieCart> decode(String value) {
+        byte[] token;
+        try {
+            token = DECODER.decode(value);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (token.length < 2 + MAC_LENGTH + 1 || token[0] != FORMAT_VERSION) {
+            return Optional.empty();
+        }
+        int signedLength = token.length - MAC_LENGTH;
+        byte[] expected = Arrays.copyOf(sign(token, signedLength), MAC_LENGTH);
+        if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(token, signedLength, token.length))) {
+            return Optional.empty();
+        }
+        int flags = token[1];
+        byte[] plain = Arrays.copyOfRange(token, 2, signedLength);
+        try {
+            if ((flags & FLAG_COMPRESSED) != 0) {
+                plain = inflate(plain);
+            }
+            return Optional.of(parse(plain, (flags & FLAG_STORED) != 0));
+        } catch (DataFormatException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static CookieCart parse(byte[] plain, boolean stored) throws DataFormatException {
+        ByteBuffer body = ByteBuffer.wrap(plain);
+        byte[] keyBytes = new byte[KEY_LENGTH];
+        body.get(keyBytes);
+        String key = ENCODER.encodeToString(keyBytes);
+        if (stored) {
+            return CookieCart.empty(key).toStored();
+        }
+        long count = readVarint(body);
+        if (count > body.remaining()) {
+            throw new DataFormatException("Некорректное число строк корзины: " + count);
+        }
+        long[] productIds = new long[(int) count];
+        int[] quantities = new int[(int) count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = readVarint(body);
+            long quantity = readVarint(body);
+            if (delta <= 0 || quantity <= 0 || quantity > Integer.MAX_VALUE) {
+                throw new DataFormatException("Некорректная строка корзины");
+            }
+            previous += delta;
+            productIds[i] = previous;
+            quantities[i] = (int) quantity;
+        }
+        if (body.hasRemaining()) {
+            throw new DataFormatException("Лишние данные в cookie корзины");
+        }
+        return new CookieCart(key, false, productIds, quantities);
+    }
+
+    private byte[] sign(byte[] data, int length) {
+        if (secret == null) {
+            throw new IllegalStateException("Не задан секрет подписи корзины в cookie (cart.cookie.secret)");
+        }
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(secret);
+            mac.update(data, 0, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Не удалось подписать cookie корзины", e);
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+            byte[] buffer = new byte[256];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2);
+            byte[] buffer = new byte[256];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Обрезанное тело cookie корзины");
+                }
+                out.write(buffer, 0, read);
+                if (out.size() > MAX_BODY_LENGTH) {
+                    throw new DataFormatException("Слишком большое тело cookie корзины");
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) throws DataFormatException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte next = in.get();
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new DataFormatException("Слишком длинное число в cookie корзины");
+    }
+}
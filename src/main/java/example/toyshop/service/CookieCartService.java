@@ -0,0 +1,367 @@
+package example.toyshop.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import example.toyshop.dto.CartBadge;
+import example.toyshop.dto.CartDelta;
+import example.toyshop.dto.CartLineRequest;
+import example.toyshop.dto.CartLineView;
+import example.toyshop.dto.CartView;
+import example.toyshop.event.CartItemAdded;
+import example.toyshop.event.DomainEventBus;
+import example.toyshop.model.Cart;
+import example.toyshop.model.Money;
+import example.toyshop.model.Product;
+import example.toyshop.model.StockMode;
+import example.toyshop.repository.ProductRepository;
+
+/**
+ * Корзины, хранящиеся в подписанной cookie ({@code cart.cookie.enabled=true}).
+ * <p>
+ * Небольшая корзина целиком хранится у посетителя: любой узел обслуживает любой запрос без
+ * сессии и без обращения к таблицам корзин, товары читаются из кэша второго уровня.
+ * Товар такой корзины не резервируется: наличие проверяется при изменении корзины,
+ * а остаток списывается при оформлении заказа.
+ * </p>
+ * <p>
+ * Корзина записывается в базу данных (через {@link CartService#setCartLines(String, List)} под ключом
+ * корзины вместо идентификатора сессии) при оформлении заказа и когда перестаёт помещаться в cookie —
+ * больше {@code cart.cookie.max-lines} строк или {@code cart.cookie.max-size} символов. Дальше
+ * записанная корзина изменяется и резервирует товар как обычная корзина {@link CartService}.
+ * </p>
+ * <p>
+ * Методы возвращают изменённую корзину вместе с результатом; записать её в cookie ответа
+ * должен вызывающий код.
+ * </p>
+ */
+@Service
+public class CookieCartService {
+
+    private final CartService cartService;
+    private final ProductRepository productRepository;
+    private final ShardedStockService shardedStockService;
+    private final DomainEventBus eventBus;
+    private final CookieCartCodec codec;
+    private final boolean enabled;
+    private final int maxLines;
+    private final int maxSize;
+
+    public CookieCartService(CartService cartService,
+                             ProductRepository productRepository,
+                             ShardedStockService shardedStockService,
+                             DomainEventBus eventBus,
+                             CookieCartCodec codec,
+                             @Value("${cart.cookie.enabled:false}") boolean enabled,
+                             @Value("${cart.cookie.max-lines:20}") int maxLines,
+                             @Value("${cart.cookie.max-size:3072}") int maxSize) {
+        if (enabled && !codec.isConfigured()) {
+            throw new IllegalStateException("Для корзин в cookie нужен секрет подписи cart.cookie.secret не короче "
+                    + CookieCartCodec.MIN_SECRET_LENGTH + " байт");
+        }
+        this.cartService = cartService;
+        this.productRepository = productRepository;
+        this.shardedStockService = shardedStockService;
+        this.eventBus = eventBus;
+        this.codec = codec;
+        this.enabled = enabled;
+        this.maxLines = maxLines;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Хранятся ли корзины в cookie.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Возвращает представление корзины для страницы корзины.
+     * Товары, удалённые из каталога, в представление не попадают.
+     *
+     * @param cart корзина
+     * @return представление корзины по текущим ценам товаров
+     */
+    public CartView getCartView(CookieCart cart) {
+        if (cart.isStored()) {
+            return cartService.getCartView(cart.key());
+        }
+        if (cart.lineCount() == 0) {
+            return CartView.empty();
+        }
+        Map<Long, Product> products = findProducts(cart.productIds());
+        List<CartLineView> lines = new ArrayList<>(cart.lineCount());
+        Money total = Money.ZERO;
+        for (long productId : cart.productIds()) {
+            Product product = products.get(productId);
+            if (product == null) {
+                continue;
+            }
+            int quantity = cart.quantity(productId);
+            Money price = Money.of(product.getPrice());
+            lines.add(new CartLineView(productId, product.getName(), product.getImageUrl(), price, quantity,
+                    price.times(quantity)));
+            total = total.plus(price.times(quantity));
+        }
+        return new CartView(null, lines, total);
+    }
+
+    /**
+     * Возвращает количество единиц товара и сумму корзины для значка корзины.
+     *
+     * @param cart корзина
+     * @return итоги корзины
+     */
+    public CartBadge getCartBadge(CookieCart cart) {
+        if (cart.isStored()) {
+            return cartService.getCartBadge(cart.key());
+        }
+        if (cart.lineCount() == 0) {
+            return CartBadge.empty();
+        }
+        CartView view = getCartView(cart);
+        return new CartBadge(itemCount(view), view.getTotalAmount(), null);
+    }
+
+    /**
+     * Добавляет единицу товара в корзину, если товара на складе больше, чем уже в корзине.
+     *
+     * @param cart      корзина
+     * @param productId идентификатор товара
+     * @return изменённая корзина и изменение для JSON API
+     * @throws ResponseStatusException 404, если товар не найден;
+     *                                 409, если его не хватает на складе
+     */
+    public Change<CartDelta> addToCart(CookieCart cart, Long productId) {
+        if (cart.isStored()) {
+            return new Change<>(cart, cartService.addToCart(cart.key(), productId));
+        }
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Товар не найден"));
+        int stock = currentStock(product);
+        int quantity = cart.quantity(productId) + 1;
+        if (quantity > stock) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Товара нет в наличии");
+        }
+        Change<CartDelta> change = applyLine(cart.with(productId, quantity), productId, stock);
+        eventBus.publish(new CartItemAdded(cart.key(), productId, LocalDateTime.now()));
+        return change;
+    }
+
+    /**
+     * Удаляет товар из корзины.
+     *
+     * @param cart      корзина
+     * @param productId идентификатор товара
+     * @return изменённая корзина и изменение для JSON API
+     */
+    public Change<CartDelta> removeFromCart(CookieCart cart, Long productId) {
+        if (cart.isStored()) {
+            return new Change<>(cart, cartService.removeFromCart(cart.key(), productId));
+        }
+        return applyLine(cart.with(productId, 0), productId, stockOf(productId));
+    }
+
+    /**
+     * Увеличивает количество товара в корзине на 1, если товара на складе больше, чем уже в корзине.
+     *
+     * @param cart      корзина
+     * @param productId идентификатор товара
+     * @return изменённая корзина и изменение для JSON API
+     */
+    public Change<CartDelta> increaseItem(CookieCart cart, Long productId) {
+        if (cart.isStored()) {
+            return new Change<>(cart, cartService.increaseItem(cart.key(), productId));
+        }
+        int quantity = cart.quantity(productId);
+        int stock = stockOf(productId);
+        if (quantity == 0 || quantity >= stock) {
+            return applyLine(cart, productId, stock);
+        }
+        return applyLine(cart.with(productId, quantity + 1), productId, stock);
+    }
+
+    /**
+     * Уменьшает количество товара в корзине на 1; при количестве 0 строка удаляется.
+     *
+     * @param cart      корзина
+     * @param productId идентификатор товара
+     * @return изменённая корзина и изменение для JSON API
+     */
+    public Change<CartDelta> decreaseItem(CookieCart cart, Long productId) {
+        if (cart.isStored()) {
+            return new Change<>(cart, cartService.decreaseItem(cart.key(), productId));
+        }
+        int quantity = cart.quantity(productId);
+        CookieCart changed = quantity > 0 ? cart.with(productId, quantity - 1) : cart;
+        return applyLine(changed, productId, stockOf(productId));
+    }
+
+    /**
+     * Устанавливает количество нескольких товаров в корзине.
+     * Как и в {@link CartService#setCartLines(String, List)}, в корзину попадает не больше,
+     * чем есть на складе.
+     *
+     * @param cart  корзина
+     * @param lines целевые количества товаров (0 — удалить строку)
+     * @return изменённая корзина и её представление
+     * @throws ResponseStatusException 400, если строки некорректны;
+     *                                 404, если товар не найден
+     */
+    public Change<CartView> setCartLines(CookieCart cart, List<CartLineRequest> lines) {
+        if (cart.isStored()) {
+            return new Change<>(cart, cartService.setCartLines(cart.key(), lines));
+        }
+        Map<Long, Integer> targets = cartService.normalizeLines(lines);
+        Map<Long, Product> products = findProducts(targets.keySet().stream().mapToLong(Long::longValue).toArray());
+        if (products.size() != targets.size()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Товар не найден");
+        }
+        CookieCart changed = cart;
+        List<Long> added = new ArrayList<>();
+        for (Map.Entry<Long, Integer> target : targets.entrySet()) {
+            Long productId = target.getKey();
+            int quantity = Math.min(target.getValue(), Math.max(currentStock(products.get(productId)), 0));
+            if (quantity > changed.quantity(productId)) {
+                added.add(productId);
+            }
+            changed = changed.with(productId, quantity);
+        }
+        Change<CartView> change;
+        if (fits(changed)) {
+            change = new Change<>(changed, getCartView(changed));
+        } else {
+            CookieCart stored = store(cart);
+            change = new Change<>(stored, cartService.setCartLines(stored.key(), lines));
+        }
+        added.forEach(productId -> eventBus.publish(new CartItemAdded(cart.key(), productId, LocalDateTime.now())));
+        return change;
+    }
+
+    /**
+     * Оформляет заказ. Корзина из cookie сначала записывается в базу данных со списанием остатка;
+     * если какого-то товара на складе меньше, чем в корзине, заказ не оформляется, а записанная корзина
+     * с доступным количеством возвращается посетителю для проверки.
+     *
+     * @param cart  корзина
+     * @param email адрес для письма с подтверждением или {@code null}
+     * @return новая пустая корзина и заказ либо записанная корзина без заказа
+     * @throws IllegalStateException                                   если корзина пуста
+     * @throws ResponseStatusException 400, если адрес электронной почты некорректен
+     */
+    public Change<Optional<Cart>> checkout(CookieCart cart, String email) {
+        if (!cart.isStored()) {
+            if (cart.lineCount() == 0) {
+                throw new IllegalStateException("Активная корзина не найдена");
+            }
+            CartService.normalizeEmail(email);
+            CartView placed = cartService.setCartLines(cart.key(), cart.toLineRequests());
+            if (!matches(placed, cart)) {
+                return new Change<>(cart.toStored(), Optional.empty());
+            }
+        }
+        Cart order = cartService.checkout(cart.key(), email);
+        return new Change<>(CookieCart.empty(codec.newKey()), Optional.of(order));
+    }
+
+    /**
+     * Возвращает изменение одной строки; корзина, переставшая помещаться в cookie,
+     * записывается в базу данных.
+     */
+    private Change<CartDelta> applyLine(CookieCart changed, Long productId, int stock) {
+        if (fits(changed)) {
+            return new Change<>(changed, delta(getCartView(changed), productId, stock));
+        }
+        CookieCart stored = store(changed);
+        return new Change<>(stored, delta(cartService.getCartView(stored.key()), productId, stockOf(productId)));
+    }
+
+    /**
+     * Записывает строки корзины в базу данных, резервируя товар.
+     *
+     * @param cart корзина из cookie
+     * @return записанная корзина с тем же ключом
+     */
+    private CookieCart store(CookieCart cart) {
+        if (cart.lineCount() > 0) {
+            cartService.setCartLines(cart.key(), cart.toLineRequests());
+        }
+        return cart.toStored();
+    }
+
+    private boolean fits(CookieCart cart) {
+        return cart.lineCount() <= maxLines && codec.encode(cart).length() <= maxSize;
+    }
+
+    private Map<Long, Product> findProducts(long[] productIds) {
+        List<Long> ids = new ArrayList<>(productIds.length);
+        for (long productId : productIds) {
+            ids.add(productId);
+        }
+        return productRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+    }
+
+    private int currentStock(Product product) {
+        if (product.getStockMode() == StockMode.SHARDED) {
+            return shardedStockService.available(product.getId());
+        }
+        return product.getQuantity();
+    }
+
+    private int stockOf(Long productId) {
+        return productRepository.findById(productId)
+                .map(this::currentStock)
+                .orElse(0);
+    }
+
+    private static CartDelta delta(CartView view, Long productId, int stock) {
+        CartLineView line = view.getItems().stream()
+                .filter(item -> item.getProductId().equals(productId))
+                .findFirst()
+                .orElse(null);
+        return new CartDelta(productId,
+                line != null ? line.getQuantity() : 0,
+                line != null ? line.getTotalPrice() : Money.ZERO,
+                view.getTotalAmount(),
+                view.getItems().size(),
+                itemCount(view),
+                stock);
+    }
+
+    private static int itemCount(CartView view) {
+        return view.getItems().stream().mapToInt(CartLineView::getQuantity).sum();
+    }
+
+    /**
+     * Совпадают ли строки записанной корзины со строками корзины из cookie.
+     */
+    private static boolean matches(CartView placed, CookieCart cart) {
+        if (placed.getItems().size() != cart.lineCount()) {
+            return false;
+        }
+        return placed.getItems().stream()
+                .allMatch(line -> line.getQuantity() == cart.quantity(line.getProductId()));
+    }
+
+    /**
+     * Результат изменения корзины: корзина для записи в cookie ответа и значение для ответа.
+     *
+     * @param cart   корзина после изменения
+     * @param result результат операции
+     * @param <T>    тип результата
+     */
+    public record Change<T>(CookieCart cart, T result) {
+    }
+}
@@ -0,0 +1,300 @@
+package example.toyshop.service;
+
+import java.util.List;
+
+import org.hibernate.query.NativeQuery;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Изменения схемы базы данных, которые Hibernate ({@code ddl-auto=update}) не выполняет сам,
+ * и изменяющие запросы, не сбрасывающие кэш второго уровня.
+ * <p>
+ * При запуске после обновления таблиц сущностей по порядку применяются изменения из {@link #MIGRATIONS}:
+ * таблицы без сущностей, частичные и покрывающие индексы, ограничения и однократные пересчёты данных.
+ * Каждое изменение выполняется в своей транзакции и записывается в таблицу {@code schema_migration},
+ * поэтому применяется к базе данных один раз. Узлы, запускающиеся одновременно, применяют изменения
+ * по очереди под транзакционной блокировкой. Компоненты, которым при запуске нужны эти таблицы,
+ * получают {@code DatabaseSchema} через конструктор и создаются после применения изменений.
+ * </p>
+ */
+@Slf4j
+@Component
+public class DatabaseSchema {
+
+    private static final String LOCK = "SELECT 1 FROM pg_advisory_xact_lock(hashtext('schema_migration'))";
+
+    private static final String HISTORY = """
+            CREATE TABLE IF NOT EXISTS schema_migration (
+                id varchar(100) PRIMARY KEY,
+                applied_at timestamp(6) NOT NULL
+            )
+            """;
+
+    /**
+     * Изменения схемы в порядке применения. Применённые изменения не редактируются: новое
+     * изменение добавляется в конец списка под новым ID.
+     */
+    private static final List<Migration> MIGRATIONS = List.of(
+            // сортировки витрины с id вторым ключом; INCLUDE отдаёт карточку (без описания) index-only scan'ом
+            new Migration("product-covering-indexes", List.of("product"),
+                    """
+                    CREATE INDEX IF NOT EXISTS idx_product_price_id
+                    ON product (price, id) INCLUDE (name, image_url, quantity)
+                    """,
+                    """
+                    CREATE INDEX IF NOT EXISTS idx_product_name_id
+                    ON product (name, id) INCLUDE (price, image_url, quantity)
+                    """),
+            // поиск просроченных резервов: позиции оформленных заказов (reserved_until IS NULL) в индекс не попадают
+            new Migration("cart-item-reserved-until-index", List.of("cart_item"),
+                    """
+                    CREATE INDEX IF NOT EXISTS idx_cart_item_reserved_until
+                    ON cart_item (reserved_until) WHERE reserved_until IS NOT NULL
+                    """),
+            // Hibernate не обновляет CHECK перечисления у существующего столбца: новые значения StockMode
+            // требуют нового изменения с пересозданием ограничения
+            new Migration("product-stock-mode-queued", List.of("product"),
+                    "ALTER TABLE product DROP CONSTRAINT IF EXISTS product_stock_mode_check",
+                    """
+                    ALTER TABLE product ADD CONSTRAINT product_stock_mode_check
+                    CHECK (stock_mode IN ('STANDARD', 'SHARDED', 'QUEUED'))
+                    """),
+            // выборка писем к отправке: отправленные и неотправляемые письма в индекс не попадают
+            new Migration("outbox-message-pending-index", List.of("outbox_message"),
+                    """
+                    CREATE INDEX IF NOT EXISTS idx_outbox_message_pending
+                    ON outbox_message (next_attempt_at) WHERE status = 'PENDING'
+                    """),
+            // цена позиции: позиции, добавленные до появления столбца, получают текущую цену товара;
+            // выполняется до пересчёта итогов корзин, который берёт цену из позиций
+            new Migration("cart-item-price-backfill", List.of("cart_item"),
+                    """
+                    UPDATE cart_item ci
+                    SET price = p.price
+                    FROM product p
+                    WHERE p.id = ci.product_id AND ci.price IS NULL
+                    """,
+                    "ALTER TABLE cart_item ALTER COLUMN price SET NOT NULL"),
+            // итоги в строке корзины: Hibernate добавил столбцы со значением 0, поэтому для корзин
+            // и заказов, созданных раньше, итоги один раз вычисляются по позициям
+            new Migration("cart-totals-backfill", List.of("cart"),
+                    """
+                    UPDATE cart c
+                    SET total_amount = t.total_amount, item_count = t.item_count
+                    FROM (
+                        SELECT ci.cart_id, SUM(ci.quantity * ci.price) AS total_amount, SUM(ci.quantity) AS item_count
+                        FROM cart_item ci
+                        GROUP BY ci.cart_id
+                    ) t
+                    WHERE c.id = t.cart_id AND c.item_count = 0
+                    """),
+            new Migration("active-cart-tables", List.of("active_cart", "active_cart_item", "active_cart_epoch",
+                    "active_cart_reservation"),
+                    """
+                    CREATE UNLOGGED TABLE IF NOT EXISTS active_cart (
+                        session_id varchar(255) PRIMARY KEY,
+                        created_at timestamp(6) NOT NULL,
+                        total_minor bigint NOT NULL DEFAULT 0,
+                        item_count integer NOT NULL DEFAULT 0,
+                        version bigint NOT NULL DEFAULT 0
+                    )
+                    """,
+                    """
+                    CREATE UNLOGGED TABLE IF NOT EXISTS active_cart_item (
+                        session_id varchar(255) NOT NULL,
+                        product_id bigint NOT NULL REFERENCES product (id),
+                        quantity integer NOT NULL,
+                        price_minor bigint NOT NULL,
+                        reserved_until timestamp(6) NOT NULL,
+                        PRIMARY KEY (session_id, product_id)
+                    )
+                    """,
+                    """
+                    CREATE INDEX IF NOT EXISTS idx_active_cart_item_reserved_until
+                    ON active_cart_item (reserved_until)
+                    """,
+                    """
+                    CREATE UNLOGGED TABLE IF NOT EXISTS active_cart_epoch (
+                        id integer PRIMARY KEY,
+                        started_at timestamp(6) NOT NULL
+                    )
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS active_cart_reservation (
+                        product_id bigint NOT NULL,
+                        quantity integer NOT NULL
+                    )
+                    """),
+            new Migration("order-archive-tables", List.of("order_archive", "order_archive_item"),
+                    """
+                    CREATE TABLE IF NOT EXISTS order_archive (
+                        id bigint NOT NULL,
+                        session_id varchar(255),
+                        created_at timestamp(6),
+                        completed_at timestamp(6) NOT NULL,
+                        total_amount numeric(38,2) NOT NULL,
+                        item_count integer NOT NULL,
+                        PRIMARY KEY (id, completed_at)
+                    ) PARTITION BY RANGE (completed_at)
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS order_archive_item (
+                        id bigint NOT NULL,
+                        order_id bigint NOT NULL,
+                        completed_at timestamp(6) NOT NULL,
+                        product_id bigint,
+                        quantity integer NOT NULL,
+                        PRIMARY KEY (id, completed_at)
+                    ) PARTITION BY RANGE (completed_at)
+                    """,
+                    """
+                    CREATE INDEX IF NOT EXISTS idx_order_archive_item_order
+                    ON order_archive_item (order_id, completed_at)
+                    """),
+            // дата оформления появилась позже самих заказов: архив и аналитика отбирают заказы по ней,
+            // поэтому для ранее оформленных заказов она один раз берётся из даты создания корзины
+            new Migration("cart-completed-at-backfill", List.of("cart"),
+                    "UPDATE cart SET completed_at = created_at WHERE status = 'COMPLETED' AND completed_at IS NULL"),
+            new Migration("sales-rollup-tables", List.of("sales_daily", "sales_daily_product", "sales_rollup_order"),
+                    """
+                    CREATE TABLE IF NOT EXISTS sales_daily (
+                        day date PRIMARY KEY,
+                        orders bigint NOT NULL,
+                        units bigint NOT NULL,
+                        revenue numeric(38,2) NOT NULL
+                    )
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS sales_daily_product (
+                        day date NOT NULL,
+                        product_id bigint NOT NULL,
+                        units bigint NOT NULL,
+                        orders bigint NOT NULL,
+                        PRIMARY KEY (day, product_id)
+                    )
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS sales_rollup_order (
+                        order_id bigint PRIMARY KEY,
+                        day date NOT NULL
+                    )
+                    """,
+                    """
+                    CREATE INDEX IF NOT EXISTS idx_sales_rollup_order_day ON sales_rollup_order (day)
+                    """),
+            new Migration("product-stats-bucket-table", List.of("product_stats_bucket"),
+                    """
+                    CREATE TABLE IF NOT EXISTS product_stats_bucket (
+                        product_id bigint NOT NULL REFERENCES product (id) ON DELETE CASCADE,
+                        bucket timestamp(6) NOT NULL,
+                        views bigint NOT NULL,
+                        units bigint NOT NULL,
+                        PRIMARY KEY (product_id, bucket)
+                    )
+                    """,
+                    """
+                    CREATE INDEX IF NOT EXISTS idx_product_stats_bucket_bucket ON product_stats_bucket (bucket)
+                    """),
+            // аренды сессий для CartLockAspect (ADVISORY): после сбоя PostgreSQL они не нужны
+            new Migration("cart-lock-table", List.of("cart_lock"),
+                    """
+                    CREATE UNLOGGED TABLE IF NOT EXISTS cart_lock (
+                        session_id varchar(255) PRIMARY KEY,
+                        owner varchar(36) NOT NULL,
+                        expires_at timestamp(6) NOT NULL
+                    )
+                    """),
+            // цена строки архивного заказа; у строк, перенесённых раньше, её нет
+            new Migration("order-archive-item-price", List.of("order_archive_item"),
+                    "ALTER TABLE order_archive_item ADD COLUMN IF NOT EXISTS price numeric(38,2)"),
+            // изменения корзин в памяти, ещё не записанные в cart_item (режим MEMORY)
+            new Migration("memory-cart-change-table", List.of("memory_cart_change"),
+                    """
+                    CREATE TABLE IF NOT EXISTS memory_cart_change (
+                        session_id varchar(255) NOT NULL,
+                        product_id bigint NOT NULL,
+                        quantity integer NOT NULL,
+                        price_minor bigint NOT NULL,
+                        version bigint NOT NULL,
+                        PRIMARY KEY (session_id, product_id)
+                    )
+                    """)
+    );
+
+    private final EntityManager entityManager;
+    private final TransactionOperations transactionOperations;
+
+    public DatabaseSchema(EntityManager entityManager, TransactionOperations transactionOperations) {
+        this.entityManager = entityManager;
+        this.transactionOperations = transactionOperations;
+    }
+
+    /**
+     * Применяет изменения схемы, которые ещё не применены к базе данных.
+     */
+    @PostConstruct
+    public void migrate() {
+        transactionOperations.executeWithoutResult(status -> {
+            lock();
+            update(HISTORY, "schema_migration").executeUpdate();
+        });
+        for (Migration migration : MIGRATIONS) {
+            transactionOperations.executeWithoutResult(status -> apply(migration));
+        }
+    }
+
+    /**
+     * Создаёт изменяющий native-запрос, затрагивающий только указанные таблицы: кэш второго уровня
+     * и кэш запросов сбрасываются только для них, а не целиком.
+     *
+     * @param sql    текст запроса
+     * @param tables таблицы, которые изменяет запрос
+     * @return запрос
+     */
+    public Query update(String sql, String... tables) {
+        NativeQuery<?> query = entityManager.createNativeQuery(sql).unwrap(NativeQuery.class);
+        for (String table : tables) {
+            query.addSynchronizedQuerySpace(table);
+        }
+        return query;
+    }
+
+    private void apply(Migration migration) {
+        lock();
+        boolean applied = !entityManager.createNativeQuery("SELECT 1 FROM schema_migration WHERE id = :id")
+                .setParameter("id", migration.id())
+                .getResultList()
+                .isEmpty();
+        if (applied) {
+            return;
+        }
+        String[] tables = migration.tables().toArray(String[]::new);
+        for (String statement : migration.statements()) {
+            update(statement, tables).executeUpdate();
+        }
+        update("INSERT INTO schema_migration (id, applied_at) VALUES (:id, now())", "schema_migration")
+                .setParameter("id", migration.id())
+                .executeUpdate();
+        log.info("Применено изменение схемы {}", migration.id());
+    }
+
+    private void lock() {
+        entityManager.createNativeQuery(LOCK).getSingleResult();
+    }
+
+    /**
+     * Изменение схемы.
+     *
+     * @param id         уникальный ID изменения
+     * @param tables     таблицы, которые затрагивает изменение
+     * @param statements запросы, выполняемые в одной транзакции
+     */
+    private record Migration(String id, List<String> tables, String... statements) {
+    }
+}
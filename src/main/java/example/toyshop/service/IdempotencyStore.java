@@ -0,0 +1,162 @@
+package example.toyshop.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import example.toyshop.model.IdempotencyRecord;
+import example.toyshop.repository.IdempotencyRecordRepository;
+
+/**
+ * Хранилище результатов запросов с ключом идемпотентности.
+ * <p>
+ * Результаты хранятся в памяти узла: не больше {@code idempotency.max-entries} записей,
+ * каждая не дольше {@code idempotency.ttl}. Если включено {@code idempotency.database.enabled},
+ * результаты дополнительно сохраняются в таблицу {@code idempotency_record}: повтор запроса
+ * распознаётся и после перезапуска, и на другом узле.
+ * </p>
+ * <p>
+ * В этом режиме запрос перед выполнением захватывает ключ строкой «выполняется» (статус 0), поэтому
+ * одновременные повторы на разных узлах не выполняются оба. Строка узла, не завершившего запрос
+ * за удвоенное {@code idempotency.in-flight-timeout} (например, упавшего), может быть захвачена заново.
+ * </p>
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final int PENDING = 0;
+
+    private static final String CLAIM = """
+            INSERT INTO idempotency_record (request_key, status, created_at)
+            VALUES (?, 0, ?)
+            ON CONFLICT (request_key) DO UPDATE
+            SET status = 0, location = NULL, set_cookies = NULL, content_type = NULL, body = NULL,
+                created_at = excluded.created_at
+            WHERE idempotency_record.created_at < ?
+               OR (idempotency_record.status = 0 AND idempotency_record.created_at < ?)
+            """;
+
+    private static final String RELEASE = "DELETE FROM idempotency_record WHERE request_key = ? AND status = 0";
+
+    private final IdempotencyRecordRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache<String, StoredResponse> cache;
+    private final Duration ttl;
+    private final Duration abandonAfter;
+    private final boolean databaseEnabled;
+
+    public IdempotencyStore(IdempotencyRecordRepository repository,
+                            JdbcTemplate jdbcTemplate,
+                            @Value("${idempotency.ttl:24h}") Duration ttl,
+                            @Value("${idempotency.max-entries:100000}") long maxEntries,
+                            @Value("${idempotency.in-flight-timeout:10s}") Duration inFlightTimeout,
+                            @Value("${idempotency.database.enabled:false}") boolean databaseEnabled) {
+        this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttl = ttl;
+        this.abandonAfter = inFlightTimeout.multipliedBy(2);
+        this.databaseEnabled = databaseEnabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Находит сохранённый результат запроса.
+     *
+     * @param requestKey ключ запроса
+     * @return сохранённый результат, если запрос уже выполнялся
+     */
+    public Optional<StoredResponse> find(String requestKey) {
+        StoredResponse cached = cache.getIfPresent(requestKey);
+        if (cached != null || !databaseEnabled) {
+            return Optional.ofNullable(cached);
+        }
+        return repository.findById(requestKey)
+                .filter(record -> record.getStatus() != PENDING)
+                .filter(record -> record.getCreatedAt().isAfter(LocalDateTime.now().minus(ttl)))
+                .map(record -> {
+                    StoredResponse stored = new StoredResponse(record.getStatus(), record.getLocation(),
+                            record.getSetCookies() == null ? List.of() : record.getSetCookies().lines().toList(),
+                            record.getContentType(), record.getBody());
+                    cache.put(requestKey, stored);
+                    return stored;
+                });
+    }
+
+    /**
+     * Захватывает ключ перед выполнением запроса. Без хранения в базе данных ключ захватывается всегда:
+     * одновременные повторы на одном узле отсекает {@code IdempotencyFilter}.
+     *
+     * @param requestKey ключ запроса
+     * @return {@code true}, если запрос нужно выполнить; {@code false}, если ключ уже захвачен
+     *         запросом на другом узле или его результат уже сохранён
+     */
+    public boolean claim(String requestKey) {
+        if (!databaseEnabled) {
+            return true;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        return jdbcTemplate.update(CLAIM, requestKey, now, now.minus(ttl), now.minus(abandonAfter)) > 0;
+    }
+
+    /**
+     * Освобождает захваченный ключ, если запрос не дал результата, который нужно сохранить:
+     * запрос с тем же ключом можно выполнить снова.
+     *
+     * @param requestKey ключ запроса
+     */
+    public void release(String requestKey) {
+        if (databaseEnabled) {
+            jdbcTemplate.update(RELEASE, requestKey);
+        }
+    }
+
+    /**
+     * Сохраняет результат выполненного запроса.
+     *
+     * @param requestKey ключ запроса
+     * @param response   результат запроса
+     */
+    public void save(String requestKey, StoredResponse response) {
+        cache.put(requestKey, response);
+        if (databaseEnabled) {
+            repository.save(new IdempotencyRecord(requestKey, response.status(), response.location(),
+                    response.setCookies().isEmpty() ? null : String.join("\n", response.setCookies()),
+                    response.contentType(), response.body(), LocalDateTime.now()));
+        }
+    }
+
+    /**
+     * Удаляет из базы данных результаты, срок хранения которых истёк.
+     */
+    @Scheduled(fixedDelayString = "${idempotency.database.purge-interval:10m}")
+    public void purgeExpired() {
+        if (databaseEnabled) {
+            repository.deleteCreatedBefore(LocalDateTime.now().minus(ttl));
+        }
+    }
+
+    /**
+     * Результат запроса, отдаваемый повторно.
+     *
+     * @param status      HTTP-статус
+     * @param location    заголовок Location или {@code null}
+     * @param setCookies  заголовки Set-Cookie (например, cookie сессии или корзины)
+     * @param contentType тип содержимого или {@code null}
+     * @param body        тело ответа
+     */
+    public record StoredResponse(int status, String location, List<String> setCookies, String contentType,
+                                 byte[] body) {
+    }
+}
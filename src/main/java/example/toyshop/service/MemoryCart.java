@@ -0,0 +1,263 @@
+package example.toyshop.service;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import example.toyshop.dto.CartDelta;
+import example.toyshop.model.Money;
+
+/**
+ * Активная корзина сессии в памяти {@link MemoryCartStore}.
+ * <p>
+ * Строки хранятся в параллельных массивах примитивов, отсортированных по ID товара:
+ * ID товара, количество и цена единицы в копейках. Строка с количеством 0 — удалённая,
+ * ещё не записанная в базу данных; она убирается из массивов после записи.
+ * Сумма и количество единиц поддерживаются при каждом изменении строки.
+ * </p>
+ * <p>
+ * Состояние корзины читается и меняется под её монитором. Поля {@code dirty}, {@code pending}
+ * и {@code evicted} также меняются только под монитором корзины.
+ * </p>
+ */
+final class MemoryCart {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    final String sessionId;
+
+    /**
+     * Блокировка записи корзины в базу данных: записи одной корзины не обгоняют друг друга.
+     */
+    final Object flushLock = new Object();
+
+    /**
+     * ID строки корзины в базе данных ({@code null}, пока корзина не записана).
+     */
+    Long cartId;
+
+    /**
+     * Срок резерва позиций корзины.
+     */
+    LocalDateTime reservedUntil;
+
+    /**
+     * Корзина изменена после последней записи в базу данных.
+     */
+    boolean dirty;
+
+    /**
+     * Количество незавершённых транзакций, изменяющих корзину.
+     */
+    int pending;
+
+    /**
+     * Корзина удалена из хранилища; изменять её нельзя.
+     */
+    boolean evicted;
+
+    private long[] productIds = new long[INITIAL_CAPACITY];
+    private int[] quantities = new int[INITIAL_CAPACITY];
+    private long[] prices = new long[INITIAL_CAPACITY];
+    private int size;
+    private long totalAmount;
+    private int itemCount;
+    private long version;
+
+    MemoryCart(String sessionId, Long cartId, LocalDateTime reservedUntil) {
+        this.sessionId = sessionId;
+        this.cartId = cartId;
+        this.reservedUntil = reservedUntil;
+    }
+
+    /**
+     * Возвращает количество товара в корзине.
+     *
+     * @param productId ID товара
+     * @return количество (0, если строки нет)
+     */
+    synchronized int quantity(long productId) {
+        int index = indexOf(productId);
+        return index >= 0 ? quantities[index] : 0;
+    }
+
+    /**
+     * Возвращает цену единицы товара в корзине.
+     *
+     * @param productId ID товара
+     * @return цена в копейках (0, если строки нет)
+     */
+    synchronized long price(long productId) {
+        int index = indexOf(productId);
+        return index >= 0 ? prices[index] : 0;
+    }
+
+    /**
+     * Устанавливает количество товара в корзине и пересчитывает итоги.
+     *
+     * @param productId ID товара
+     * @param price     цена единицы в копейках
+     * @param quantity  новое количество (0 — удалить строку)
+     * @return прежнее количество
+     */
+    synchronized int set(long productId, long price, int quantity) {
+        int index = indexOf(productId);
+        if (index < 0) {
+            if (quantity == 0) {
+                return 0;
+            }
+            index = insertAt(-index - 1, productId, price);
+        }
+        int previous = quantities[index];
+        long linePrice = prices[index];
+        quantities[index] = quantity;
+        totalAmount = Math.addExact(totalAmount, Math.multiplyExact(linePrice, quantity - previous));
+        itemCount += quantity - previous;
+        version++;
+        return previous;
+    }
+
+    /**
+     * Возвращает строки корзины с ненулевым количеством.
+     *
+     * @return строки в порядке возрастания ID товара
+     */
+    synchronized Line[] lines() {
+        Line[] lines = new Line[lineCount()];
+        int next = 0;
+        for (int i = 0; i < size; i++) {
+            if (quantities[i] > 0) {
+                lines[next++] = new Line(productIds[i], quantities[i], prices[i]);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Возвращает количество строк корзины с ненулевым количеством.
+     */
+    synchronized int lineCount() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (quantities[i] > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    synchronized Money totalAmount() {
+        return Money.ofMinor(totalAmount);
+    }
+
+    synchronized int itemCount() {
+        return itemCount;
+    }
+
+    synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Поднимает версию корзины до версии, известной из базы данных или журнала.
+     *
+     * @param known известная версия
+     */
+    synchronized void restoreVersion(long known) {
+        version = Math.max(version, known);
+    }
+
+    /**
+     * Возвращает изменение корзины для JSON API: строку товара и итоги корзины.
+     *
+     * @param productId ID товара изменённой строки
+     * @param stock     остаток товара на складе
+     * @return изменение корзины
+     */
+    synchronized CartDelta delta(long productId, int stock) {
+        int index = indexOf(productId);
+        int quantity = index >= 0 ? quantities[index] : 0;
+        Money lineTotal = index >= 0 ? Money.ofMinor(prices[index]).times(quantity) : Money.ZERO;
+        return new CartDelta(productId, quantity, lineTotal, Money.ofMinor(totalAmount), lineCount(), itemCount,
+                stock);
+    }
+
+    /**
+     * Снимает состояние корзины для записи в базу данных, включая удалённые строки.
+     *
+     * @return снимок корзины
+     */
+    synchronized Snapshot snapshot() {
+        return new Snapshot(cartId, Arrays.copyOf(productIds, size), Arrays.copyOf(quantities, size),
+                Arrays.copyOf(prices, size), Money.ofMinor(totalAmount), itemCount, version, reservedUntil);
+    }
+
+    /**
+     * Отмечает снимок записанным: запоминает ID строки корзины и убирает строки,
+     * удалённые и в снимке, и сейчас.
+     *
+     * @param written записанный снимок
+     * @param id      ID строки корзины в базе данных
+     */
+    synchronized void written(Snapshot written, Long id) {
+        cartId = id;
+        int next = 0;
+        for (int i = 0; i < size; i++) {
+            int writtenIndex = Arrays.binarySearch(written.productIds(), productIds[i]);
+            boolean removed = quantities[i] == 0 && writtenIndex >= 0 && written.quantities()[writtenIndex] == 0;
+            if (!removed) {
+                productIds[next] = productIds[i];
+                quantities[next] = quantities[i];
+                prices[next] = prices[i];
+                next++;
+            }
+        }
+        size = next;
+    }
+
+    private int indexOf(long productId) {
+        return Arrays.binarySearch(productIds, 0, size, productId);
+    }
+
+    private int insertAt(int index, long productId, long price) {
+        if (size == productIds.length) {
+            int capacity = size * 2;
+            productIds = Arrays.copyOf(productIds, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+        }
+        System.arraycopy(productIds, index, productIds, index + 1, size - index);
+        System.arraycopy(quantities, index, quantities, index + 1, size - index);
+        System.arraycopy(prices, index, prices, index + 1, size - index);
+        productIds[index] = productId;
+        quantities[index] = 0;
+        prices[index] = price;
+        size++;
+        return index;
+    }
+
+    /**
+     * Строка корзины.
+     *
+     * @param productId ID товара
+     * @param quantity  количество
+     * @param price     цена единицы в копейках
+     */
+    record Line(long productId, int quantity, long price) {
+    }
+
+    /**
+     * Состояние корзины для записи в базу данных.
+     *
+     * @param cartId        ID строки корзины или {@code null}
+     * @param productIds    ID товаров, включая удалённые строки
+     * @param quantities    количества в том же порядке (0 — удалить строку)
+     * @param prices        цены единицы в копейках в том же порядке
+     * @param totalAmount   сумма корзины
+     * @param itemCount     количество единиц товара
+     * @param version       версия корзины
+     * @param reservedUntil срок резерва позиций
+     */
+    record Snapshot(Long cartId, long[] productIds, int[] quantities, long[] prices, Money totalAmount,
+            int itemCount, long version, LocalDateTime reservedUntil) {
+    }
+}
@@ -0,0 +1,604 @@
+package example.toyshop.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import example.toyshop.dto.CartBadge;
+import example.toyshop.dto.CartDelta;
+import example.toyshop.dto.CartLineView;
+import example.toyshop.dto.CartView;
+import example.toyshop.model.Cart;
+import example.toyshop.model.CartItem;
+import example.toyshop.model.CartStatus;
+import example.toyshop.model.Money;
+import example.toyshop.model.Product;
+import example.toyshop.repository.CartItemRepository;
+import example.toyshop.repository.CartRepository;
+import example.toyshop.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Хранилище активных корзин в памяти узла (режим {@code cart.store.mode=MEMORY}).
+ * <p>
+ * Корзина сессии загружается из базы данных при первом изменении и дальше живёт в памяти
+ * ({@link MemoryCart}): страница корзины, значок и ответы JSON API строятся без запросов к корзине в базе.
+ * Остаток товара по-прежнему списывается и возвращается в базе данных в транзакции изменения корзины;
+ * изменение корзины в памяти применяется в той же транзакции и отменяется при её откате.
+ * </p>
+ * <p>
+ * Изменённые корзины записываются в таблицы {@code cart} и {@code cart_item} фоновой задачей
+ * (раз в {@code cart.store.flush-interval}) и перед оформлением заказа. До записи новые количества
+ * изменённых строк сохраняются в журналируемую таблицу {@code memory_cart_change} той же транзакцией,
+ * что списывает остаток товара, а запись корзины удаляет её изменения до записанной версии.
+ * При запуске корзины, изменения которых остались в таблице после аварийной остановки, восстанавливаются
+ * и записываются заново (в других режимах — сразу в {@code cart_item}), поэтому списанный товар не теряется.
+ * </p>
+ * <p>
+ * Срок резерва позиций в базе данных на {@code cart.store.reservation-grace} больше срока в памяти,
+ * а при загрузке корзины он продлевается в той же транзакции: {@link ReservationReaper} не освобождает
+ * позиции корзины, пока она находится в памяти. Корзина с истёкшим сроком удаляется из памяти,
+ * и её позиции освобождаются после запаса.
+ * </p>
+ * <p>
+ * Режим рассчитан на один узел: изменения корзины одной сессии должны сериализоваться
+ * ({@code cart.lock.mode=STRIPED}). Товары в режиме QUEUED в этом режиме добавляются
+ * в корзину напрямую, без очереди товара.
+ * </p>
+ */
+@Slf4j
+@Component
+public class MemoryCartStore implements ActiveCartStore {
+
+    private final CartRepository cartRepository;
+    private final CartItemRepository cartItemRepository;
+    private final ProductRepository productRepository;
+    private final EntityManager entityManager;
+    private final DatabaseSchema databaseSchema;
+    private final TransactionOperations transactionOperations;
+    private final boolean enabled;
+    private final Duration reservationTtl;
+    private final Duration reservationGrace;
+
+    private final ConcurrentMap<String, MemoryCart> carts = new ConcurrentHashMap<>();
+    private final Cache<Long, Label> labels;
+
+    public MemoryCartStore(CartRepository cartRepository,
+                           CartItemRepository cartItemRepository,
+                           ProductRepository productRepository,
+                           EntityManager entityManager,
+                           DatabaseSchema databaseSchema,
+                           TransactionOperations transactionOperations,
+                           @Value("${cart.store.mode:DATABASE}") Mode mode,
+                           @Value("${cart.reservation.ttl:30m}") Duration reservationTtl,
+                           @Value("${cart.store.reservation-grace:1m}") Duration reservationGrace,
+                           @Value("${cache.product.max-size:10000}") long maxLabels) {
+        this.cartRepository = cartRepository;
+        this.cartItemRepository = cartItemRepository;
+        this.productRepository = productRepository;
+        this.entityManager = entityManager;
+        this.databaseSchema = databaseSchema;
+        this.transactionOperations = transactionOperations;
+        this.enabled = mode == Mode.MEMORY;
+        this.reservationTtl = reservationTtl;
+        this.reservationGrace = reservationGrace;
+        this.labels = Caffeine.newBuilder().maximumSize(maxLabels).build();
+    }
+
+    /**
+     * Проверяет, хранятся ли активные корзины в памяти.
+     *
+     * @return {@code true} в режиме {@code MEMORY}
+     */
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Открывает корзину сессии для изменения в текущей транзакции.
+     * Если корзины нет в памяти, она загружается из базы данных. Резерв позиций корзины продлевается.
+     * Изменения, сделанные через результат, записываются в {@code memory_cart_change} перед коммитом
+     * и отменяются при откате.
+     *
+     * @param sessionId идентификатор сессии
+     * @return изменяемая корзина
+     * @throws IllegalStateException если транзакция не активна
+     */
+    @Override
+    public CartEdit edit(String sessionId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Корзина в памяти изменяется только в транзакции");
+        }
+        CartEdit edit = new CartEdit(attach(sessionId));
+        TransactionSynchronizationManager.registerSynchronization(edit);
+        return edit;
+    }
+
+    /**
+     * Возвращает представление корзины сессии, если она находится в памяти.
+     *
+     * @param sessionId идентификатор сессии
+     * @return представление корзины или пустой результат, если корзину нужно читать из базы данных
+     */
+    @Override
+    public Optional<CartView> view(String sessionId) {
+        return Optional.ofNullable(carts.get(sessionId)).map(this::view);
+    }
+
+    /**
+     * Возвращает итоги корзины сессии для значка корзины, если она находится в памяти.
+     *
+     * @param sessionId идентификатор сессии
+     * @return итоги корзины или пустой результат, если корзину нужно читать из базы данных
+     */
+    @Override
+    public Optional<CartBadge> badge(String sessionId) {
+        return Optional.ofNullable(carts.get(sessionId))
+                .map(cart -> {
+                    synchronized (cart) {
+                        return new CartBadge(cart.itemCount(), cart.totalAmount(), cart.version());
+                    }
+                });
+    }
+
+    /**
+     * Записывает в базу данных корзину сессии, если она изменена (например, перед оформлением заказа).
+     * Вызывается под блокировкой сессии вне транзакции изменения корзины.
+     *
+     * @param sessionId идентификатор сессии
+     */
+    @Override
+    public void flush(String sessionId) {
+        MemoryCart cart = carts.get(sessionId);
+        if (cart != null) {
+            write(cart);
+        }
+    }
+
+    /**
+     * Удаляет корзину сессии из памяти (например, после оформления заказа).
+     * Следующее изменение корзины загрузит её из базы данных.
+     *
+     * @param sessionId идентификатор сессии
+     */
+    @Override
+    public void evict(String sessionId) {
+        MemoryCart cart = carts.get(sessionId);
+        if (cart == null) {
+            return;
+        }
+        synchronized (cart.flushLock) {
+            synchronized (cart) {
+                cart.evicted = true;
+            }
+            carts.remove(sessionId, cart);
+        }
+    }
+
+    /**
+     * Записывает изменённые корзины в базу данных и удаляет из памяти корзины с истёкшим резервом.
+     */
+    @Scheduled(fixedDelayString = "${cart.store.flush-interval:5s}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        writeAll();
+        LocalDateTime now = LocalDateTime.now();
+        carts.values().forEach(cart -> evictExpired(cart, now));
+    }
+
+    /**
+     * Восстанавливает корзины, изменения которых остались в {@code memory_cart_change} после остановки
+     * приложения: в режиме {@code MEMORY} они возвращаются в память и будут записаны фоновой задачей,
+     * в других режимах сразу записываются в {@code cart_item}. Ошибка восстановления прерывает запуск.
+     */
+    @PostConstruct
+    public void recover() {
+        Map<String, List<Change>> unwritten = transactionOperations.execute(status -> readChanges());
+        unwritten.forEach((sessionId, changes) -> {
+            MemoryCart cart = transactionOperations.execute(status -> restore(sessionId, changes));
+            if (enabled) {
+                carts.put(sessionId, cart);
+            } else {
+                write(cart);
+            }
+        });
+        if (!unwritten.isEmpty()) {
+            log.info("Восстановлено незаписанных корзин: {}", unwritten.size());
+        }
+    }
+
+    /**
+     * Записывает изменённые корзины в базу данных.
+     * Корзины, которые записать не удалось, восстанавливаются из {@code memory_cart_change} при следующем запуске.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (enabled) {
+            writeAll();
+        }
+    }
+
+    /**
+     * Находит корзину сессии в памяти или загружает её из базы данных и отмечает начало её изменения.
+     */
+    private MemoryCart attach(String sessionId) {
+        while (true) {
+            MemoryCart cart = carts.get(sessionId);
+            if (cart == null) {
+                MemoryCart loaded = load(sessionId);
+                cart = carts.putIfAbsent(sessionId, loaded);
+                if (cart == null) {
+                    cart = loaded;
+                }
+            }
+            synchronized (cart) {
+                if (!cart.evicted) {
+                    cart.pending++;
+                    cart.dirty = true;
+                    cart.reservedUntil = LocalDateTime.now().plus(reservationTtl);
+                    return cart;
+                }
+            }
+            carts.remove(sessionId, cart);
+        }
+    }
+
+    /**
+     * Загружает активную корзину сессии из базы данных в текущей транзакции.
+     * Резерв позиций сначала продлевается: позиции, которые успел освободить {@link ReservationReaper},
+     * в корзину не попадают, а оставшиеся заблокированы до конца транзакции и уже не истекут.
+     */
+    private MemoryCart load(String sessionId) {
+        LocalDateTime reservedUntil = LocalDateTime.now().plus(reservationTtl);
+        cartItemRepository.extendReservations(sessionId, reservedUntil.plus(reservationGrace));
+        Optional<Cart> stored = cartRepository.findWithItemsBySessionIdAndStatus(sessionId, CartStatus.ACTIVE)
+                .stream()
+                .findFirst();
+        MemoryCart cart = new MemoryCart(sessionId, stored.map(Cart::getId).orElse(null), reservedUntil);
+        stored.ifPresent(entity -> {
+            for (CartItem item : entity.getItems()) {
+                Product product = item.getProduct();
+                labels.put(product.getId(), Label.of(product));
+                cart.set(product.getId(), item.getPrice().minorUnits(), item.getQuantity());
+            }
+            cart.restoreVersion(entity.getVersion() != null ? entity.getVersion() : 0);
+        });
+        return cart;
+    }
+
+    /**
+     * Читает незаписанные изменения корзин, сгруппированные по сессиям в порядке версий.
+     */
+    private Map<String, List<Change>> readChanges() {
+        Map<String, List<Change>> changes = new LinkedHashMap<>();
+        for (Object row : entityManager.createNativeQuery("""
+                SELECT session_id, product_id, quantity, price_minor, version
+                FROM memory_cart_change
+                ORDER BY session_id, version
+                """).getResultList()) {
+            Object[] columns = (Object[]) row;
+            changes.computeIfAbsent((String) columns[0], sessionId -> new ArrayList<>())
+                    .add(new Change(((Number) columns[1]).longValue(), ((Number) columns[2]).intValue(),
+                            ((Number) columns[3]).longValue(), ((Number) columns[4]).longValue()));
+        }
+        return changes;
+    }
+
+    /**
+     * Восстанавливает корзину: состояние из базы данных плюс незаписанные изменения.
+     */
+    private MemoryCart restore(String sessionId, List<Change> changes) {
+        MemoryCart cart = load(sessionId);
+        for (Change change : changes) {
+            cart.set(change.productId(), change.price(), change.quantity());
+            cart.restoreVersion(change.version());
+        }
+        cart.dirty = true;
+        return cart;
+    }
+
+    /**
+     * Записывает все изменённые корзины.
+     *
+     * @return {@code true}, если не осталось изменённых корзин без незавершённых транзакций
+     */
+    private boolean writeAll() {
+        boolean written = true;
+        for (MemoryCart cart : carts.values()) {
+            try {
+                write(cart);
+            } catch (RuntimeException e) {
+                written = false;
+                log.warn("Не удалось записать корзину сессии {}", cart.sessionId, e);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Записывает корзину в базу данных, если она изменена и не меняется незавершённой транзакцией.
+     */
+    private void write(MemoryCart cart) {
+        synchronized (cart.flushLock) {
+            MemoryCart.Snapshot snapshot;
+            synchronized (cart) {
+                if (!cart.dirty || cart.pending > 0 || cart.evicted) {
+                    return;
+                }
+                snapshot = cart.snapshot();
+                cart.dirty = false;
+            }
+            Long cartId;
+            try {
+                cartId = transactionOperations.execute(status -> persist(cart.sessionId, snapshot));
+            } catch (RuntimeException e) {
+                synchronized (cart) {
+                    cart.dirty = true;
+                }
+                throw e;
+            }
+            cart.written(snapshot, cartId);
+        }
+    }
+
+    /**
+     * Записывает снимок корзины в таблицы {@code cart} и {@code cart_item} и удаляет из
+     * {@code memory_cart_change} её изменения до версии снимка.
+     *
+     * @return ID строки корзины или {@code null}, если пустая корзина ещё не создавалась в базе
+     */
+    private Long persist(String sessionId, MemoryCart.Snapshot snapshot) {
+        databaseSchema.update("""
+                DELETE FROM memory_cart_change
+                WHERE session_id = :sessionId AND version <= :version
+                """, "memory_cart_change")
+                .setParameter("sessionId", sessionId)
+                .setParameter("version", snapshot.version())
+                .executeUpdate();
+        Long cartId = snapshot.cartId();
+        if (cartId == null) {
+            if (snapshot.productIds().length == 0) {
+                return null;
+            }
+            cartId = cartRepository.findBySessionIdAndStatus(sessionId, CartStatus.ACTIVE).stream()
+                    .findFirst()
+                    .orElseGet(() -> {
+                        Cart cart = new Cart();
+                        cart.setSessionId(sessionId);
+                        cart.setStatus(CartStatus.ACTIVE);
+                        return cartRepository.save(cart);
+                    })
+                    .getId();
+        }
+        if (snapshot.productIds().length > 0) {
+            Long[] productIds = new Long[snapshot.productIds().length];
+            Integer[] quantities = new Integer[productIds.length];
+            BigDecimal[] prices = new BigDecimal[productIds.length];
+            for (int i = 0; i < productIds.length; i++) {
+                productIds[i] = snapshot.productIds()[i];
+                quantities[i] = snapshot.quantities()[i];
+                prices[i] = Money.ofMinor(snapshot.prices()[i]).toBigDecimal();
+            }
+            cartItemRepository.upsertLines(cartId, productIds, quantities, prices,
+                    snapshot.reservedUntil().plus(reservationGrace));
+        }
+        cartRepository.updateTotals(cartId, snapshot.totalAmount(), snapshot.itemCount(), snapshot.version());
+        return cartId;
+    }
+
+    /**
+     * Удаляет из памяти записанную корзину с истёкшим резервом.
+     */
+    private void evictExpired(MemoryCart cart, LocalDateTime now) {
+        synchronized (cart.flushLock) {
+            synchronized (cart) {
+                if (cart.dirty || cart.pending > 0 || !cart.reservedUntil.isBefore(now)) {
+                    return;
+                }
+                cart.evicted = true;
+            }
+            carts.remove(cart.sessionId, cart);
+        }
+    }
+
+    /**
+     * Строит представление корзины; названия и изображения товаров берутся из кэша.
+     */
+    private CartView view(MemoryCart cart) {
+        MemoryCart.Line[] lines;
+        Long cartId;
+        Money totalAmount;
+        synchronized (cart) {
+            lines = cart.lines();
+            cartId = cart.cartId;
+            totalAmount = cart.totalAmount();
+        }
+        List<Long> productIds = new ArrayList<>(lines.length);
+        for (MemoryCart.Line line : lines) {
+            productIds.add(line.productId());
+        }
+        Map<Long, Label> found = labels.getAll(productIds, this::loadLabels);
+        List<CartLineView> views = new ArrayList<>(lines.length);
+        for (MemoryCart.Line line : lines) {
+            Label label = found.getOrDefault(line.productId(), Label.MISSING);
+            Money price = Money.ofMinor(line.price());
+            views.add(new CartLineView(line.productId(), label.name(), label.imageUrl(), price,
+                    line.quantity(), price.times(line.quantity())));
+        }
+        return new CartView(cartId, views, totalAmount);
+    }
+
+    private Map<Long, Label> loadLabels(Iterable<? extends Long> productIds) {
+        List<Long> ids = new ArrayList<>();
+        productIds.forEach(ids::add);
+        return productRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Product::getId, Label::of));
+    }
+
+    /**
+     * Корзина, открытая для изменения в одной транзакции.
+     * Перед коммитом новые количества изменённых строк записываются в {@code memory_cart_change}
+     * в той же транзакции, после отката — возвращаются к прежним значениям.
+     */
+    public final class CartEdit implements ActiveCartStore.Edit, TransactionSynchronization {
+
+        private final MemoryCart cart;
+        private final Map<Long, Integer> previous = new LinkedHashMap<>();
+
+        private CartEdit(MemoryCart cart) {
+            this.cart = cart;
+        }
+
+        /**
+         * Проверяет, что корзины ещё нет: она не сохранена в базе данных и ни разу не менялась.
+         *
+         * @return {@code true}, если корзины нет
+         */
+        @Override
+        public boolean isNew() {
+            synchronized (cart) {
+                return cart.cartId == null && cart.version() == 0;
+            }
+        }
+
+        /**
+         * Возвращает количество товара в корзине.
+         *
+         * @param productId ID товара
+         * @return количество (0, если товара нет в корзине)
+         */
+        @Override
+        public int quantity(Long productId) {
+            return cart.quantity(productId);
+        }
+
+        /**
+         * Устанавливает количество товара в корзине.
+         *
+         * @param product  товар
+         * @param quantity новое количество (0 — удалить строку)
+         */
+        @Override
+        public void set(Product product, int quantity) {
+            labels.put(product.getId(), Label.of(product));
+            synchronized (cart) {
+                int was = cart.set(product.getId(), Money.of(product.getPrice()).minorUnits(), quantity);
+                previous.putIfAbsent(product.getId(), was);
+            }
+        }
+
+        /**
+         * Возвращает изменение корзины для JSON API.
+         *
+         * @param productId ID товара изменённой строки
+         * @param stock     остаток товара на складе
+         * @return изменение корзины
+         */
+        @Override
+        public CartDelta delta(Long productId, int stock) {
+            return cart.delta(productId, stock);
+        }
+
+        /**
+         * Возвращает представление корзины.
+         *
+         * @return представление корзины
+         */
+        @Override
+        public CartView view() {
+            return MemoryCartStore.this.view(cart);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (previous.isEmpty()) {
+                return;
+            }
+            Long[] productIds = new Long[previous.size()];
+            Integer[] quantities = new Integer[productIds.length];
+            Long[] prices = new Long[productIds.length];
+            long version;
+            synchronized (cart) {
+                int i = 0;
+                for (Long productId : previous.keySet()) {
+                    productIds[i] = productId;
+                    quantities[i] = cart.quantity(productId);
+                    prices[i] = cart.price(productId);
+                    i++;
+                }
+                version = cart.version();
+            }
+            databaseSchema.update("""
+                    INSERT INTO memory_cart_change (session_id, product_id, quantity, price_minor, version)
+                    SELECT :sessionId, c.product_id, c.quantity, c.price_minor, :version
+                    FROM unnest(CAST(:productIds AS bigint[]), CAST(:quantities AS integer[]),
+                                CAST(:prices AS bigint[])) AS c(product_id, quantity, price_minor)
+                    ON CONFLICT (session_id, product_id) DO UPDATE
+                    SET quantity = EXCLUDED.quantity, price_minor = EXCLUDED.price_minor, version = EXCLUDED.version
+                    """, "memory_cart_change")
+                    .setParameter("sessionId", cart.sessionId)
+                    .setParameter("version", version)
+                    .setParameter("productIds", productIds)
+                    .setParameter("quantities", quantities)
+                    .setParameter("prices", prices)
+                    .executeUpdate();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            synchronized (cart) {
+                if (status != STATUS_COMMITTED) {
+                    previous.forEach((productId, quantity) -> cart.set(productId, 0, quantity));
+                }
+                cart.pending--;
+            }
+        }
+    }
+
+    /**
+     * Название и изображение товара для строк корзины (не меняются после создания товара).
+     */
+    record Label(String name, String imageUrl) {
+
+        static final Label MISSING = new Label("", null);
+
+        static Label of(Product product) {
+            return new Label(product.getName(), product.getImageUrl());
+        }
+    }
+
+    /**
+     * Незаписанное изменение строки корзины из {@code memory_cart_change}.
+     *
+     * @param productId ID товара
+     * @param quantity  новое количество (0 — строка удалена)
+     * @param price     цена единицы в копейках
+     * @param version   версия корзины после изменения
+     */
+    record Change(long productId, int quantity, long price, long version) {
+    }
+}
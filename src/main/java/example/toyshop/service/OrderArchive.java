@@ -0,0 +1,270 @@
+package example.toyshop.service;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import example.toyshop.dto.CartLineView;
+import example.toyshop.dto.OrderSummary;
+import example.toyshop.model.Money;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Помесячный архив оформленных заказов.
+ * <p>
+ * Оформленные заказы остаются в таблицах {@code cart} и {@code cart_item} первые
+ * {@code order.archive.after-months} полных месяцев, после чего фоновая задача переносит их пачками
+ * по {@code order.archive.batch-size} в таблицы {@code order_archive} и {@code order_archive_item},
+ * секционированные по месяцу оформления заказа ({@code completed_at}). Каждая пачка — одна короткая
+ * транзакция из одного запроса, поэтому перенос идёт без остановки магазина; недостающие секции
+ * создаются перед переносом. Таблица корзин при этом содержит только активные корзины и недавние заказы.
+ * </p>
+ * <p>
+ * Запросы к архиву всегда ограничены диапазоном {@code completed_at}, поэтому PostgreSQL читает только
+ * секции нужного месяца. Старые секции можно отсоединить ({@code DETACH PARTITION}) и хранить отдельно,
+ * не затрагивая остальной архив. Заказ по ID ищется во всех секциях по их первичным ключам.
+ * </p>
+ */
+@Slf4j
+@Component
+public class OrderArchive {
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final EntityManager entityManager;
+    private final DatabaseSchema databaseSchema;
+    private final TransactionOperations transactionOperations;
+    private final boolean enabled;
+    private final int afterMonths;
+    private final int batchSize;
+
+    public OrderArchive(EntityManager entityManager,
+                        DatabaseSchema databaseSchema,
+                        TransactionOperations transactionOperations,
+                        @Value("${order.archive.enabled:false}") boolean enabled,
+                        @Value("${order.archive.after-months:3}") int afterMonths,
+                        @Value("${order.archive.batch-size:500}") int batchSize) {
+        this.entityManager = entityManager;
+        this.databaseSchema = databaseSchema;
+        this.transactionOperations = transactionOperations;
+        this.enabled = enabled;
+        this.afterMonths = afterMonths;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Проверяет, переносятся ли старые заказы в архив.
+     *
+     * @return {@code true}, если архив включён
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Переносит в архив заказы, оформленные раньше начала месяца, отстоящего от текущего
+     * на {@code order.archive.after-months}. Перед переносом создаёт секции для каждого месяца переносимых заказов.
+     */
+    @Scheduled(fixedDelayString = "${order.archive.interval:1h}", initialDelayString = "${order.archive.interval:1h}")
+    public void archiveCompletedOrders() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = YearMonth.now().minusMonths(afterMonths).atDay(1).atStartOfDay();
+        Object oldest = transactionOperations.execute(status -> entityManager.createNativeQuery("""
+                        SELECT MIN(completed_at)
+                        FROM cart
+                        WHERE status = 'COMPLETED' AND completed_at < :cutoff
+                        """)
+                .setParameter("cutoff", cutoff)
+                .getSingleResult());
+        if (oldest == null) {
+            return;
+        }
+        for (YearMonth month = YearMonth.from(toLocalDateTime(oldest)); month.atDay(1).atStartOfDay().isBefore(cutoff);
+                month = month.plusMonths(1)) {
+            YearMonth partition = month;
+            transactionOperations.executeWithoutResult(status -> createPartitions(partition));
+        }
+        int archived = 0;
+        int moved;
+        do {
+            moved = transactionOperations.execute(status -> archiveBatch(cutoff));
+            archived += moved;
+        } while (moved > 0);
+        log.info("В архив перенесено заказов: {}", archived);
+    }
+
+    /**
+     * Возвращает месяцы, за которые в архиве есть секции, от новых к старым.
+     *
+     * @return месяцы архива
+     */
+    public List<YearMonth> findMonths() {
+        if (!enabled) {
+            return List.of();
+        }
+        List<?> names = entityManager.createNativeQuery("""
+                        SELECT c.relname
+                        FROM pg_inherits i
+                        JOIN pg_class c ON c.oid = i.inhrelid
+                        JOIN pg_class p ON p.oid = i.inhparent
+                        WHERE p.relname = 'order_archive'
+                        ORDER BY c.relname DESC
+                        """)
+                .getResultList();
+        List<YearMonth> months = new ArrayList<>(names.size());
+        for (Object name : names) {
+            String relname = (String) name;
+            months.add(YearMonth.parse(relname.substring(relname.length() - 6), PARTITION_SUFFIX));
+        }
+        return months;
+    }
+
+    /**
+     * Возвращает заказы месяца из архива; читаются только секции этого месяца.
+     *
+     * @param month месяц оформления заказов
+     * @return заказы в порядке оформления
+     */
+    public List<OrderSummary> findOrders(YearMonth month) {
+        if (!enabled) {
+            return List.of();
+        }
+        return toSummaries(entityManager.createNativeQuery("""
+                        SELECT o.id, o.created_at, o.total_amount, i.product_id, i.quantity, p.name, p.image_url,
+                               COALESCE(i.price, p.price)
+                        FROM order_archive o
+                        LEFT JOIN order_archive_item i
+                               ON i.order_id = o.id AND i.completed_at = o.completed_at
+                              AND i.completed_at >= :from AND i.completed_at < :to
+                        LEFT JOIN product p ON p.id = i.product_id
+                        WHERE o.completed_at >= :from AND o.completed_at < :to
+                        ORDER BY o.completed_at, o.id, i.id
+                        """)
+                .setParameter("from", month.atDay(1).atStartOfDay())
+                .setParameter("to", month.plusMonths(1).atDay(1).atStartOfDay())
+                .getResultList());
+    }
+
+    /**
+     * Находит заказ в архиве по ID.
+     *
+     * @param id ID заказа
+     * @return заказ или пустой результат, если его нет в архиве
+     */
+    public Optional<OrderSummary> findOrder(Long id) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return toSummaries(entityManager.createNativeQuery("""
+                        SELECT o.id, o.created_at, o.total_amount, i.product_id, i.quantity, p.name, p.image_url,
+                               COALESCE(i.price, p.price)
+                        FROM order_archive o
+                        LEFT JOIN order_archive_item i ON i.order_id = o.id AND i.completed_at = o.completed_at
+                        LEFT JOIN product p ON p.id = i.product_id
+                        WHERE o.id = :id
+                        ORDER BY i.id
+                        """)
+                .setParameter("id", id)
+                .getResultList())
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Создаёт секции заказов и строк заказов за месяц, если их нет.
+     */
+    private void createPartitions(YearMonth month) {
+        String suffix = month.format(PARTITION_SUFFIX);
+        String from = month.atDay(1).toString();
+        String to = month.plusMonths(1).atDay(1).toString();
+        for (String table : List.of("order_archive", "order_archive_item")) {
+            update("CREATE TABLE IF NOT EXISTS " + table + "_p" + suffix + " PARTITION OF " + table
+                    + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')").executeUpdate();
+        }
+    }
+
+    /**
+     * Переносит в архив одну пачку заказов: строки удаляются из {@code cart} и {@code cart_item}
+     * и вставляются в секции архива одним запросом.
+     *
+     * @return количество перенесённых заказов
+     */
+    private int archiveBatch(LocalDateTime cutoff) {
+        return update("""
+                WITH batch AS (
+                    SELECT id, completed_at
+                    FROM cart
+                    WHERE status = 'COMPLETED' AND completed_at < :cutoff
+                    ORDER BY completed_at
+                    LIMIT :batchSize
+                    FOR UPDATE SKIP LOCKED
+                ), items AS (
+                    DELETE FROM cart_item ci
+                    USING batch b
+                    WHERE ci.cart_id = b.id
+                    RETURNING ci.id, ci.cart_id, b.completed_at, ci.product_id, ci.quantity, ci.price
+                ), archived_items AS (
+                    INSERT INTO order_archive_item (id, order_id, completed_at, product_id, quantity, price)
+                    SELECT id, cart_id, completed_at, product_id, quantity, price FROM items
+                ), orders AS (
+                    DELETE FROM cart c
+                    USING batch b
+                    WHERE c.id = b.id
+                    RETURNING c.id, c.session_id, c.created_at, c.completed_at, c.total_amount, c.item_count
+                )
+                INSERT INTO order_archive (id, session_id, created_at, completed_at, total_amount, item_count)
+                SELECT id, session_id, created_at, completed_at, total_amount, item_count FROM orders
+                """)
+                .setParameter("cutoff", cutoff)
+                .setParameter("batchSize", batchSize)
+                .executeUpdate();
+    }
+
+    /**
+     * Собирает заказы из строк «заказ + строка заказа + товар».
+     */
+    private static List<OrderSummary> toSummaries(List<?> rows) {
+        Map<Long, Object[]> headers = new LinkedHashMap<>();
+        Map<Long, List<CartLineView>> lines = new LinkedHashMap<>();
+        for (Object result : rows) {
+            Object[] row = (Object[]) result;
+            Long id = ((Number) row[0]).longValue();
+            headers.putIfAbsent(id, row);
+            List<CartLineView> orderLines = lines.computeIfAbsent(id, key -> new ArrayList<>());
+            if (row[3] != null) {
+                Money price = row[7] != null ? Money.of((BigDecimal) row[7]) : Money.ZERO;
+                int quantity = ((Number) row[4]).intValue();
+                orderLines.add(new CartLineView(((Number) row[3]).longValue(), (String) row[5], (String) row[6],
+                        price, quantity, price.times(quantity)));
+            }
+        }
+        List<OrderSummary> orders = new ArrayList<>(headers.size());
+        headers.forEach((id, row) -> orders.add(new OrderSummary(id, row[1] != null ? toLocalDateTime(row[1]) : null,
+                lines.get(id), Money.of((BigDecimal) row[2]))));
+        return orders;
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        return value instanceof Timestamp timestamp ? timestamp.toLocalDateTime() : (LocalDateTime) value;
+    }
+
+    private Query update(String sql) {
+        return databaseSchema.update(sql, "cart", "cart_item", "order_archive");
+    }
+}
@@ -0,0 +1,258 @@
+package example.toyshop.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import example.toyshop.event.DomainEvent;
+import example.toyshop.event.DomainEventConsumer;
+import example.toyshop.event.OrderCompleted;
+import example.toyshop.model.Cart;
+import example.toyshop.model.CartItem;
+import example.toyshop.model.OutboxMessage;
+import example.toyshop.model.OutboxStatus;
+import example.toyshop.repository.CartRepository;
+import example.toyshop.repository.OutboxMessageRepository;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Фоновая задача, отправляющая письма с подтверждением заказов из исходящей очереди (outbox).
+ * <p>
+ * Сообщения выбираются пачками по {@code mail.outbox.batch-size}; все письма пачки отправляются
+ * через одно SMTP-соединение. Пачка блокируется в базе данных на время отправки
+ * ({@code FOR UPDATE SKIP LOCKED}), поэтому несколько узлов не отправляют одно письмо дважды.
+ * Письмо, которое не удалось отправить, повторяется с экспоненциально растущей паузой,
+ * начиная с {@code mail.outbox.backoff}, и после {@code mail.outbox.max-attempts} попыток
+ * помечается как {@link OutboxStatus#FAILED}.
+ * </p>
+ * <p>
+ * Кроме опроса по расписанию, отправка запускается событием {@link OrderCompleted},
+ * поэтому письмо уходит вскоре после оформления заказа, не дожидаясь следующего опроса.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "mail.outbox.enabled", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
+public class OrderMailDispatcher implements DomainEventConsumer {
+
+    private final OutboxMessageRepository outboxRepository;
+    private final CartRepository cartRepository;
+    private final JavaMailSender mailSender;
+    private final TransactionOperations transactionOperations;
+
+    /**
+     * Максимальное количество писем, отправляемых через одно соединение и в одной транзакции.
+     */
+    @Value("${mail.outbox.batch-size:50}")
+    private int batchSize = 50;
+
+    /**
+     * Количество попыток отправки, после которого письмо считается неотправляемым.
+     */
+    @Value("${mail.outbox.max-attempts:8}")
+    private int maxAttempts = 8;
+
+    /**
+     * Пауза перед первой повторной попыткой; каждая следующая пауза вдвое длиннее.
+     */
+    @Value("${mail.outbox.backoff:30s}")
+    private Duration backoff = Duration.ofSeconds(30);
+
+    /**
+     * Максимальная пауза между попытками.
+     */
+    @Value("${mail.outbox.max-backoff:1h}")
+    private Duration maxBackoff = Duration.ofHours(1);
+
+    /**
+     * Адрес отправителя писем.
+     */
+    @Value("${mail.order.from:shop@toyshop.local}")
+    private String from = "shop@toyshop.local";
+
+    @Override
+    public String name() {
+        return "order-mail";
+    }
+
+    /**
+     * Отправляет письма сразу после оформления заказа.
+     *
+     * @param event доменное событие
+     */
+    @Override
+    public void accept(DomainEvent event) {
+        if (event instanceof OrderCompleted) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Отправляет все письма, срок отправки которых наступил.
+     * Если таких писем нет, транзакция не открывается.
+     */
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-interval:2s}")
+    public void dispatch() {
+        if (!outboxRepository.existsByStatusAndNextAttemptAtLessThanEqual(OutboxStatus.PENDING, LocalDateTime.now())) {
+            return;
+        }
+        int processed;
+        do {
+            processed = transactionOperations.execute(status -> dispatchBatch(LocalDateTime.now()));
+        } while (processed == batchSize);
+    }
+
+    /**
+     * Отправляет одну пачку писем и сохраняет результат отправки каждого из них.
+     *
+     * @param now текущее время
+     * @return количество обработанных сообщений
+     */
+    private int dispatchBatch(LocalDateTime now) {
+        List<OutboxMessage> due = outboxRepository.lockDue(now, batchSize);
+        if (due.isEmpty()) {
+            return 0;
+        }
+        Map<Long, Cart> orders = cartRepository.findWithItemsByIdIn(
+                due.stream().map(OutboxMessage::getOrderId).toList())
+                .stream()
+                .collect(Collectors.toMap(Cart::getId, Function.identity()));
+
+        Map<MimeMessage, OutboxMessage> letters = new LinkedHashMap<>();
+        for (OutboxMessage message : due) {
+            Cart order = orders.get(message.getOrderId());
+            if (order == null) {
+                giveUp(message, "Заказ не найден");
+                continue;
+            }
+            try {
+                letters.put(compose(message, order), message);
+            } catch (MessagingException e) {
+                // некорректный адрес или содержимое письма не исправятся повторной попыткой
+                giveUp(message, e.getMessage());
+            }
+        }
+
+        Map<Object, Exception> failures = send(letters);
+        letters.forEach((letter, message) -> {
+            Exception failure = failures.get(letter);
+            if (failure == null) {
+                message.setStatus(OutboxStatus.SENT);
+                message.setSentAt(now);
+                message.setLastError(null);
+            } else {
+                retryLater(message, failure.getMessage(), now);
+            }
+        });
+        outboxRepository.saveAll(due);
+        return due.size();
+    }
+
+    /**
+     * Отправляет письма через одно SMTP-соединение.
+     *
+     * @param letters письма пачки
+     * @return письма, которые не удалось отправить, с причиной ошибки
+     */
+    private Map<Object, Exception> send(Map<MimeMessage, OutboxMessage> letters) {
+        if (letters.isEmpty()) {
+            return Map.of();
+        }
+        try {
+            mailSender.send(letters.keySet().toArray(MimeMessage[]::new));
+            return Map.of();
+        } catch (MailSendException e) {
+            if (!e.getFailedMessages().isEmpty()) {
+                return e.getFailedMessages();
+            }
+            return failAll(letters, e);
+        } catch (MailException e) {
+            return failAll(letters, e);
+        }
+    }
+
+    /**
+     * Формирует письмо с подтверждением заказа.
+     *
+     * @param message сообщение исходящей очереди
+     * @param order   оформленный заказ с позициями
+     * @return письмо
+     * @throws MessagingException если адрес получателя некорректен
+     */
+    private MimeMessage compose(OutboxMessage message, Cart order) throws MessagingException {
+        StringBuilder text = new StringBuilder("Спасибо за заказ!\n\n");
+        for (CartItem item : order.getItems()) {
+            text.append(item.getProduct().getName())
+                    .append(" × ").append(item.getQuantity())
+                    .append(" — ").append(item.getTotalPrice()).append(" ₽\n");
+        }
+        text.append("\nОбщая сумма: ").append(order.getTotalAmount()).append(" ₽\n");
+
+        MimeMessage letter = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(letter, "UTF-8");
+        helper.setFrom(from);
+        helper.setTo(message.getRecipient());
+        helper.setSubject("Заказ №" + order.getId() + " оформлен");
+        helper.setText(text.toString());
+        return letter;
+    }
+
+    /**
+     * Планирует повторную отправку письма или помечает его неотправляемым,
+     * если попытки исчерпаны.
+     *
+     * @param message сообщение исходящей очереди
+     * @param error   причина ошибки
+     * @param now     текущее время
+     */
+    private void retryLater(OutboxMessage message, String error, LocalDateTime now) {
+        message.setAttempts(message.getAttempts() + 1);
+        if (message.getAttempts() >= maxAttempts) {
+            giveUp(message, error);
+            return;
+        }
+        Duration delay = backoff.multipliedBy(1L << Math.min(message.getAttempts() - 1, 30));
+        message.setNextAttemptAt(now.plus(delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay));
+        message.setLastError(truncate(error));
+    }
+
+    /**
+     * Помечает письмо как неотправляемое.
+     *
+     * @param message сообщение исходящей очереди
+     * @param error   причина ошибки
+     */
+    private static void giveUp(OutboxMessage message, String error) {
+        message.setStatus(OutboxStatus.FAILED);
+        message.setLastError(truncate(error));
+    }
+
+    private static Map<Object, Exception> failAll(Map<MimeMessage, OutboxMessage> letters, Exception e) {
+        Map<Object, Exception> failures = new LinkedHashMap<>();
+        letters.keySet().forEach(letter -> failures.put(letter, e));
+        return failures;
+    }
+
+    private static String truncate(String error) {
+        if (error == null) {
+            return null;
+        }
+        return error.length() > 1000 ? error.substring(0, 1000) : error;
+    }
+}
@@ -0,0 +1,84 @@
+package example.toyshop.service;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import example.toyshop.dto.OrderSummary;
+import example.toyshop.model.CartStatus;
+import example.toyshop.repository.CartRepository;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Сервис для чтения оформленных заказов (завершённых корзин).
+ * <p>
+ * Заказы вместе с элементами и товарами загружаются одним запросом
+ * и преобразуются в {@link OrderSummary} внутри транзакции,
+ * поэтому отрисовка шаблонов не удерживает соединение с базой данных.
+ * Транзакции только на чтение при включённой реплике обслуживаются ею.
+ * </p>
+ * <p>
+ * Заказы старше {@code order.archive.after-months} месяцев хранятся в помесячном архиве
+ * {@link OrderArchive}: список заказов показывает недавние заказы, а архивные читаются по месяцу.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderService {
+
+    private final CartRepository cartRepository;
+    private final OrderArchive orderArchive;
+
+    /**
+     * Возвращает список всех оформленных заказов.
+     *
+     * @return список заказов
+     */
+    @Transactional(readOnly = true)
+    public List<OrderSummary> getCompletedOrders() {
+        return cartRepository.findByStatus(CartStatus.COMPLETED).stream()
+                .map(OrderSummary::from)
+                .toList();
+    }
+
+    /**
+     * Возвращает заказы, оформленные в указанном месяце и перенесённые в архив.
+     *
+     * @param month месяц оформления заказов
+     * @return список заказов в порядке оформления
+     */
+    @Transactional(readOnly = true)
+    public List<OrderSummary> getArchivedOrders(YearMonth month) {
+        return orderArchive.findOrders(month);
+    }
+
+    /**
+     * Возвращает месяцы, за которые есть архив заказов, от новых к старым.
+     *
+     * @return месяцы архива
+     */
+    @Transactional(readOnly = true)
+    public List<YearMonth> getArchivedMonths() {
+        return orderArchive.findMonths();
+    }
+
+    /**
+     * Возвращает заказ по его идентификатору.
+     * Если заказа нет среди недавних, он ищется в архиве.
+     *
+     * @param id идентификатор заказа
+     * @return представление заказа
+     * @throws ResponseStatusException с кодом 404, если заказ не найден
+     */
+    @Transactional(readOnly = true)
+    public OrderSummary getOrder(Long id) {
+        return cartRepository.findWithItemsById(id)
+                .map(OrderSummary::from)
+                .or(() -> orderArchive.findOrder(id))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Заказ не найден"));
+    }
+}
@@ -0,0 +1,181 @@
+package example.toyshop.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import example.toyshop.model.StockMode;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Очередь добавлений в корзину для товаров в режиме {@link StockMode#QUEUED}.
+ * <p>
+ * У каждого товара своя очередь и не больше одного обработчика: он забирает из очереди
+ * накопившиеся запросы (не больше {@code cart.admission.max-batch-size}) и обрабатывает их
+ * одной транзакцией {@link CartService#admitBatch(Long, List)}. Вместо множества транзакций,
+ * ждущих блокировку строки товара, выполняется несколько пакетных, а товар достаётся
+ * покупателям строго в порядке поступления запросов.
+ * </p>
+ * <p>
+ * Запрос, забранный обработчиком, больше нельзя отменить: {@link CompletableFuture#cancel(boolean)}
+ * возвращает {@code false}, и вызывающий код дожидается результата пачки. Время пачки ограничено
+ * {@code cart.admission.batch-timeout}, после чего её транзакция откатывается.
+ * </p>
+ */
+@Component
+public class ProductAdmissionQueue {
+
+    private final CartService cartService;
+    private final TransactionTemplate batchTransaction;
+    private final int maxBatchSize;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ConcurrentHashMap<Long, Lane> lanes = new ConcurrentHashMap<>();
+
+    public ProductAdmissionQueue(@Lazy CartService cartService,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${cart.admission.max-batch-size:200}") int maxBatchSize,
+                                 @Value("${cart.admission.batch-timeout:5s}") Duration batchTimeout) {
+        this.cartService = cartService;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.batchTransaction.setTimeout((int) Math.max(1, batchTimeout.toSeconds()));
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Ставит запрос на добавление единицы товара в корзину сессии в очередь товара.
+     *
+     * @param sessionId идентификатор сессии пользователя
+     * @param productId идентификатор товара
+     * @return результат: завершается успешно, когда товар добавлен в корзину,
+     *         или с исключением, если товара нет в наличии. Отмена удаётся, только пока
+     *         обработчик не забрал запрос из очереди; отменённый запрос не обрабатывается
+     */
+    public CompletableFuture<Void> submit(String sessionId, Long productId) {
+        Lane lane = lanes.computeIfAbsent(productId, Lane::new);
+        Admission admission = new Admission(sessionId);
+        lane.queue.add(admission);
+        if (lane.draining.compareAndSet(false, true)) {
+            executor.execute(() -> drain(lane));
+        }
+        return admission;
+    }
+
+    /**
+     * Обрабатывает очередь товара пачками, пока она не опустеет.
+     *
+     * @param lane очередь товара
+     */
+    private void drain(Lane lane) {
+        while (true) {
+            List<Admission> batch = new ArrayList<>();
+            Admission admission;
+            while (batch.size() < maxBatchSize && (admission = lane.queue.poll()) != null) {
+                if (admission.claim()) {
+                    batch.add(admission);
+                }
+            }
+            if (batch.isEmpty()) {
+                lane.draining.set(false);
+                // запрос мог появиться после опустошения очереди, но до снятия флага
+                if (lane.queue.isEmpty() || !lane.draining.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            admit(lane.productId, batch);
+        }
+    }
+
+    /**
+     * Обрабатывает одну пачку запросов и сообщает каждому запросу его результат.
+     *
+     * @param productId идентификатор товара
+     * @param batch     запросы в порядке поступления
+     */
+    private void admit(Long productId, List<Admission> batch) {
+        int granted;
+        try {
+            List<String> sessionIds = batch.stream().map(Admission::sessionId).toList();
+            granted = batchTransaction.execute(status -> cartService.admitBatch(productId, sessionIds));
+        } catch (RuntimeException | Error e) {
+            // забранные запросы нельзя отменить, поэтому каждый обязательно получает результат
+            batch.forEach(admission -> admission.completeExceptionally(e));
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (i < granted) {
+                batch.get(i).complete(null);
+            } else {
+                batch.get(i).completeExceptionally(new ResponseStatusException(HttpStatus.CONFLICT, "Товара нет в наличии"));
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Запрос на добавление товара в корзину и его результат.
+     */
+    private static final class Admission extends CompletableFuture<Void> {
+
+        private final String sessionId;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private Admission(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        String sessionId() {
+            return sessionId;
+        }
+
+        /**
+         * Забирает запрос для обработки или отмены; удаётся только один раз.
+         */
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        /**
+         * Отменяет запрос, если обработчик ещё не забрал его.
+         *
+         * @return {@code true}, если запрос отменён и не будет обработан
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return claim() && super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    /**
+     * Очередь запросов одного товара.
+     */
+    private static final class Lane {
+
+        private final Long productId;
+        private final Queue<Admission> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Lane(Long productId) {
+            this.productId = productId;
+        }
+    }
+}
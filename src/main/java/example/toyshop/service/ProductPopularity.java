@@ -0,0 +1,265 @@
+package example.toyshop.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import example.toyshop.event.DomainEvent;
+import example.toyshop.event.DomainEventConsumer;
+import example.toyshop.event.OrderCompleted;
+import example.toyshop.model.ProductStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Популярность товаров для сортировки витрины ({@code sort=popular}).
+ * <p>
+ * Просмотры карточек и проданные единицы (по событию {@link OrderCompleted}) считаются в памяти узла
+ * счётчиками {@link LongAdder}, поэтому запрос не ждёт ни базы данных, ни других запросов.
+ * Раз в {@code popularity.flush-interval} накопленные значения одним запросом добавляются
+ * в почасовые (по {@code popularity.bucket}) строки {@code product_stats_bucket}, и для затронутых
+ * товаров пересчитывается оценка в {@link ProductStats}. Если запись не удалась, значения
+ * возвращаются в счётчики и записываются следующей попыткой.
+ * </p>
+ * <p>
+ * Оценка — сумма просмотров и проданных единиц (с весом {@code popularity.purchase-weight})
+ * по интервалам за последние {@code popularity.window}, где вклад интервала уменьшается вдвое
+ * каждые {@code popularity.half-life}. Возраст интервалов отсчитывается от начала текущего интервала,
+ * поэтому с началом нового интервала оценки пересчитываются для всех товаров, а вышедшие из окна
+ * интервалы удаляются. При этом создаётся статистика товаров, у которых её ещё нет.
+ * </p>
+ */
+@Slf4j
+@Component
+public class ProductPopularity implements DomainEventConsumer {
+
+    private final Map<Long, Counters> counters = new ConcurrentHashMap<>();
+    private final EntityManager entityManager;
+    private final DatabaseSchema databaseSchema;
+    private final TransactionOperations transactionOperations;
+    private final boolean enabled;
+    private final Duration bucket;
+    private final Duration window;
+    private final Duration halfLife;
+    private final int purchaseWeight;
+
+    /**
+     * Начало интервала, от которого посчитаны оценки всех товаров.
+     */
+    private volatile LocalDateTime scoredAt;
+
+    public ProductPopularity(EntityManager entityManager,
+                             DatabaseSchema databaseSchema,
+                             TransactionOperations transactionOperations,
+                             @Value("${popularity.enabled:true}") boolean enabled,
+                             @Value("${popularity.bucket:1h}") Duration bucket,
+                             @Value("${popularity.window:7d}") Duration window,
+                             @Value("${popularity.half-life:1d}") Duration halfLife,
+                             @Value("${popularity.purchase-weight:20}") int purchaseWeight) {
+        this.entityManager = entityManager;
+        this.databaseSchema = databaseSchema;
+        this.transactionOperations = transactionOperations;
+        this.enabled = enabled;
+        this.bucket = bucket;
+        this.window = window;
+        this.halfLife = halfLife;
+        this.purchaseWeight = purchaseWeight;
+    }
+
+    /**
+     * Проверяет, ведётся ли учёт популярности.
+     *
+     * @return {@code true}, если сортировка по популярности доступна
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Пересчитывает оценки всех товаров.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        rescoreAll(currentBucket());
+    }
+
+    @Override
+    public String name() {
+        return "product-popularity";
+    }
+
+    /**
+     * Учитывает проданные единицы оформленного заказа.
+     *
+     * @param event доменное событие
+     */
+    @Override
+    public void accept(DomainEvent event) {
+        if (enabled && event instanceof OrderCompleted completed) {
+            completed.lines().forEach(line -> counters(line.productId()).units.add(line.quantity()));
+        }
+    }
+
+    /**
+     * Учитывает просмотр карточки товара.
+     *
+     * @param productId ID товара
+     */
+    public void recordView(Long productId) {
+        if (enabled) {
+            counters(productId).views.increment();
+        }
+    }
+
+    /**
+     * Записывает накопленные просмотры и продажи в текущий интервал и пересчитывает оценки.
+     */
+    @Scheduled(fixedDelayString = "${popularity.flush-interval:10s}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime current = currentBucket();
+        // по возрастанию ID, чтобы узлы блокировали строки интервалов в одном порядке
+        SortedMap<Long, long[]> deltas = new TreeMap<>();
+        counters.forEach((productId, counter) -> {
+            long viewed = counter.views.sumThenReset();
+            long sold = counter.units.sumThenReset();
+            if (viewed != 0 || sold != 0) {
+                deltas.put(productId, new long[] { viewed, sold });
+            }
+        });
+        if (!deltas.isEmpty()) {
+            Long[] productIds = deltas.keySet().toArray(Long[]::new);
+            Long[] views = deltas.values().stream().map(delta -> delta[0]).toArray(Long[]::new);
+            Long[] units = deltas.values().stream().map(delta -> delta[1]).toArray(Long[]::new);
+            try {
+                transactionOperations.executeWithoutResult(status -> {
+                    update("""
+                            INSERT INTO product_stats_bucket (product_id, bucket, views, units)
+                            SELECT c.product_id, :bucket, c.views, c.units
+                            FROM unnest(CAST(:productIds AS bigint[]), CAST(:views AS bigint[]),
+                                        CAST(:units AS bigint[])) AS c(product_id, views, units)
+                            JOIN product p ON p.id = c.product_id
+                            ORDER BY c.product_id
+                            ON CONFLICT (product_id, bucket) DO UPDATE
+                            SET views = product_stats_bucket.views + EXCLUDED.views,
+                                units = product_stats_bucket.units + EXCLUDED.units
+                            """)
+                            .setParameter("bucket", current)
+                            .setParameter("productIds", productIds)
+                            .setParameter("views", views)
+                            .setParameter("units", units)
+                            .executeUpdate();
+                    if (current.equals(scoredAt)) {
+                        rescore(current, productIds).executeUpdate();
+                    }
+                });
+            } catch (RuntimeException e) {
+                deltas.forEach((productId, delta) -> {
+                    Counters counter = counters(productId);
+                    counter.views.add(delta[0]);
+                    counter.units.add(delta[1]);
+                });
+                log.warn("Не удалось записать популярность товаров, повтор при следующей записи", e);
+                return;
+            }
+        }
+        if (!current.equals(scoredAt)) {
+            rescoreAll(current);
+        }
+    }
+
+    /**
+     * Удаляет вышедшие из окна интервалы и пересчитывает оценки всех товаров от начала интервала.
+     *
+     * @param current начало текущего интервала
+     */
+    private void rescoreAll(LocalDateTime current) {
+        transactionOperations.executeWithoutResult(status -> {
+            update("DELETE FROM product_stats_bucket WHERE bucket <= :windowStart")
+                    .setParameter("windowStart", current.minus(window))
+                    .executeUpdate();
+            rescore(current, null).executeUpdate();
+        });
+        scoredAt = current;
+    }
+
+    /**
+     * Создаёт запрос пересчёта оценок товаров; строки, оценка которых не изменилась, не перезаписываются.
+     *
+     * @param current    начало текущего интервала
+     * @param productIds ID пересчитываемых товаров или {@code null}, чтобы пересчитать все товары
+     */
+    private Query rescore(LocalDateTime current, Long[] productIds) {
+        String productFilter = "AND %s = ANY(CAST(:productIds AS bigint[]))";
+        Query query = update("""
+                WITH scores AS (
+                    SELECT product_id, SUM(views) AS views, SUM(units) AS units,
+                           SUM((views + :purchaseWeight * units)
+                               * power(0.5, EXTRACT(EPOCH FROM (:current - bucket)) / :halfLife)) AS score
+                    FROM product_stats_bucket
+                    WHERE bucket > :windowStart %s
+                    GROUP BY product_id
+                )
+                INSERT INTO product_stats (product_id, score, views, units)
+                SELECT p.id, COALESCE(s.score, 0), COALESCE(s.views, 0), COALESCE(s.units, 0)
+                FROM product p
+                LEFT JOIN scores s ON s.product_id = p.id
+                WHERE TRUE %s
+                ORDER BY p.id
+                ON CONFLICT (product_id) DO UPDATE
+                SET score = EXCLUDED.score, views = EXCLUDED.views, units = EXCLUDED.units
+                WHERE product_stats.score <> EXCLUDED.score
+                   OR product_stats.views <> EXCLUDED.views
+                   OR product_stats.units <> EXCLUDED.units
+                """.formatted(productIds != null ? productFilter.formatted("product_id") : "",
+                        productIds != null ? productFilter.formatted("p.id") : ""))
+                .setParameter("purchaseWeight", purchaseWeight)
+                .setParameter("current", current)
+                .setParameter("halfLife", (double) halfLife.toSeconds())
+                .setParameter("windowStart", current.minus(window));
+        return productIds != null ? query.setParameter("productIds", productIds) : query;
+    }
+
+    /**
+     * Начало текущего интервала.
+     */
+    private LocalDateTime currentBucket() {
+        long seconds = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+        return LocalDateTime.ofEpochSecond(seconds - Math.floorMod(seconds, bucket.toSeconds()), 0, ZoneOffset.UTC);
+    }
+
+    private Counters counters(Long productId) {
+        Counters counter = counters.get(productId);
+        return counter != null ? counter : counters.computeIfAbsent(productId, id -> new Counters());
+    }
+
+    private Query update(String sql) {
+        return databaseSchema.update(sql, "product_stats", "product_stats_bucket");
+    }
+
+    /**
+     * Несохранённые просмотры и продажи одного товара.
+     */
+    private static final class Counters {
+
+        private final LongAdder views = new LongAdder();
+        private final LongAdder units = new LongAdder();
+    }
+}
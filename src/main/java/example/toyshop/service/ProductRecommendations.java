@@ -0,0 +1,382 @@
+package example.toyshop.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import example.toyshop.dto.ProductCard;
+import example.toyshop.event.DomainEvent;
+import example.toyshop.event.DomainEventConsumer;
+import example.toyshop.event.OrderCompleted;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Рекомендации «С этим товаром покупают» по совместным покупкам в оформленных заказах.
+ * <p>
+ * Для каждого товара заранее вычислены {@code recommendations.top-k} товаров, чаще всего
+ * покупаемых вместе с ним, вместе с их карточками, поэтому {@link #recommend(Long)} — одно
+ * чтение из памяти без обращения к базе данных. Счётчики пар хранятся в {@link CooccurrenceMatrix}
+ * и дополняются по событию {@link OrderCompleted}; после этого пересчитываются рекомендации
+ * товаров заказа. Заказы, в которых больше {@code recommendations.max-order-lines} товаров,
+ * не учитываются.
+ * </p>
+ * <p>
+ * Раз в {@code recommendations.rebuild-interval} (и вскоре после запуска) матрица строится заново
+ * по всем оформленным заказам, в том числе из архива: диапазон ID заказов делится
+ * на части по {@code recommendations.rebuild-chunk}, которые читаются с реплики и сворачиваются
+ * в матрицы параллельно в {@link ForkJoinPool} из {@code recommendations.rebuild-parallelism} потоков.
+ * Части запоминают ID прочитанных заказов. Заказы, учтённые по событию во время построения,
+ * которых чтение не увидело (оформлены после чтения своей части, получили ID после диапазона
+ * или ещё не дошли до реплики), добавляются перед заменой матрицы. Карточки рекомендуемых товаров
+ * обновляются при построении.
+ * </p>
+ */
+@Slf4j
+@Component
+public class ProductRecommendations implements DomainEventConsumer {
+
+    private static final String CARDS_QUERY = "SELECT id, name, price, image_url, quantity FROM product";
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final Map<Long, List<ProductCard>> recommendations = new ConcurrentHashMap<>();
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransaction;
+    private final OrderArchive orderArchive;
+    private final boolean enabled;
+    private final int topK;
+    private final int maxOrderLines;
+    private final int rebuildChunk;
+    private final int rebuildParallelism;
+
+    /**
+     * Матрица совместных покупок; изменяется только под блокировкой {@code this}.
+     */
+    private CooccurrenceMatrix matrix = new CooccurrenceMatrix();
+
+    /**
+     * Карточки товаров, на которые ссылаются рекомендации; изменяются только под блокировкой {@code this}.
+     */
+    private Map<Long, ProductCard> cards = new HashMap<>();
+
+    /**
+     * Заказы, учтённые во время построения матрицы ({@code null}, если матрица не строится).
+     */
+    private List<Order> pending;
+
+    public ProductRecommendations(EntityManager entityManager,
+                                  PlatformTransactionManager transactionManager,
+                                  OrderArchive orderArchive,
+                                  @Value("${recommendations.enabled:true}") boolean enabled,
+                                  @Value("${recommendations.top-k:6}") int topK,
+                                  @Value("${recommendations.max-order-lines:50}") int maxOrderLines,
+                                  @Value("${recommendations.rebuild-chunk:10000}") int rebuildChunk,
+                                  @Value("${recommendations.rebuild-parallelism:4}") int rebuildParallelism) {
+        this.entityManager = entityManager;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.orderArchive = orderArchive;
+        this.enabled = enabled;
+        this.topK = topK;
+        this.maxOrderLines = maxOrderLines;
+        this.rebuildChunk = rebuildChunk;
+        this.rebuildParallelism = rebuildParallelism;
+    }
+
+    /**
+     * Возвращает товары, чаще всего покупаемые вместе с указанным.
+     *
+     * @param productId ID товара
+     * @return карточки рекомендуемых товаров (пустой список, если рекомендаций нет)
+     */
+    public List<ProductCard> recommend(Long productId) {
+        return recommendations.getOrDefault(productId, List.of());
+    }
+
+    @Override
+    public String name() {
+        return "product-recommendations";
+    }
+
+    /**
+     * Учитывает оформленный заказ и пересчитывает рекомендации его товаров.
+     *
+     * @param event доменное событие
+     */
+    @Override
+    public void accept(DomainEvent event) {
+        if (!enabled || !(event instanceof OrderCompleted completed)) {
+            return;
+        }
+        long[] productIds = completed.lines().stream()
+                .mapToLong(OrderCompleted.Line::productId)
+                .distinct()
+                .toArray();
+        if (productIds.length < 2 || productIds.length > maxOrderLines) {
+            return;
+        }
+        synchronized (this) {
+            matrix.addOrder(productIds);
+            if (pending != null) {
+                pending.add(new Order(completed.orderId(), productIds));
+            }
+            loadMissingCards(productIds);
+            for (long productId : productIds) {
+                recommendations.put(productId, cardsOf(matrix.top(productId, topK)));
+            }
+        }
+    }
+
+    /**
+     * Строит матрицу заново по всем оформленным заказам и заменяет ею текущую вместе с рекомендациями.
+     */
+    @Scheduled(fixedDelayString = "${recommendations.rebuild-interval:1d}",
+            initialDelayString = "${recommendations.rebuild-delay:10s}")
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            pending = new ArrayList<>();
+        }
+        try {
+            long[] range = readOnlyTransaction.execute(status -> orderRange());
+            CooccurrenceMatrix rebuilt = new CooccurrenceMatrix();
+            ScannedOrders scanned = new ScannedOrders();
+            if (range != null) {
+                ForkJoinPool pool = new ForkJoinPool(rebuildParallelism);
+                try {
+                    rebuilt = pool.invoke(new Chunk(range[0], range[1], scanned));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            Map<Long, ProductCard> loaded = new HashMap<>();
+            readOnlyTransaction.executeWithoutResult(status -> loadCards(entityManager.createNativeQuery(CARDS_QUERY), loaded));
+
+            synchronized (this) {
+                for (Order order : pending) {
+                    if (!scanned.contains(order.id())) {
+                        rebuilt.addOrder(order.productIds());
+                    }
+                }
+                matrix = rebuilt;
+                cards = loaded;
+                Map<Long, List<ProductCard>> computed = new HashMap<>();
+                for (long productId : rebuilt.productIds()) {
+                    computed.put(productId, cardsOf(rebuilt.top(productId, topK)));
+                }
+                recommendations.keySet().retainAll(computed.keySet());
+                recommendations.putAll(computed);
+                log.info("Рекомендации построены для {} товаров", computed.size());
+            }
+        } finally {
+            synchronized (this) {
+                pending = null;
+            }
+        }
+    }
+
+    /**
+     * Возвращает наименьший и наибольший ID оформленных заказов или {@code null}, если заказов нет.
+     */
+    private long[] orderRange() {
+        String orders = "SELECT id FROM cart WHERE status = 'COMPLETED'"
+                + (orderArchive.isEnabled() ? " UNION ALL SELECT id FROM order_archive" : "");
+        Object[] row = (Object[]) entityManager.createNativeQuery("SELECT MIN(id), MAX(id) FROM (" + orders + ") o")
+                .getSingleResult();
+        return row[0] != null ? new long[] { ((Number) row[0]).longValue(), ((Number) row[1]).longValue() } : null;
+    }
+
+    /**
+     * Строит матрицу по заказам с ID из диапазона {@code [from, to]} и запоминает учтённые заказы.
+     */
+    private CooccurrenceMatrix load(long from, long to, ScannedOrders scanned) {
+        String items = """
+                SELECT ci.cart_id, ci.product_id
+                FROM cart_item ci
+                JOIN cart c ON c.id = ci.cart_id
+                WHERE c.status = 'COMPLETED' AND c.id BETWEEN :from AND :to
+                """ + (orderArchive.isEnabled() ? """
+                UNION ALL
+                SELECT order_id, product_id
+                FROM order_archive_item
+                WHERE order_id BETWEEN :from AND :to AND product_id IS NOT NULL
+                """ : "") + "ORDER BY 1, 2";
+        CooccurrenceMatrix chunk = new CooccurrenceMatrix();
+        BitSet orders = new BitSet();
+        OrderCollector collector = new OrderCollector(chunk, orderId -> orders.set((int) (orderId - from)));
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<?> rows = entityManager.createNativeQuery(items)
+                    .setParameter("from", from)
+                    .setParameter("to", to)
+                    .setHint(HibernateHints.HINT_FETCH_SIZE, FETCH_SIZE)
+                    .getResultStream()) {
+                rows.forEach(result -> {
+                    Object[] row = (Object[]) result;
+                    collector.add(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+                });
+            }
+        });
+        collector.flush();
+        scanned.add(from, orders);
+        return chunk;
+    }
+
+    /**
+     * Загружает карточки товаров, которых ещё нет в памяти.
+     */
+    private void loadMissingCards(long[] productIds) {
+        Long[] missing = Arrays.stream(productIds)
+                .filter(productId -> !cards.containsKey(productId))
+                .boxed()
+                .toArray(Long[]::new);
+        if (missing.length > 0) {
+            loadCards(entityManager.createNativeQuery(CARDS_QUERY + " WHERE id = ANY(CAST(:ids AS bigint[]))")
+                    .setParameter("ids", missing), cards);
+        }
+    }
+
+    private List<ProductCard> cardsOf(long[] productIds) {
+        List<ProductCard> result = new ArrayList<>(productIds.length);
+        for (long productId : productIds) {
+            ProductCard card = cards.get(productId);
+            if (card != null) {
+                result.add(card);
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    /**
+     * Читает карточки товаров из строк «ID, название, цена, изображение, количество».
+     */
+    private static void loadCards(Query query, Map<Long, ProductCard> target) {
+        for (Object result : query.getResultList()) {
+            Object[] row = (Object[]) result;
+            Long id = ((Number) row[0]).longValue();
+            target.put(id, new ProductCard(id, (String) row[1], (BigDecimal) row[2], (String) row[3],
+                    ((Number) row[4]).intValue()));
+        }
+    }
+
+    /**
+     * Заказ, учтённый во время построения матрицы.
+     *
+     * @param id         ID заказа
+     * @param productIds различные ID товаров заказа
+     */
+    private record Order(long id, long[] productIds) {
+    }
+
+    /**
+     * ID заказов, учтённых при построении матрицы: для каждой части — битовая карта
+     * со смещениями ID от начала её диапазона.
+     */
+    private static final class ScannedOrders {
+
+        private final ConcurrentSkipListMap<Long, BitSet> chunks = new ConcurrentSkipListMap<>();
+
+        void add(long from, BitSet orders) {
+            chunks.put(from, orders);
+        }
+
+        boolean contains(long orderId) {
+            Map.Entry<Long, BitSet> chunk = chunks.floorEntry(orderId);
+            if (chunk == null) {
+                return false;
+            }
+            long offset = orderId - chunk.getKey();
+            return offset <= Integer.MAX_VALUE && chunk.getValue().get((int) offset);
+        }
+    }
+
+    /**
+     * Собирает строки заказов, упорядоченные по ID заказа и товара, в заказы матрицы.
+     */
+    private final class OrderCollector {
+
+        private final CooccurrenceMatrix target;
+        private final LongConsumer added;
+        private long[] productIds = new long[16];
+        private int size;
+        private long orderId = -1;
+
+        OrderCollector(CooccurrenceMatrix target, LongConsumer added) {
+            this.target = target;
+            this.added = added;
+        }
+
+        void add(long order, long productId) {
+            if (order != orderId) {
+                flush();
+                orderId = order;
+            }
+            if (size > 0 && productIds[size - 1] == productId) {
+                return;
+            }
+            if (size == productIds.length) {
+                productIds = Arrays.copyOf(productIds, size * 2);
+            }
+            productIds[size++] = productId;
+        }
+
+        void flush() {
+            if (size >= 2 && size <= maxOrderLines) {
+                target.addOrder(Arrays.copyOf(productIds, size));
+                added.accept(orderId);
+            }
+            size = 0;
+        }
+    }
+
+    /**
+     * Часть построения матрицы: диапазон ID заказов делится пополам, пока не станет
+     * не длиннее {@code recommendations.rebuild-chunk}; матрицы половин складываются.
+     */
+    private final class Chunk extends RecursiveTask<CooccurrenceMatrix> {
+
+        private final long from;
+        private final long to;
+        private final ScannedOrders scanned;
+
+        Chunk(long from, long to, ScannedOrders scanned) {
+            this.from = from;
+            this.to = to;
+            this.scanned = scanned;
+        }
+
+        @Override
+        protected CooccurrenceMatrix compute() {
+            if (to - from < rebuildChunk) {
+                return load(from, to, scanned);
+            }
+            long middle = from + (to - from) / 2;
+            Chunk left = new Chunk(from, middle, scanned);
+            left.fork();
+            CooccurrenceMatrix right = new Chunk(middle + 1, to, scanned).compute();
+            CooccurrenceMatrix result = left.join();
+            result.merge(right);
+            return result;
+        }
+    }
+}
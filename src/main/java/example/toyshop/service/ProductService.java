@@ -1,21 +1,37 @@
 package example.toyshop.service;
 
+import example.toyshop.config.ReadYourWritesContext;
+import example.toyshop.dto.CatalogFilter;
+import example.toyshop.dto.ProductCard;
 import example.toyshop.model.Product;
+import example.toyshop.model.ProductStats;
 import example.toyshop.repository.ProductRepository;
+import example.toyshop.repository.ProductStatsRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.*;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.Optional;
+
 /**
  * Сервис для работы с товарами.
+ * Методы чтения выполняются в транзакциях только на чтение и при включённой
+ * реплике обслуживаются ею. Одинаковые одновременные чтения из базы данных
+ * объединяются ({@link SingleFlight}): запрос выполняет только первый вызов,
+ * остальные получают его результат.
  */
 @Service
 @RequiredArgsConstructor
 public class ProductService {
 
     private final ProductRepository productRepository;
+    private final ProductStatsRepository productStatsRepository;
+    private final ProductPopularity productPopularity;
+    private final CatalogSnapshot catalogSnapshot;
+    private final SingleFlight singleFlight;
 
     /**
      * Возвращает страницу товаров с учетом фильтрации по ключевому слову и
@@ -29,14 +45,91 @@ public class ProductService {
      * @param size    размер страницы
      * @return страница товаров с учетом фильтра и сортировки
      */
+    @Transactional(readOnly = true)
     public Page<Product> getProducts(String keyword, String sort, int page, int size) {
         Sort sorting = getSort(sort);
         Pageable pageable = PageRequest.of(page, size, sorting);
 
-        if (keyword != null && !keyword.isEmpty()) {
-            return productRepository.findByNameContainingIgnoreCase(keyword, pageable);
+        return singleFlight.execute(new LoadKey("products", keyword, pageable, CatalogFilter.NONE,
+                ReadYourWritesContext.isPinnedToPrimary()), () -> {
+            if (keyword != null && !keyword.isEmpty()) {
+                return productRepository.findByNameContainingIgnoreCase(keyword, pageable);
+            } else {
+                return productRepository.findAll(pageable);
+            }
+        });
+    }
+
+    /**
+     * Возвращает страницу карточек товаров для витрины с учетом фильтрации по
+     * ключевому слову и сортировки.
+     *
+     * @param keyword ключевое слово для поиска по названию (может быть null или
+     *                пустым)
+     * @param sort    параметр сортировки (price_asc, price_desc, name_asc,
+     *                name_desc, popular)
+     * @param page    номер страницы (0-based)
+     * @param size    размер страницы
+     * @return страница карточек товаров
+     */
+    @Transactional(readOnly = true)
+    public Page<ProductCard> getProductCards(String keyword, String sort, int page, int size) {
+        return getProductCards(keyword, sort, CatalogFilter.NONE, page, size);
+    }
+
+    /**
+     * Возвращает страницу карточек товаров для витрины с учетом фильтрации по
+     * ключевому слову, цене и наличию и сортировки.
+     * Сортировки по цене и названию читаются из снимка каталога в памяти
+     * ({@link CatalogSnapshot}), если он построен. Иначе используются проекции,
+     * которые не загружают описание товара и не создают управляемых сущностей.
+     * Сортировка popular (по убыванию популярности, см. {@link ProductPopularity})
+     * всегда читается из базы данных, а при выключенном учёте популярности
+     * заменяется сортировкой по цене.
+     *
+     * @param keyword ключевое слово для поиска по названию (может быть null или
+     *                пустым)
+     * @param sort    параметр сортировки (price_asc, price_desc, name_asc,
+     *                name_desc, popular)
+     * @param filter  фильтры по цене и наличию
+     * @param page    номер страницы (0-based)
+     * @param size    размер страницы
+     * @return страница карточек товаров
+     */
+    @Transactional(readOnly = true)
+    public Page<ProductCard> getProductCards(String keyword, String sort, CatalogFilter filter, int page, int size) {
+        boolean popular = "popular".equals(sort) && productPopularity.isEnabled();
+        if (!popular) {
+            Optional<Page<ProductCard>> snapshot = catalogSnapshot.find(keyword, sort, filter, page, size);
+            if (snapshot.isPresent()) {
+                return snapshot.get();
+            }
+        }
+        Pageable pageable = popular ? PageRequest.of(page, size) : PageRequest.of(page, size, getSort(sort));
+        return singleFlight.execute(new LoadKey(popular ? "popular-cards" : "cards", keyword, pageable, filter,
+                ReadYourWritesContext.isPinnedToPrimary()), () -> loadProductCards(keyword, popular, filter, pageable));
+    }
+
+    private Page<ProductCard> loadProductCards(String keyword, boolean popular, CatalogFilter filter,
+                                               Pageable pageable) {
+        boolean search = keyword != null && !keyword.isEmpty();
+        if (popular) {
+            if (!filter.isEmpty()) {
+                return productRepository.filterPopularCards(search ? keyword : "", filter.getMinPrice(),
+                        filter.getMaxPrice(), filter.isInStock(), pageable);
+            }
+            return search
+                    ? productRepository.searchPopularCards(keyword, pageable)
+                    : productRepository.findPopularCards(pageable);
+        }
+
+        if (!filter.isEmpty()) {
+            return productRepository.filterCards(search ? keyword : "", filter.getMinPrice(), filter.getMaxPrice(),
+                    filter.isInStock(), pageable);
+        } else if (search) {
+            return productRepository.searchCards(keyword, pageable);
         } else {
-            return productRepository.findAll(pageable);
+            return productRepository.findAllCards(pageable);
         }
     }
 
@@ -45,25 +138,39 @@ public class ProductService {
      *
      * @param id идентификатор товара
      * @return найденный товар
-     * @throws ResponseStatusException если товар не найден (HTTP 404)
+     * @throws ResponseStatusException если товар не найден (HTTP 404) или одновременная
+     *                                 загрузка того же товара не закончилась вовремя (HTTP 503)
      */
+    @Transactional(readOnly = true)
     public Product getProductById(Long id) {
-        return productRepository.findById(id)
-                .orElseThrow(() -> new ResponseStatusException(
-                        HttpStatus.NOT_FOUND, "Товар не найден"));
+        return singleFlight.execute(new LoadKey("product", id, null, null, ReadYourWritesContext.isPinnedToPrimary()),
+                () -> productRepository.findById(id)
+                        .orElseThrow(() -> new ResponseStatusException(
+                                HttpStatus.NOT_FOUND, "Товар не найден")));
     }
 
     /**
      * Сохраняет товар (новый или обновлённый).
+     * Для нового товара создаётся пустая статистика популярности, чтобы он сразу
+     * показывался в сортировке по популярности. После фиксации снимок каталога
+     * строится заново.
      *
      * @param product объект товара
      */
+    @Transactional
     public void saveProduct(Product product) {
-        productRepository.save(product);
+        boolean created = product.getId() == null;
+        Product saved = productRepository.save(product);
+        if (created) {
+            productStatsRepository.save(new ProductStats(saved));
+        }
+        catalogSnapshot.catalogChanged();
     }
 
     /**
      * Парсит строку сортировки в объект Sort.
+     * Идентификатор добавляется вторым ключом в том же направлении, чтобы порядок
+     * был стабильным между страницами и совпадал с индексами (price, id) и (name, id).
      *
      * @param sort строка с параметром сортировки
      * @return объект Sort
@@ -71,13 +178,26 @@ public class ProductService {
     private Sort getSort(String sort) {
         switch (sort) {
             case "price_desc":
-                return Sort.by(Sort.Direction.DESC, "price");
+                return Sort.by(Sort.Direction.DESC, "price", "id");
             case "name_asc":
-                return Sort.by(Sort.Direction.ASC, "name");
+                return Sort.by(Sort.Direction.ASC, "name", "id");
             case "name_desc":
-                return Sort.by(Sort.Direction.DESC, "name");
+                return Sort.by(Sort.Direction.DESC, "name", "id");
             default:
-                return Sort.by(Sort.Direction.ASC, "price");
+                return Sort.by(Sort.Direction.ASC, "price", "id");
         }
     }
+
+    /**
+     * Ключ объединения одинаковых чтений. Учитывает закрепление за основной базой данных,
+     * чтобы запрос, которому нужны собственные изменения, не получил результат чтения с реплики.
+     *
+     * @param kind     вид чтения
+     * @param argument ID товара или ключевое слово
+     * @param pageable страница и сортировка
+     * @param filter   фильтры по цене и наличию
+     * @param primary  чтение из основной базы данных
+     */
+    private record LoadKey(String kind, Object argument, Pageable pageable, CatalogFilter filter, boolean primary) {
+    }
 }
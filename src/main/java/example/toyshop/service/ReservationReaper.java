@@ -0,0 +1,49 @@
+package example.toyshop.service;
+
+import java.time.LocalDateTime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import example.toyshop.model.CartStatus;
+import example.toyshop.repository.CartItemRepository;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Фоновая задача, возвращающая на склад товар из брошенных корзин.
+ * <p>
+ * Позиции активных корзин, резерв которых истёк, удаляются пачками по {@code cart.reservation.batch-size};
+ * каждая пачка — одна короткая транзакция из одного запроса, поэтому задача не блокирует
+ * надолго ни корзины, ни строки горячих товаров.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class ReservationReaper {
+
+    private final CartItemRepository cartItemRepository;
+
+    /**
+     * Максимальное количество позиций корзин, освобождаемых за одну транзакцию.
+     */
+    @Value("${cart.reservation.batch-size:500}")
+    private int batchSize = 500;
+
+    /**
+     * Освобождает все просроченные на текущий момент резервы.
+     * Если просроченных резервов нет, изменяющие запросы не выполняются
+     * (и кэш товаров не сбрасывается).
+     */
+    @Scheduled(fixedDelayString = "${cart.reservation.reaper-interval:60s}")
+    public void releaseExpiredReservations() {
+        LocalDateTime now = LocalDateTime.now();
+        if (!cartItemRepository.existsByCartStatusAndReservedUntilBefore(CartStatus.ACTIVE, now)) {
+            return;
+        }
+        int released;
+        do {
+            released = cartItemRepository.releaseExpiredReservations(now, batchSize);
+        } while (released > 0);
+    }
+}
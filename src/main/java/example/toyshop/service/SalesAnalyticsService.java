@@ -0,0 +1,331 @@
+package example.toyshop.service;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.web.server.ResponseStatusException;
+
+import example.toyshop.dto.ProductSales;
+import example.toyshop.dto.SalesDay;
+import example.toyshop.dto.SalesReport;
+import example.toyshop.event.DomainEvent;
+import example.toyshop.event.DomainEventConsumer;
+import example.toyshop.event.OrderCompleted;
+import example.toyshop.model.Money;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Аналитика продаж по сводным таблицам.
+ * <p>
+ * Продажи хранятся по дням ({@code sales_daily}: заказы, единицы товара, выручка) и по дням и товарам
+ * ({@code sales_daily_product}), поэтому отчёт за период читает не больше «дни × товары» строк
+ * независимо от количества заказов. Сводки дополняются по событию {@link OrderCompleted}: заказ
+ * учитывается один раз, так как его ID записывается в {@code sales_rollup_order} тем же запросом,
+ * что и приращения, а повторно доставленное событие ничего не меняет.
+ * </p>
+ * <p>
+ * Раз в {@code analytics.reconcile-interval} последние {@code analytics.reconcile-days} дней
+ * пересчитываются заново по заказам, чем исправляются пропущенные события; учёт ID заказов за более
+ * ранние дни удаляется, а события о таких заказах не учитываются. Любой период можно пересчитать
+ * методом {@link #rebuild(LocalDate, LocalDate)}: пересчёт дня заменяет его строки сводок, поэтому
+ * повторный пересчёт даёт тот же результат. Заказы из архива ({@link OrderArchive}) тоже учитываются.
+ * </p>
+ */
+@Slf4j
+@Service
+public class SalesAnalyticsService implements DomainEventConsumer {
+
+    /**
+     * Транзакционная блокировка, под которой сводки дополняются по событию и пересчитываются.
+     */
+    private static final String LOCK = "SELECT 1 FROM pg_advisory_xact_lock(hashtext('sales_rollup'))";
+
+    private final EntityManager entityManager;
+    private final DatabaseSchema databaseSchema;
+    private final TransactionOperations transactionOperations;
+    private final OrderArchive orderArchive;
+    private final boolean enabled;
+    private final int reconcileDays;
+    private final int topProducts;
+
+    public SalesAnalyticsService(EntityManager entityManager,
+                                 DatabaseSchema databaseSchema,
+                                 TransactionOperations transactionOperations,
+                                 OrderArchive orderArchive,
+                                 @Value("${analytics.enabled:true}") boolean enabled,
+                                 @Value("${analytics.reconcile-days:2}") int reconcileDays,
+                                 @Value("${analytics.top-products:10}") int topProducts) {
+        this.entityManager = entityManager;
+        this.databaseSchema = databaseSchema;
+        this.transactionOperations = transactionOperations;
+        this.orderArchive = orderArchive;
+        this.enabled = enabled;
+        this.reconcileDays = reconcileDays;
+        this.topProducts = topProducts;
+    }
+
+    @Override
+    public String name() {
+        return "sales-rollup";
+    }
+
+    /**
+     * Добавляет оформленный заказ в сводки.
+     *
+     * @param event доменное событие
+     */
+    @Override
+    public void accept(DomainEvent event) {
+        if (enabled && event instanceof OrderCompleted completed) {
+            record(completed.orderId());
+        }
+    }
+
+    /**
+     * Добавляет заказ в сводки одним запросом, если он ещё не учтён.
+     * Заказы, оформленные раньше пересчитываемых дней, не учитываются.
+     *
+     * @param orderId ID оформленного заказа
+     */
+    void record(Long orderId) {
+        LocalDate since = reconcileFrom();
+        transactionOperations.executeWithoutResult(status -> {
+            lock();
+            update("""
+                    WITH src AS (
+                        SELECT id, completed_at::date AS day, total_amount, item_count
+                        FROM cart
+                        WHERE id = :orderId AND status = 'COMPLETED' AND completed_at >= :since
+                    ), claimed AS (
+                        INSERT INTO sales_rollup_order (order_id, day)
+                        SELECT id, day FROM src
+                        ON CONFLICT (order_id) DO NOTHING
+                        RETURNING order_id, day
+                    ), daily AS (
+                        INSERT INTO sales_daily (day, orders, units, revenue)
+                        SELECT c.day, 1, s.item_count, s.total_amount
+                        FROM claimed c JOIN src s ON s.id = c.order_id
+                        ON CONFLICT (day) DO UPDATE
+                        SET orders = sales_daily.orders + excluded.orders,
+                            units = sales_daily.units + excluded.units,
+                            revenue = sales_daily.revenue + excluded.revenue
+                    )
+                    INSERT INTO sales_daily_product (day, product_id, units, orders)
+                    SELECT c.day, ci.product_id, SUM(ci.quantity), 1
+                    FROM claimed c JOIN cart_item ci ON ci.cart_id = c.order_id
+                    GROUP BY c.day, ci.product_id
+                    ON CONFLICT (day, product_id) DO UPDATE
+                    SET units = sales_daily_product.units + excluded.units,
+                        orders = sales_daily_product.orders + excluded.orders
+                    """)
+                    .setParameter("orderId", orderId)
+                    .setParameter("since", since.atStartOfDay())
+                    .executeUpdate();
+        });
+    }
+
+    /**
+     * Пересчитывает последние {@code analytics.reconcile-days} дней и удаляет учёт ID заказов
+     * за более ранние дни.
+     */
+    @Scheduled(fixedDelayString = "${analytics.reconcile-interval:1h}",
+            initialDelayString = "${analytics.reconcile-interval:1h}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        LocalDate since = reconcileFrom();
+        rebuild(since, LocalDate.now());
+        // день запаса: событие, обработанное перед полуночью, могло рассчитать границу днём раньше
+        int pruned = transactionOperations.execute(status -> update(
+                "DELETE FROM sales_rollup_order WHERE day < :before")
+                .setParameter("before", since.minusDays(1))
+                .executeUpdate());
+        log.debug("Сводки продаж пересчитаны с {}, удалено учтённых заказов: {}", since, pruned);
+    }
+
+    /**
+     * Пересчитывает сводки за период по оформленным заказам, каждый день — в отдельной транзакции.
+     * Повторный пересчёт того же периода даёт тот же результат.
+     *
+     * @param from первый день периода
+     * @param to   последний день периода (включительно)
+     * @throws ResponseStatusException 400, если период начинается позже, чем заканчивается
+     */
+    public void rebuild(LocalDate from, LocalDate to) {
+        checkPeriod(from, to);
+        if (!enabled) {
+            return;
+        }
+        LocalDate since = reconcileFrom();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            LocalDate current = day;
+            transactionOperations.executeWithoutResult(status -> rebuildDay(current, !current.isBefore(since)));
+        }
+    }
+
+    /**
+     * Возвращает сводку продаж за период.
+     *
+     * @param from первый день периода
+     * @param to   последний день периода (включительно)
+     * @return продажи по дням и самые продаваемые товары
+     * @throws ResponseStatusException 400, если период начинается позже, чем заканчивается
+     */
+    public SalesReport getReport(LocalDate from, LocalDate to) {
+        checkPeriod(from, to);
+        if (!enabled) {
+            return new SalesReport(from, to, List.of(), List.of());
+        }
+        List<?> dayRows = entityManager.createNativeQuery("""
+                        SELECT day, orders, units, revenue
+                        FROM sales_daily
+                        WHERE day BETWEEN :from AND :to
+                        ORDER BY day
+                        """)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getResultList();
+        List<SalesDay> days = new ArrayList<>(dayRows.size());
+        for (Object result : dayRows) {
+            Object[] row = (Object[]) result;
+            days.add(new SalesDay(toLocalDate(row[0]), ((Number) row[1]).longValue(), ((Number) row[2]).longValue(),
+                    Money.of((BigDecimal) row[3])));
+        }
+
+        List<?> productRows = entityManager.createNativeQuery("""
+                        SELECT s.product_id, p.name, s.units, s.orders
+                        FROM (
+                            SELECT product_id, SUM(units) AS units, SUM(orders) AS orders
+                            FROM sales_daily_product
+                            WHERE day BETWEEN :from AND :to
+                            GROUP BY product_id
+                            ORDER BY SUM(units) DESC, product_id
+                            LIMIT :limit
+                        ) s
+                        LEFT JOIN product p ON p.id = s.product_id
+                        ORDER BY s.units DESC, s.product_id
+                        """)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .setParameter("limit", topProducts)
+                .getResultList();
+        List<ProductSales> products = new ArrayList<>(productRows.size());
+        for (Object result : productRows) {
+            Object[] row = (Object[]) result;
+            products.add(new ProductSales(((Number) row[0]).longValue(), (String) row[1],
+                    ((Number) row[2]).longValue(), ((Number) row[3]).longValue()));
+        }
+        return new SalesReport(from, to, days, products);
+    }
+
+    /**
+     * Заменяет строки сводок за день значениями, посчитанными по заказам этого дня, одним запросом:
+     * все части запроса видят одни и те же заказы, даже если их в это время переносят в архив.
+     *
+     * @param day   день
+     * @param claim учитывать ли ID заказов дня, чтобы события о них больше не учитывались
+     */
+    private void rebuildDay(LocalDate day, boolean claim) {
+        lock();
+        boolean archive = orderArchive.isEnabled();
+        String orders = """
+                SELECT id, total_amount, item_count
+                FROM cart
+                WHERE status = 'COMPLETED' AND completed_at >= :from AND completed_at < :to
+                """ + (archive ? """
+                UNION ALL
+                SELECT id, total_amount, item_count
+                FROM order_archive
+                WHERE completed_at >= :from AND completed_at < :to
+                """ : "");
+        String items = """
+                SELECT ci.cart_id AS order_id, ci.product_id, ci.quantity
+                FROM cart_item ci
+                JOIN cart c ON c.id = ci.cart_id
+                WHERE c.status = 'COMPLETED' AND c.completed_at >= :from AND c.completed_at < :to
+                """ + (archive ? """
+                UNION ALL
+                SELECT order_id, product_id, quantity
+                FROM order_archive_item
+                WHERE completed_at >= :from AND completed_at < :to
+                """ : "");
+        update("WITH orders AS (" + orders + "), items AS (" + items + """
+                ), totals AS (
+                    SELECT COUNT(*) AS orders, COALESCE(SUM(item_count), 0) AS units,
+                           COALESCE(SUM(total_amount), 0) AS revenue
+                    FROM orders
+                ), products AS (
+                    SELECT product_id, SUM(quantity) AS units, COUNT(DISTINCT order_id) AS orders
+                    FROM items
+                    WHERE product_id IS NOT NULL
+                    GROUP BY product_id
+                ), daily AS (
+                    INSERT INTO sales_daily (day, orders, units, revenue)
+                    SELECT :day, orders, units, revenue FROM totals WHERE orders > 0
+                    ON CONFLICT (day) DO UPDATE
+                    SET orders = excluded.orders, units = excluded.units, revenue = excluded.revenue
+                ), empty_day AS (
+                    DELETE FROM sales_daily
+                    WHERE day = :day AND (SELECT orders FROM totals) = 0
+                ), daily_products AS (
+                    INSERT INTO sales_daily_product (day, product_id, units, orders)
+                    SELECT :day, product_id, units, orders FROM products
+                    ON CONFLICT (day, product_id) DO UPDATE
+                    SET units = excluded.units, orders = excluded.orders
+                ), unsold_products AS (
+                    DELETE FROM sales_daily_product s
+                    WHERE s.day = :day AND NOT EXISTS (SELECT 1 FROM products p WHERE p.product_id = s.product_id)
+                ), claimed AS (
+                    INSERT INTO sales_rollup_order (order_id, day)
+                    SELECT id, :day FROM orders WHERE :claim
+                    ON CONFLICT (order_id) DO NOTHING
+                )
+                DELETE FROM sales_rollup_order r
+                WHERE r.day = :day AND NOT (:claim AND EXISTS (SELECT 1 FROM orders o WHERE o.id = r.order_id))
+                """)
+                .setParameter("day", day)
+                .setParameter("from", day.atStartOfDay())
+                .setParameter("to", day.plusDays(1).atStartOfDay())
+                .setParameter("claim", claim)
+                .executeUpdate();
+    }
+
+    private static void checkPeriod(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Начало периода позже его конца");
+        }
+    }
+
+    /**
+     * Первый из пересчитываемых по расписанию дней.
+     */
+    private LocalDate reconcileFrom() {
+        return LocalDate.now().minusDays(reconcileDays - 1L);
+    }
+
+    /**
+     * Захватывает блокировку сводок до конца текущей транзакции.
+     */
+    private void lock() {
+        entityManager.createNativeQuery(LOCK).getSingleResult();
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        return value instanceof Date date ? date.toLocalDate() : (LocalDate) value;
+    }
+
+    private Query update(String sql) {
+        return databaseSchema.update(sql, "sales_daily", "sales_daily_product", "sales_rollup_order");
+    }
+}
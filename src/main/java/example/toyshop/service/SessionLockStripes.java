@@ -0,0 +1,74 @@
+package example.toyshop.service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Фиксированный набор блокировок, между которыми распределяются сессии по хэшу идентификатора.
+ * <p>
+ * Память не растёт с числом сессий: разные сессии изредка делят одну блокировку,
+ * но запросы одной сессии всегда попадают в одну и ту же. Блокировки справедливые,
+ * поэтому запросы сессии выполняются в порядке поступления.
+ * </p>
+ */
+public class SessionLockStripes {
+
+    private final Lock[] locks;
+    private final long timeoutNanos;
+
+    /**
+     * @param stripes количество блокировок (округляется вверх до степени двойки)
+     * @param timeout максимальное время ожидания блокировки
+     */
+    public SessionLockStripes(int stripes, Duration timeout) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.locks = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock(true);
+        }
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    /**
+     * Возвращает блокировку, за которой закреплена сессия.
+     *
+     * @param sessionId идентификатор сессии
+     * @return блокировка сессии
+     */
+    public Lock lockFor(String sessionId) {
+        int h = sessionId.hashCode();
+        return locks[(h ^ (h >>> 16)) & (locks.length - 1)];
+    }
+
+    /**
+     * Захватывает блокировку сессии, ожидая не дольше заданного времени.
+     *
+     * @param sessionId идентификатор сессии
+     * @return захваченная блокировка, которую нужно освободить после изменения корзины
+     * @throws ResponseStatusException 429, если блокировку не удалось получить вовремя
+     */
+    public Lock acquire(String sessionId) {
+        Lock lock = lockFor(sessionId);
+        boolean acquired;
+        try {
+            acquired = lock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw busy();
+        }
+        if (!acquired) {
+            throw busy();
+        }
+        return lock;
+    }
+
+    static ResponseStatusException busy() {
+        return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                "Корзина изменяется другим запросом, повторите попытку");
+    }
+}
@@ -0,0 +1,157 @@
+package example.toyshop.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import example.toyshop.model.Product;
+import example.toyshop.model.ProductStockShard;
+import example.toyshop.model.StockMode;
+import example.toyshop.repository.ProductRepository;
+import example.toyshop.repository.ProductStockShardRepository;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Сервис учёта остатка товаров в режиме {@link StockMode#SHARDED}.
+ * <p>
+ * Остаток популярного товара разделён на несколько частей: каждое списание блокирует
+ * только одну случайную часть, поэтому параллельные добавления в корзину не ждут друг друга
+ * на строке товара. Поле {@code quantity} товара при этом не изменяется при списании —
+ * его обновляет {@link #rebalance(Long)} по сумме частей.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+public class ShardedStockService {
+
+    private final ProductStockShardRepository shardRepository;
+    private final ProductRepository productRepository;
+
+    /**
+     * Списывает товар из частей остатка в рамках текущей транзакции.
+     * Сначала пробует свободную часть, и только если все подходящие части заняты —
+     * ждёт освобождения одной из них.
+     *
+     * @param productId ID товара
+     * @param amount    количество единиц
+     * @return {@code true}, если товар списан; {@code false}, если товара нет в наличии
+     */
+    public boolean take(Long productId, int amount) {
+        return shardRepository.takeFromFreeShard(productId, amount) > 0
+                || shardRepository.takeFromAnyShard(productId, amount) > 0;
+    }
+
+    /**
+     * Возвращает товар в одну из частей остатка в рамках текущей транзакции.
+     *
+     * @param productId ID товара
+     * @param amount    количество единиц
+     */
+    public void release(Long productId, int amount) {
+        shardRepository.release(productId, amount);
+    }
+
+    /**
+     * Возвращает суммарный остаток товара по всем частям в рамках текущей транзакции.
+     *
+     * @param productId ID товара
+     * @return количество единиц товара
+     */
+    public int available(Long productId) {
+        return shardRepository.sumQuantity(productId);
+    }
+
+    /**
+     * Меняет способ учёта остатка товара.
+     * При переходе в {@link StockMode#SHARDED} текущий остаток распределяется между частями поровну,
+     * при выходе из него — суммируется обратно в товар, а части удаляются.
+     *
+     * @param productId ID товара
+     * @param mode      новый способ учёта остатка
+     * @param shards    количество частей (для {@link StockMode#SHARDED})
+     * @throws ResponseStatusException если товар не найден (HTTP 404)
+     */
+    @Transactional
+    public void changeStockMode(Long productId, StockMode mode, int shards) {
+        Product product = productRepository.findByIdForUpdate(productId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Товар не найден"));
+        if (product.getStockMode() == mode) {
+            return;
+        }
+        if (product.getStockMode() == StockMode.SHARDED) {
+            collapseShards(product);
+        }
+        if (mode == StockMode.SHARDED) {
+            splitIntoShards(product, shards);
+        }
+        product.setStockMode(mode);
+    }
+
+    /**
+     * Распределяет остаток товара между новыми частями.
+     *
+     * @param product товар
+     * @param shards  количество частей
+     */
+    private void splitIntoShards(Product product, int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Количество частей остатка должно быть положительным");
+        }
+        List<ProductStockShard> parts = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            parts.add(new ProductStockShard(null, product, i, 0));
+        }
+        distribute(parts, product.getQuantity());
+        shardRepository.saveAll(parts);
+    }
+
+    /**
+     * Суммирует части остатка обратно в товар и удаляет их.
+     *
+     * @param product товар
+     */
+    private void collapseShards(Product product) {
+        List<ProductStockShard> parts = shardRepository.findAllForUpdate(product.getId());
+        product.setQuantity(parts.stream().mapToInt(ProductStockShard::getQuantity).sum());
+        shardRepository.deleteByProductId(product.getId());
+    }
+
+    /**
+     * Выравнивает части остатка товара и обновляет отображаемый остаток товара их суммой.
+     * Части блокируются на время выравнивания, поэтому списания этого товара
+     * кратковременно ждут завершения операции.
+     *
+     * @param productId ID товара
+     */
+    @Transactional
+    public void rebalance(Long productId) {
+        List<ProductStockShard> parts = shardRepository.findAllForUpdate(productId);
+        if (parts.isEmpty()) {
+            return;
+        }
+        int total = parts.stream().mapToInt(ProductStockShard::getQuantity).sum();
+        distribute(parts, total);
+
+        productRepository.findById(productId)
+                .filter(product -> product.getQuantity() != total)
+                .ifPresent(product -> product.setQuantity(total));
+    }
+
+    /**
+     * Распределяет количество товара между частями поровну (остаток от деления — первым частям).
+     *
+     * @param parts части остатка
+     * @param total общее количество единиц
+     */
+    private static void distribute(List<ProductStockShard> parts, int total) {
+        int base = total / parts.size();
+        int extra = total % parts.size();
+        for (int i = 0; i < parts.size(); i++) {
+            parts.get(i).setQuantity(base + (i < extra ? 1 : 0));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package example.toyshop.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Объединение одинаковых одновременных загрузок («single flight»).
+ * <p>
+ * Для каждого ключа одновременно выполняется не больше одной загрузки: первый вызов загружает данные
+ * в своём потоке, а вызовы с тем же ключом, пришедшие до её окончания, ждут её результат
+ * (или исключение) не дольше {@code product.single-flight.timeout}, после чего получают 503.
+ * Результат не кэшируется: следующий вызов после окончания загрузки выполняет новую. Так истёкшая
+ * запись кэша популярного товара или первая волна запросов после перезапуска дают один запрос
+ * к базе данных вместо сотен одинаковых.
+ * </p>
+ */
+@Component
+public class SingleFlight {
+
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final Duration timeout;
+
+    public SingleFlight(@Value("${product.single-flight.enabled:true}") boolean enabled,
+                        @Value("${product.single-flight.timeout:2s}") Duration timeout) {
+        this.enabled = enabled;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Выполняет загрузку или дожидается уже идущей загрузки с тем же ключом.
+     *
+     * @param key    ключ загрузки; должен учитывать всё, от чего зависит результат
+     * @param loader загрузка
+     * @param <T>    тип результата
+     * @return результат загрузки
+     * @throws ResponseStatusException 503, если идущая загрузка не закончилась за отведённое время
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object key, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> running = calls.putIfAbsent(key, call);
+        if (running != null) {
+            return (T) await(running);
+        }
+        try {
+            T result = loader.get();
+            call.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    private Object await(CompletableFuture<Object> running) {
+        try {
+            return running.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw busy();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw busy();
+        }
+    }
+
+    private static ResponseStatusException busy() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "Слишком много одинаковых запросов, повторите попытку");
+    }
+}
@@ -0,0 +1,30 @@
+package example.toyshop.service;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import example.toyshop.model.StockMode;
+import example.toyshop.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Фоновая задача, выравнивающая части остатка товаров в режиме {@link StockMode#SHARDED}
+ * и обновляющая отображаемый остаток этих товаров.
+ * Каждый товар обрабатывается в отдельной короткой транзакции.
+ */
+@Component
+@RequiredArgsConstructor
+public class StockShardRebalancer {
+
+    private final ProductRepository productRepository;
+    private final ShardedStockService shardedStockService;
+
+    /**
+     * Выравнивает части остатка всех товаров, учитываемых по частям.
+     */
+    @Scheduled(fixedDelayString = "${stock.shards.rebalance-interval:5s}")
+    public void rebalanceAll() {
+        productRepository.findIdsByStockMode(StockMode.SHARDED)
+                .forEach(shardedStockService::rebalance);
+    }
+}
@@ -0,0 +1,545 @@
+package example.toyshop.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import example.toyshop.dto.CartBadge;
+import example.toyshop.dto.CartDelta;
+import example.toyshop.dto.CartLineView;
+import example.toyshop.dto.CartView;
+import example.toyshop.model.Money;
+import example.toyshop.model.Product;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Хранилище активных корзин в нежурналируемых (UNLOGGED) таблицах PostgreSQL
+ * (режим {@code cart.store.mode=UNLOGGED}).
+ * <p>
+ * Строки активных корзин ({@code active_cart}, {@code active_cart_item}) не пишутся в журнал
+ * предзаписи, а транзакции изменения корзины фиксируются с {@code synchronous_commit=off}:
+ * частые изменения корзин не нагружают журнал и не ждут его сброса на диск.
+ * Остаток товара по-прежнему меняется в журналируемых таблицах в той же транзакции,
+ * что и строки корзины. Оформление заказа одним запросом переносит корзину в журналируемые
+ * таблицы {@code cart} и {@code cart_item} и фиксируется синхронно.
+ * </p>
+ * <p>
+ * После аварийного перезапуска PostgreSQL нежурналируемые таблицы пусты: незавершённые корзины теряются.
+ * Чтобы товар из них вернулся на склад, каждое изменение корзины дописывает разницу количества
+ * в журналируемую таблицу {@code active_cart_reservation}. Если после перезапуска пропала
+ * отметка {@code active_cart_epoch}, разница между этой таблицей и строками корзин возвращается
+ * на склад. Просроченные резервы освобождаются так же, как в {@link ReservationReaper}.
+ * </p>
+ * <p>
+ * Нежурналируемые таблицы недоступны на репликах, поэтому корзины читаются только с основного сервера.
+ * Активные корзины из таблицы {@code cart}, оставшиеся после смены режима, не показываются;
+ * их позиции освобождает {@link ReservationReaper}. Как и в других режимах, изменения корзины
+ * одной сессии должны сериализоваться ({@code cart.lock.mode}).
+ * </p>
+ */
+@Slf4j
+@Component
+public class UnloggedCartStore implements ActiveCartStore {
+
+    private final EntityManager entityManager;
+    private final DatabaseSchema databaseSchema;
+    private final TransactionOperations transactionOperations;
+    private final TransactionTemplate primaryReads;
+    private final boolean enabled;
+    private final Duration reservationTtl;
+    private final int batchSize;
+
+    public UnloggedCartStore(EntityManager entityManager,
+                             DatabaseSchema databaseSchema,
+                             TransactionOperations transactionOperations,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${cart.store.mode:DATABASE}") Mode mode,
+                             @Value("${cart.reservation.ttl:30m}") Duration reservationTtl,
+                             @Value("${cart.reservation.batch-size:500}") int batchSize) {
+        this.entityManager = entityManager;
+        this.databaseSchema = databaseSchema;
+        this.transactionOperations = transactionOperations;
+        this.primaryReads = new TransactionTemplate(transactionManager);
+        this.primaryReads.setPropagationBehavior(TransactionDefinition.PROPAGATION_NOT_SUPPORTED);
+        this.enabled = mode == Mode.UNLOGGED;
+        this.reservationTtl = reservationTtl;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Проверяет, хранятся ли активные корзины в нежурналируемых таблицах.
+     *
+     * @return {@code true} в режиме {@code UNLOGGED}
+     */
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Возвращает на склад товар корзин, потерянных при аварийном перезапуске базы данных.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        transactionOperations.executeWithoutResult(status -> reconcile());
+    }
+
+    /**
+     * Открывает корзину сессии для изменения в текущей транзакции.
+     * Позиции и строка корзины блокируются до конца транзакции, резерв позиций продлевается;
+     * изменения записываются в таблицы одним запросом перед коммитом.
+     *
+     * @param sessionId идентификатор сессии
+     * @return изменяемая корзина
+     * @throws IllegalStateException если транзакция не активна
+     */
+    @Override
+    public UnloggedCartEdit edit(String sessionId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Корзина изменяется только в транзакции");
+        }
+        LocalDateTime reservedUntil = LocalDateTime.now().plus(reservationTtl);
+        // сначала позиции, затем строка корзины — в том же порядке их блокирует освобождение резервов
+        List<?> lines = entityManager.createNativeQuery("""
+                        UPDATE active_cart_item i
+                        SET reserved_until = :reservedUntil
+                        FROM product p
+                        WHERE p.id = i.product_id AND i.session_id = :sessionId
+                        RETURNING i.product_id, i.quantity, i.price_minor, p.name, p.image_url
+                        """)
+                .setParameter("reservedUntil", reservedUntil)
+                .setParameter("sessionId", sessionId)
+                .getResultList();
+        List<?> header = entityManager.createNativeQuery("""
+                        SELECT total_minor, item_count, version
+                        FROM active_cart
+                        WHERE session_id = :sessionId
+                        FOR UPDATE
+                        """)
+                .setParameter("sessionId", sessionId)
+                .getResultList();
+        entityManager.createNativeQuery("SELECT set_config('synchronous_commit', 'off', true)").getSingleResult();
+
+        UnloggedCartEdit edit = new UnloggedCartEdit(sessionId, reservedUntil);
+        if (!header.isEmpty()) {
+            Object[] row = (Object[]) header.get(0);
+            edit.load(((Number) row[0]).longValue(), ((Number) row[1]).intValue(), ((Number) row[2]).longValue());
+        }
+        for (Object line : lines) {
+            Object[] row = (Object[]) line;
+            edit.lines.put(((Number) row[0]).longValue(), new Line(((Number) row[1]).intValue(),
+                    ((Number) row[2]).longValue(), (String) row[3], (String) row[4]));
+        }
+        TransactionSynchronizationManager.registerSynchronization(edit);
+        return edit;
+    }
+
+    /**
+     * Возвращает представление корзины сессии, прочитанное одним запросом с основного сервера.
+     *
+     * @param sessionId идентификатор сессии
+     * @return представление корзины (пустое, если корзины нет)
+     */
+    @Override
+    public Optional<CartView> view(String sessionId) {
+        List<?> rows = primaryReads.execute(status -> entityManager.createNativeQuery("""
+                        SELECT c.total_minor, i.product_id, i.quantity, i.price_minor, p.name, p.image_url
+                        FROM active_cart c
+                        LEFT JOIN active_cart_item i ON i.session_id = c.session_id
+                        LEFT JOIN product p ON p.id = i.product_id
+                        WHERE c.session_id = :sessionId
+                        ORDER BY i.product_id
+                        """)
+                .setParameter("sessionId", sessionId)
+                .getResultList());
+        if (rows.isEmpty()) {
+            return Optional.of(CartView.empty());
+        }
+        List<CartLineView> lines = new ArrayList<>(rows.size());
+        for (Object result : rows) {
+            Object[] row = (Object[]) result;
+            if (row[1] != null) {
+                lines.add(lineView(((Number) row[1]).longValue(), new Line(((Number) row[2]).intValue(),
+                        ((Number) row[3]).longValue(), (String) row[4], (String) row[5])));
+            }
+        }
+        return Optional.of(new CartView(null, lines, Money.ofMinor(((Number) ((Object[]) rows.get(0))[0]).longValue())));
+    }
+
+    /**
+     * Возвращает итоги корзины сессии из строки {@code active_cart} на основном сервере.
+     *
+     * @param sessionId идентификатор сессии
+     * @return итоги корзины (пустые, если корзины нет)
+     */
+    @Override
+    public Optional<CartBadge> badge(String sessionId) {
+        List<?> rows = primaryReads.execute(status -> entityManager.createNativeQuery("""
+                        SELECT item_count, total_minor, version
+                        FROM active_cart
+                        WHERE session_id = :sessionId
+                        """)
+                .setParameter("sessionId", sessionId)
+                .getResultList());
+        if (rows.isEmpty()) {
+            return Optional.of(CartBadge.empty());
+        }
+        Object[] row = (Object[]) rows.get(0);
+        return Optional.of(new CartBadge(((Number) row[0]).intValue(), Money.ofMinor(((Number) row[1]).longValue()),
+                ((Number) row[2]).longValue()));
+    }
+
+    /**
+     * Переносит корзину сессии в таблицы {@code cart} и {@code cart_item} как оформленный заказ.
+     * Строки активной корзины удаляются, заказ создаётся с бессрочным резервом, а резерв товара
+     * списывается из {@code active_cart_reservation} — одним запросом в текущей транзакции.
+     *
+     * @param sessionId идентификатор сессии
+     * @return ID созданной строки {@code cart} со статусом COMPLETED
+     * @throws IllegalStateException если активная корзина не найдена
+     */
+    public Long moveToOrder(String sessionId) {
+        List<?> ids = entityManager.createNativeQuery("""
+                        WITH header AS (
+                            DELETE FROM active_cart
+                            WHERE session_id = :sessionId
+                            RETURNING session_id, created_at, total_minor, item_count
+                        ), lines AS (
+                            DELETE FROM active_cart_item
+                            WHERE session_id = :sessionId
+                            RETURNING product_id, quantity, price_minor
+                        ), released AS (
+                            INSERT INTO active_cart_reservation (product_id, quantity)
+                            SELECT product_id, -quantity FROM lines
+                        ), orders AS (
+                            INSERT INTO cart (session_id, status, created_at, completed_at, total_amount, item_count,
+                                              version)
+                            SELECT session_id, 'COMPLETED', created_at, :completedAt, CAST(total_minor AS numeric) / 100,
+                                   item_count, 0
+                            FROM header
+                            RETURNING id
+                        ), items AS (
+                            INSERT INTO cart_item (cart_id, product_id, quantity, price, reserved_until)
+                            SELECT o.id, l.product_id, l.quantity, CAST(l.price_minor AS numeric) / 100, NULL
+                            FROM orders o CROSS JOIN lines l
+                        )
+                        SELECT id FROM orders
+                        """)
+                .setParameter("sessionId", sessionId)
+                .setParameter("completedAt", LocalDateTime.now())
+                .getResultList();
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("Активная корзина не найдена");
+        }
+        return ((Number) ids.get(0)).longValue();
+    }
+
+    /**
+     * Освобождает просроченные резервы активных корзин пачками по {@code cart.reservation.batch-size},
+     * после аварийного перезапуска базы данных возвращает на склад товар потерянных корзин
+     * и сжимает {@code active_cart_reservation} до одной строки на товар.
+     */
+    @Scheduled(fixedDelayString = "${cart.reservation.reaper-interval:60s}")
+    public void releaseExpiredReservations() {
+        if (!enabled) {
+            return;
+        }
+        transactionOperations.executeWithoutResult(status -> reconcile());
+        LocalDateTime now = LocalDateTime.now();
+        int released;
+        do {
+            released = transactionOperations.execute(status -> releaseExpired(now));
+        } while (released > 0);
+        transactionOperations.executeWithoutResult(status -> databaseSchema.update("""
+                WITH compacted AS (
+                    DELETE FROM active_cart_reservation
+                    RETURNING product_id, quantity
+                )
+                INSERT INTO active_cart_reservation (product_id, quantity)
+                SELECT product_id, SUM(quantity)
+                FROM compacted
+                GROUP BY product_id
+                HAVING SUM(quantity) <> 0
+                """, "active_cart_reservation").executeUpdate());
+    }
+
+    /**
+     * Если отметки {@code active_cart_epoch} нет (первый запуск или таблицы очищены при аварийном
+     * перезапуске), возвращает на склад товар, учтённый в {@code active_cart_reservation},
+     * но отсутствующий в строках корзин. Строки корзин и их учёт пишутся одной транзакцией,
+     * поэтому один запрос видит их согласованными; отметку ставит только один узел.
+     */
+    private void reconcile() {
+        int marked = databaseSchema.update("""
+                INSERT INTO active_cart_epoch (id, started_at)
+                VALUES (1, :now)
+                ON CONFLICT (id) DO NOTHING
+                """, "active_cart_epoch")
+                .setParameter("now", LocalDateTime.now())
+                .executeUpdate();
+        if (marked == 0) {
+            return;
+        }
+        int returned = databaseSchema.update("""
+                WITH actual AS (
+                    SELECT product_id, SUM(quantity) AS quantity
+                    FROM active_cart_item
+                    GROUP BY product_id
+                ), leaked AS (
+                    SELECT r.product_id, SUM(r.quantity) - COALESCE(MAX(a.quantity), 0) AS quantity
+                    FROM active_cart_reservation r
+                    LEFT JOIN actual a ON a.product_id = r.product_id
+                    GROUP BY r.product_id
+                    HAVING SUM(r.quantity) - COALESCE(MAX(a.quantity), 0) > 0
+                ), written_off AS (
+                    INSERT INTO active_cart_reservation (product_id, quantity)
+                    SELECT product_id, -quantity FROM leaked
+                ), to_shards AS (
+                    UPDATE product_stock_shard s
+                    SET quantity = s.quantity + l.quantity
+                    FROM leaked l
+                    JOIN product sp ON sp.id = l.product_id AND sp.stock_mode = 'SHARDED'
+                    WHERE s.product_id = l.product_id AND s.shard = 0
+                )
+                UPDATE product p
+                SET quantity = p.quantity + l.quantity
+                FROM leaked l
+                WHERE p.id = l.product_id
+                """, "active_cart_reservation", "product", "product_stock_shard").executeUpdate();
+        if (returned > 0) {
+            log.warn("Активные корзины потеряны при перезапуске базы данных, товар возвращён на склад: {} наименований",
+                    returned);
+        }
+    }
+
+    /**
+     * Освобождает одну пачку просроченных резервов: удаляет позиции, возвращает товар на склад,
+     * уменьшает итоги корзин и учёт резерва одним запросом.
+     *
+     * @return количество товаров, остаток которых был увеличен
+     */
+    private int releaseExpired(LocalDateTime now) {
+        return databaseSchema.update("""
+                WITH expired AS (
+                    SELECT session_id, product_id
+                    FROM active_cart_item
+                    WHERE reserved_until < :now
+                    ORDER BY reserved_until
+                    LIMIT :batchSize
+                    FOR UPDATE SKIP LOCKED
+                ), released AS (
+                    DELETE FROM active_cart_item i
+                    USING expired e
+                    WHERE i.session_id = e.session_id AND i.product_id = e.product_id
+                    RETURNING i.session_id, i.product_id, i.quantity, i.price_minor
+                ), returned AS (
+                    SELECT product_id, SUM(quantity) AS quantity FROM released GROUP BY product_id
+                ), cart_totals AS (
+                    UPDATE active_cart c
+                    SET total_minor = c.total_minor - t.amount,
+                        item_count = c.item_count - t.quantity,
+                        version = c.version + 1
+                    FROM (
+                        SELECT session_id, SUM(quantity * price_minor) AS amount, SUM(quantity) AS quantity
+                        FROM released
+                        GROUP BY session_id
+                    ) t
+                    WHERE c.session_id = t.session_id
+                ), written_off AS (
+                    INSERT INTO active_cart_reservation (product_id, quantity)
+                    SELECT product_id, -quantity FROM returned
+                ), to_shards AS (
+                    UPDATE product_stock_shard s
+                    SET quantity = s.quantity + r.quantity
+                    FROM returned r
+                    JOIN product sp ON sp.id = r.product_id AND sp.stock_mode = 'SHARDED'
+                    WHERE s.product_id = r.product_id AND s.shard = 0
+                )
+                UPDATE product p
+                SET quantity = p.quantity + r.quantity
+                FROM returned r
+                WHERE p.id = r.product_id
+                """, "active_cart_item", "active_cart", "active_cart_reservation", "product", "product_stock_shard")
+                .setParameter("now", now)
+                .setParameter("batchSize", batchSize)
+                .executeUpdate();
+    }
+
+    private static CartLineView lineView(long productId, Line line) {
+        Money price = Money.ofMinor(line.price());
+        return new CartLineView(productId, line.name(), line.imageUrl(), price, line.quantity(),
+                price.times(line.quantity()));
+    }
+
+    /**
+     * Строка корзины: количество, цена единицы в копейках, название и изображение товара.
+     */
+    record Line(int quantity, long price, String name, String imageUrl) {
+    }
+
+    /**
+     * Корзина, открытая для изменения в одной транзакции.
+     * Изменения накапливаются в памяти и записываются в таблицы одним запросом перед коммитом.
+     */
+    public final class UnloggedCartEdit implements ActiveCartStore.Edit, TransactionSynchronization {
+
+        private final String sessionId;
+        private final LocalDateTime reservedUntil;
+        private final TreeMap<Long, Line> lines = new TreeMap<>();
+        private final Map<Long, Integer> reserved = new LinkedHashMap<>();
+        private boolean stored;
+        private long totalAmount;
+        private int itemCount;
+        private long version;
+
+        private UnloggedCartEdit(String sessionId, LocalDateTime reservedUntil) {
+            this.sessionId = sessionId;
+            this.reservedUntil = reservedUntil;
+        }
+
+        private void load(long totalAmount, int itemCount, long version) {
+            this.stored = true;
+            this.totalAmount = totalAmount;
+            this.itemCount = itemCount;
+            this.version = version;
+        }
+
+        /**
+         * Проверяет, что корзины ещё нет в таблице {@code active_cart}.
+         *
+         * @return {@code true}, если корзины нет
+         */
+        @Override
+        public boolean isNew() {
+            return !stored;
+        }
+
+        @Override
+        public int quantity(Long productId) {
+            Line line = lines.get(productId);
+            return line != null ? line.quantity() : 0;
+        }
+
+        @Override
+        public void set(Product product, int quantity) {
+            int delta = quantity - quantity(product.getId());
+            if (delta == 0) {
+                return;
+            }
+            // существующая строка сохраняет цену, по которой товар попал в корзину
+            Line line = lines.get(product.getId());
+            long price = line != null ? line.price() : Money.of(product.getPrice()).minorUnits();
+            if (quantity == 0) {
+                lines.remove(product.getId());
+            } else {
+                lines.put(product.getId(), new Line(quantity, price, product.getName(), product.getImageUrl()));
+            }
+            totalAmount += price * delta;
+            itemCount += delta;
+            reserved.merge(product.getId(), delta, Integer::sum);
+        }
+
+        @Override
+        public CartDelta delta(Long productId, int stock) {
+            Line line = lines.get(productId);
+            return new CartDelta(productId,
+                    line != null ? line.quantity() : 0,
+                    line != null ? Money.ofMinor(line.price()).times(line.quantity()) : Money.ZERO,
+                    Money.ofMinor(totalAmount),
+                    lines.size(),
+                    itemCount,
+                    stock);
+        }
+
+        @Override
+        public CartView view() {
+            List<CartLineView> views = new ArrayList<>(lines.size());
+            lines.forEach((productId, line) -> views.add(lineView(productId, line)));
+            return new CartView(null, views, Money.ofMinor(totalAmount));
+        }
+
+        /**
+         * Записывает строку корзины, изменённые позиции и изменение резерва одним запросом.
+         */
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (reserved.isEmpty()) {
+                return;
+            }
+            Long[] productIds = new Long[reserved.size()];
+            Integer[] quantities = new Integer[productIds.length];
+            Long[] prices = new Long[productIds.length];
+            Integer[] deltas = new Integer[productIds.length];
+            int i = 0;
+            for (Map.Entry<Long, Integer> change : reserved.entrySet()) {
+                Line line = lines.get(change.getKey());
+                productIds[i] = change.getKey();
+                quantities[i] = line != null ? line.quantity() : 0;
+                prices[i] = line != null ? line.price() : 0L;
+                deltas[i] = change.getValue();
+                i++;
+            }
+            databaseSchema.update("""
+                    WITH changed AS (
+                        SELECT *
+                        FROM unnest(CAST(:productIds AS bigint[]), CAST(:quantities AS integer[]),
+                                    CAST(:prices AS bigint[]), CAST(:deltas AS integer[]))
+                             AS c(product_id, quantity, price_minor, delta)
+                    ), header AS (
+                        INSERT INTO active_cart (session_id, created_at, total_minor, item_count, version)
+                        VALUES (:sessionId, :now, :totalAmount, :itemCount, :version)
+                        ON CONFLICT (session_id) DO UPDATE
+                        SET total_minor = EXCLUDED.total_minor,
+                            item_count = EXCLUDED.item_count,
+                            version = EXCLUDED.version
+                    ), removed AS (
+                        DELETE FROM active_cart_item i
+                        USING changed c
+                        WHERE i.session_id = :sessionId AND i.product_id = c.product_id AND c.quantity = 0
+                    ), upserted AS (
+                        INSERT INTO active_cart_item (session_id, product_id, quantity, price_minor, reserved_until)
+                        SELECT :sessionId, product_id, quantity, price_minor, :reservedUntil
+                        FROM changed
+                        WHERE quantity > 0
+                        ON CONFLICT (session_id, product_id) DO UPDATE
+                        SET quantity = EXCLUDED.quantity,
+                            price_minor = EXCLUDED.price_minor,
+                            reserved_until = EXCLUDED.reserved_until
+                    )
+                    INSERT INTO active_cart_reservation (product_id, quantity)
+                    SELECT product_id, delta FROM changed WHERE delta <> 0
+                    """, "active_cart", "active_cart_item", "active_cart_reservation")
+                    .setParameter("productIds", productIds)
+                    .setParameter("quantities", quantities)
+                    .setParameter("prices", prices)
+                    .setParameter("deltas", deltas)
+                    .setParameter("sessionId", sessionId)
+                    .setParameter("now", LocalDateTime.now())
+                    .setParameter("totalAmount", totalAmount)
+                    .setParameter("itemCount", itemCount)
+                    .setParameter("version", version + 1)
+                    .setParameter("reservedUntil", reservedUntil)
+                    .executeUpdate();
+        }
+    }
+}
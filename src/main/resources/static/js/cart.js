@@ -0,0 +1,129 @@
+/*
+ * Кнопки корзины без перезагрузки страницы.
+ *
+ * Формы с атрибутом data-api отправляются в JSON API корзины (/api/cart/...),
+ * а страница обновляется по ответу: количество и сумма строки, сумма корзины, остаток товара.
+ * Значок корзины (data-cart-badge) заполняется из /api/cart/summary при загрузке страницы.
+ * Если изменение не удалось, корзина не изменилась: показывается сообщение сервера, страница остаётся прежней.
+ * Без JavaScript формы работают как обычно — через редирект и повторную отрисовку страницы.
+ */
+(function () {
+    'use strict';
+
+    function newIdempotencyKey() {
+        if (window.crypto && crypto.randomUUID) {
+            return crypto.randomUUID();
+        }
+        return Date.now().toString(36) + Math.random().toString(36).slice(2);
+    }
+
+    function amount(value) {
+        return Number(value).toFixed(2) + ' ₽';
+    }
+
+    function each(selector, action) {
+        document.querySelectorAll(selector).forEach(action);
+    }
+
+    var FAILURE_MESSAGE = 'Не удалось изменить корзину, повторите попытку';
+
+    function errorMessage(response) {
+        return response.json()
+            .then(function (problem) {
+                return problem.detail || problem.message || FAILURE_MESSAGE;
+            }, function () {
+                return FAILURE_MESSAGE;
+            });
+    }
+
+    function showBadge(itemCount) {
+        each('[data-cart-badge]', function (el) {
+            el.textContent = itemCount > 0 ? '(' + itemCount + ')' : '';
+        });
+    }
+
+    function apply(delta) {
+        var id = delta.productId;
+        each('[data-stock="' + id + '"]', function (el) {
+            el.textContent = 'Доступно: ' + delta.stock;
+        });
+        each('[data-stock-button="' + id + '"]', function (el) {
+            el.disabled = delta.stock === 0;
+        });
+        each('[data-quantity="' + id + '"]', function (el) {
+            el.textContent = delta.quantity;
+        });
+        each('[data-line-total="' + id + '"]', function (el) {
+            el.textContent = amount(delta.lineTotal);
+        });
+        if (delta.quantity === 0) {
+            each('[data-line="' + id + '"]', function (el) {
+                el.remove();
+            });
+        }
+        each('[data-cart-total]', function (el) {
+            el.textContent = amount(delta.totalAmount);
+        });
+        each('[data-cart-empty]', function (el) {
+            el.hidden = delta.lineCount > 0;
+        });
+        showBadge(delta.itemCount);
+    }
+
+    document.addEventListener('DOMContentLoaded', function () {
+        if (!document.querySelector('[data-cart-badge]')) {
+            return;
+        }
+        fetch('/api/cart/summary', { headers: { 'Accept': 'application/json' }, credentials: 'same-origin' })
+            .then(function (response) {
+                return response.ok ? response.json() : null;
+            })
+            .then(function (summary) {
+                if (summary) {
+                    showBadge(summary.itemCount);
+                }
+            })
+            .catch(function () {
+                // значок необязателен
+            });
+    });
+
+    document.addEventListener('submit', function (event) {
+        var form = event.target;
+        var url = form.getAttribute('data-api');
+        if (!url) {
+            return;
+        }
+        event.preventDefault();
+
+        var button = form.querySelector('button');
+        var keyField = form.querySelector('input[name="idempotencyKey"]');
+        var headers = { 'Accept': 'application/json' };
+        if (keyField) {
+            headers['Idempotency-Key'] = keyField.value;
+        }
+        button.disabled = true;
+
+        fetch(url, { method: 'POST', headers: headers, credentials: 'same-origin' })
+            .then(function (response) {
+                if (!response.ok) {
+                    return errorMessage(response).then(function (message) {
+                        throw new Error(message);
+                    });
+                }
+                return response.json();
+            })
+            .then(function (delta) {
+                button.disabled = false;
+                if (keyField) {
+                    keyField.value = newIdempotencyKey();
+                }
+                apply(delta);
+            })
+            .catch(function (error) {
+                // ошибка не сохраняется под ключом идемпотентности: повтор с тем же ключом выполнится заново
+                button.disabled = false;
+                alert(error instanceof TypeError ? FAILURE_MESSAGE : error.message);
+            });
+    });
+})();
@@ -5,28 +5,56 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
-
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.web.server.ResponseStatusException;
+
+import example.toyshop.dto.CartDelta;
+import example.toyshop.dto.CartLineRequest;
+import example.toyshop.dto.CartView;
+import example.toyshop.event.DomainEventBus;
 import example.toyshop.model.Cart;
 import example.toyshop.model.CartItem;
 import example.toyshop.model.CartStatus;
+import example.toyshop.model.Money;
+import example.toyshop.model.OutboxMessage;
+import example.toyshop.model.OutboxStatus;
 import example.toyshop.model.Product;
+import example.toyshop.model.StockMode;
+import example.toyshop.repository.CartItemRepository;
 import example.toyshop.repository.CartRepository;
+import example.toyshop.repository.OutboxMessageRepository;
 import example.toyshop.repository.ProductRepository;
 import example.toyshop.service.CartService;
+import example.toyshop.service.CheckoutCoordinator;
+import example.toyshop.service.MemoryCartStore;
+import example.toyshop.service.UnloggedCartStore;
+import example.toyshop.service.ProductAdmissionQueue;
+import example.toyshop.service.ShardedStockService;
+import jakarta.persistence.EntityManager;
 
 import java.util.Optional;
 
@@ -45,9 +73,39 @@ class CartServiceTest {
     @Mock
     private CartRepository cartRepository;
 
+    @Mock
+    private CartItemRepository cartItemRepository;
+
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private ShardedStockService shardedStockService;
+
+    @Mock
+    private ProductAdmissionQueue admissionQueue;
+
+    @Mock
+    private CheckoutCoordinator checkoutCoordinator;
+
+    @Mock
+    private OutboxMessageRepository outboxRepository;
+
+    @Mock
+    private DomainEventBus eventBus;
+
+    @Mock
+    private MemoryCartStore cartStore;
+
+    @Mock
+    private UnloggedCartStore unloggedCartStore;
+
+    @Spy
+    private TransactionOperations transactionOperations = TransactionOperations.withoutTransaction();
+
+    @Mock
+    private EntityManager entityManager;
+
     @InjectMocks
     private CartService cartService;
 
@@ -102,6 +160,58 @@ class CartServiceTest {
         verify(cartRepository).save(any());
     }
 
+    /**
+     * Тестирует получение представления активной корзины.
+     * 
+     * <p>
+     * Проверяется, что строки корзины и общая сумма переносятся в {@link CartView}.
+     * </p>
+     */
+    @Test
+    void testGetCartView_existingCart() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Toy");
+        product.setPrice(BigDecimal.valueOf(20));
+
+        CartItem cartItem = new CartItem();
+        cartItem.setProduct(product);
+        cartItem.setPrice(Money.of(product.getPrice()));
+        cartItem.setQuantity(3);
+
+        Cart cart = new Cart();
+        cart.setSessionId(sessionId);
+        cart.setItems(new ArrayList<>(List.of(cartItem)));
+        cart.applyLineChange(Money.of(product.getPrice()), 3);
+
+        when(cartRepository.findWithItemsBySessionIdAndStatus(sessionId, CartStatus.ACTIVE))
+                .thenReturn(List.of(cart));
+
+        CartView view = cartService.getCartView(sessionId);
+
+        assertEquals(1, view.getItems().size());
+        assertEquals(1L, view.getItems().get(0).getProductId());
+        assertEquals(0, BigDecimal.valueOf(60).compareTo(view.getTotalAmount().toBigDecimal()));
+    }
+
+    /**
+     * Тестирует получение представления корзины, если активной корзины нет.
+     * 
+     * <p>
+     * Проверяется, что возвращается пустое представление и новая корзина не сохраняется.
+     * </p>
+     */
+    @Test
+    void testGetCartView_noCart_returnsEmptyView() {
+        when(cartRepository.findWithItemsBySessionIdAndStatus(sessionId, CartStatus.ACTIVE))
+                .thenReturn(Collections.emptyList());
+
+        CartView view = cartService.getCartView(sessionId);
+
+        assertTrue(view.getItems().isEmpty());
+        verify(cartRepository, times(0)).save(any());
+    }
+
     /**
      * Тестирует добавление продукта в корзину.
      * 
@@ -117,16 +227,18 @@ class CartServiceTest {
         Product product = new Product();
         product.setId(1L);
         product.setQuantity(10);
+        product.setPrice(new BigDecimal("10.00"));
 
         CartItem cartItem = new CartItem();
         cartItem.setProduct(product);
+        cartItem.setPrice(Money.of(product.getPrice()));
         cartItem.setQuantity(2);
 
         Cart cart = new Cart();
         cart.setSessionId(sessionId);
         cart.setItems(new ArrayList<>(List.of(cartItem)));
 
-        when(cartRepository.findBySessionIdAndStatus(sessionId, CartStatus.ACTIVE))
+        when(cartRepository.findBySessionIdAndStatusForUpdate(sessionId, CartStatus.ACTIVE))
                 .thenReturn(Collections.emptyList()); // чтобы проверить создание нового cart
 
         when(cartRepository.save(any(Cart.class)))
@@ -146,6 +258,150 @@ class CartServiceTest {
         verify(productRepository).save(any(Product.class));
     }
 
+    /**
+     * Тестирует резервирование товара при добавлении в корзину.
+     * 
+     * <p>
+     * Проверяется, что резерв всех позиций корзины продлевается в будущее.
+     * </p>
+     */
+    @Test
+    void testAddToCart_extendsReservation() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setQuantity(10);
+        product.setPrice(new BigDecimal("10.00"));
+
+        Cart cart = new Cart();
+        cart.setSessionId(sessionId);
+
+        when(cartRepository.findBySessionIdAndStatusForUpdate(sessionId, CartStatus.ACTIVE)).thenReturn(List.of(cart));
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+
+        cartService.addToCart(sessionId, 1L);
+
+        assertEquals(1, cart.getItems().size());
+        assertTrue(cart.getItems().get(0).getReservedUntil().isAfter(LocalDateTime.now()));
+    }
+
+    /**
+     * Тестирует добавление в корзину товара, остаток которого учитывается по частям.
+     * 
+     * <p>
+     * Проверяется, что товар списывается из частей остатка, а строка товара не изменяется,
+     * даже если отображаемый остаток ещё не обновлён.
+     * </p>
+     */
+    @Test
+    void testAddToCart_shardedProduct() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setQuantity(0);
+        product.setPrice(new BigDecimal("10.00"));
+        product.setStockMode(StockMode.SHARDED);
+
+        Cart cart = new Cart();
+        cart.setSessionId(sessionId);
+
+        when(cartRepository.findBySessionIdAndStatusForUpdate(sessionId, CartStatus.ACTIVE)).thenReturn(List.of(cart));
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+        when(shardedStockService.take(1L, 1)).thenReturn(true);
+
+        cartService.addToCart(sessionId, 1L);
+
+        assertEquals(1, cart.getItems().size());
+        verify(productRepository, times(0)).save(any(Product.class));
+    }
+
+    /**
+     * Тестирует добавление в корзину товара, все части остатка которого пусты.
+     */
+    @Test
+    void testAddToCart_shardedProductOutOfStock_throws() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setPrice(new BigDecimal("10.00"));
+        product.setStockMode(StockMode.SHARDED);
+
+        when(cartRepository.findBySessionIdAndStatusForUpdate(sessionId, CartStatus.ACTIVE)).thenReturn(List.of(new Cart()));
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+        when(shardedStockService.take(1L, 1)).thenReturn(false);
+
+        assertThrows(RuntimeException.class, () -> cartService.addToCart(sessionId, 1L));
+    }
+
+    /**
+     * Тестирует добавление в корзину товара в режиме очереди.
+     * 
+     * <p>
+     * Проверяется, что запрос передаётся в очередь товара и корзина не изменяется напрямую.
+     * </p>
+     */
+    @Test
+    void testAddToCart_queuedProduct_goesThroughAdmissionQueue() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setStockMode(StockMode.QUEUED);
+
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+        when(admissionQueue.submit(sessionId, 1L)).thenReturn(CompletableFuture.completedFuture(null));
+
+        cartService.addToCart(sessionId, 1L);
+
+        verify(admissionQueue).submit(sessionId, 1L);
+        verify(cartRepository, times(0)).save(any(Cart.class));
+    }
+
+    /**
+     * Тестирует отказ очереди товара, когда товар закончился.
+     */
+    @Test
+    void testAddToCart_queuedProductOutOfStock_throws() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setStockMode(StockMode.QUEUED);
+
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+        when(admissionQueue.submit(sessionId, 1L))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Товара нет в наличии")));
+
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> cartService.addToCart(sessionId, 1L));
+        assertEquals("Товара нет в наличии", ex.getMessage());
+    }
+
+    /**
+     * Тестирует пакетное добавление товара из очереди.
+     * 
+     * <p>
+     * Проверяется, что товар достаётся первым сессиям в порядке поступления,
+     * а остаток уменьшается один раз на всю пачку.
+     * </p>
+     */
+    @Test
+    void testAdmitBatch_grantsFirstComeWhileInStock() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setPrice(new BigDecimal("10.00"));
+        product.setQuantity(2);
+        product.setStockMode(StockMode.QUEUED);
+
+        Cart existing = new Cart();
+        existing.setSessionId("a");
+
+        when(productRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(product));
+        when(cartRepository.findWithItemsBySessionIdInAndStatus(List.of("a", "b"), CartStatus.ACTIVE))
+                .thenReturn(List.of(existing));
+        when(cartRepository.save(any(Cart.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        int granted = cartService.admitBatch(1L, List.of("a", "b", "c"));
+
+        assertEquals(2, granted);
+        assertEquals(0, product.getQuantity());
+        assertEquals(1, existing.getItems().size());
+        verify(productRepository, times(1)).save(product);
+        verify(cartRepository).findBySessionIdInAndStatusForUpdate(List.of("a", "b"), CartStatus.ACTIVE);
+    }
+
     /**
      * Тестирует удаление товара из корзины.
      * 
@@ -159,16 +415,18 @@ class CartServiceTest {
     void testRemoveFromCart() {
         Product product = new Product();
         product.setId(1L);
+        product.setPrice(new BigDecimal("10.00"));
         product.setQuantity(5);
 
         CartItem cartItem = new CartItem();
         cartItem.setProduct(product);
+        cartItem.setPrice(Money.of(product.getPrice()));
         cartItem.setQuantity(3);
 
         Cart cart = new Cart();
         cart.setItems(new ArrayList<>(List.of(cartItem)));
 
-        when(cartRepository.findBySessionId(sessionId)).thenReturn(Optional.of(cart));
+        when(cartRepository.findBySessionIdForUpdate(sessionId)).thenReturn(Optional.of(cart));
         when(productRepository.save(product)).thenReturn(product);
         when(cartRepository.save(cart)).thenReturn(cart);
 
@@ -180,6 +438,146 @@ class CartServiceTest {
         verify(productRepository).save(product);
     }
 
+    /**
+     * Тестирует результат увеличения количества товара для JSON API.
+     * 
+     * <p>
+     * Проверяется, что возвращается только изменённая строка: новое количество и сумма строки,
+     * сумма корзины и остаток товара после списания.
+     * </p>
+     */
+    @Test
+    void testIncreaseItem_returnsDelta() {
+        Product toy = new Product();
+        toy.setId(1L);
+        toy.setPrice(new BigDecimal("10.00"));
+        toy.setQuantity(5);
+        Product other = new Product();
+        other.setId(2L);
+        other.setPrice(new BigDecimal("3.00"));
+
+        CartItem toyItem = new CartItem();
+        toyItem.setProduct(toy);
+        toyItem.setPrice(Money.of(toy.getPrice()));
+        toyItem.setQuantity(1);
+        CartItem otherItem = new CartItem();
+        otherItem.setProduct(other);
+        otherItem.setPrice(Money.of(other.getPrice()));
+        otherItem.setQuantity(2);
+
+        Cart cart = new Cart();
+        cart.setItems(new ArrayList<>(List.of(toyItem, otherItem)));
+        cart.applyLineChange(Money.of(toy.getPrice()), 1);
+        cart.applyLineChange(Money.of(other.getPrice()), 2);
+
+        when(cartRepository.findBySessionIdForUpdate(sessionId)).thenReturn(Optional.of(cart));
+
+        CartDelta delta = cartService.increaseItem(sessionId, 1L);
+
+        assertEquals(1L, delta.getProductId());
+        assertEquals(2, delta.getQuantity());
+        assertEquals(Money.of(new BigDecimal("20.00")), delta.getLineTotal());
+        assertEquals(Money.of(new BigDecimal("26.00")), delta.getTotalAmount());
+        assertEquals(2, delta.getLineCount());
+        assertEquals(4, delta.getItemCount());
+        assertEquals(4, delta.getStock());
+    }
+
+    /**
+     * Тестирует изменение итогов корзины при удалении товара.
+     * 
+     * <p>
+     * Проверяется, что сумма и количество единиц в строке корзины уменьшаются
+     * на удалённую строку без пересчёта по остальным позициям.
+     * </p>
+     */
+    @Test
+    void testRemoveFromCart_updatesCartTotals() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setPrice(new BigDecimal("2.50"));
+        product.setQuantity(5);
+
+        CartItem cartItem = new CartItem();
+        cartItem.setProduct(product);
+        cartItem.setPrice(Money.of(product.getPrice()));
+        cartItem.setQuantity(2);
+
+        Cart cart = new Cart();
+        cart.setItems(new ArrayList<>(List.of(cartItem)));
+        cart.setTotalAmount(Money.of(new BigDecimal("105.00")));
+        cart.setItemCount(7);
+
+        when(cartRepository.findBySessionIdForUpdate(sessionId)).thenReturn(Optional.of(cart));
+
+        cartService.removeFromCart(sessionId, 1L);
+
+        assertEquals(Money.of(new BigDecimal("100.00")), cart.getTotalAmount());
+        assertEquals(5, cart.getItemCount());
+    }
+
+    /**
+     * Тестирует пакетное изменение корзины.
+     * 
+     * <p>
+     * Проверяется, что товары блокируются одним запросом, остаток меняется на разницу
+     * с текущим количеством в корзине (не больше, чем есть на складе),
+     * а строки корзины записываются одним запросом.
+     * </p>
+     */
+    @Test
+    void testSetCartLines_changesStockByDifferenceAndUpsertsLines() {
+        Product inCart = new Product();
+        inCart.setId(1L);
+        inCart.setPrice(new BigDecimal("10.00"));
+        inCart.setQuantity(5);
+        Product scarce = new Product();
+        scarce.setId(2L);
+        scarce.setPrice(new BigDecimal("3.00"));
+        scarce.setQuantity(2);
+
+        CartItem item = new CartItem();
+        item.setProduct(inCart);
+        item.setPrice(Money.of(inCart.getPrice()));
+        item.setQuantity(3);
+        Cart cart = new Cart();
+        cart.setId(10L);
+        cart.setItems(new ArrayList<>(List.of(item)));
+        cart.applyLineChange(Money.of(inCart.getPrice()), 3);
+
+        when(productRepository.findAllByIdForUpdate(any())).thenReturn(List.of(inCart, scarce));
+        when(cartRepository.findBySessionIdAndStatusForUpdate(sessionId, CartStatus.ACTIVE)).thenReturn(List.of(cart));
+
+        cartService.setCartLines(sessionId, List.of(
+                new CartLineRequest(2L, 4),
+                new CartLineRequest(1L, 1)));
+
+        assertEquals(7, inCart.getQuantity());
+        assertEquals(0, scarce.getQuantity());
+        ArgumentCaptor<Long[]> productIds = ArgumentCaptor.forClass(Long[].class);
+        ArgumentCaptor<Integer[]> quantities = ArgumentCaptor.forClass(Integer[].class);
+        ArgumentCaptor<BigDecimal[]> prices = ArgumentCaptor.forClass(BigDecimal[].class);
+        verify(cartItemRepository).upsertLines(eq(10L), productIds.capture(), quantities.capture(),
+                prices.capture(), any());
+        assertEquals(List.of(1L, 2L), List.of(productIds.getValue()));
+        assertEquals(List.of(1, 2), List.of(quantities.getValue()));
+        assertEquals(List.of(inCart.getPrice(), scarce.getPrice()), List.of(prices.getValue()));
+        assertEquals(Money.of(new BigDecimal("16.00")), cart.getTotalAmount());
+        assertEquals(3, cart.getItemCount());
+    }
+
+    /**
+     * Тестирует отказ пакетного изменения корзины с отрицательным количеством.
+     */
+    @Test
+    void testSetCartLines_negativeQuantity_badRequest() {
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> cartService.setCartLines(sessionId, List.of(new CartLineRequest(1L, -1))));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+        verifyNoInteractions(productRepository);
+    }
+
     /**
      * Тестирует успешное оформление заказа (checkout).
      * 
@@ -193,13 +591,16 @@ class CartServiceTest {
         Cart cart = new Cart();
         cart.setStatus(CartStatus.ACTIVE);
 
-        when(cartRepository.findBySessionIdAndStatus(sessionId, CartStatus.ACTIVE))
+        when(cartRepository.findBySessionIdAndStatusForUpdate(sessionId, CartStatus.ACTIVE))
                 .thenReturn(List.of(cart));
         when(cartRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
+        checkoutInCallerThread();
+
         Cart completed = cartService.checkout(sessionId);
 
         assertEquals(CartStatus.COMPLETED, completed.getStatus());
+        assertTrue(completed.getItems().stream().allMatch(item -> item.getReservedUntil() == null));
         verify(cartRepository).save(cart);
     }
 
@@ -213,9 +614,118 @@ class CartServiceTest {
      */
     @Test
     void testCheckout_noActiveCart_throws() {
-        when(cartRepository.findBySessionIdAndStatus(sessionId, CartStatus.ACTIVE))
+        when(cartRepository.findBySessionIdAndStatusForUpdate(sessionId, CartStatus.ACTIVE))
                 .thenReturn(Collections.emptyList());
 
+        checkoutInCallerThread();
+
         assertThrows(IllegalStateException.class, () -> cartService.checkout(sessionId));
     }
+
+    /**
+     * Тестирует оформление заказа с адресом электронной почты.
+     *
+     * <p>
+     * Проверяется, что вместе с заказом в исходящую очередь записывается письмо
+     * с подтверждением на указанный адрес.
+     * </p>
+     */
+    @Test
+    void testCheckout_withEmail_enqueuesConfirmation() {
+        Cart cart = new Cart();
+        cart.setId(42L);
+
+        when(cartRepository.findBySessionIdAndStatusForUpdate(sessionId, CartStatus.ACTIVE))
+                .thenReturn(List.of(cart));
+        when(cartRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        checkoutInCallerThread();
+
+        cartService.checkout(sessionId, " buyer@example.com ");
+
+        ArgumentCaptor<OutboxMessage> captor = ArgumentCaptor.forClass(OutboxMessage.class);
+        verify(outboxRepository).save(captor.capture());
+        assertEquals(42L, captor.getValue().getOrderId());
+        assertEquals("buyer@example.com", captor.getValue().getRecipient());
+        assertEquals(OutboxStatus.PENDING, captor.getValue().getStatus());
+    }
+
+    /**
+     * Тестирует оформление заказа из нежурналируемых таблиц активных корзин.
+     *
+     * <p>
+     * Проверяется, что корзина переносится в таблицы заказов хранилищем,
+     * а письмо с подтверждением ставится в очередь для созданного заказа.
+     * </p>
+     */
+    @Test
+    void testCheckout_unloggedStore_movesCartToOrder() {
+        Cart order = new Cart();
+        order.setId(42L);
+        order.setStatus(CartStatus.COMPLETED);
+
+        when(unloggedCartStore.isEnabled()).thenReturn(true);
+        when(unloggedCartStore.moveToOrder(sessionId)).thenReturn(42L);
+        when(cartRepository.findWithItemsById(42L)).thenReturn(Optional.of(order));
+
+        checkoutInCallerThread();
+
+        Cart completed = cartService.checkout(sessionId, "buyer@example.com");
+
+        assertEquals(order, completed);
+        verify(cartRepository, never()).findBySessionIdAndStatusForUpdate(any(), any());
+        ArgumentCaptor<OutboxMessage> captor = ArgumentCaptor.forClass(OutboxMessage.class);
+        verify(outboxRepository).save(captor.capture());
+        assertEquals(42L, captor.getValue().getOrderId());
+    }
+
+    /**
+     * Тестирует отказ в оформлении заказа с некорректным адресом электронной почты.
+     *
+     * <p>
+     * Проверяется, что заказ не передаётся на оформление и возвращается 400.
+     * </p>
+     */
+    @Test
+    void testCheckout_invalidEmail_throwsBadRequest() {
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> cartService.checkout(sessionId, "not an email"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+        verifyNoInteractions(checkoutCoordinator);
+    }
+
+    /**
+     * Тестирует оформление заказа, который не забрали в пачку вовремя.
+     *
+     * <p>
+     * Проверяется, что запрос отменяется и возвращается 503.
+     * </p>
+     */
+    @Test
+    void testCheckout_notTakenInTime_cancelsAndThrowsServiceUnavailable() {
+        ReflectionTestUtils.setField(cartService, "checkoutTimeout", Duration.ofMillis(10));
+        CompletableFuture<Cart> pending = new CompletableFuture<>();
+        when(checkoutCoordinator.submit(sessionId, null)).thenReturn(pending);
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> cartService.checkout(sessionId));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatusCode());
+        assertTrue(pending.isCancelled());
+    }
+
+    /**
+     * Настраивает координатор так, чтобы заказ оформлялся сразу, без пачек.
+     */
+    private void checkoutInCallerThread() {
+        when(checkoutCoordinator.submit(eq(sessionId), any())).thenAnswer(invocation -> {
+            try {
+                return CompletableFuture.completedFuture(
+                        cartService.completeCheckout(sessionId, invocation.getArgument(1)));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+    }
 }
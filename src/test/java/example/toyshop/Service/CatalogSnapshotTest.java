@@ -0,0 +1,187 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.transaction.support.TransactionOperations;
+
+import example.toyshop.dto.CatalogFilter;
+import example.toyshop.dto.ProductCard;
+import example.toyshop.event.StockChanged;
+import example.toyshop.repository.ProductRepository;
+import example.toyshop.service.CatalogSnapshot;
+
+/**
+ * Unit-тесты для {@link CatalogSnapshot} с использованием Mockito.
+ *
+ * <p>
+ * Проверяются сортировки, фильтры и страницы снимка, а также то, что изменения остатков
+ * применяются к снимку без обращения к базе данных.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class CatalogSnapshotTest {
+
+    // в порядке названий, как его возвращает база данных
+    private static final List<ProductCard> CATALOG = List.of(
+            card(3L, "Автобус", "200.00", 2),
+            card(2L, "Кукла", "100.00", 0),
+            card(1L, "Мяч", "300.00", 5),
+            card(4L, "Юла", "100.00", 7));
+
+    @Mock
+    private ProductRepository productRepository;
+
+    /**
+     * Пока снимок не построен, витрина читается из базы данных.
+     */
+    @Test
+    void testFind_beforeRefresh_isEmpty() {
+        assertTrue(snapshot(true).find(null, "price_asc", CatalogFilter.NONE, 0, 10).isEmpty());
+    }
+
+    /**
+     * Сортировки по цене и названию в обе стороны; при равной цене порядок задаёт ID.
+     */
+    @Test
+    void testFind_sorts() {
+        CatalogSnapshot snapshot = loaded();
+
+        assertEquals(List.of(2L, 4L, 3L, 1L), ids(snapshot.find(null, "price_asc", CatalogFilter.NONE, 0, 10).get()));
+        assertEquals(List.of(1L, 3L, 4L, 2L), ids(snapshot.find(null, "price_desc", CatalogFilter.NONE, 0, 10).get()));
+        assertEquals(List.of(3L, 2L, 1L, 4L), ids(snapshot.find(null, "name_asc", CatalogFilter.NONE, 0, 10).get()));
+        assertEquals(List.of(4L, 1L, 2L, 3L), ids(snapshot.find(null, "name_desc", CatalogFilter.NONE, 0, 10).get()));
+    }
+
+    /**
+     * Порядок по названию задаёт база данных по своим правилам сортировки, а не сравнение строк Java.
+     */
+    @Test
+    void testFind_nameOrderFromDatabase() {
+        when(productRepository.findCatalog()).thenReturn(List.of(
+                card(6L, "ёлка", "100.00", 1),
+                card(5L, "Ёж", "100.00", 1),
+                card(7L, "Жираф", "100.00", 1)));
+        CatalogSnapshot snapshot = snapshot(true);
+        snapshot.refresh();
+
+        assertEquals(List.of(6L, 5L, 7L), ids(snapshot.find(null, "name_asc", CatalogFilter.NONE, 0, 10).get()));
+        assertEquals(List.of(7L, 5L, 6L), ids(snapshot.find(null, "name_desc", CatalogFilter.NONE, 0, 10).get()));
+        assertEquals(List.of(5L, 6L, 7L), ids(snapshot.find(null, "price_asc", CatalogFilter.NONE, 0, 10).get()));
+    }
+
+    /**
+     * Страница — срез отсортированного каталога с общим количеством товаров.
+     */
+    @Test
+    void testFind_page() {
+        Page<ProductCard> page = loaded().find(null, "price_desc", CatalogFilter.NONE, 1, 3).get();
+
+        assertEquals(List.of(2L), ids(page));
+        assertEquals(4, page.getTotalElements());
+        assertEquals(new BigDecimal("100.00"), page.getContent().get(0).getPrice());
+    }
+
+    /**
+     * Фильтры по цене, наличию и подстроке названия без учёта регистра.
+     */
+    @Test
+    void testFind_filters() {
+        CatalogSnapshot snapshot = loaded();
+        CatalogFilter band = new CatalogFilter(new BigDecimal("100.00"), new BigDecimal("200"), false);
+        CatalogFilter inStock = new CatalogFilter(null, null, true);
+
+        assertEquals(List.of(3L, 4L, 2L), ids(snapshot.find(null, "price_desc", band, 0, 10).get()));
+        assertEquals(List.of(3L, 2L, 4L), ids(snapshot.find(null, "name_asc", band, 0, 10).get()));
+        assertEquals(List.of(4L, 3L, 1L), ids(snapshot.find(null, "price_asc", inStock, 0, 10).get()));
+        assertEquals(List.of(2L), ids(snapshot.find("КУК", "price_asc", band, 0, 10).get()));
+        assertEquals(0, snapshot.find(null, "price_asc",
+                new CatalogFilter(new BigDecimal("250"), new BigDecimal("150"), false), 0, 10).get().getTotalElements());
+    }
+
+    /**
+     * Изменения остатков применяются к снимку без обращения к базе данных, а после изменения
+     * товара каталог перечитывается целиком.
+     */
+    @Test
+    void testRefresh_stockChanged_appliesDeltas() {
+        CatalogSnapshot snapshot = loaded();
+
+        snapshot.refresh();
+        snapshot.accept(new StockChanged(2L, 4, LocalDateTime.now()));
+        snapshot.accept(new StockChanged(2L, -1, LocalDateTime.now()));
+        snapshot.accept(new StockChanged(3L, -2, LocalDateTime.now()));
+        snapshot.refresh();
+
+        verify(productRepository, times(1)).findCatalog();
+        Page<ProductCard> inStock = snapshot.find(null, "price_asc", new CatalogFilter(null, null, true), 0, 10).get();
+        assertEquals(List.of(2L, 4L, 1L), ids(inStock));
+        assertEquals(3, inStock.getContent().get(0).getQuantity());
+
+        snapshot.catalogChanged();
+        snapshot.refresh();
+
+        verify(productRepository, times(2)).findCatalog();
+    }
+
+    /**
+     * Если изменился остаток товара, которого нет в снимке, снимок строится заново целиком.
+     */
+    @Test
+    void testRefresh_unknownProduct_rebuilds() {
+        CatalogSnapshot snapshot = loaded();
+
+        snapshot.accept(new StockChanged(9L, -1, LocalDateTime.now()));
+        snapshot.refresh();
+
+        verify(productRepository, times(2)).findCatalog();
+    }
+
+    /**
+     * Выключенный снимок не обращается к базе данных.
+     */
+    @Test
+    void testDisabled_doesNotTouchDatabase() {
+        CatalogSnapshot snapshot = snapshot(false);
+
+        snapshot.refresh();
+
+        verifyNoInteractions(productRepository);
+        verify(productRepository, never()).findCatalog();
+    }
+
+    private CatalogSnapshot loaded() {
+        when(productRepository.findCatalog()).thenReturn(CATALOG);
+        CatalogSnapshot snapshot = snapshot(true);
+        snapshot.refresh();
+        return snapshot;
+    }
+
+    private CatalogSnapshot snapshot(boolean enabled) {
+        return new CatalogSnapshot(productRepository, TransactionOperations.withoutTransaction(), enabled,
+                Duration.ofMinutes(1));
+    }
+
+    private static List<Long> ids(Page<ProductCard> page) {
+        return page.getContent().stream().map(ProductCard::getId).toList();
+    }
+
+    private static ProductCard card(Long id, String name, String price, int quantity) {
+        return new ProductCard(id, name, new BigDecimal(price), null, quantity);
+    }
+}
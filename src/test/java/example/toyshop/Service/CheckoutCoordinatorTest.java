@@ -0,0 +1,191 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import example.toyshop.event.DomainEventBus;
+import example.toyshop.event.OrderCompleted;
+import example.toyshop.model.Cart;
+import example.toyshop.service.CartService;
+import example.toyshop.service.CheckoutCoordinator;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Unit-тесты для {@link CheckoutCoordinator} с использованием Mockito.
+ *
+ * <p>
+ * Проверяется, что параллельные оформления объединяются в одну пачку,
+ * ошибка одного заказа не мешает оформлению остальных, а отменить можно только
+ * запрос, ещё не забранный в пачку.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class CheckoutCoordinatorTest {
+
+    @Mock
+    private CartService cartService;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private DomainEventBus eventBus;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private Savepoint savepoint;
+
+    /**
+     * Выполняет JDBC-операции сессии на подменённом соединении.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        when(connection.setSavepoint()).thenReturn(savepoint);
+        when(session.doReturningWork(any())).thenAnswer(
+                invocation -> invocation.<ReturningWork<?>>getArgument(0).execute(connection));
+        doAnswer(invocation -> {
+            invocation.<Work>getArgument(0).execute(connection);
+            return null;
+        }).when(session).doWork(any());
+    }
+
+    /**
+     * Заказы, пришедшие в одном окне, оформляются одной пачкой;
+     * ошибочный заказ получает исключение, остальные — оформленную корзину.
+     */
+    @Test
+    void testSubmit_isolatesFailedOrderInBatch() throws Exception {
+        CheckoutCoordinator coordinator = new CheckoutCoordinator(
+                cartService, entityManager, eventBus, transactionManager, true, Duration.ofSeconds(1), 2,
+                Duration.ofSeconds(5));
+        Cart order = new Cart();
+        when(cartService.completeCheckout("ok", null)).thenReturn(order);
+        when(cartService.completeCheckout("bad", null)).thenThrow(new IllegalStateException("Активная корзина не найдена"));
+
+        CompletableFuture<Cart> ok = coordinator.submit("ok", null);
+        CompletableFuture<Cart> bad = coordinator.submit("bad", null);
+
+        assertSame(order, ok.get(1, TimeUnit.SECONDS));
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> bad.get(1, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+        verify(connection).releaseSavepoint(savepoint);
+        verify(connection).rollback(savepoint);
+        verify(entityManager, times(2)).clear();
+        verify(transactionManager).commit(any());
+        verify(eventBus, timeout(1000)).publish(any(OrderCompleted.class));
+    }
+
+    /**
+     * Если транзакция пачки не зафиксировалась, заказы оформляются повторно по одному.
+     */
+    @Test
+    void testSubmit_retriesOrdersOneByOneWhenBatchCommitFails() throws Exception {
+        CheckoutCoordinator coordinator = new CheckoutCoordinator(
+                cartService, entityManager, eventBus, transactionManager, true, Duration.ofSeconds(1), 2,
+                Duration.ofSeconds(5));
+        Cart first = new Cart();
+        Cart second = new Cart();
+        when(cartService.completeCheckout("first", null)).thenReturn(first);
+        when(cartService.completeCheckout("second", null)).thenReturn(second);
+        doThrow(new UnexpectedRollbackException("rollback-only")).doNothing().when(transactionManager).commit(any());
+
+        CompletableFuture<Cart> a = coordinator.submit("first", null);
+        CompletableFuture<Cart> b = coordinator.submit("second", null);
+
+        assertSame(first, a.get(1, TimeUnit.SECONDS));
+        assertSame(second, b.get(1, TimeUnit.SECONDS));
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    /**
+     * Без группового коммита заказ оформляется сразу в потоке вызывающего.
+     */
+    @Test
+    void testSubmit_disabledCommitsImmediately() {
+        CheckoutCoordinator coordinator = new CheckoutCoordinator(
+                cartService, entityManager, eventBus, transactionManager, false, Duration.ofSeconds(1), 100,
+                Duration.ofSeconds(5));
+        Cart order = new Cart();
+        when(cartService.completeCheckout("ok", null)).thenReturn(order);
+
+        CompletableFuture<Cart> result = coordinator.submit("ok", null);
+
+        assertTrue(result.isDone());
+        assertSame(order, result.join());
+    }
+
+    /**
+     * Запрос отменяется, только пока его не забрали в пачку: отменённый заказ не оформляется,
+     * а забранный дожидается коммита.
+     */
+    @Test
+    void testCancel_onlyBeforeBatchTakesRequest() throws Exception {
+        CheckoutCoordinator coordinator = new CheckoutCoordinator(
+                cartService, entityManager, eventBus, transactionManager, true, Duration.ZERO, 1,
+                Duration.ofSeconds(5));
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+        Cart first = new Cart();
+        Cart third = new Cart();
+        when(cartService.completeCheckout("a", null)).thenAnswer(invocation -> {
+            firstBatchStarted.countDown();
+            releaseFirstBatch.await(1, TimeUnit.SECONDS);
+            return first;
+        });
+        when(cartService.completeCheckout("c", null)).thenReturn(third);
+
+        CompletableFuture<Cart> a = coordinator.submit("a", null);
+        assertTrue(firstBatchStarted.await(1, TimeUnit.SECONDS));
+        CompletableFuture<Cart> b = coordinator.submit("b", null);
+        CompletableFuture<Cart> c = coordinator.submit("c", null);
+
+        assertFalse(a.cancel(false));
+        assertTrue(b.cancel(false));
+        releaseFirstBatch.countDown();
+
+        assertSame(first, a.get(1, TimeUnit.SECONDS));
+        assertSame(third, c.get(1, TimeUnit.SECONDS));
+        assertTrue(b.isCancelled());
+        verify(cartService, never()).completeCheckout("b", null);
+    }
+}
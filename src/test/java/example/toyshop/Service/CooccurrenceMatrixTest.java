@@ -0,0 +1,91 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import example.toyshop.service.CooccurrenceMatrix;
+
+/**
+ * Unit-тесты для {@link CooccurrenceMatrix}.
+ *
+ * <p>
+ * Проверяются счётчики пар, порядок рекомендаций, сложение матриц и рост строк.
+ * </p>
+ */
+class CooccurrenceMatrixTest {
+
+    /**
+     * Заказ увеличивает счётчики каждой пары своих товаров в обе стороны.
+     */
+    @Test
+    void testAddOrder_countsPairsSymmetrically() {
+        CooccurrenceMatrix matrix = new CooccurrenceMatrix();
+
+        matrix.addOrder(new long[] { 1, 2, 3 });
+        matrix.addOrder(new long[] { 1, 2 });
+
+        assertEquals(2, matrix.count(1, 2));
+        assertEquals(2, matrix.count(2, 1));
+        assertEquals(1, matrix.count(3, 1));
+        assertEquals(0, matrix.count(1, 1));
+        assertEquals(0, matrix.count(4, 1));
+    }
+
+    /**
+     * Рекомендации упорядочены по убыванию счётчика, при равенстве — по возрастанию ID, и ограничены лимитом.
+     */
+    @Test
+    void testTop_ordersByCountThenId() {
+        CooccurrenceMatrix matrix = new CooccurrenceMatrix();
+        matrix.addOrder(new long[] { 1, 5 });
+        matrix.addOrder(new long[] { 1, 5, 9 });
+        matrix.addOrder(new long[] { 1, 4, 9 });
+        matrix.addOrder(new long[] { 1, 3 });
+
+        assertArrayEquals(new long[] { 5, 9, 3, 4 }, matrix.top(1, 10));
+        assertArrayEquals(new long[] { 5, 9 }, matrix.top(1, 2));
+        assertArrayEquals(new long[0], matrix.top(42, 5));
+    }
+
+    /**
+     * Сложение матриц суммирует счётчики общих пар и добавляет новые строки.
+     */
+    @Test
+    void testMerge_sumsCounts() {
+        CooccurrenceMatrix left = new CooccurrenceMatrix();
+        left.addOrder(new long[] { 1, 2 });
+        CooccurrenceMatrix right = new CooccurrenceMatrix();
+        right.addOrder(new long[] { 1, 2 });
+        right.addOrder(new long[] { 3, 4 });
+
+        left.merge(right);
+
+        assertEquals(2, left.count(1, 2));
+        assertEquals(1, left.count(4, 3));
+        long[] productIds = left.productIds();
+        Arrays.sort(productIds);
+        assertArrayEquals(new long[] { 1, 2, 3, 4 }, productIds);
+    }
+
+    /**
+     * Строка товара с большим числом соседей сохраняет все счётчики при росте таблицы.
+     */
+    @Test
+    void testAddOrder_manyNeighbours_keepsCounts() {
+        CooccurrenceMatrix matrix = new CooccurrenceMatrix();
+        for (long other = 2; other <= 1000; other++) {
+            for (int i = 0; i < other % 3 + 1; i++) {
+                matrix.addOrder(new long[] { 1, other });
+            }
+        }
+
+        for (long other = 2; other <= 1000; other++) {
+            assertEquals(other % 3 + 1, matrix.count(1, other));
+        }
+        assertArrayEquals(new long[] { 2, 5, 8 }, matrix.top(1, 3));
+    }
+}
@@ -0,0 +1,83 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+import example.toyshop.service.CookieCart;
+import example.toyshop.service.CookieCartCodec;
+
+/**
+ * Unit-тесты для {@link CookieCartCodec}.
+ */
+class CookieCartCodecTest {
+
+    private final CookieCartCodec codec = new CookieCartCodec("0123456789abcdef0123456789abcdef");
+
+    /**
+     * Корзина после кодирования и разбора сохраняет ключ и строки.
+     */
+    @Test
+    void testEncodeDecode_roundTrip() {
+        CookieCart cart = CookieCart.empty(codec.newKey())
+                .with(1_000_000L, 2)
+                .with(7L, 1)
+                .with(42L, 300);
+
+        CookieCart decoded = codec.decode(codec.encode(cart)).orElseThrow();
+
+        assertEquals(cart.key(), decoded.key());
+        assertFalse(decoded.isStored());
+        assertEquals(cart.toLineRequests(), decoded.toLineRequests());
+    }
+
+    /**
+     * Записанная в базу данных корзина хранит в cookie только ключ.
+     */
+    @Test
+    void testEncodeDecode_storedCart() {
+        CookieCart cart = CookieCart.empty(codec.newKey()).with(7L, 1).toStored();
+
+        CookieCart decoded = codec.decode(codec.encode(cart)).orElseThrow();
+
+        assertTrue(decoded.isStored());
+        assertEquals(cart.key(), decoded.key());
+        assertEquals(0, decoded.lineCount());
+    }
+
+    /**
+     * Изменённое значение и значение, подписанное другим секретом, отбрасываются.
+     */
+    @Test
+    void testDecode_rejectsTamperedValue() {
+        String value = codec.encode(CookieCart.empty(codec.newKey()).with(7L, 1));
+        byte[] token = Base64.getUrlDecoder().decode(value);
+        token[token.length - 20] ^= 1;
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+        CookieCartCodec other = new CookieCartCodec("fedcba9876543210fedcba9876543210");
+
+        assertTrue(codec.decode(tampered).isEmpty());
+        assertTrue(other.decode(value).isEmpty());
+        assertTrue(codec.decode("не base64").isEmpty());
+    }
+
+    /**
+     * Корзина из многих строк со сходными ID товаров кодируется сжатой.
+     */
+    @Test
+    void testEncode_compressesLargeCart() {
+        CookieCart cart = CookieCart.empty(codec.newKey());
+        for (long productId = 1; productId <= 100; productId++) {
+            cart = cart.with(productId, 1);
+        }
+
+        String value = codec.encode(cart);
+
+        assertTrue(value.length() < 200 * 4 / 3, "Длина значения: " + value.length());
+        assertEquals(100, codec.decode(value).orElseThrow().lineCount());
+    }
+}
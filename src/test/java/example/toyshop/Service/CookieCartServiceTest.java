@@ -0,0 +1,170 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import example.toyshop.dto.CartDelta;
+import example.toyshop.dto.CartLineRequest;
+import example.toyshop.dto.CartLineView;
+import example.toyshop.dto.CartView;
+import example.toyshop.event.DomainEventBus;
+import example.toyshop.model.Cart;
+import example.toyshop.model.Money;
+import example.toyshop.model.Product;
+import example.toyshop.repository.ProductRepository;
+import example.toyshop.service.CartService;
+import example.toyshop.service.CookieCart;
+import example.toyshop.service.CookieCartCodec;
+import example.toyshop.service.CookieCartService;
+import example.toyshop.service.ShardedStockService;
+
+/**
+ * Unit-тесты для {@link CookieCartService} с использованием Mockito.
+ *
+ * <p>
+ * Проверяется, что корзина из cookie не обращается к таблицам корзин, пока помещается в cookie,
+ * записывается в базу данных при превышении порога и не оформляется, если товара не хватило.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class CookieCartServiceTest {
+
+    @Mock
+    private CartService cartService;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ShardedStockService shardedStockService;
+
+    @Mock
+    private DomainEventBus eventBus;
+
+    private final CookieCartCodec codec = new CookieCartCodec("0123456789abcdef0123456789abcdef");
+
+    private CookieCartService service;
+
+    @BeforeEach
+    void setup() {
+        service = new CookieCartService(cartService, productRepository, shardedStockService, eventBus, codec,
+                true, 1, 3072);
+    }
+
+    /**
+     * Добавление в небольшую корзину меняет только cookie.
+     */
+    @Test
+    void testAddToCart_keepsSmallCartInCookie() {
+        Product product = product(1L, "12.50", 5);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+        when(productRepository.findAllById(List.of(1L))).thenReturn(List.of(product));
+
+        CookieCartService.Change<CartDelta> change = service.addToCart(CookieCart.empty(codec.newKey()), 1L);
+
+        assertFalse(change.cart().isStored());
+        assertEquals(1, change.cart().quantity(1L));
+        assertEquals(Money.ofMinor(1250), change.result().getTotalAmount());
+        assertEquals(5, change.result().getStock());
+        verifyNoInteractions(cartService);
+    }
+
+    /**
+     * Товар сверх остатка на складе в корзину не добавляется.
+     */
+    @Test
+    void testAddToCart_rejectsMoreThanStock() {
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product(1L, "12.50", 1)));
+        CookieCart cart = CookieCart.empty(codec.newKey()).with(1L, 1);
+
+        assertThrows(RuntimeException.class, () -> service.addToCart(cart, 1L));
+    }
+
+    /**
+     * Корзина, переставшая помещаться в cookie, записывается в базу данных под своим ключом.
+     */
+    @Test
+    void testAddToCart_storesCartPastLineLimit() {
+        CookieCart cart = CookieCart.empty(codec.newKey()).with(1L, 1);
+        when(productRepository.findById(2L)).thenReturn(Optional.of(product(2L, "3.00", 5)));
+        when(cartService.getCartView(cart.key())).thenReturn(new CartView(10L, List.of(
+                line(1L, "12.50", 1), line(2L, "3.00", 1)), Money.ofMinor(1550)));
+
+        CookieCartService.Change<CartDelta> change = service.addToCart(cart, 2L);
+
+        assertTrue(change.cart().isStored());
+        assertEquals(cart.key(), change.cart().key());
+        assertEquals(0, change.cart().lineCount());
+        assertEquals(2, change.result().getLineCount());
+        verify(cartService).setCartLines(cart.key(),
+                List.of(new CartLineRequest(1L, 1), new CartLineRequest(2L, 1)));
+    }
+
+    /**
+     * Если при записи корзины товара не хватило, заказ не оформляется,
+     * а посетитель получает записанную корзину с доступным количеством.
+     */
+    @Test
+    void testCheckout_returnsStoredCartWhenStockIsShort() {
+        CookieCart cart = CookieCart.empty(codec.newKey()).with(1L, 2);
+        when(cartService.setCartLines(cart.key(), cart.toLineRequests()))
+                .thenReturn(new CartView(10L, List.of(line(1L, "12.50", 1)), Money.ofMinor(1250)));
+
+        CookieCartService.Change<Optional<Cart>> change = service.checkout(cart, null);
+
+        assertTrue(change.result().isEmpty());
+        assertTrue(change.cart().isStored());
+        verify(cartService, never()).checkout(anyString(), any());
+    }
+
+    /**
+     * После оформления заказа посетитель получает новую пустую корзину.
+     */
+    @Test
+    void testCheckout_placesOrder() {
+        CookieCart cart = CookieCart.empty(codec.newKey()).with(1L, 2);
+        Cart order = new Cart();
+        order.setId(10L);
+        when(cartService.setCartLines(cart.key(), cart.toLineRequests()))
+                .thenReturn(new CartView(10L, List.of(line(1L, "12.50", 2)), Money.ofMinor(2500)));
+        when(cartService.checkout(cart.key(), null)).thenReturn(order);
+
+        CookieCartService.Change<Optional<Cart>> change = service.checkout(cart, null);
+
+        assertEquals(Optional.of(order), change.result());
+        assertEquals(0, change.cart().lineCount());
+        assertFalse(change.cart().isStored());
+    }
+
+    private static Product product(Long id, String price, int quantity) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName("Toy " + id);
+        product.setPrice(new BigDecimal(price));
+        product.setQuantity(quantity);
+        return product;
+    }
+
+    private static CartLineView line(Long productId, String price, int quantity) {
+        Money unit = Money.of(new BigDecimal(price));
+        return new CartLineView(productId, "Toy " + productId, null, unit, quantity, unit.times(quantity));
+    }
+}
@@ -0,0 +1,92 @@
+package example.toyshop.Service;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.hibernate.query.NativeQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionOperations;
+
+import example.toyshop.service.DatabaseSchema;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Unit-тесты для {@link DatabaseSchema} с использованием Mockito.
+ *
+ * <p>
+ * Проверяется, что изменения схемы применяются и записываются в историю один раз,
+ * а изменяющие запросы затрагивают только указанные таблицы.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class DatabaseSchemaTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock(answer = Answers.RETURNS_SELF)
+    private NativeQuery<Object> query;
+
+    /**
+     * Неприменённые изменения выполняются и записываются в историю.
+     */
+    @Test
+    void testMigrate_appliesNewMigrations() {
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.unwrap(NativeQuery.class)).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of());
+
+        schema().migrate();
+
+        verify(entityManager).createNativeQuery(contains("CREATE TABLE IF NOT EXISTS schema_migration"));
+        verify(entityManager).createNativeQuery(contains("CREATE INDEX IF NOT EXISTS idx_product_price_id"));
+        verify(query, times(2)).setParameter("id", "product-covering-indexes");
+        verify(entityManager, atLeast(1)).createNativeQuery(contains("INSERT INTO schema_migration"));
+    }
+
+    /**
+     * Применённые ранее изменения не выполняются повторно.
+     */
+    @Test
+    void testMigrate_skipsAppliedMigrations() {
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.unwrap(NativeQuery.class)).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of(1));
+
+        schema().migrate();
+
+        verify(query, times(1)).executeUpdate();
+        verify(entityManager, never()).createNativeQuery(contains("INSERT INTO schema_migration"));
+    }
+
+    /**
+     * Изменяющий запрос синхронизирует кэш только с указанными таблицами.
+     */
+    @Test
+    void testUpdate_addsQuerySpaces() {
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.unwrap(NativeQuery.class)).thenReturn(query);
+
+        schema().update("DELETE FROM cart_item", "cart", "cart_item");
+
+        verify(query).addSynchronizedQuerySpace("cart");
+        verify(query).addSynchronizedQuerySpace("cart_item");
+        verify(query, never()).addSynchronizedQuerySpace(eq("product"));
+    }
+
+    private DatabaseSchema schema() {
+        return new DatabaseSchema(entityManager, TransactionOperations.withoutTransaction());
+    }
+}
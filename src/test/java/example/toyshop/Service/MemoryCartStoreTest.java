@@ -0,0 +1,196 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.hibernate.query.NativeQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import example.toyshop.dto.CartBadge;
+import example.toyshop.dto.CartView;
+import example.toyshop.model.Cart;
+import example.toyshop.model.Money;
+import example.toyshop.model.Product;
+import example.toyshop.repository.CartItemRepository;
+import example.toyshop.repository.CartRepository;
+import example.toyshop.repository.ProductRepository;
+import example.toyshop.service.ActiveCartStore;
+import example.toyshop.service.DatabaseSchema;
+import example.toyshop.service.MemoryCartStore;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Unit-тесты для {@link MemoryCartStore} с использованием Mockito.
+ *
+ * <p>
+ * Проверяется, что изменение корзины в памяти отменяется при откате транзакции, сохраняется
+ * в базе данных перед коммитом, а изменения, не записанные в корзины, восстанавливаются при запуске.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class MemoryCartStoreTest {
+
+    @Mock
+    private CartRepository cartRepository;
+
+    @Mock
+    private CartItemRepository cartItemRepository;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock(answer = Answers.RETURNS_SELF)
+    private NativeQuery<Object> query;
+
+    private final String sessionId = "session-1";
+
+    /**
+     * Откат транзакции возвращает строку корзины к прежнему количеству, итоги пересчитываются.
+     */
+    @Test
+    void testEdit_rollbackRestoresQuantity() {
+        MemoryCartStore store = store(ActiveCartStore.Mode.MEMORY);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.unwrap(NativeQuery.class)).thenReturn(query);
+        Product product = product(1L, "12.50");
+
+        inTransaction(store, edit -> edit.set(product, 2), true);
+        inTransaction(store, edit -> edit.set(product, 5), false);
+
+        CartView view = store.view(sessionId).orElseThrow();
+        assertEquals(1, view.getItems().size());
+        assertEquals(2, view.getItems().get(0).getQuantity());
+        assertEquals(Money.of(new BigDecimal("25.00")), view.getTotalAmount());
+    }
+
+    /**
+     * Новые количества изменённых строк записываются в {@code memory_cart_change} одним запросом
+     * перед коммитом, в той же транзакции, что и списание остатка.
+     */
+    @Test
+    void testEdit_recordsChangesBeforeCommit() {
+        MemoryCartStore store = store(ActiveCartStore.Mode.MEMORY);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.unwrap(NativeQuery.class)).thenReturn(query);
+
+        inTransaction(store, edit -> {
+            edit.set(product(1L, "12.50"), 3);
+            edit.set(product(2L, "3.00"), 1);
+        }, true);
+
+        verify(query).setParameter("productIds", new Long[] { 1L, 2L });
+        verify(query).setParameter("quantities", new Integer[] { 3, 1 });
+        verify(query).setParameter("prices", new Long[] { 1250L, 300L });
+        verify(query).setParameter("version", 2L);
+        verify(query).executeUpdate();
+    }
+
+    /**
+     * Корзина, изменения которой остались в {@code memory_cart_change}, восстанавливается при запуске
+     * и записывается фоновой задачей; записанные изменения удаляются из таблицы.
+     */
+    @Test
+    void testRecover_restoresUnwrittenCart() {
+        MemoryCartStore store = store(ActiveCartStore.Mode.MEMORY);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.getResultList()).thenReturn(Collections.singletonList(new Object[] { sessionId, 1L, 3, 1250L, 4L }));
+        when(query.unwrap(NativeQuery.class)).thenReturn(query);
+        Cart created = new Cart();
+        created.setId(7L);
+        when(cartRepository.save(any(Cart.class))).thenReturn(created);
+
+        store.recover();
+
+        CartBadge badge = store.badge(sessionId).orElseThrow();
+        assertEquals(3, badge.getItemCount());
+        assertEquals(Money.of(new BigDecimal("37.50")), badge.getTotalAmount());
+
+        store.flush();
+        verify(cartItemRepository).upsertLines(eq(7L), eq(new Long[] { 1L }), eq(new Integer[] { 3 }),
+                eq(new BigDecimal[] { new BigDecimal("12.50") }), any(LocalDateTime.class));
+        verify(query).setParameter("sessionId", sessionId);
+        verify(query).setParameter("version", 4L);
+        verify(query).executeUpdate();
+    }
+
+    /**
+     * В другом режиме хранения незаписанные изменения сразу записываются в базу данных,
+     * а корзина в памяти не остаётся.
+     */
+    @Test
+    void testRecover_writesChangesWhenDisabled() {
+        MemoryCartStore store = store(ActiveCartStore.Mode.DATABASE);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.getResultList()).thenReturn(Collections.singletonList(new Object[] { sessionId, 1L, 2, 1250L, 3L }));
+        when(query.unwrap(NativeQuery.class)).thenReturn(query);
+        Cart created = new Cart();
+        created.setId(7L);
+        when(cartRepository.save(any(Cart.class))).thenReturn(created);
+
+        store.recover();
+
+        verify(cartItemRepository).upsertLines(eq(7L), eq(new Long[] { 1L }), eq(new Integer[] { 2 }),
+                eq(new BigDecimal[] { new BigDecimal("12.50") }), any(LocalDateTime.class));
+        verify(cartRepository).updateTotals(eq(7L), eq(Money.of(new BigDecimal("25.00"))), eq(2), anyLong());
+        assertTrue(store.badge(sessionId).isEmpty());
+    }
+
+    private MemoryCartStore store(ActiveCartStore.Mode mode) {
+        TransactionOperations transactions = TransactionOperations.withoutTransaction();
+        return new MemoryCartStore(cartRepository, cartItemRepository, productRepository, entityManager,
+                new DatabaseSchema(entityManager, transactions), transactions, mode,
+                Duration.ofMinutes(30), Duration.ofMinutes(1), 100);
+    }
+
+    private static Product product(Long id, String price) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName("Toy " + id);
+        product.setPrice(new BigDecimal(price));
+        return product;
+    }
+
+    /**
+     * Выполняет изменение корзины как в транзакции, завершая её коммитом или откатом.
+     */
+    private void inTransaction(MemoryCartStore store, Consumer<MemoryCartStore.CartEdit> change, boolean commit) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            change.accept(store.edit(sessionId));
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager
+                    .getSynchronizations();
+            if (commit) {
+                synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+                synchronizations.forEach(TransactionSynchronization::afterCommit);
+            }
+            int status = commit ? TransactionSynchronization.STATUS_COMMITTED
+                    : TransactionSynchronization.STATUS_ROLLED_BACK;
+            synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.transaction.support.TransactionOperations;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+import example.toyshop.model.Cart;
+import example.toyshop.model.CartItem;
+import example.toyshop.model.CartStatus;
+import example.toyshop.model.Money;
+import example.toyshop.model.OutboxMessage;
+import example.toyshop.model.OutboxStatus;
+import example.toyshop.model.Product;
+import example.toyshop.model.StockMode;
+import example.toyshop.repository.CartRepository;
+import example.toyshop.repository.OutboxMessageRepository;
+import example.toyshop.service.OrderMailDispatcher;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Тесты для {@link OrderMailDispatcher}: письма отправляются на локальный SMTP-сервер GreenMail,
+ * репозитории подменяются Mockito.
+ *
+ * <p>
+ * Проверяется отправка пачки писем, повторная попытка с паузой при недоступном
+ * SMTP-сервере и отказ от отправки после исчерпания попыток.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderMailDispatcherTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @Mock
+    private OutboxMessageRepository outboxRepository;
+
+    @Mock
+    private CartRepository cartRepository;
+
+    private JavaMailSenderImpl mailSender;
+
+    private OrderMailDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(greenMail.getSmtp().getPort());
+        dispatcher = new OrderMailDispatcher(outboxRepository, cartRepository, mailSender,
+                TransactionOperations.withoutTransaction());
+        when(outboxRepository.existsByStatusAndNextAttemptAtLessThanEqual(any(), any())).thenReturn(true);
+    }
+
+    /**
+     * Все письма пачки доставляются, сообщения помечаются отправленными.
+     */
+    @Test
+    void testDispatch_sendsBatch() throws Exception {
+        OutboxMessage first = outboxMessage(1L, "first@example.com");
+        OutboxMessage second = outboxMessage(2L, "second@example.com");
+        when(outboxRepository.lockDue(any(), anyInt())).thenReturn(List.of(first, second));
+        when(cartRepository.findWithItemsByIdIn(List.of(1L, 2L))).thenReturn(List.of(order(1L), order(2L)));
+
+        dispatcher.dispatch();
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertEquals(2, received.length);
+        assertEquals("Заказ №1 оформлен", received[0].getSubject());
+        assertTrue(GreenMailUtil.getBody(received[0]).length() > 0);
+        assertEquals(OutboxStatus.SENT, first.getStatus());
+        assertEquals(OutboxStatus.SENT, second.getStatus());
+        assertNotNull(first.getSentAt());
+        verify(outboxRepository).saveAll(List.of(first, second));
+    }
+
+    /**
+     * При недоступном SMTP-сервере письмо остаётся в очереди и откладывается.
+     */
+    @Test
+    void testDispatch_smtpUnavailable_retriesLater() {
+        mailSender.setPort(1);
+        OutboxMessage message = outboxMessage(1L, "buyer@example.com");
+        when(outboxRepository.lockDue(any(), anyInt())).thenReturn(List.of(message));
+        when(cartRepository.findWithItemsByIdIn(List.of(1L))).thenReturn(List.of(order(1L)));
+
+        dispatcher.dispatch();
+
+        assertEquals(OutboxStatus.PENDING, message.getStatus());
+        assertEquals(1, message.getAttempts());
+        assertTrue(message.getNextAttemptAt().isAfter(LocalDateTime.now()));
+        assertNotNull(message.getLastError());
+    }
+
+    /**
+     * После исчерпания попыток письмо помечается неотправляемым.
+     */
+    @Test
+    void testDispatch_lastAttemptFails_givesUp() {
+        mailSender.setPort(1);
+        OutboxMessage message = outboxMessage(1L, "buyer@example.com");
+        message.setAttempts(7);
+        when(outboxRepository.lockDue(any(), anyInt())).thenReturn(List.of(message));
+        when(cartRepository.findWithItemsByIdIn(List.of(1L))).thenReturn(List.of(order(1L)));
+
+        dispatcher.dispatch();
+
+        assertEquals(OutboxStatus.FAILED, message.getStatus());
+        assertEquals(8, message.getAttempts());
+    }
+
+    private static OutboxMessage outboxMessage(Long orderId, String recipient) {
+        OutboxMessage message = new OutboxMessage();
+        message.setOrderId(orderId);
+        message.setRecipient(recipient);
+        return message;
+    }
+
+    private static Cart order(Long id) {
+        Product product = new Product(1L, "Мяч", "Резиновый мяч", new BigDecimal("100.00"),
+                "http://example.com/ball.png", 10, StockMode.STANDARD);
+        Cart cart = new Cart();
+        cart.setId(id);
+        cart.setStatus(CartStatus.COMPLETED);
+        CartItem item = new CartItem();
+        item.setCart(cart);
+        item.setProduct(product);
+        item.setPrice(Money.of(product.getPrice()));
+        item.setQuantity(2);
+        cart.getItems().add(item);
+        return cart;
+    }
+}
@@ -0,0 +1,147 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import example.toyshop.dto.OrderSummary;
+import example.toyshop.model.Cart;
+import example.toyshop.model.CartItem;
+import example.toyshop.model.CartStatus;
+import example.toyshop.model.Money;
+import example.toyshop.model.Product;
+import example.toyshop.repository.CartRepository;
+import example.toyshop.service.OrderArchive;
+import example.toyshop.service.OrderService;
+
+/**
+ * Unit-тесты для {@link OrderService} с использованием Mockito.
+ *
+ * <p>
+ * Проверяется преобразование заказов в {@link OrderSummary}
+ * и обработка отсутствующего заказа, в том числе поиск заказа в архиве.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderServiceTest {
+
+    @Mock
+    private CartRepository cartRepository;
+
+    @Mock
+    private OrderArchive orderArchive;
+
+    @InjectMocks
+    private OrderService orderService;
+
+    /**
+     * Проверяет, что оформленные заказы преобразуются в представления
+     * со строками и общей суммой.
+     */
+    @Test
+    void getCompletedOrders_mapsOrdersToSummaries() {
+        Cart order = completedOrder(7L, new BigDecimal("10.50"), 2);
+        when(cartRepository.findByStatus(CartStatus.COMPLETED)).thenReturn(List.of(order));
+
+        List<OrderSummary> result = orderService.getCompletedOrders();
+
+        assertEquals(1, result.size());
+        OrderSummary summary = result.get(0);
+        assertEquals(7L, summary.getId());
+        assertEquals(1, summary.getItems().size());
+        assertEquals("Мяч", summary.getItems().get(0).getName());
+        assertEquals(0, new BigDecimal("21.00").compareTo(summary.getTotalAmount().toBigDecimal()));
+    }
+
+    /**
+     * Проверяет получение одного заказа по идентификатору.
+     */
+    @Test
+    void getOrder_existing_returnsSummary() {
+        Cart order = completedOrder(3L, new BigDecimal("5.00"), 1);
+        when(cartRepository.findWithItemsById(3L)).thenReturn(Optional.of(order));
+
+        OrderSummary summary = orderService.getOrder(3L);
+
+        assertEquals(3L, summary.getId());
+        assertEquals(0, new BigDecimal("5.00").compareTo(summary.getTotalAmount().toBigDecimal()));
+    }
+
+    /**
+     * Проверяет, что заказ, которого нет среди недавних, читается из архива.
+     */
+    @Test
+    void getOrder_archived_returnsArchivedSummary() {
+        OrderSummary archived = new OrderSummary(4L, null, List.of(), Money.of(new BigDecimal("8.00")));
+        when(cartRepository.findWithItemsById(4L)).thenReturn(Optional.empty());
+        when(orderArchive.findOrder(4L)).thenReturn(Optional.of(archived));
+
+        OrderSummary summary = orderService.getOrder(4L);
+
+        assertEquals(archived, summary);
+    }
+
+    /**
+     * Проверяет, что заказы месяца архива читаются из архива.
+     */
+    @Test
+    void getArchivedOrders_readsArchiveMonth() {
+        YearMonth month = YearMonth.of(2024, 1);
+        OrderSummary archived = new OrderSummary(5L, null, List.of(), Money.ZERO);
+        when(orderArchive.findOrders(month)).thenReturn(List.of(archived));
+
+        assertEquals(List.of(archived), orderService.getArchivedOrders(month));
+    }
+
+    /**
+     * Проверяет, что при отсутствии заказа выбрасывается
+     * {@link ResponseStatusException} со статусом 404.
+     */
+    @Test
+    void getOrder_notFound_throwsException() {
+        when(cartRepository.findWithItemsById(99L)).thenReturn(Optional.empty());
+        when(orderArchive.findOrder(99L)).thenReturn(Optional.empty());
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> orderService.getOrder(99L));
+
+        assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
+    }
+
+    /**
+     * Создаёт оформленный заказ с одной строкой.
+     */
+    private static Cart completedOrder(Long id, BigDecimal price, int quantity) {
+        Product product = new Product();
+        product.setId(1L);
+        product.setName("Мяч");
+        product.setPrice(price);
+
+        CartItem item = new CartItem();
+        item.setProduct(product);
+        item.setPrice(Money.of(product.getPrice()));
+        item.setQuantity(quantity);
+
+        Cart order = new Cart();
+        order.setId(id);
+        order.setStatus(CartStatus.COMPLETED);
+        order.setItems(new ArrayList<>(List.of(item)));
+        order.applyLineChange(Money.of(price), quantity);
+        item.setCart(order);
+        return order;
+    }
+}
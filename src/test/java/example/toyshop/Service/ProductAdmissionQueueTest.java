@@ -0,0 +1,111 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import example.toyshop.service.CartService;
+import example.toyshop.service.ProductAdmissionQueue;
+
+/**
+ * Unit-тесты для {@link ProductAdmissionQueue} с использованием Mockito.
+ *
+ * <p>
+ * Проверяется, что запросы, пришедшие во время обработки пачки, объединяются
+ * в следующую пачку, товар достаётся в порядке поступления запросов, а отменить можно
+ * только запрос, который ещё не обрабатывается.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class ProductAdmissionQueueTest {
+
+    @Mock
+    private CartService cartService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Пока обрабатывается первая пачка, следующие запросы накапливаются и обрабатываются вместе;
+     * запросы сверх остатка получают отказ.
+     */
+    @Test
+    void testSubmit_batchesRequestsInArrivalOrder() throws Exception {
+        ProductAdmissionQueue queue = new ProductAdmissionQueue(cartService, transactionManager, 100, Duration.ofSeconds(5));
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+        AtomicInteger stock = new AtomicInteger(2);
+
+        when(cartService.admitBatch(eq(1L), anyList())).thenAnswer(invocation -> {
+            List<String> sessionIds = invocation.getArgument(1);
+            if (sessionIds.contains("a")) {
+                firstBatchStarted.countDown();
+                releaseFirstBatch.await(1, TimeUnit.SECONDS);
+            }
+            int granted = Math.min(sessionIds.size(), stock.get());
+            stock.addAndGet(-granted);
+            return granted;
+        });
+
+        CompletableFuture<Void> a = queue.submit("a", 1L);
+        assertTrue(firstBatchStarted.await(1, TimeUnit.SECONDS));
+        CompletableFuture<Void> b = queue.submit("b", 1L);
+        CompletableFuture<Void> c = queue.submit("c", 1L);
+        releaseFirstBatch.countDown();
+
+        a.get(1, TimeUnit.SECONDS);
+        b.get(1, TimeUnit.SECONDS);
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> c.get(1, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof RuntimeException);
+        verify(cartService).admitBatch(1L, List.of("b", "c"));
+    }
+
+    /**
+     * Запрос, ещё не забранный обработчиком, отменяется и не обрабатывается;
+     * забранный запрос отменить нельзя — он получает результат пачки.
+     */
+    @Test
+    void testCancel_onlyBeforeBatchTakesRequest() throws Exception {
+        ProductAdmissionQueue queue = new ProductAdmissionQueue(cartService, transactionManager, 100, Duration.ofSeconds(5));
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+
+        when(cartService.admitBatch(eq(1L), anyList())).thenAnswer(invocation -> {
+            firstBatchStarted.countDown();
+            releaseFirstBatch.await(1, TimeUnit.SECONDS);
+            return ((List<?>) invocation.getArgument(1)).size();
+        });
+
+        CompletableFuture<Void> a = queue.submit("a", 1L);
+        assertTrue(firstBatchStarted.await(1, TimeUnit.SECONDS));
+        CompletableFuture<Void> b = queue.submit("b", 1L);
+        CompletableFuture<Void> c = queue.submit("c", 1L);
+
+        assertFalse(a.cancel(false));
+        assertTrue(b.cancel(false));
+        releaseFirstBatch.countDown();
+
+        a.get(1, TimeUnit.SECONDS);
+        c.get(1, TimeUnit.SECONDS);
+        assertTrue(b.isCancelled());
+        verify(cartService).admitBatch(1L, List.of("c"));
+    }
+}
@@ -0,0 +1,104 @@
+package example.toyshop.Service;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.hibernate.query.NativeQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionOperations;
+
+import example.toyshop.event.OrderCompleted;
+import example.toyshop.service.DatabaseSchema;
+import example.toyshop.service.ProductPopularity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+
+/**
+ * Unit-тесты для {@link ProductPopularity} с использованием Mockito.
+ *
+ * <p>
+ * Проверяется, что просмотры и продажи записываются одним запросом по возрастанию ID товара,
+ * а при ошибке записи возвращаются в счётчики.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class ProductPopularityTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock(answer = Answers.RETURNS_SELF)
+    private NativeQuery<Object> query;
+
+    /**
+     * Накопленные просмотры и продажи записываются массивами, упорядоченными по ID товара.
+     */
+    @Test
+    void testFlush_writesCountersSortedByProduct() {
+        ProductPopularity popularity = popularity(true);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.unwrap(NativeQuery.class)).thenReturn(query);
+
+        popularity.recordView(5L);
+        popularity.recordView(5L);
+        popularity.accept(new OrderCompleted(1L, "session-1", List.of(new OrderCompleted.Line(2L, 3)),
+                BigDecimal.TEN, LocalDateTime.now()));
+        popularity.flush();
+
+        verify(query).setParameter("productIds", new Long[] { 2L, 5L });
+        verify(query).setParameter("views", new Long[] { 0L, 2L });
+        verify(query).setParameter("units", new Long[] { 3L, 0L });
+    }
+
+    /**
+     * Если запись не удалась, значения сохраняются до следующей записи.
+     */
+    @Test
+    void testFlush_failure_keepsCounters() {
+        ProductPopularity popularity = popularity(true);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.unwrap(NativeQuery.class)).thenReturn(query);
+        when(query.executeUpdate()).thenThrow(new PersistenceException("down")).thenReturn(1);
+
+        popularity.recordView(7L);
+        popularity.flush();
+        popularity.recordView(7L);
+        popularity.flush();
+
+        verify(query).setParameter("views", new Long[] { 1L });
+        verify(query).setParameter("views", new Long[] { 2L });
+    }
+
+    /**
+     * Выключенный учёт не накапливает значения и не обращается к базе данных.
+     */
+    @Test
+    void testDisabled_doesNotTouchDatabase() {
+        ProductPopularity popularity = popularity(false);
+
+        popularity.start();
+        popularity.recordView(1L);
+        popularity.flush();
+
+        verifyNoInteractions(entityManager);
+        verify(query, never()).executeUpdate();
+    }
+
+    private ProductPopularity popularity(boolean enabled) {
+        TransactionOperations transactions = TransactionOperations.withoutTransaction();
+        return new ProductPopularity(entityManager, new DatabaseSchema(entityManager, transactions), transactions,
+                enabled, Duration.ofHours(1), Duration.ofDays(7), Duration.ofDays(1), 20);
+    }
+}
@@ -0,0 +1,138 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import example.toyshop.dto.ProductCard;
+import example.toyshop.event.OrderCompleted;
+import example.toyshop.service.OrderArchive;
+import example.toyshop.service.ProductRecommendations;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+/**
+ * Unit-тесты для {@link ProductRecommendations} с использованием Mockito.
+ *
+ * <p>
+ * Проверяется, что оформленный заказ сразу пересчитывает рекомендации своих товаров,
+ * построение матрицы не теряет заказы, оформленные во время него, а заказы из одного товара
+ * и выключенные рекомендации не обращаются к базе данных.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class ProductRecommendationsTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private OrderArchive orderArchive;
+
+    @Mock(answer = Answers.RETURNS_SELF)
+    private Query query;
+
+    /**
+     * Товары заказа рекомендуются друг другу, чаще покупаемые вместе — первыми.
+     */
+    @Test
+    void testAccept_recommendsProductsBoughtTogether() {
+        ProductRecommendations recommendations = recommendations(true);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of(
+                new Object[] { 1L, "Мяч", new BigDecimal("100.00"), null, 5 },
+                new Object[] { 2L, "Кукла", new BigDecimal("200.00"), null, 3 },
+                new Object[] { 3L, "Машинка", new BigDecimal("300.00"), null, 0 }));
+
+        recommendations.accept(order(10L, 1L, 2L, 3L));
+        recommendations.accept(order(11L, 1L, 3L));
+
+        assertEquals(List.of(3L, 2L), recommendations.recommend(1L).stream().map(ProductCard::getId).toList());
+        assertEquals(List.of(1L), recommendations.recommend(2L).stream().map(ProductCard::getId).limit(1).toList());
+        assertEquals("Машинка", recommendations.recommend(1L).get(0).getName());
+    }
+
+    /**
+     * Заказы, учтённые во время построения и не прочитанные им, добавляются в новую матрицу,
+     * даже если их ID входят в прочитанный диапазон; прочитанные заказы не учитываются дважды.
+     */
+    @Test
+    void testRebuild_replaysOrdersNotScanned() {
+        ProductRecommendations recommendations = recommendations(true);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.getSingleResult()).thenReturn(new Object[] { 6L, 20L });
+        when(query.getResultList()).thenReturn(List.of(
+                new Object[] { 1L, "Мяч", new BigDecimal("100.00"), null, 5 },
+                new Object[] { 2L, "Кукла", new BigDecimal("200.00"), null, 3 },
+                new Object[] { 3L, "Машинка", new BigDecimal("300.00"), null, 0 }));
+        when(query.getResultStream()).thenAnswer(invocation -> {
+            recommendations.accept(order(5L, 1L, 3L));
+            recommendations.accept(order(7L, 1L, 2L));
+            recommendations.accept(order(9L, 1L, 3L));
+            return Stream.of(
+                    new Object[] { 6L, 1L }, new Object[] { 6L, 2L },
+                    new Object[] { 7L, 1L }, new Object[] { 7L, 2L },
+                    new Object[] { 8L, 1L }, new Object[] { 8L, 3L });
+        });
+
+        recommendations.rebuild();
+
+        assertEquals(List.of(3L, 2L), recommendations.recommend(1L).stream().map(ProductCard::getId).toList());
+    }
+
+    /**
+     * Заказ из одного товара не образует пар и не обращается к базе данных.
+     */
+    @Test
+    void testAccept_singleProduct_ignored() {
+        ProductRecommendations recommendations = recommendations(true);
+
+        recommendations.accept(order(10L, 1L, 1L));
+
+        assertTrue(recommendations.recommend(1L).isEmpty());
+        verifyNoInteractions(entityManager);
+    }
+
+    /**
+     * Выключенные рекомендации не учитывают заказы и не строят матрицу.
+     */
+    @Test
+    void testDisabled_doesNotTouchDatabase() {
+        ProductRecommendations recommendations = recommendations(false);
+
+        recommendations.accept(order(10L, 1L, 2L));
+        recommendations.rebuild();
+
+        assertTrue(recommendations.recommend(1L).isEmpty());
+        verifyNoInteractions(entityManager, transactionManager);
+    }
+
+    private static OrderCompleted order(Long orderId, Long... productIds) {
+        List<OrderCompleted.Line> lines = Arrays.stream(productIds)
+                .map(productId -> new OrderCompleted.Line(productId, 1))
+                .toList();
+        return new OrderCompleted(orderId, "session-1", lines, BigDecimal.TEN, LocalDateTime.now());
+    }
+
+    private ProductRecommendations recommendations(boolean enabled) {
+        return new ProductRecommendations(entityManager, transactionManager, orderArchive, enabled, 6, 50, 10000, 4);
+    }
+}
@@ -4,20 +4,35 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import example.toyshop.dto.CatalogFilter;
+import example.toyshop.dto.ProductCard;
 import example.toyshop.model.Product;
+import example.toyshop.model.ProductStats;
 import example.toyshop.repository.ProductRepository;
+import example.toyshop.repository.ProductStatsRepository;
+import example.toyshop.service.CatalogSnapshot;
+import example.toyshop.service.ProductPopularity;
 import example.toyshop.service.ProductService;
+import example.toyshop.service.SingleFlight;
 
 import org.springframework.data.domain.*;
 import org.springframework.http.HttpStatus;
@@ -41,6 +56,18 @@ class ProductServiceTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private ProductStatsRepository productStatsRepository;
+
+    @Mock
+    private ProductPopularity productPopularity;
+
+    @Mock
+    private CatalogSnapshot catalogSnapshot;
+
+    @Spy
+    private SingleFlight singleFlight = new SingleFlight(true, Duration.ofSeconds(1));
+
     @InjectMocks
     private ProductService productService;
 
@@ -77,6 +104,134 @@ class ProductServiceTest {
         verify(productRepository).findAll(any(Pageable.class));
     }
 
+    /**
+     * Проверяет, что карточки товаров с ключевым словом ищутся проекцией
+     * {@link ProductRepository#searchCards(String, Pageable)} со стабильной сортировкой по id.
+     */
+    @Test
+    void getProductCards_withKeyword_callsSearchCards() {
+        Page<ProductCard> page = new PageImpl<>(List.of(new ProductCard(1L, "Toy", null, null, 1)));
+        Pageable expected = PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "name", "id"));
+        when(productRepository.searchCards("toy", expected)).thenReturn(page);
+
+        Page<ProductCard> result = productService.getProductCards("toy", "name_desc", 0, 10);
+
+        assertEquals(page, result);
+    }
+
+    /**
+     * Проверяет, что без ключевого слова карточки товаров загружаются проекцией
+     * {@link ProductRepository#findAllCards(Pageable)}.
+     */
+    @Test
+    void getProductCards_withoutKeyword_callsFindAllCards() {
+        Page<ProductCard> page = new PageImpl<>(List.of(new ProductCard(1L, "Toy", null, null, 1)));
+        Pageable expected = PageRequest.of(0, 10, Sort.by(Sort.Direction.ASC, "price", "id"));
+        when(productRepository.findAllCards(expected)).thenReturn(page);
+
+        Page<ProductCard> result = productService.getProductCards("", "price_asc", 0, 10);
+
+        assertEquals(page, result);
+    }
+
+    /**
+     * Проверяет, что сортировка по популярности читает карточки по индексу статистики
+     * без сортировки в {@link Pageable}.
+     */
+    @Test
+    void getProductCards_popular_callsFindPopularCards() {
+        Page<ProductCard> page = new PageImpl<>(List.of(new ProductCard(1L, "Toy", null, null, 1)));
+        when(productPopularity.isEnabled()).thenReturn(true);
+        when(productRepository.findPopularCards(PageRequest.of(1, 10))).thenReturn(page);
+
+        Page<ProductCard> result = productService.getProductCards(null, "popular", 1, 10);
+
+        assertEquals(page, result);
+    }
+
+    /**
+     * Проверяет, что при выключенном учёте популярности товары сортируются по цене.
+     */
+    @Test
+    void getProductCards_popularDisabled_sortsByPrice() {
+        Page<ProductCard> page = new PageImpl<>(List.of());
+        Pageable expected = PageRequest.of(0, 10, Sort.by(Sort.Direction.ASC, "price", "id"));
+        when(productRepository.findAllCards(expected)).thenReturn(page);
+
+        Page<ProductCard> result = productService.getProductCards(null, "popular", 0, 10);
+
+        assertEquals(page, result);
+    }
+
+    /**
+     * Проверяет, что построенный снимок каталога обслуживает витрину без запросов к базе данных.
+     */
+    @Test
+    void getProductCards_snapshotReady_servesFromSnapshot() {
+        Page<ProductCard> page = new PageImpl<>(List.of(new ProductCard(1L, "Toy", null, null, 1)));
+        when(catalogSnapshot.find("toy", "name_asc", CatalogFilter.NONE, 0, 10)).thenReturn(Optional.of(page));
+
+        Page<ProductCard> result = productService.getProductCards("toy", "name_asc", 0, 10);
+
+        assertEquals(page, result);
+        verifyNoInteractions(productRepository);
+    }
+
+    /**
+     * Проверяет, что без снимка фильтры по цене и наличию передаются в запрос
+     * {@link ProductRepository#filterCards}.
+     */
+    @Test
+    void getProductCards_filterWithoutSnapshot_callsFilterCards() {
+        CatalogFilter filter = new CatalogFilter(BigDecimal.ONE, BigDecimal.TEN, true);
+        Page<ProductCard> page = new PageImpl<>(List.of());
+        Pageable expected = PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "price", "id"));
+        when(productRepository.filterCards("", BigDecimal.ONE, BigDecimal.TEN, true, expected)).thenReturn(page);
+
+        Page<ProductCard> result = productService.getProductCards(null, "price_desc", filter, 0, 10);
+
+        assertEquals(page, result);
+    }
+
+    /**
+     * Проверяет, что сохранение товара отмечает изменение снимка каталога.
+     */
+    @Test
+    void saveProduct_marksCatalogChanged() {
+        Product product = new Product();
+        product.setId(1L);
+        when(productRepository.save(product)).thenReturn(product);
+
+        productService.saveProduct(product);
+
+        verify(catalogSnapshot).catalogChanged();
+    }
+
+    /**
+     * Проверяет, что одновременные запросы одного товара выполняют один запрос к базе данных.
+     */
+    @Test
+    void getProductById_concurrentCalls_loadOnce() throws Exception {
+        Product product = new Product();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(productRepository.findById(1L)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await();
+            return Optional.of(product);
+        });
+
+        CompletableFuture<Product> first = CompletableFuture.supplyAsync(() -> productService.getProductById(1L));
+        loading.await();
+        CompletableFuture<Product> second = CompletableFuture.supplyAsync(() -> productService.getProductById(1L));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals(product, first.get(5, TimeUnit.SECONDS));
+        assertEquals(product, second.get(5, TimeUnit.SECONDS));
+        verify(productRepository, times(1)).findById(1L);
+    }
+
     /**
      * Проверяет успешное получение продукта по существующему ID.
      */
@@ -107,14 +262,17 @@ class ProductServiceTest {
     }
 
     /**
-     * Проверяет вызов метода сохранения продукта в репозитории.
+     * Проверяет вызов метода сохранения продукта в репозитории и создание
+     * статистики популярности нового товара.
      */
     @Test
     void saveProduct_callsRepositorySave() {
         Product product = new Product();
+        when(productRepository.save(product)).thenReturn(product);
 
         productService.saveProduct(product);
 
         verify(productRepository).save(product);
+        verify(productStatsRepository).save(any(ProductStats.class));
     }
 }
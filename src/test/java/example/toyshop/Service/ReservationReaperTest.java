@@ -0,0 +1,67 @@
+package example.toyshop.Service;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import example.toyshop.model.CartStatus;
+import example.toyshop.repository.CartItemRepository;
+import example.toyshop.service.ReservationReaper;
+
+/**
+ * Unit-тесты для {@link ReservationReaper} с использованием Mockito.
+ *
+ * <p>
+ * Проверяется, что просроченные резервы освобождаются пачками до исчерпания,
+ * а при их отсутствии изменяющие запросы не выполняются.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class ReservationReaperTest {
+
+    @Mock
+    private CartItemRepository cartItemRepository;
+
+    @InjectMocks
+    private ReservationReaper reservationReaper;
+
+    /**
+     * Пачки освобождаются, пока очередная пачка не окажется пустой.
+     */
+    @Test
+    void testReleaseExpiredReservations_releasesBatchesUntilEmpty() {
+        when(cartItemRepository.existsByCartStatusAndReservedUntilBefore(eq(CartStatus.ACTIVE), any(LocalDateTime.class)))
+                .thenReturn(true);
+        when(cartItemRepository.releaseExpiredReservations(any(LocalDateTime.class), anyInt()))
+                .thenReturn(3, 1, 0);
+
+        reservationReaper.releaseExpiredReservations();
+
+        verify(cartItemRepository, times(3)).releaseExpiredReservations(any(LocalDateTime.class), eq(500));
+    }
+
+    /**
+     * Если просроченных резервов нет, освобождение не запускается.
+     */
+    @Test
+    void testReleaseExpiredReservations_nothingExpired_skipsRelease() {
+        when(cartItemRepository.existsByCartStatusAndReservedUntilBefore(eq(CartStatus.ACTIVE), any(LocalDateTime.class)))
+                .thenReturn(false);
+
+        reservationReaper.releaseExpiredReservations();
+
+        verify(cartItemRepository, never()).releaseExpiredReservations(any(LocalDateTime.class), anyInt());
+    }
+}
@@ -0,0 +1,130 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.query.NativeQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.web.server.ResponseStatusException;
+
+import example.toyshop.dto.SalesDay;
+import example.toyshop.dto.SalesReport;
+import example.toyshop.event.OrderCompleted;
+import example.toyshop.model.Money;
+import example.toyshop.service.DatabaseSchema;
+import example.toyshop.service.OrderArchive;
+import example.toyshop.service.SalesAnalyticsService;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Unit-тесты для {@link SalesAnalyticsService} с использованием Mockito.
+ *
+ * <p>
+ * Проверяется, что пересчёт периода идёт по дням, отчёт собирается из сводных таблиц,
+ * а выключенная аналитика не обращается к базе данных.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class SalesAnalyticsServiceTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private OrderArchive orderArchive;
+
+    @Mock(answer = Answers.RETURNS_SELF)
+    private NativeQuery<Object> query;
+
+    /**
+     * Каждый день периода пересчитывается отдельным запросом под блокировкой сводок.
+     */
+    @Test
+    void testRebuild_rebuildsEachDay() {
+        SalesAnalyticsService service = service(true);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.unwrap(NativeQuery.class)).thenReturn(query);
+        LocalDate from = LocalDate.of(2024, 1, 30);
+
+        service.rebuild(from, from.plusDays(2));
+
+        verify(query, times(3)).executeUpdate();
+        verify(query).setParameter("day", LocalDate.of(2024, 2, 1));
+        verify(query, times(3)).setParameter("claim", false);
+    }
+
+    /**
+     * Отчёт складывает продажи по дням и считает средний чек за период.
+     */
+    @Test
+    void testGetReport_sumsDays() {
+        SalesAnalyticsService service = service(true);
+        LocalDate day = LocalDate.of(2024, 1, 10);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.getResultList())
+                .thenReturn(List.of(new Object[] { day, 2L, 5L, new BigDecimal("30.00") },
+                        new Object[] { day.plusDays(1), 1L, 1L, new BigDecimal("3.00") }))
+                .thenReturn(Collections.singletonList(new Object[] { 7L, "Мяч", 4L, 2L }));
+
+        SalesReport report = service.getReport(day, day.plusDays(1));
+
+        assertEquals(3, report.getOrders());
+        assertEquals(Money.of(new BigDecimal("33.00")), report.getRevenue());
+        assertEquals(Money.of(new BigDecimal("11.00")), report.getAverageBasket());
+        assertEquals(Money.of(new BigDecimal("15.00")), report.getDays().get(0).getAverageBasket());
+        assertEquals("Мяч", report.getTopProducts().get(0).getName());
+    }
+
+    /**
+     * Период, который начинается позже, чем заканчивается, отклоняется с кодом 400.
+     */
+    @Test
+    void testGetReport_reversedPeriod_throwsBadRequest() {
+        SalesAnalyticsService service = service(true);
+        LocalDate day = LocalDate.of(2024, 1, 10);
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> service.getReport(day, day.minusDays(1)));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+    }
+
+    /**
+     * Выключенная аналитика не учитывает заказы.
+     */
+    @Test
+    void testDisabled_doesNotTouchDatabase() {
+        SalesAnalyticsService service = service(false);
+        LocalDate day = LocalDate.of(2024, 1, 10);
+
+        service.accept(new OrderCompleted(1L, "session-1", List.of(), BigDecimal.ONE, LocalDateTime.now()));
+        service.reconcile();
+        List<SalesDay> days = service.getReport(day, day).getDays();
+
+        assertEquals(List.of(), days);
+        verifyNoInteractions(entityManager);
+    }
+
+    private SalesAnalyticsService service(boolean enabled) {
+        TransactionOperations transactions = TransactionOperations.withoutTransaction();
+        return new SalesAnalyticsService(entityManager, new DatabaseSchema(entityManager, transactions), transactions,
+                orderArchive, enabled, 2, 10);
+    }
+}
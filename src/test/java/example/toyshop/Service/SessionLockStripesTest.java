@@ -0,0 +1,76 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import example.toyshop.service.SessionLockStripes;
+
+/**
+ * Unit-тесты для {@link SessionLockStripes}.
+ *
+ * <p>
+ * Проверяется, что запросы одной сессии получают одну блокировку,
+ * а ожидание занятой блокировки ограничено по времени.
+ * </p>
+ */
+class SessionLockStripesTest {
+
+    /**
+     * Одна и та же сессия всегда попадает в одну блокировку.
+     */
+    @Test
+    void lockFor_sameSession_returnsSameLock() {
+        SessionLockStripes stripes = new SessionLockStripes(64, Duration.ofSeconds(1));
+
+        assertSame(stripes.lockFor("session-1"), stripes.lockFor("session-1"));
+    }
+
+    /**
+     * Пока блокировка сессии занята, второй запрос быстро получает ответ 429.
+     */
+    @Test
+    void acquire_busySession_failsFastWith429() throws Exception {
+        SessionLockStripes stripes = new SessionLockStripes(64, Duration.ofMillis(50));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Future<?> holder = executor.submit(() -> {
+                Lock lock = stripes.acquire("session-1");
+                locked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    lock.unlock();
+                }
+            });
+            assertTrue(locked.await(1, TimeUnit.SECONDS));
+
+            ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                    () -> stripes.acquire("session-1"));
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getStatusCode());
+
+            release.countDown();
+            holder.get(1, TimeUnit.SECONDS);
+            stripes.acquire("session-1").unlock();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
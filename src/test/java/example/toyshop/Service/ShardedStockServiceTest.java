@@ -0,0 +1,146 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import example.toyshop.model.Product;
+import example.toyshop.model.ProductStockShard;
+import example.toyshop.model.StockMode;
+import example.toyshop.repository.ProductRepository;
+import example.toyshop.repository.ProductStockShardRepository;
+import example.toyshop.service.ShardedStockService;
+
+/**
+ * Unit-тесты для {@link ShardedStockService} с использованием Mockito.
+ *
+ * <p>
+ * Покрываются списание из частей остатка, перевод товара в режим учёта по частям
+ * и выравнивание частей.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class ShardedStockServiceTest {
+
+    @Mock
+    private ProductStockShardRepository shardRepository;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @InjectMocks
+    private ShardedStockService shardedStockService;
+
+    /**
+     * Если свободная часть нашлась, ожидание занятых частей не выполняется.
+     */
+    @Test
+    void testTake_freeShard() {
+        when(shardRepository.takeFromFreeShard(1L, 1)).thenReturn(1);
+
+        assertTrue(shardedStockService.take(1L, 1));
+        verify(shardRepository, never()).takeFromAnyShard(1L, 1);
+    }
+
+    /**
+     * Если все части заняты или пусты, выполняется списание с ожиданием;
+     * если и оно не удалось — товара нет в наличии.
+     */
+    @Test
+    void testTake_noFreeShard_fallsBackToWaiting() {
+        when(shardRepository.takeFromFreeShard(1L, 1)).thenReturn(0);
+        when(shardRepository.takeFromAnyShard(1L, 1)).thenReturn(0);
+
+        assertFalse(shardedStockService.take(1L, 1));
+    }
+
+    /**
+     * Текущий остаток товара распределяется между частями поровну.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void testChangeStockMode_sharded_distributesQuantity() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setQuantity(10);
+        when(productRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(product));
+
+        shardedStockService.changeStockMode(1L, StockMode.SHARDED, 4);
+
+        ArgumentCaptor<List<ProductStockShard>> captor = ArgumentCaptor.forClass(List.class);
+        verify(shardRepository).saveAll(captor.capture());
+        assertEquals(List.of(3, 3, 2, 2),
+                captor.getValue().stream().map(ProductStockShard::getQuantity).toList());
+        assertEquals(StockMode.SHARDED, product.getStockMode());
+    }
+
+    /**
+     * Повторный перевод в режим учёта по частям ничего не меняет.
+     */
+    @Test
+    void testChangeStockMode_alreadySharded() {
+        Product product = new Product();
+        product.setStockMode(StockMode.SHARDED);
+        when(productRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(product));
+
+        shardedStockService.changeStockMode(1L, StockMode.SHARDED, 4);
+
+        verify(shardRepository, never()).saveAll(anyList());
+    }
+
+    /**
+     * При выходе из режима учёта по частям их сумма возвращается в товар, а части удаляются.
+     */
+    @Test
+    void testChangeStockMode_fromSharded_collapsesShards() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setStockMode(StockMode.SHARDED);
+        when(productRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(product));
+        when(shardRepository.findAllForUpdate(1L)).thenReturn(List.of(
+                new ProductStockShard(1L, product, 0, 4),
+                new ProductStockShard(2L, product, 1, 5)));
+
+        shardedStockService.changeStockMode(1L, StockMode.QUEUED, 8);
+
+        assertEquals(9, product.getQuantity());
+        assertEquals(StockMode.QUEUED, product.getStockMode());
+        verify(shardRepository).deleteByProductId(1L);
+    }
+
+    /**
+     * Выравнивание распределяет сумму частей поровну и обновляет отображаемый остаток товара.
+     */
+    @Test
+    void testRebalance_evensShardsAndUpdatesProduct() {
+        Product product = new Product();
+        product.setId(1L);
+        product.setQuantity(100);
+        List<ProductStockShard> shards = new ArrayList<>(List.of(
+                new ProductStockShard(1L, product, 0, 7),
+                new ProductStockShard(2L, product, 1, 0),
+                new ProductStockShard(3L, product, 2, 0)));
+        when(shardRepository.findAllForUpdate(1L)).thenReturn(shards);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product));
+
+        shardedStockService.rebalance(1L);
+
+        assertEquals(List.of(3, 2, 2), shards.stream().map(ProductStockShard::getQuantity).toList());
+        assertEquals(7, product.getQuantity());
+    }
+}
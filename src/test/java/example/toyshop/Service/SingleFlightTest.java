@@ -0,0 +1,130 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import example.toyshop.service.SingleFlight;
+
+/**
+ * Unit-тесты для {@link SingleFlight}.
+ *
+ * <p>
+ * Проверяется, что одновременные вызовы с одним ключом выполняют одну загрузку и получают её результат
+ * или исключение, а ожидание дольше отведённого времени завершается ответом 503.
+ * </p>
+ */
+class SingleFlightTest {
+
+    /**
+     * Вызовы, пришедшие во время загрузки, получают её результат без собственной загрузки.
+     */
+    @Test
+    void testExecute_concurrentCalls_loadOnce() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(true, Duration.ofSeconds(5));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return "value";
+        }));
+        loading.await();
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("value", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * Исключение загрузки получают все ожидавшие её вызовы.
+     */
+    @Test
+    void testExecute_failure_sharedWithWaiters() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(true, Duration.ofSeconds(5));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ResponseStatusException notFound = new ResponseStatusException(HttpStatus.NOT_FOUND);
+
+        CompletableFuture<Object> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            loading.countDown();
+            await(release);
+            throw notFound;
+        }));
+        loading.await();
+        CompletableFuture<Object> follower = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> "other"));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertSame(notFound, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(notFound, assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS)).getCause());
+    }
+
+    /**
+     * Ожидание дольше отведённого времени завершается ответом 503, а загрузка продолжается.
+     */
+    @Test
+    void testExecute_waitTimeout_serviceUnavailable() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(true, Duration.ofMillis(50));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            loading.countDown();
+            await(release);
+            return "value";
+        }));
+        loading.await();
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> singleFlight.execute("key", () -> "other"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+
+        release.countDown();
+        assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Результат не кэшируется: последовательные вызовы и вызовы с разными ключами загружают заново.
+     */
+    @Test
+    void testExecute_sequentialCalls_loadEachTime() {
+        SingleFlight singleFlight = new SingleFlight(true, Duration.ofSeconds(1));
+        AtomicInteger loads = new AtomicInteger();
+
+        singleFlight.execute("a", loads::incrementAndGet);
+        singleFlight.execute("a", loads::incrementAndGet);
+        singleFlight.execute("b", loads::incrementAndGet);
+
+        assertEquals(3, loads.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
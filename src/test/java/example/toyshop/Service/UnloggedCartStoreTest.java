@@ -0,0 +1,124 @@
+package example.toyshop.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collections;
+
+import org.hibernate.query.NativeQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import example.toyshop.dto.CartDelta;
+import example.toyshop.dto.CartView;
+import example.toyshop.model.Money;
+import example.toyshop.model.Product;
+import example.toyshop.service.ActiveCartStore;
+import example.toyshop.service.DatabaseSchema;
+import example.toyshop.service.UnloggedCartStore;
+import jakarta.persistence.EntityManager;
+
+/**
+ * Unit-тесты для {@link UnloggedCartStore} с использованием Mockito.
+ *
+ * <p>
+ * Проверяется, что изменения корзины накапливаются в транзакции и записываются одним запросом
+ * перед коммитом, а выключенное хранилище не обращается к базе данных.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class UnloggedCartStoreTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock(answer = Answers.RETURNS_SELF)
+    private NativeQuery<Object> query;
+
+    private final String sessionId = "session-1";
+
+    /**
+     * Изменения строк пересчитывают итоги корзины сразу, а в таблицы записываются одним запросом
+     * с новой версией корзины и изменением резерва по каждому товару.
+     */
+    @Test
+    void testEdit_writesChangesBeforeCommit() {
+        UnloggedCartStore store = store(ActiveCartStore.Mode.UNLOGGED);
+        when(entityManager.createNativeQuery(anyString())).thenReturn(query);
+        when(query.getResultList())
+                .thenReturn(Collections.singletonList(new Object[] { 1L, 2, 1250L, "Toy 1", null }))
+                .thenReturn(Collections.singletonList(new Object[] { 2500L, 2, 4L }));
+        when(query.unwrap(NativeQuery.class)).thenReturn(query);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            ActiveCartStore.Edit edit = store.edit(sessionId);
+            assertFalse(edit.isNew());
+            edit.set(product(1L, "12.50"), 3);
+            edit.set(product(2L, "3.00"), 1);
+
+            CartDelta delta = edit.delta(1L, 7);
+            assertEquals(3, delta.getQuantity());
+            assertEquals(Money.ofMinor(4050), delta.getTotalAmount());
+            assertEquals(4, delta.getItemCount());
+            CartView view = edit.view();
+            assertEquals(2, view.getItems().size());
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.beforeCommit(false));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(query).setParameter("productIds", new Long[] { 1L, 2L });
+        verify(query).setParameter("quantities", new Integer[] { 3, 1 });
+        verify(query).setParameter("deltas", new Integer[] { 1, 1 });
+        verify(query).setParameter("totalAmount", 4050L);
+        verify(query).setParameter(eq("version"), eq(5L));
+        verify(query).executeUpdate();
+    }
+
+    /**
+     * В другом режиме хранилище не возвращает товар на склад и не освобождает резервы.
+     */
+    @Test
+    void testDisabled_doesNotTouchDatabase() {
+        UnloggedCartStore store = store(ActiveCartStore.Mode.DATABASE);
+
+        store.start();
+        store.releaseExpiredReservations();
+
+        assertFalse(store.isEnabled());
+        verifyNoInteractions(entityManager);
+    }
+
+    private UnloggedCartStore store(ActiveCartStore.Mode mode) {
+        TransactionOperations transactions = TransactionOperations.withoutTransaction();
+        return new UnloggedCartStore(entityManager, new DatabaseSchema(entityManager, transactions), transactions,
+                transactionManager, mode, Duration.ofMinutes(30), 500);
+    }
+
+    private static Product product(Long id, String price) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName("Toy " + id);
+        product.setPrice(new BigDecimal(price));
+        return product;
+    }
+}
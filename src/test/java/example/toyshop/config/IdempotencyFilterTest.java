@@ -0,0 +1,289 @@
+package example.toyshop.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import example.toyshop.controller.CartCookies;
+import example.toyshop.model.IdempotencyRecord;
+import example.toyshop.repository.IdempotencyRecordRepository;
+import example.toyshop.service.IdempotencyStore;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Unit-тесты для {@link IdempotencyFilter}.
+ *
+ * <p>
+ * Проверяется, что повтор запроса с тем же ключом из той же сессии получает сохранённый результат
+ * (вместе с cookie) без повторного выполнения, а ошибки, запросы без ключа или без сессии
+ * и ключи других сессий не запоминаются и не отдаются. При хранении в базе данных ключ,
+ * захваченный запросом на другом узле, не выполняется повторно.
+ * </p>
+ */
+class IdempotencyFilterTest {
+
+    private final IdempotencyStore store = new IdempotencyStore(mock(IdempotencyRecordRepository.class),
+            mock(JdbcTemplate.class), Duration.ofHours(1), 1000, Duration.ofSeconds(5), false);
+
+    private final IdempotencyFilter filter = new IdempotencyFilter(store, mock(CartCookies.class), Duration.ofSeconds(5));
+
+    /**
+     * Начало ключа запроса {@link #post(String)}: сессия, метод и путь.
+     */
+    private static final String CHECKOUT_KEY = "session:s1 POST /cart/checkout ";
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    /**
+     * Цепочка, имитирующая добавление в корзину: считает выполнения и отвечает редиректом.
+     */
+    private final FilterChain redirectChain = (request, response) -> {
+        executions.incrementAndGet();
+        ((HttpServletResponse) response).sendRedirect("/products");
+    };
+
+    /**
+     * Повтор с тем же ключом получает сохранённый редирект, запрос выполняется один раз.
+     */
+    @Test
+    void testDuplicate_replaysStoredOutcome() throws Exception {
+        MockHttpServletResponse first = perform(post("abc"), redirectChain);
+        MockHttpServletResponse second = perform(post("abc"), redirectChain);
+
+        assertEquals(1, executions.get());
+        assertEquals(302, second.getStatus());
+        assertEquals(first.getRedirectedUrl(), second.getHeader("Location"));
+        assertEquals("true", second.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    /**
+     * Ключ из поля формы работает так же, как заголовок.
+     */
+    @Test
+    void testFormParameterKey_replaysStoredOutcome() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/cart/add/1");
+        request.setRequestedSessionId("s1");
+        request.addParameter(IdempotencyFilter.PARAMETER, "form-key");
+        MockHttpServletRequest duplicate = new MockHttpServletRequest("POST", "/cart/add/1");
+        duplicate.setRequestedSessionId("s1");
+        duplicate.addParameter(IdempotencyFilter.PARAMETER, "form-key");
+
+        perform(request, redirectChain);
+        perform(duplicate, redirectChain);
+
+        assertEquals(1, executions.get());
+    }
+
+    /**
+     * Одновременный повтор ждёт первого запроса и получает его результат.
+     */
+    @Test
+    void testConcurrentDuplicate_waitsForFirstAttempt() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain slowChain = (request, response) -> {
+            executions.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ((HttpServletResponse) response).sendRedirect("/orders/7");
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<MockHttpServletResponse> first = executor.submit(() -> perform(post("same"), slowChain));
+            started.await(5, TimeUnit.SECONDS);
+            Future<MockHttpServletResponse> second = executor.submit(() -> perform(post("same"), slowChain));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertEquals(302, first.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals("/orders/7", second.get(5, TimeUnit.SECONDS).getHeader("Location"));
+            assertEquals(1, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Ответ с ошибкой не запоминается: повтор выполняет запрос заново.
+     */
+    @Test
+    void testFailedAttempt_isNotStored() throws Exception {
+        FilterChain failingChain = (request, response) -> {
+            executions.incrementAndGet();
+            ((HttpServletResponse) response).sendError(429);
+        };
+
+        perform(post("retry"), failingChain);
+        MockHttpServletResponse second = perform(post("retry"), failingChain);
+
+        assertEquals(2, executions.get());
+        assertNull(second.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    /**
+     * Запросы без ключа выполняются каждый раз.
+     */
+    @Test
+    void testNoKey_executesEveryTime() throws Exception {
+        perform(new MockHttpServletRequest("POST", "/cart/add/1"), redirectChain);
+        perform(new MockHttpServletRequest("POST", "/cart/add/1"), redirectChain);
+
+        assertEquals(2, executions.get());
+    }
+
+    /**
+     * Тот же ключ из другой сессии не получает чужой результат: запрос выполняется.
+     */
+    @Test
+    void testSameKeyFromAnotherSession_executesAgain() throws Exception {
+        perform(post("shared", "s1"), redirectChain);
+        MockHttpServletResponse other = perform(post("shared", "s2"), redirectChain);
+
+        assertEquals(2, executions.get());
+        assertNull(other.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    /**
+     * Запросы с ключом, но без сессии выполняются каждый раз.
+     */
+    @Test
+    void testNoSession_executesEveryTime() throws Exception {
+        perform(post("anonymous", null), redirectChain);
+        perform(post("anonymous", null), redirectChain);
+
+        assertEquals(2, executions.get());
+    }
+
+    /**
+     * Повтор получает и cookie первого ответа.
+     */
+    @Test
+    void testDuplicate_replaysSetCookie() throws Exception {
+        FilterChain cookieChain = (request, response) -> {
+            executions.incrementAndGet();
+            ((HttpServletResponse) response).addHeader(HttpHeaders.SET_COOKIE, "CART=v1; Path=/; HttpOnly");
+            ((HttpServletResponse) response).sendRedirect("/products");
+        };
+
+        perform(post("cookie"), cookieChain);
+        MockHttpServletResponse second = perform(post("cookie"), cookieChain);
+
+        assertEquals(1, executions.get());
+        assertEquals(List.of("CART=v1; Path=/; HttpOnly"), second.getHeaders(HttpHeaders.SET_COOKIE));
+    }
+
+    /**
+     * Повтор, ключ которого захвачен запросом на другом узле, не выполняется,
+     * а получает результат, когда тот узел его сохранит.
+     */
+    @Test
+    void testKeyClaimedOnAnotherNode_waitsForStoredOutcome() throws Exception {
+        IdempotencyRecordRepository repository = mock(IdempotencyRecordRepository.class);
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        IdempotencyRecord stored = new IdempotencyRecord(CHECKOUT_KEY + "other", 302, "/orders/7", null, null,
+                null, LocalDateTime.now());
+        when(repository.findById(CHECKOUT_KEY + "other"))
+                .thenReturn(Optional.empty(), Optional.empty(), Optional.of(stored));
+        when(jdbcTemplate.update(startsWith("INSERT"), any(), any(), any(), any())).thenReturn(0);
+
+        MockHttpServletResponse response = perform(databaseFilter(repository, jdbcTemplate, Duration.ofSeconds(5)),
+                post("other"), redirectChain);
+
+        assertEquals(0, executions.get());
+        assertEquals("/orders/7", response.getHeader("Location"));
+        assertEquals("true", response.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    /**
+     * Если запрос на другом узле не завершился за время ожидания, повтор получает 409.
+     */
+    @Test
+    void testKeyClaimedOnAnotherNode_conflictAfterTimeout() throws Exception {
+        IdempotencyRecordRepository repository = mock(IdempotencyRecordRepository.class);
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        IdempotencyRecord pending = new IdempotencyRecord(CHECKOUT_KEY + "slow", 0, null, null, null, null,
+                LocalDateTime.now());
+        when(repository.findById(CHECKOUT_KEY + "slow")).thenReturn(Optional.of(pending));
+        when(jdbcTemplate.update(startsWith("INSERT"), any(), any(), any(), any())).thenReturn(0);
+
+        MockHttpServletResponse response = perform(databaseFilter(repository, jdbcTemplate, Duration.ofMillis(50)),
+                post("slow"), redirectChain);
+
+        assertEquals(0, executions.get());
+        assertEquals(409, response.getStatus());
+    }
+
+    /**
+     * Захваченный ключ запроса, завершившегося ошибкой, освобождается.
+     */
+    @Test
+    void testFailedAttempt_releasesClaim() throws Exception {
+        IdempotencyRecordRepository repository = mock(IdempotencyRecordRepository.class);
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(repository.findById(CHECKOUT_KEY + "retry")).thenReturn(Optional.empty());
+        when(jdbcTemplate.update(startsWith("INSERT"), any(), any(), any(), any())).thenReturn(1);
+
+        perform(databaseFilter(repository, jdbcTemplate, Duration.ofSeconds(5)), post("retry"),
+                (request, response) -> ((HttpServletResponse) response).sendError(429));
+
+        verify(jdbcTemplate).update(startsWith("DELETE"), eq(CHECKOUT_KEY + "retry"));
+        verify(repository, never()).save(any());
+    }
+
+    private static IdempotencyFilter databaseFilter(IdempotencyRecordRepository repository, JdbcTemplate jdbcTemplate,
+                                                    Duration inFlightTimeout) {
+        IdempotencyStore store = new IdempotencyStore(repository, jdbcTemplate, Duration.ofHours(1), 1000,
+                inFlightTimeout, true);
+        return new IdempotencyFilter(store, mock(CartCookies.class), inFlightTimeout);
+    }
+
+    private static MockHttpServletRequest post(String key) {
+        return post(key, "s1");
+    }
+
+    private static MockHttpServletRequest post(String key, String sessionId) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/cart/checkout");
+        request.setRequestedSessionId(sessionId);
+        request.addHeader(IdempotencyFilter.HEADER, key);
+        return request;
+    }
+
+    private MockHttpServletResponse perform(MockHttpServletRequest request, FilterChain chain) throws Exception {
+        return perform(filter, request, chain);
+    }
+
+    private static MockHttpServletResponse perform(IdempotencyFilter filter, MockHttpServletRequest request,
+                                                   FilterChain chain) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
@@ -0,0 +1,57 @@
+package example.toyshop.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Unit-тесты для {@link ReadWriteRoutingDataSource}.
+ *
+ * <p>
+ * Проверяется выбор пула соединений по признаку readOnly транзакции
+ * и закреплению запроса за основной базой данных.
+ * </p>
+ */
+class ReadWriteRoutingDataSourceTest {
+
+    private final ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource();
+
+    @AfterEach
+    void cleanup() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReadYourWritesContext.clear();
+    }
+
+    /**
+     * Транзакция только на чтение направляется в реплику.
+     */
+    @Test
+    void readOnlyTransaction_routesToReplica() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertEquals(ReadWriteRoutingDataSource.REPLICA, dataSource.determineCurrentLookupKey());
+    }
+
+    /**
+     * Изменяющая транзакция направляется в основную базу данных.
+     */
+    @Test
+    void readWriteTransaction_routesToPrimary() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+
+        assertEquals(ReadWriteRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    }
+
+    /**
+     * Чтение сессии, недавно изменявшей данные, направляется в основную базу данных.
+     */
+    @Test
+    void readOnlyTransaction_pinnedToPrimary_routesToPrimary() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        ReadYourWritesContext.pinToPrimary();
+
+        assertEquals(ReadWriteRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    }
+}
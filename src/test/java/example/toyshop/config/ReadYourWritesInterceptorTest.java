@@ -0,0 +1,83 @@
+package example.toyshop.config;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import jakarta.servlet.http.Cookie;
+
+/**
+ * Unit-тесты для {@link ReadYourWritesInterceptor}.
+ *
+ * <p>
+ * Проверяется, что изменяющий запрос запоминает время изменения в cookie без HTTP-сессии,
+ * а чтение закрепляется за основной базой данных только в пределах окна.
+ * </p>
+ */
+class ReadYourWritesInterceptorTest {
+
+    private final ReadYourWritesInterceptor interceptor = new ReadYourWritesInterceptor(Duration.ofSeconds(5));
+
+    @AfterEach
+    void cleanup() {
+        ReadYourWritesContext.clear();
+    }
+
+    /**
+     * Изменяющий запрос возвращает cookie со временем изменения и не создаёт сессию.
+     */
+    @Test
+    void mutation_setsCookieWithoutSession() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/cart/add/1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, null);
+
+        String cookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertTrue(cookie.startsWith(ReadYourWritesInterceptor.LAST_WRITE_COOKIE + "="));
+        assertTrue(cookie.contains("Max-Age=5"));
+        assertNull(request.getSession(false));
+    }
+
+    /**
+     * Чтение вскоре после изменения идёт из основной базы данных, после окна — снова из реплики.
+     */
+    @Test
+    void read_pinnedOnlyWithinWindow() {
+        assertTrue(pinned(System.currentTimeMillis() - 1000));
+        assertFalse(pinned(System.currentTimeMillis() - 6000));
+        assertFalse(pinned(System.currentTimeMillis() + 60000));
+    }
+
+    /**
+     * После запроса закрепление потока снимается.
+     */
+    @Test
+    void afterCompletion_clearsPin() {
+        pinned(System.currentTimeMillis());
+
+        interceptor.afterCompletion(new MockHttpServletRequest(), new MockHttpServletResponse(), null, null);
+
+        assertFalse(ReadYourWritesContext.isPinnedToPrimary());
+    }
+
+    private boolean pinned(long lastWrite) {
+        ReadYourWritesContext.clear();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/cart");
+        request.setCookies(new Cookie(ReadYourWritesInterceptor.LAST_WRITE_COOKIE, Long.toString(lastWrite)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, null);
+
+        assertNull(response.getHeader(HttpHeaders.SET_COOKIE));
+        return ReadYourWritesContext.isPinnedToPrimary();
+    }
+}
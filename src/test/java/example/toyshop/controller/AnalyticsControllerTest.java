@@ -0,0 +1,60 @@
+package example.toyshop.controller;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import example.toyshop.dto.SalesReport;
+import example.toyshop.service.SalesAnalyticsService;
+
+@WebMvcTest(AnalyticsController.class)
+class AnalyticsControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private SalesAnalyticsService salesAnalyticsService;
+
+    /**
+     * Тестирует отображение отчёта за указанный период:
+     * - Мокаем метод getReport для периода из параметров.
+     * - Проверяем использование view "analytics" и атрибут "report".
+     */
+    @Test
+    void testViewAnalytics() throws Exception {
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 1, 31);
+        SalesReport report = new SalesReport(from, to, List.of(), List.of());
+        Mockito.when(salesAnalyticsService.getReport(from, to)).thenReturn(report);
+
+        mockMvc.perform(get("/analytics").param("from", "2024-01-01").param("to", "2024-01-31"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("analytics"))
+                .andExpect(model().attribute("report", report));
+    }
+
+    /**
+     * Тестирует пересчёт сводок за период:
+     * - Проверяем перенаправление на отчёт за тот же период.
+     * - Проверяем вызов rebuild с датами из параметров.
+     */
+    @Test
+    void testRebuild() throws Exception {
+        mockMvc.perform(post("/analytics/rebuild").param("from", "2024-01-01").param("to", "2024-01-31"))
+                .andExpect(status().is3xxRedirection())
+                .andExpect(redirectedUrl("/analytics?from=2024-01-01&to=2024-01-31"));
+
+        Mockito.verify(salesAnalyticsService).rebuild(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+    }
+}
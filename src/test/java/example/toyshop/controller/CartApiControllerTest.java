@@ -0,0 +1,119 @@
+package example.toyshop.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import example.toyshop.dto.CartDelta;
+import example.toyshop.model.Money;
+import example.toyshop.service.CartService;
+import example.toyshop.service.CookieCartService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Unit-тесты для {@link CartApiController}.
+ *
+ * <p>
+ * Проверяется, что изменения корзины возвращаются без редиректа, а ошибки — статусом
+ * и сообщением для покупателя.
+ * </p>
+ */
+@ExtendWith(MockitoExtension.class)
+class CartApiControllerTest {
+
+    @Mock
+    private CartService cartService;
+
+    @Mock
+    private CookieCartService cookieCartService;
+
+    @Mock
+    private CartCookies cartCookies;
+
+    @InjectMocks
+    private CartApiController cartApiController;
+
+    @Mock
+    private HttpServletRequest request;
+
+    @Mock
+    private HttpServletResponse response;
+
+    @Mock
+    private HttpSession session;
+
+    private final String sessionId = "session-123";
+
+    private final CartDelta delta = new CartDelta(42L, 1, Money.ofMinor(1000), Money.ofMinor(1000), 1, 1, 4);
+
+    @BeforeEach
+    void setup() {
+        when(request.getSession(true)).thenReturn(session);
+        when(session.getId()).thenReturn(sessionId);
+    }
+
+    /**
+     * Тестирует добавление товара: возвращается изменение корзины из сервиса, без редиректа.
+     */
+    @Test
+    void testAddToCart_returnsDelta() {
+        when(cartService.addToCart(sessionId, 42L)).thenReturn(delta);
+
+        assertSame(delta, cartApiController.addToCart(42L, request, response));
+    }
+
+    /**
+     * Тестирует уменьшение количества товара: возвращается изменение корзины из сервиса.
+     */
+    @Test
+    void testDecreaseItem_returnsDelta() {
+        when(cartService.decreaseItem(sessionId, 42L)).thenReturn(delta);
+
+        assertSame(delta, cartApiController.decreaseItem(42L, request, response));
+    }
+
+    /**
+     * Тестирует добавление товара, которого нет в наличии: ответ 409 с сообщением сервиса.
+     */
+    @Test
+    void testAddToCart_outOfStockIsConflict() {
+        when(cartService.addToCart(sessionId, 42L))
+                .thenThrow(new ResponseStatusException(HttpStatus.CONFLICT, "Товара нет в наличии"));
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> cartApiController.addToCart(42L, request, response));
+        ResponseEntity<ProblemDetail> error = cartApiController.handleStatus(e);
+
+        assertEquals(HttpStatus.CONFLICT, error.getStatusCode());
+        assertEquals("Товара нет в наличии", error.getBody().getDetail());
+    }
+
+    /**
+     * Тестирует непредвиденную ошибку: ответ 500 с общим сообщением без подробностей исключения.
+     */
+    @Test
+    void testIncreaseItem_unexpectedFailureIsServerError() {
+        when(cartService.increaseItem(sessionId, 42L)).thenThrow(new IllegalStateException("connection reset"));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> cartApiController.increaseItem(42L, request, response));
+        ResponseEntity<ProblemDetail> error = cartApiController.handleFailure(e);
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, error.getStatusCode());
+        assertEquals("Не удалось изменить корзину, повторите попытку", error.getBody().getDetail());
+    }
+}
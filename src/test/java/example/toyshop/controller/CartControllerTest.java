@@ -13,9 +13,11 @@ import static org.mockito.Mockito.when;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.springframework.ui.Model;
 
-import example.toyshop.model.Cart;
+import example.toyshop.dto.CartView;
 import example.toyshop.service.CartService;
+import example.toyshop.service.CookieCartService;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
 @ExtendWith(MockitoExtension.class)
@@ -24,12 +26,21 @@ class CartControllerTest {
     @Mock
     private CartService cartService;
 
+    @Mock
+    private CookieCartService cookieCartService;
+
+    @Mock
+    private CartCookies cartCookies;
+
     @InjectMocks
     private CartController cartController;
 
     @Mock
     private HttpServletRequest request;
 
+    @Mock
+    private HttpServletResponse response;
+
     @Mock
     private HttpSession session;
 
@@ -50,18 +61,18 @@ class CartControllerTest {
 
     /**
      * Тестирует метод отображения корзины:
-     * - Проверяет вызов сервиса получения активной корзины по sessionId.
+     * - Проверяет вызов сервиса получения представления корзины по sessionId.
      * - Проверяет добавление корзины в модель.
      * - Проверяет, что возвращается имя view "cart".
      */
     @Test
     void testViewCart() {
-        Cart cart = new Cart();
-        when(cartService.getActiveCartBySessionId(sessionId)).thenReturn(cart);
+        CartView cart = CartView.empty();
+        when(cartService.getCartView(sessionId)).thenReturn(cart);
 
         String view = cartController.viewCart(request, model);
 
-        verify(cartService).getActiveCartBySessionId(sessionId);
+        verify(cartService).getCartView(sessionId);
         verify(model).addAttribute("cart", cart);
         assertEquals("cart", view);
     }
@@ -75,7 +86,7 @@ class CartControllerTest {
     void testAddToCart() {
         Long productId = 42L;
 
-        String view = cartController.addToCart(productId, request);
+        String view = cartController.addToCart(productId, request, response);
 
         verify(cartService).addToCart(sessionId, productId);
         assertEquals("redirect:/products", view);
@@ -90,7 +101,7 @@ class CartControllerTest {
     void testRemoveFromCart() {
         Long productId = 42L;
 
-        String view = cartController.removeFromCart(productId, request);
+        String view = cartController.removeFromCart(productId, request, response);
 
         verify(cartService).removeFromCart(sessionId, productId);
         assertEquals("redirect:/cart", view);
@@ -105,7 +116,7 @@ class CartControllerTest {
     void testIncreaseItem() {
         Long productId = 42L;
 
-        String view = cartController.increaseItem(productId, request);
+        String view = cartController.increaseItem(productId, request, response);
 
         verify(cartService).increaseItem(sessionId, productId);
         assertEquals("redirect:/cart", view);
@@ -120,7 +131,7 @@ class CartControllerTest {
     void testDecreaseItem() {
         Long productId = 42L;
 
-        String view = cartController.decreaseItem(productId, request);
+        String view = cartController.decreaseItem(productId, request, response);
 
         verify(cartService).decreaseItem(sessionId, productId);
         assertEquals("redirect:/cart", view);
@@ -8,14 +8,17 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.server.ResponseStatusException;
 
-import example.toyshop.model.Cart;
-import example.toyshop.model.CartStatus;
-import example.toyshop.repository.CartRepository;
+import example.toyshop.dto.OrderSummary;
+import example.toyshop.model.Money;
+import example.toyshop.service.OrderService;
 
+import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.List;
-import java.util.Optional;
 
 @WebMvcTest(OrderController.class)
 class OrderControllerTest {
@@ -24,19 +27,19 @@ class OrderControllerTest {
     private MockMvc mockMvc;
 
     @MockitoBean
-    private CartRepository cartRepository;
+    private OrderService orderService;
 
     /**
      * Тестирует отображение страницы списка заказов:
-     * - Мокаем метод findByStatus, чтобы вернуть два фейковых заказа.
+     * - Мокаем метод getCompletedOrders, чтобы вернуть два фейковых заказа.
      * - Проверяем статус 200 OK.
      * - Проверяем использование view "orders".
      * - Проверяем, что в модель передан атрибут "orders".
      */
     @Test
     void testViewOrders() throws Exception {
-        List<Cart> fakeOrders = List.of(new Cart(), new Cart());
-        Mockito.when(cartRepository.findByStatus(CartStatus.COMPLETED)).thenReturn(fakeOrders);
+        List<OrderSummary> fakeOrders = List.of(order(1L), order(2L));
+        Mockito.when(orderService.getCompletedOrders()).thenReturn(fakeOrders);
 
         mockMvc.perform(get("/orders"))
                 .andExpect(status().isOk())
@@ -44,17 +47,35 @@ class OrderControllerTest {
                 .andExpect(model().attributeExists("orders"));
     }
 
+    /**
+     * Тестирует отображение заказов месяца из архива:
+     * - Мокаем метод getArchivedOrders для указанного месяца.
+     * - Проверяем, что в модель переданы заказы и выбранный месяц.
+     */
+    @Test
+    void testViewOrders_ArchivedMonth() throws Exception {
+        YearMonth month = YearMonth.of(2024, 1);
+        List<OrderSummary> archived = List.of(order(3L));
+        Mockito.when(orderService.getArchivedOrders(month)).thenReturn(archived);
+        Mockito.when(orderService.getArchivedMonths()).thenReturn(List.of(month));
+
+        mockMvc.perform(get("/orders").param("month", "2024-01"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("orders"))
+                .andExpect(model().attribute("month", month))
+                .andExpect(model().attribute("orders", archived));
+    }
+
     /**
      * Тестирует отображение конкретного заказа по id, если заказ найден:
-     * - Мокаем метод findById для возвращения заказа.
+     * - Мокаем метод getOrder для возвращения заказа.
      * - Проверяем статус 200 OK.
      * - Проверяем использование view "order".
      * - Проверяем, что в модель передан атрибут "order".
      */
     @Test
     void testViewOrder_Found() throws Exception {
-        Cart order = new Cart();
-        Mockito.when(cartRepository.findById(1L)).thenReturn(Optional.of(order));
+        Mockito.when(orderService.getOrder(1L)).thenReturn(order(1L));
 
         mockMvc.perform(get("/orders/1"))
                 .andExpect(status().isOk())
@@ -64,14 +85,22 @@ class OrderControllerTest {
 
     /**
      * Тестирует ситуацию, когда заказ с заданным id не найден:
-     * - Мокаем метод findById для возвращения пустого Optional.
+     * - Мокаем метод getOrder для выброса исключения с кодом 404.
      * - Проверяем, что сервер возвращает статус 404 Not Found.
      */
     @Test
     void testViewOrder_NotFound() throws Exception {
-        Mockito.when(cartRepository.findById(999L)).thenReturn(Optional.empty());
+        Mockito.when(orderService.getOrder(999L))
+                .thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Заказ не найден"));
 
         mockMvc.perform(get("/orders/999"))
                 .andExpect(status().isNotFound());
     }
+
+    /**
+     * Создаёт пустой заказ с заданным идентификатором для моков.
+     */
+    private static OrderSummary order(Long id) {
+        return new OrderSummary(id, LocalDateTime.now(), List.of(), Money.ZERO);
+    }
 }
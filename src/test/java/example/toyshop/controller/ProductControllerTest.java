@@ -3,6 +3,8 @@ package example.toyshop.controller;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -20,9 +22,15 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import example.toyshop.dto.CatalogFilter;
+import example.toyshop.dto.ProductCard;
 import example.toyshop.model.Product;
+import example.toyshop.model.StockMode;
 import example.toyshop.service.ImageService;
+import example.toyshop.service.ProductPopularity;
+import example.toyshop.service.ProductRecommendations;
 import example.toyshop.service.ProductService;
+import example.toyshop.service.ShardedStockService;
 
 /**
  * Unit-тесты для {@link ProductController} с использованием @WebMvcTest.
@@ -42,6 +50,15 @@ class ProductControllerTest {
     @MockitoBean
     private ImageService imageService;
 
+    @MockitoBean
+    private ShardedStockService shardedStockService;
+
+    @MockitoBean
+    private ProductPopularity productPopularity;
+
+    @MockitoBean
+    private ProductRecommendations productRecommendations;
+
     /**
      * Тестирует получение страницы списка продуктов с параметрами фильтрации и
      * пагинации.
@@ -53,10 +70,11 @@ class ProductControllerTest {
      */
     @Test
     void testListProducts() throws Exception {
-        Product p = new Product(1L, "Toy", "Nice toy", new BigDecimal("10.0"), null, 5);
-        Page<Product> page = new PageImpl<>(List.of(p), PageRequest.of(0, 10), 1);
+        ProductCard p = new ProductCard(1L, "Toy", new BigDecimal("10.0"), null, 5);
+        Page<ProductCard> page = new PageImpl<>(List.of(p), PageRequest.of(0, 10), 1);
 
-        when(productService.getProducts(anyString(), anyString(), anyInt(), anyInt())).thenReturn(page);
+        when(productService.getProductCards(anyString(), anyString(), eq(CatalogFilter.NONE), anyInt(), anyInt()))
+                .thenReturn(page);
 
         mockMvc.perform(get("/products")
                 .param("keyword", "toy")
@@ -73,23 +91,49 @@ class ProductControllerTest {
                 .andExpect(model().attribute("size", 10));
     }
 
+    /**
+     * Тестирует передачу фильтров по цене и наличию в сервис и обратно в модель.
+     */
+    @Test
+    void testListProducts_filters() throws Exception {
+        CatalogFilter filter = new CatalogFilter(new BigDecimal("5.00"), new BigDecimal("20.00"), true);
+        Page<ProductCard> page = new PageImpl<>(List.of(), PageRequest.of(0, 10), 0);
+
+        when(productService.getProductCards(null, "price_asc", filter, 0, 10)).thenReturn(page);
+
+        mockMvc.perform(get("/products")
+                .param("minPrice", "5.00")
+                .param("maxPrice", "20.00")
+                .param("inStock", "true"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("products"))
+                .andExpect(model().attribute("minPrice", new BigDecimal("5.00")))
+                .andExpect(model().attribute("maxPrice", new BigDecimal("20.00")))
+                .andExpect(model().attribute("inStock", true));
+    }
+
     /**
      * Тестирует отображение страницы конкретного продукта по ID.
      * Проверяет:
      * - HTTP статус 200 OK,
      * - отображение view с именем "product",
-     * - наличие в модели атрибута "product".
+     * - наличие в модели атрибута "product" и рекомендаций.
      */
     @Test
     void testViewProduct() throws Exception {
-        Product p = new Product(1L, "Toy", "Nice toy", new BigDecimal("10.0"), null, 5);
+        Product p = new Product(1L, "Toy", "Nice toy", new BigDecimal("10.0"), null, 5, StockMode.STANDARD);
+        List<ProductCard> recommendations = List.of(new ProductCard(2L, "Ball", new BigDecimal("5.0"), null, 3));
 
         when(productService.getProductById(1L)).thenReturn(p);
+        when(productRecommendations.recommend(1L)).thenReturn(recommendations);
 
         mockMvc.perform(get("/products/1"))
                 .andExpect(status().isOk())
                 .andExpect(view().name("product"))
-                .andExpect(model().attributeExists("product"));
+                .andExpect(model().attributeExists("product"))
+                .andExpect(model().attribute("recommendations", recommendations));
+
+        verify(productPopularity).recordView(1L);
     }
 
     /**
@@ -151,4 +195,31 @@ class ProductControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.url").value("/uploads/test-image.png"));
     }
+
+    /**
+     * Тестирует перевод товара в режим учёта остатка по частям.
+     * Проверяет вызов сервиса с количеством частей и редирект на страницу товара.
+     */
+    @Test
+    void testChangeStockMode_sharded() throws Exception {
+        mockMvc.perform(post("/products/1/stock-mode")
+                .param("mode", "SHARDED")
+                .param("shards", "16"))
+                .andExpect(status().is3xxRedirection())
+                .andExpect(redirectedUrl("/products/1"));
+
+        verify(shardedStockService).changeStockMode(1L, StockMode.SHARDED, 16);
+    }
+
+    /**
+     * Тестирует перевод товара в режим очереди добавлений с количеством частей по умолчанию.
+     */
+    @Test
+    void testChangeStockMode_queued() throws Exception {
+        mockMvc.perform(post("/products/1/stock-mode")
+                .param("mode", StockMode.QUEUED.name()))
+                .andExpect(status().is3xxRedirection());
+
+        verify(shardedStockService).changeStockMode(1L, StockMode.QUEUED, 8);
+    }
 }
@@ -0,0 +1,245 @@
+package example.toyshop.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Тесты для {@link DomainEventBus}.
+ *
+ * <p>
+ * Проверяется доставка событий по порядку, дочитывание пропущенных при переполнении
+ * очереди событий из журнала, продолжение с сохранённой позиции после перезапуска,
+ * удаление обработанных сегментов журнала и повтор доставки после ошибки получателя.
+ * </p>
+ */
+class DomainEventBusTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    Path journalDir;
+
+    /**
+     * Медленный получатель с очередью на одно событие получает все события по порядку:
+     * не поместившиеся в очередь дочитываются из журнала.
+     */
+    @Test
+    void testPublish_overflowIsReadFromJournal() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingConsumer consumer = new RecordingConsumer("slow", 20, release);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DomainEventBus bus = bus(List.of(consumer), meterRegistry, 1);
+        bus.start();
+
+        for (int i = 1; i <= 20; i++) {
+            bus.publish(new StockChanged((long) i, -1, LocalDateTime.now()));
+        }
+        release.countDown();
+
+        assertTrue(consumer.done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L, 12L, 13L, 14L, 15L, 16L, 17L, 18L, 19L, 20L),
+                consumer.productIds);
+        assertTrue(meterRegistry.get("events.consumer.overflows").tag("consumer", "slow").counter().count() > 0);
+        bus.shutdown();
+    }
+
+    /**
+     * После перезапуска получатель получает только события, которые не успел обработать.
+     */
+    @Test
+    void testStart_resumesFromCheckpoint() throws Exception {
+        RecordingConsumer first = new RecordingConsumer("audit", 2, null);
+        DomainEventBus bus = bus(List.of(first), new SimpleMeterRegistry(), 16);
+        bus.start();
+        bus.publish(new CartItemAdded("s1", 1L, LocalDateTime.now()));
+        bus.publish(new CartItemAdded("s1", 2L, LocalDateTime.now()));
+        assertTrue(first.done.await(5, TimeUnit.SECONDS));
+        bus.shutdown();
+
+        // событие, опубликованное без запущенного получателя, остаётся в журнале
+        DomainEventBus offline = bus(List.of(new RecordingConsumer("audit", 0, null)), new SimpleMeterRegistry(), 16);
+        offline.publish(new CartItemAdded("s1", 3L, LocalDateTime.now()));
+        offline.shutdown();
+
+        RecordingConsumer restarted = new RecordingConsumer("audit", 1, null);
+        DomainEventBus restartedBus = bus(List.of(restarted), new SimpleMeterRegistry(), 16);
+        restartedBus.start();
+
+        assertTrue(restarted.done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(3L), restarted.productIds);
+        restartedBus.shutdown();
+    }
+
+    /**
+     * Сегменты, все события которых обработаны, удаляются во время работы: после обработки
+     * остаётся только текущий сегмент, а следующие события по-прежнему доставляются.
+     */
+    @Test
+    void testJournal_deletesProcessedSegments() throws Exception {
+        RecordingConsumer consumer = new RecordingConsumer("audit", 10, null);
+        DomainEventBus bus = bus(List.of(consumer), new SimpleMeterRegistry(), 16, DataSize.ofBytes(1));
+        bus.start();
+
+        for (int i = 1; i <= 10; i++) {
+            bus.publish(new CartItemAdded("s1", (long) i, LocalDateTime.now()));
+        }
+
+        assertTrue(consumer.done.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (segmentCount() > 1 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, segmentCount());
+        bus.shutdown();
+    }
+
+    /**
+     * Событие, на котором получатель выбросил исключение, доставляется повторно,
+     * и следующие события приходят после него.
+     */
+    @Test
+    void testDeliver_retriesFailedEvent() throws Exception {
+        RecordingConsumer recorder = new RecordingConsumer("audit", 2, null);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DomainEventBus bus = bus(List.of(new FailingConsumer(recorder, 1L, 2)), meterRegistry, 16);
+        bus.start();
+
+        bus.publish(new CartItemAdded("s1", 1L, LocalDateTime.now()));
+        bus.publish(new CartItemAdded("s1", 2L, LocalDateTime.now()));
+
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1L, 2L), recorder.productIds);
+        assertEquals(2, meterRegistry.get("events.consumer.failures").tag("consumer", "audit").counter().count());
+        bus.shutdown();
+        assertFalse(Files.exists(journalDir.resolve("audit.dead")));
+    }
+
+    /**
+     * Событие, которое получатель не обработал ни с одной попытки, откладывается в файл
+     * необработанных событий, а позиция получателя сдвигается за него только после этого.
+     */
+    @Test
+    void testDeliver_parksEventAfterRetries() throws Exception {
+        RecordingConsumer recorder = new RecordingConsumer("audit", 1, null);
+        DomainEventBus bus = bus(List.of(new FailingConsumer(recorder, 1L, Integer.MAX_VALUE)),
+                new SimpleMeterRegistry(), 16);
+        bus.start();
+
+        bus.publish(new CartItemAdded("s1", 1L, LocalDateTime.now()));
+        bus.publish(new CartItemAdded("s1", 2L, LocalDateTime.now()));
+
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        bus.shutdown();
+        assertEquals(List.of(2L), recorder.productIds);
+        List<String> parked = Files.readAllLines(journalDir.resolve("audit.dead"));
+        assertEquals(1, parked.size());
+        assertEquals(1L, objectMapper.readTree(parked.get(0)).get("sequence").asLong());
+        assertEquals("2", Files.readString(journalDir.resolve("audit.offset")));
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.filter(file -> file.getFileName().toString().matches("events-\\d+\\.log")).count();
+        }
+    }
+
+    private DomainEventBus bus(List<DomainEventConsumer> consumers, SimpleMeterRegistry meterRegistry, int capacity) {
+        return bus(consumers, meterRegistry, capacity, DataSize.ofMegabytes(4));
+    }
+
+    private DomainEventBus bus(List<DomainEventConsumer> consumers, SimpleMeterRegistry meterRegistry, int capacity,
+                               DataSize segmentSize) {
+        return new DomainEventBus(consumers, objectMapper, meterRegistry, journalDir.toString(), capacity,
+                Duration.ofMillis(1), segmentSize, 3, Duration.ofMillis(1));
+    }
+
+    /**
+     * Получатель, который выбрасывает исключение на событиях указанного товара заданное число раз,
+     * а остальные события передаёт дальше.
+     */
+    private static final class FailingConsumer implements DomainEventConsumer {
+
+        private final RecordingConsumer delegate;
+        private final long failingProductId;
+        private int failuresLeft;
+
+        FailingConsumer(RecordingConsumer delegate, long failingProductId, int failures) {
+            this.delegate = delegate;
+            this.failingProductId = failingProductId;
+            this.failuresLeft = failures;
+        }
+
+        @Override
+        public String name() {
+            return delegate.name();
+        }
+
+        @Override
+        public void accept(DomainEvent event) {
+            if (event instanceof CartItemAdded added && added.productId() == failingProductId && failuresLeft > 0) {
+                failuresLeft--;
+                throw new IllegalStateException("Получатель недоступен");
+            }
+            delegate.accept(event);
+        }
+    }
+
+    /**
+     * Получатель, запоминающий товары из полученных событий.
+     */
+    private static final class RecordingConsumer implements DomainEventConsumer {
+
+        private final String name;
+        private final CountDownLatch done;
+        private final CountDownLatch release;
+        private final List<Long> productIds = new CopyOnWriteArrayList<>();
+
+        RecordingConsumer(String name, int expected, CountDownLatch release) {
+            this.name = name;
+            this.done = new CountDownLatch(expected);
+            this.release = release;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public void accept(DomainEvent event) {
+            if (release != null) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            switch (event) {
+                case CartItemAdded added -> productIds.add(added.productId());
+                case StockChanged changed -> productIds.add(changed.productId());
+                case OrderCompleted completed -> productIds.add(completed.orderId());
+            }
+            done.countDown();
+        }
+    }
+}
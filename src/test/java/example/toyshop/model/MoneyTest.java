@@ -0,0 +1,86 @@
+package example.toyshop.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit-тесты для {@link Money}.
+ */
+class MoneyTest {
+
+    /**
+     * Проверяет перевод в копейки: суммы с двумя знаками переводятся точно,
+     * с большим количеством знаков — округляются по правилу HALF_UP.
+     */
+    @Test
+    void of_roundsHalfUpToKopecks() {
+        assertEquals(1250, Money.of(new BigDecimal("12.5")).minorUnits());
+        assertEquals(1999, Money.of(new BigDecimal("19.99")).minorUnits());
+        assertEquals(101, Money.of(new BigDecimal("1.005")).minorUnits());
+        assertEquals(100, Money.of(new BigDecimal("1.004")).minorUnits());
+        assertEquals(-101, Money.of(new BigDecimal("-1.005")).minorUnits());
+    }
+
+    /**
+     * Проверяет, что арифметика совпадает с вычислением в {@link BigDecimal}.
+     */
+    @Test
+    void arithmetic_matchesBigDecimal() {
+        Money total = Money.of(new BigDecimal("0.10")).times(3).plus(Money.of(new BigDecimal("0.20")));
+
+        assertEquals(new BigDecimal("0.50"), total.toBigDecimal());
+        assertEquals("0.50", total.toString());
+    }
+
+    /**
+     * Проверяет отображение суммы так же, как его отображал {@link BigDecimal} с двумя знаками.
+     */
+    @Test
+    void toString_matchesPlainBigDecimal() {
+        for (String amount : List.of("0.00", "0.05", "12.50", "1000000.99", "-0.50", "-12.05")) {
+            assertEquals(amount, Money.of(new BigDecimal(amount)).toString());
+        }
+    }
+
+    /**
+     * Проверяет, что переполнение не проходит незамеченным.
+     */
+    @Test
+    void times_overflow_throws() {
+        assertThrows(ArithmeticException.class, () -> Money.ofMinor(Long.MAX_VALUE / 2).times(3));
+    }
+
+    /**
+     * Проверяет сумму строки корзины.
+     */
+    @Test
+    void cartItemTotal_multipliesPrice() {
+        Product product = new Product();
+        product.setPrice(new BigDecimal("0.99"));
+        CartItem item = new CartItem();
+        item.setProduct(product);
+        item.setPrice(Money.of(product.getPrice()));
+        item.setQuantity(3);
+
+        assertEquals(new BigDecimal("2.97"), item.getTotalPrice().toBigDecimal());
+    }
+
+    /**
+     * Проверяет изменение итогов корзины при изменении количества товаров.
+     */
+    @Test
+    void cartTotals_followLineChanges() {
+        Cart cart = new Cart();
+        cart.applyLineChange(Money.of(new BigDecimal("10.50")), 2);
+        cart.applyLineChange(Money.of(new BigDecimal("0.99")), 3);
+        cart.applyLineChange(Money.of(new BigDecimal("10.50")), -1);
+
+        assertEquals(new BigDecimal("13.47"), cart.getTotalAmount().toBigDecimal());
+        assertEquals(4, cart.getItemCount());
+    }
+}